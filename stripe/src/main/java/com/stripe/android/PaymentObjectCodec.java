@@ -0,0 +1,208 @@
+package com.stripe.android;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.stripe.android.model.BankAccount;
+import com.stripe.android.model.Card;
+import com.stripe.android.model.Source;
+import com.stripe.android.model.Token;
+
+import org.json.JSONObject;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Date;
+
+import static com.stripe.android.net.StripeApiHandler.CHARSET;
+
+/**
+ * Turns {@link Source} and {@link Token} objects into bytes for a {@link PaymentObjectStore},
+ * and back. Nothing that could be used to pay is written: no card number, no CVC and no bank
+ * account number, even if the object being written holds one.
+ */
+final class PaymentObjectCodec {
+
+    private static final String FIELD_NUMBER = "number";
+    private static final String FIELD_CVC = "cvc";
+
+    private static final byte TOKEN_VERSION = 1;
+    private static final byte NO_PAYMENT_METHOD = 0;
+    private static final byte CARD = 1;
+    private static final byte BANK_ACCOUNT = 2;
+
+    private PaymentObjectCodec() { }
+
+    /**
+     * A {@link Source} has too many kinds of nested data to describe field by field, so it is
+     * written as the same JSON that {@link Source#fromString(String)} reads.
+     */
+    @NonNull
+    static byte[] encodeSource(@NonNull Source source) throws IOException {
+        JSONObject jsonObject = source.toJson();
+        JSONObject typeData = source.getType() == null
+                ? null
+                : jsonObject.optJSONObject(source.getType());
+        if (typeData != null) {
+            typeData.remove(FIELD_NUMBER);
+            typeData.remove(FIELD_CVC);
+        }
+        return jsonObject.toString().getBytes(CHARSET);
+    }
+
+    /**
+     * @return the {@link Source}, or {@code null} if the bytes do not describe one
+     */
+    @Nullable
+    static Source decodeSource(@NonNull byte[] bytes) {
+        try {
+            return Source.fromString(new String(bytes, CHARSET));
+        } catch (IOException unsupportedEncoding) {
+            return null;
+        }
+    }
+
+    @NonNull
+    static byte[] encodeToken(@NonNull Token token) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        output.writeByte(TOKEN_VERSION);
+        writeString(output, token.getId());
+        output.writeBoolean(token.getLivemode());
+        output.writeBoolean(token.getUsed());
+        Date created = token.getCreated();
+        output.writeBoolean(created != null);
+        if (created != null) {
+            output.writeLong(created.getTime());
+        }
+
+        Card card = token.getCard();
+        BankAccount bankAccount = token.getBankAccount();
+        if (card != null) {
+            output.writeByte(CARD);
+            writeInteger(output, card.getExpMonth());
+            writeInteger(output, card.getExpYear());
+            writeString(output, card.getName());
+            writeString(output, card.getAddressLine1());
+            writeString(output, card.getAddressLine2());
+            writeString(output, card.getAddressCity());
+            writeString(output, card.getAddressState());
+            writeString(output, card.getAddressZip());
+            writeString(output, card.getAddressCountry());
+            writeString(output, card.getBrand());
+            writeString(output, card.getLast4());
+            writeString(output, card.getFingerprint());
+            writeString(output, card.getFunding());
+            writeString(output, card.getCountry());
+            writeString(output, card.getCurrency());
+            writeString(output, card.getId());
+        } else if (bankAccount != null) {
+            output.writeByte(BANK_ACCOUNT);
+            writeString(output, bankAccount.getAccountHolderName());
+            writeString(output, bankAccount.getAccountHolderType());
+            writeString(output, bankAccount.getBankName());
+            writeString(output, bankAccount.getCountryCode());
+            writeString(output, bankAccount.getCurrency());
+            writeString(output, bankAccount.getFingerprint());
+            writeString(output, bankAccount.getLast4());
+            writeString(output, bankAccount.getRoutingNumber());
+        } else {
+            output.writeByte(Token.TYPE_BANK_ACCOUNT.equals(token.getType())
+                    ? BANK_ACCOUNT
+                    : NO_PAYMENT_METHOD);
+        }
+        output.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @return the {@link Token}, or {@code null} if the bytes do not describe one
+     */
+    @Nullable
+    static Token decodeToken(@NonNull byte[] bytes) {
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes));
+        try {
+            if (input.readByte() != TOKEN_VERSION) {
+                return null;
+            }
+            String id = readString(input);
+            boolean livemode = input.readBoolean();
+            boolean used = input.readBoolean();
+            Date created = input.readBoolean() ? new Date(input.readLong()) : null;
+
+            switch (input.readByte()) {
+                case CARD:
+                    Card card = new Card(
+                            null,
+                            readInteger(input),
+                            readInteger(input),
+                            null,
+                            readString(input),
+                            readString(input),
+                            readString(input),
+                            readString(input),
+                            readString(input),
+                            readString(input),
+                            readString(input),
+                            readString(input),
+                            readString(input),
+                            readString(input),
+                            readString(input),
+                            readString(input),
+                            readString(input),
+                            readString(input));
+                    return new Token(id, livemode, created, used, card);
+                case BANK_ACCOUNT:
+                    BankAccount bankAccount = input.available() == 0
+                            ? null
+                            : new BankAccount(
+                                    readString(input),
+                                    readString(input),
+                                    readString(input),
+                                    readString(input),
+                                    readString(input),
+                                    readString(input),
+                                    readString(input),
+                                    readString(input));
+                    return new Token(id, livemode, created, used, bankAccount);
+                case NO_PAYMENT_METHOD:
+                    return new Token(id, livemode, created, used, (Card) null);
+                default:
+                    return null;
+            }
+        } catch (IOException truncated) {
+            return null;
+        }
+    }
+
+    private static void writeString(
+            @NonNull DataOutputStream output,
+            @Nullable String value) throws IOException {
+        output.writeBoolean(value != null);
+        if (value != null) {
+            output.writeUTF(value);
+        }
+    }
+
+    @Nullable
+    private static String readString(@NonNull DataInputStream input) throws IOException {
+        return input.readBoolean() ? input.readUTF() : null;
+    }
+
+    private static void writeInteger(
+            @NonNull DataOutputStream output,
+            @Nullable Integer value) throws IOException {
+        output.writeBoolean(value != null);
+        if (value != null) {
+            output.writeInt(value);
+        }
+    }
+
+    @Nullable
+    private static Integer readInteger(@NonNull DataInputStream input) throws IOException {
+        return input.readBoolean() ? input.readInt() : null;
+    }
+}
@@ -0,0 +1,478 @@
+package com.stripe.android;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+
+import com.stripe.android.model.Source;
+import com.stripe.android.model.Token;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps snapshots of {@link Source} and {@link Token} objects on the device, so that a checkout
+ * can pick up where it left off after the process was killed, for instance while the customer
+ * was away completing a redirect, without asking Stripe for the objects again. Using a store is
+ * optional: nothing is written unless the app puts objects in one.
+ *
+ * Objects are appended to a single file that is mapped into memory, so that writing one costs
+ * no more than copying its bytes, and opening the store reads the whole file in one pass. An
+ * object written before the process dies is found again when the store is next opened. Once
+ * most of the file is taken by objects that have since been replaced or removed, the live
+ * objects are copied to a new file that takes the place of the old one. A record that was only
+ * partly written, or that was damaged on disk, is dropped together with everything after it.
+ *
+ * Snapshots never include a card number, a CVC or a bank account number. They do include the
+ * client secret of a source, which is needed to retrieve it again, so the store should be kept
+ * in the app's private storage, such as {@link android.content.Context#getNoBackupFilesDir()}.
+ */
+public class PaymentObjectStore {
+
+    static final String FILE_NAME = "stripe_payment_objects";
+    static final int INITIAL_CAPACITY = 16 * 1024;
+
+    private static final int MAGIC = 0x53545250;
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final String COMPACTION_SUFFIX = ".compact";
+
+    private static final byte KIND_SOURCE = 1;
+    private static final byte KIND_TOKEN = 2;
+    private static final byte KIND_SOURCE_REMOVED = 3;
+    private static final byte KIND_TOKEN_REMOVED = 4;
+
+    @NonNull private final File mFile;
+    @NonNull private final Map<String, byte[]> mSources = new LinkedHashMap<>();
+    @NonNull private final Map<String, byte[]> mTokens = new LinkedHashMap<>();
+
+    @Nullable private RandomAccessFile mRandomAccessFile;
+    @Nullable private MappedByteBuffer mBuffer;
+    private int mWritePosition;
+    private int mLiveBytes;
+
+    private PaymentObjectStore(@NonNull File file) {
+        mFile = file;
+    }
+
+    /**
+     * Open the store kept in the given directory, creating it if there is none, and read back
+     * every object in it.
+     *
+     * @param directory a private directory of the app
+     * @return the open store
+     * @throws IOException if the store could not be read or created
+     */
+    @NonNull
+    public static PaymentObjectStore open(@NonNull File directory) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+        PaymentObjectStore store = new PaymentObjectStore(new File(directory, FILE_NAME));
+        store.restore();
+        return store;
+    }
+
+    /**
+     * @param sourceId the {@link Source#mId} of the source
+     * @return the last snapshot of the source, or {@code null} if there is none
+     */
+    @Nullable
+    public synchronized Source getSource(@NonNull String sourceId) {
+        byte[] record = mSources.get(sourceId);
+        return record == null ? null : PaymentObjectCodec.decodeSource(getPayload(record));
+    }
+
+    /**
+     * @param tokenId the id of the token
+     * @return the last snapshot of the token, or {@code null} if there is none
+     */
+    @Nullable
+    public synchronized Token getToken(@NonNull String tokenId) {
+        byte[] record = mTokens.get(tokenId);
+        return record == null ? null : PaymentObjectCodec.decodeToken(getPayload(record));
+    }
+
+    /**
+     * @return every source in the store, in the order they were first put in it
+     */
+    @NonNull
+    public synchronized List<Source> getSources() {
+        List<Source> sources = new ArrayList<>(mSources.size());
+        for (byte[] record : mSources.values()) {
+            Source source = PaymentObjectCodec.decodeSource(getPayload(record));
+            if (source != null) {
+                sources.add(source);
+            }
+        }
+        return sources;
+    }
+
+    /**
+     * @return every token in the store, in the order they were first put in it
+     */
+    @NonNull
+    public synchronized List<Token> getTokens() {
+        List<Token> tokens = new ArrayList<>(mTokens.size());
+        for (byte[] record : mTokens.values()) {
+            Token token = PaymentObjectCodec.decodeToken(getPayload(record));
+            if (token != null) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Keep a snapshot of a source, in place of any earlier one.
+     *
+     * @param source a source with an id
+     * @throws IOException if the snapshot could not be written
+     */
+    public synchronized void putSource(@NonNull Source source) throws IOException {
+        String sourceId = requireId(source.getId());
+        put(mSources, KIND_SOURCE, sourceId, PaymentObjectCodec.encodeSource(source));
+    }
+
+    /**
+     * Keep a snapshot of a token, in place of any earlier one.
+     *
+     * @param token a token with an id
+     * @throws IOException if the snapshot could not be written
+     */
+    public synchronized void putToken(@NonNull Token token) throws IOException {
+        String tokenId = requireId(token.getId());
+        put(mTokens, KIND_TOKEN, tokenId, PaymentObjectCodec.encodeToken(token));
+    }
+
+    /**
+     * @param sourceId the {@link Source#mId} of the source to forget
+     * @return {@code true} if the store had a snapshot of the source
+     * @throws IOException if the removal could not be written
+     */
+    public synchronized boolean removeSource(@NonNull String sourceId) throws IOException {
+        return remove(mSources, KIND_SOURCE_REMOVED, sourceId);
+    }
+
+    /**
+     * @param tokenId the id of the token to forget
+     * @return {@code true} if the store had a snapshot of the token
+     * @throws IOException if the removal could not be written
+     */
+    public synchronized boolean removeToken(@NonNull String tokenId) throws IOException {
+        return remove(mTokens, KIND_TOKEN_REMOVED, tokenId);
+    }
+
+    /**
+     * Rewrite the file with only the objects that are still in the store. This happens on its
+     * own as the file fills up, so there is rarely a need to call it.
+     *
+     * @throws IOException if the new file could not be written, in which case the old one is
+     * still used
+     */
+    public synchronized void compact() throws IOException {
+        checkOpen();
+        compact(0);
+    }
+
+    /**
+     * @param reservedBytes room to leave after the live records, for a record about to be written
+     */
+    private void compact(int reservedBytes) throws IOException {
+        int capacity = getCapacityFor(HEADER_SIZE + 2 * (mLiveBytes + reservedBytes));
+        File compactedFile = new File(mFile.getPath() + COMPACTION_SUFFIX);
+        RandomAccessFile compacted = new RandomAccessFile(compactedFile, "rw");
+        try {
+            compacted.setLength(0);
+            FileChannel channel = compacted.getChannel();
+            ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + mLiveBytes);
+            buffer.putInt(MAGIC).putInt(FORMAT_VERSION);
+            for (byte[] record : mSources.values()) {
+                putRecord(buffer, record);
+            }
+            for (byte[] record : mTokens.values()) {
+                putRecord(buffer, record);
+            }
+            ((Buffer) buffer).flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            compacted.setLength(capacity);
+            channel.force(true);
+        } finally {
+            compacted.close();
+        }
+
+        closeFile();
+        if (!compactedFile.renameTo(mFile)) {
+            compactedFile.delete();
+            mapFile(0);
+            throw new IOException("Could not replace " + mFile);
+        }
+        mapFile(capacity);
+        mWritePosition = HEADER_SIZE + mLiveBytes;
+    }
+
+    /**
+     * Write everything to disk and close the store. It cannot be used after this.
+     *
+     * @throws IOException if the file could not be closed
+     */
+    public synchronized void close() throws IOException {
+        if (mBuffer != null) {
+            mBuffer.force();
+        }
+        closeFile();
+        mSources.clear();
+        mTokens.clear();
+    }
+
+    @VisibleForTesting
+    @NonNull
+    File getFile() {
+        return mFile;
+    }
+
+    @VisibleForTesting
+    synchronized int getWritePosition() {
+        return mWritePosition;
+    }
+
+    private void restore() throws IOException {
+        mapFile(0);
+        MappedByteBuffer buffer = mBuffer;
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION) {
+            // A new file, or one this version cannot read: start over.
+            for (int i = 0; i < buffer.capacity(); i++) {
+                buffer.put(i, (byte) 0);
+            }
+            buffer.putInt(0, MAGIC).putInt(4, FORMAT_VERSION);
+            mWritePosition = HEADER_SIZE;
+            return;
+        }
+
+        int position = HEADER_SIZE;
+        boolean damaged = false;
+        while (position + RECORD_HEADER_SIZE <= buffer.capacity()) {
+            int length = buffer.getInt(position);
+            if (length == 0) {
+                break;
+            }
+            if (length < 0 || length > buffer.capacity() - position - RECORD_HEADER_SIZE) {
+                damaged = true;
+                break;
+            }
+            byte[] body = new byte[length];
+            ((Buffer) buffer).position(position + RECORD_HEADER_SIZE);
+            buffer.get(body);
+            if (buffer.getInt(position + 4) != checksum(body) || !apply(body)) {
+                damaged = true;
+                break;
+            }
+            position += RECORD_HEADER_SIZE + length;
+        }
+        mWritePosition = position;
+
+        if (damaged) {
+            // Whatever follows the last good record must not be mistaken for a record later.
+            compact();
+        }
+    }
+
+    /**
+     * Bring the index up to date with one record read from the file.
+     *
+     * @return {@code false} if the record could not be understood
+     */
+    private boolean apply(@NonNull byte[] body) {
+        String id;
+        try {
+            id = readId(body);
+        } catch (IOException truncated) {
+            return false;
+        }
+        switch (body[0]) {
+            case KIND_SOURCE:
+                index(mSources, id, body);
+                return true;
+            case KIND_TOKEN:
+                index(mTokens, id, body);
+                return true;
+            case KIND_SOURCE_REMOVED:
+                unindex(mSources, id);
+                return true;
+            case KIND_TOKEN_REMOVED:
+                unindex(mTokens, id);
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private void put(
+            @NonNull Map<String, byte[]> index,
+            byte kind,
+            @NonNull String id,
+            @NonNull byte[] payload) throws IOException {
+        byte[] body = createBody(kind, id, payload);
+        byte[] current = index.get(id);
+        if (current != null && Arrays.equals(current, body)) {
+            return;
+        }
+        append(body);
+        index(index, id, body);
+    }
+
+    private boolean remove(
+            @NonNull Map<String, byte[]> index,
+            byte kind,
+            @NonNull String id) throws IOException {
+        if (!index.containsKey(id)) {
+            return false;
+        }
+        append(createBody(kind, id, new byte[0]));
+        unindex(index, id);
+        return true;
+    }
+
+    private void index(@NonNull Map<String, byte[]> index, @NonNull String id, byte[] body) {
+        unindex(index, id);
+        index.put(id, body);
+        mLiveBytes += RECORD_HEADER_SIZE + body.length;
+    }
+
+    private void unindex(@NonNull Map<String, byte[]> index, @NonNull String id) {
+        byte[] previous = index.remove(id);
+        if (previous != null) {
+            mLiveBytes -= RECORD_HEADER_SIZE + previous.length;
+        }
+    }
+
+    private void append(@NonNull byte[] body) throws IOException {
+        checkOpen();
+        int size = RECORD_HEADER_SIZE + body.length;
+        if (mWritePosition + size > mBuffer.capacity()) {
+            if (HEADER_SIZE + mLiveBytes + size <= mBuffer.capacity() / 2) {
+                compact(size);
+            } else {
+                closeFile();
+                mapFile(getCapacityFor(Math.max(
+                        mWritePosition + size,
+                        2 * (HEADER_SIZE + mLiveBytes + size))));
+            }
+        }
+
+        // The length goes in last, so that a record cut short is never read back. Positions are
+        // set through Buffer, which has the same methods on every version of Java.
+        MappedByteBuffer buffer = mBuffer;
+        ((Buffer) buffer).position(mWritePosition + RECORD_HEADER_SIZE);
+        buffer.put(body);
+        buffer.putInt(mWritePosition + 4, checksum(body));
+        buffer.putInt(mWritePosition, body.length);
+        mWritePosition += size;
+    }
+
+    /**
+     * Map the whole file into memory, first making it at least {@code capacity} bytes long.
+     */
+    private void mapFile(int capacity) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(mFile, "rw");
+        try {
+            long length = Math.max(Math.max(capacity, INITIAL_CAPACITY), randomAccessFile.length());
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException(mFile + " is too large");
+            }
+            mBuffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+            mRandomAccessFile = randomAccessFile;
+        } catch (IOException mapFailure) {
+            randomAccessFile.close();
+            throw mapFailure;
+        }
+    }
+
+    private void closeFile() throws IOException {
+        RandomAccessFile randomAccessFile = mRandomAccessFile;
+        mRandomAccessFile = null;
+        mBuffer = null;
+        if (randomAccessFile != null) {
+            randomAccessFile.close();
+        }
+    }
+
+    private void checkOpen() {
+        if (mBuffer == null) {
+            throw new IllegalStateException("The store has been closed.");
+        }
+    }
+
+    @NonNull
+    private static String requireId(@Nullable String id) {
+        if (id == null) {
+            throw new IllegalArgumentException("Only objects with an id can be stored.");
+        }
+        return id;
+    }
+
+    private static int getCapacityFor(int size) {
+        int capacity = INITIAL_CAPACITY;
+        while (capacity < size) {
+            capacity *= 2;
+        }
+        return capacity;
+    }
+
+    private static void putRecord(@NonNull ByteBuffer buffer, @NonNull byte[] body) {
+        buffer.putInt(body.length).putInt(checksum(body)).put(body);
+    }
+
+    private static int checksum(@NonNull byte[] body) {
+        CRC32 crc = new CRC32();
+        crc.update(body, 0, body.length);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * A record is its kind, the id of its object, and the encoded object, if there is one.
+     */
+    @NonNull
+    private static byte[] createBody(byte kind, @NonNull String id, @NonNull byte[] payload)
+            throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(payload.length + id.length() + 3);
+        DataOutputStream output = new DataOutputStream(bytes);
+        output.writeByte(kind);
+        output.writeUTF(id);
+        output.write(payload);
+        output.flush();
+        return bytes.toByteArray();
+    }
+
+    @NonNull
+    private static String readId(@NonNull byte[] body) throws IOException {
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(body));
+        input.readByte();
+        return input.readUTF();
+    }
+
+    @NonNull
+    private static byte[] getPayload(@NonNull byte[] body) {
+        int idLength = ((body[1] & 0xFF) << 8) | (body[2] & 0xFF);
+        int offset = 3 + idLength;
+        return Arrays.copyOfRange(body, offset, body.length);
+    }
+}
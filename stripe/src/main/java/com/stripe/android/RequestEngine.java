@@ -0,0 +1,280 @@
+package com.stripe.android;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.IntDef;
+import android.support.annotation.IntRange;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+
+import com.stripe.android.net.RequestMetrics;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.util.concurrent.Executor;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs the asynchronous requests made through {@link Stripe} on a small pool of background
+ * threads of its own, rather than on the global {@link android.os.AsyncTask} executor where they
+ * would queue behind unrelated work in the app. Results are delivered on the main thread.
+ *
+ * When every thread is busy, requests wait in priority lanes: creating a token, which a customer
+ * is usually waiting on, goes ahead of creating a source, which goes ahead of retrieving one.
+ * Requests in the same lane run in the order they were made.
+ *
+ * A request made with an explicit {@link Executor} runs on that executor instead, and still has
+ * its result delivered on the main thread.
+ */
+public class RequestEngine {
+
+    @Retention(RetentionPolicy.SOURCE)
+    @IntDef({
+            LANE_TOKEN,
+            LANE_SOURCE,
+            LANE_RETRIEVAL
+    })
+    @interface Lane { }
+    static final int LANE_TOKEN = 0;
+    static final int LANE_SOURCE = 1;
+    static final int LANE_RETRIEVAL = 2;
+
+    static final int DEFAULT_THREAD_COUNT = 2;
+    private static final long KEEP_ALIVE_SECONDS = 30L;
+
+    @Nullable private static RequestEngine sDefaultEngine;
+
+    @NonNull private final Executor mExecutor;
+    @NonNull private final Executor mCallbackExecutor;
+    @NonNull private final AtomicLong mSequence = new AtomicLong();
+
+    @VisibleForTesting
+    RequestEngine(@NonNull Executor executor, @NonNull Executor callbackExecutor) {
+        mExecutor = executor;
+        mCallbackExecutor = callbackExecutor;
+    }
+
+    /**
+     * @return a {@link Builder} for a {@link RequestEngine} with its own threads
+     */
+    @NonNull
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return the {@link RequestEngine} shared by every {@link Stripe} instance that has not
+     * been given one of its own
+     */
+    @NonNull
+    public static synchronized RequestEngine getDefault() {
+        if (sDefaultEngine == null) {
+            sDefaultEngine = builder().build();
+        }
+        return sDefaultEngine;
+    }
+
+    /**
+     * Run a request in the background and deliver its result on the main thread.
+     *
+     * @param lane the lane the request waits in while every thread is busy
+     * @param executor an {@link Executor} to run the request on instead of this engine's
+     *                 threads, or {@code null}
+     * @param request the request to run
+     * @param callback the {@link ResultCallback} to call with the result
+     * @param <T> the type of the result
+     * @return a {@link Cancelable} that stops the request from running if it has not started yet
+     */
+    @NonNull
+    <T> Cancelable execute(
+            @Lane int lane,
+            @Nullable Executor executor,
+            @NonNull Request<T> request,
+            @NonNull ResultCallback<T> callback) {
+        Executor target = executor == null ? mExecutor : executor;
+        Task<T> task = new Task<>(target, lane, mSequence.getAndIncrement(), request, callback);
+        target.execute(task);
+        return task;
+    }
+
+    /**
+     * Represents a request that is run in the background.
+     *
+     * @param <T> the type of the result
+     */
+    interface Request<T> {
+        T call() throws Exception;
+    }
+
+    /**
+     * Represents something that is told about the result of a {@link Request} on the main
+     * thread.
+     *
+     * @param <T> the type of the result
+     */
+    interface ResultCallback<T> {
+        void onSuccess(T result);
+
+        void onError(@NonNull Exception error);
+    }
+
+    /**
+     * Represents a request that can be called off before it starts. A request that is already
+     * running is left to finish, but its callback is not made.
+     */
+    interface Cancelable {
+        void cancel();
+    }
+
+    /**
+     * Builder class for a {@link RequestEngine}.
+     */
+    public static final class Builder {
+
+        private int mThreadCount = DEFAULT_THREAD_COUNT;
+
+        private Builder() { }
+
+        /**
+         * Set the largest number of requests that can run at the same time. Threads are only
+         * started when there are requests to run, and stop after a while without any.
+         *
+         * @param threadCount the number of threads, which must be at least one
+         * @return {@code this}, for chaining purposes
+         */
+        @NonNull
+        public Builder setThreadCount(@IntRange(from = 1) int threadCount) {
+            if (threadCount < 1) {
+                throw new IllegalArgumentException("A RequestEngine needs at least one thread.");
+            }
+            mThreadCount = threadCount;
+            return this;
+        }
+
+        @NonNull
+        public RequestEngine build() {
+            final AtomicInteger threadNumber = new AtomicInteger();
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                    mThreadCount,
+                    mThreadCount,
+                    KEEP_ALIVE_SECONDS,
+                    TimeUnit.SECONDS,
+                    new PriorityBlockingQueue<Runnable>(),
+                    new ThreadFactory() {
+                        @Override
+                        public Thread newThread(@NonNull Runnable runnable) {
+                            Thread thread = new Thread(runnable,
+                                    "Stripe Request Thread #" + threadNumber.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+            executor.allowCoreThreadTimeOut(true);
+
+            final Handler mainHandler = new Handler(Looper.getMainLooper());
+            return new RequestEngine(executor, new Executor() {
+                @Override
+                public void execute(@NonNull Runnable command) {
+                    mainHandler.post(command);
+                }
+            });
+        }
+    }
+
+    /**
+     * A request waiting for a thread. Tasks are ordered by lane, then by the order they were
+     * made in.
+     */
+    private final class Task<T> implements Runnable, Comparable<Task<?>>, Cancelable {
+
+        @NonNull private final Executor mTaskExecutor;
+        @Lane private final int mLane;
+        private final long mSequenceNumber;
+        @NonNull private final Request<T> mRequest;
+        @NonNull private final ResultCallback<T> mCallback;
+        private volatile boolean mIsCanceled;
+
+        Task(
+                @NonNull Executor taskExecutor,
+                @Lane int lane,
+                long sequenceNumber,
+                @NonNull Request<T> request,
+                @NonNull ResultCallback<T> callback) {
+            mTaskExecutor = taskExecutor;
+            mLane = lane;
+            mSequenceNumber = sequenceNumber;
+            mRequest = request;
+            mCallback = callback;
+        }
+
+        @Override
+        public void run() {
+            if (mIsCanceled) {
+                return;
+            }
+
+            // The request's metrics wait for its callback, so that they can say how long the
+            // result took to reach it.
+            final RequestMetrics.PendingDelivery metrics = RequestMetrics.holdForCallback();
+            T result = null;
+            Exception error = null;
+            try {
+                result = mRequest.call();
+            } catch (Exception e) {
+                error = e;
+            } finally {
+                if (metrics != null) {
+                    metrics.detach();
+                }
+            }
+
+            final T finalResult = result;
+            final Exception finalError = error;
+            final long readyNanos = System.nanoTime();
+            mCallbackExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    long dispatchNanos = -1L;
+                    try {
+                        if (!mIsCanceled) {
+                            dispatchNanos = System.nanoTime() - readyNanos;
+                            if (finalError == null) {
+                                mCallback.onSuccess(finalResult);
+                            } else {
+                                mCallback.onError(finalError);
+                            }
+                        }
+                    } finally {
+                        if (metrics != null) {
+                            metrics.deliver(dispatchNanos);
+                        }
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void cancel() {
+            mIsCanceled = true;
+            if (mTaskExecutor instanceof ThreadPoolExecutor) {
+                ((ThreadPoolExecutor) mTaskExecutor).remove(this);
+            }
+        }
+
+        @Override
+        public int compareTo(@NonNull Task<?> other) {
+            if (mLane != other.mLane) {
+                return mLane < other.mLane ? -1 : 1;
+            }
+            return mSequenceNumber < other.mSequenceNumber
+                    ? -1
+                    : (mSequenceNumber == other.mSequenceNumber ? 0 : 1);
+        }
+    }
+}
@@ -1,14 +1,13 @@
 package com.stripe.android;
 
 import android.content.Context;
-import android.os.AsyncTask;
-import android.os.Build;
 
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.annotation.Size;
 import android.support.annotation.VisibleForTesting;
 
+import java.io.File;
 import java.util.Map;
 import java.util.concurrent.Executor;
 
@@ -23,6 +22,7 @@ import com.stripe.android.model.Card;
 import com.stripe.android.model.Source;
 import com.stripe.android.model.SourceParams;
 import com.stripe.android.model.Token;
+import com.stripe.android.net.PollingHandle;
 import com.stripe.android.net.PollingResponse;
 import com.stripe.android.net.PollingResponseHandler;
 import com.stripe.android.net.RequestOptions;
@@ -43,31 +43,30 @@ public class Stripe {
                 @NonNull final String publishableKey,
                 @Nullable Executor executor,
                 @NonNull final SourceCallback sourceCallback) {
-            AsyncTask<Void, Void, ResponseWrapper> task =
-                    new AsyncTask<Void, Void, ResponseWrapper>() {
+            mRequestEngine.execute(
+                    RequestEngine.LANE_SOURCE,
+                    executor,
+                    new RequestEngine.Request<Source>() {
                         @Override
-                        protected ResponseWrapper doInBackground(Void... params) {
-                            try {
-                                Source source = StripeApiHandler.createSourceOnServer(
-                                        sourceParams,
-                                        publishableKey);
-                                return new ResponseWrapper(source);
-                            } catch (StripeException stripeException) {
-                                return new ResponseWrapper(stripeException);
-                            }
+                        public Source call() throws StripeException {
+                            return StripeApiHandler.createSourceOnServer(
+                                    sourceParams,
+                                    publishableKey);
                         }
-
+                    },
+                    new RequestEngine.ResultCallback<Source>() {
                         @Override
-                        protected void onPostExecute(ResponseWrapper responseWrapper) {
-                            if (responseWrapper.source != null) {
-                                sourceCallback.onSuccess(responseWrapper.source);
-                            } else if (responseWrapper.error != null) {
-                                sourceCallback.onError(responseWrapper.error);
+                        public void onSuccess(Source source) {
+                            if (source != null) {
+                                sourceCallback.onSuccess(source);
                             }
                         }
-                    };
 
-            executeTask(executor, task);
+                        @Override
+                        public void onError(@NonNull Exception error) {
+                            sourceCallback.onError(error);
+                        }
+                    });
         }
     };
 
@@ -79,33 +78,41 @@ public class Stripe {
                 final String publishableKey,
                 final Executor executor,
                 final TokenCallback callback) {
-            AsyncTask<Void, Void, ResponseWrapper> task =
-                    new AsyncTask<Void, Void, ResponseWrapper>() {
+            mRequestEngine.execute(
+                    RequestEngine.LANE_TOKEN,
+                    executor,
+                    new RequestEngine.Request<Token>() {
                         @Override
-                        protected ResponseWrapper doInBackground(Void... params) {
-                            try {
-                                RequestOptions requestOptions =
-                                        RequestOptions.builder(publishableKey).build();
-                                Token token = StripeApiHandler.createTokenOnServer(
-                                        tokenParams,
-                                        requestOptions,
-                                        mLoggingResponseListener);
-                                return new ResponseWrapper(token);
-                            } catch (StripeException e) {
-                                return new ResponseWrapper(e);
+                        public Token call() throws StripeException {
+                            RequestOptions requestOptions =
+                                    RequestOptions.builder(publishableKey).build();
+                            return StripeApiHandler.createTokenOnServer(
+                                    tokenParams,
+                                    requestOptions,
+                                    mLoggingResponseListener);
+                        }
+                    },
+                    new RequestEngine.ResultCallback<Token>() {
+                        @Override
+                        public void onSuccess(Token token) {
+                            if (token != null) {
+                                callback.onSuccess(token);
+                            } else {
+                                callback.onError(new RuntimeException(
+                                        "Somehow got neither a token response or an error "
+                                                + "response"));
                             }
                         }
 
                         @Override
-                        protected void onPostExecute(ResponseWrapper result) {
-                            tokenTaskPostExecution(result, callback);
+                        public void onError(@NonNull Exception error) {
+                            callback.onError(error);
                         }
-            };
-
-            executeTask(executor, task);
+                    });
         }
     };
 
+    @NonNull private RequestEngine mRequestEngine = RequestEngine.getDefault();
     private Context mContext;
     private StripeApiHandler.LoggingResponseListener mLoggingResponseListener;
     private String mDefaultPublishableKey;
@@ -117,6 +124,7 @@ public class Stripe {
      */
     public Stripe(@NonNull Context context) {
         mContext = context;
+        initAnalytics(context);
     }
 
     /**
@@ -128,6 +136,7 @@ public class Stripe {
      */
     public Stripe(@NonNull Context context, String publishableKey) throws AuthenticationException {
         mContext = context;
+        initAnalytics(context);
         setDefaultPublishableKey(publishableKey);
     }
 
@@ -223,7 +232,7 @@ public class Stripe {
     }
 
     /**
-     * Create a {@link Source} using an {@link AsyncTask} on the default {@link Executor} with a
+     * Create a {@link Source} on this instance's {@link RequestEngine} with a
      * publishable api key that has already been set on this {@link Stripe} instance.
      *
      * @param sourceParams the {@link SourceParams} to be used
@@ -234,12 +243,13 @@ public class Stripe {
     }
 
     /**
-     * Create a {@link Source} using an {@link AsyncTask}.
+     * Create a {@link Source} in the background.
      *
      * @param sourceParams the {@link SourceParams} to be used
      * @param callback a {@link SourceCallback} to receive a result or an error message
      * @param publishableKey the publishable api key to be used
-     * @param executor an {@link Executor} on which to execute the task, or {@link null} for default
+     * @param executor an {@link Executor} on which to execute the task, or {@code null} to use
+     *                 this instance's {@link RequestEngine}
      */
     public void createSource(
             @NonNull SourceParams sourceParams,
@@ -253,6 +263,33 @@ public class Stripe {
         mSourceCreator.create(sourceParams, apiKey, executor, callback);
     }
 
+    /**
+     * Create a {@link Source} in the background, using the publishable api key that has
+     * already been set on this {@link Stripe} instance.
+     *
+     * The returned {@link StripeFuture} can be chained into further requests, for example to
+     * create a 3D Secure source once a card source has been created.
+     *
+     * @param sourceParams the {@link SourceParams} to be used
+     * @return a {@link StripeFuture} for the created {@link Source}
+     */
+    @NonNull
+    public StripeFuture<Source> createSource(@NonNull final SourceParams sourceParams) {
+        final String publishableKey = mDefaultPublishableKey;
+        try {
+            validateKey(publishableKey);
+        } catch (AuthenticationException e) {
+            return StripeFuture.failed(e);
+        }
+
+        return executeForFuture(RequestEngine.LANE_SOURCE, new RequestEngine.Request<Source>() {
+            @Override
+            public Source call() throws StripeException {
+                return StripeApiHandler.createSourceOnServer(sourceParams, publishableKey);
+            }
+        });
+    }
+
     /**
      * The simplest way to create a token, using a {@link Card} and {@link TokenCallback}. This
      * runs on the default {@link Executor} and with the
@@ -265,6 +302,44 @@ public class Stripe {
         createToken(card, mDefaultPublishableKey, callback);
     }
 
+    /**
+     * Create a {@link Token} in the background, using the publishable api key that has already
+     * been set on this {@link Stripe} instance.
+     *
+     * @param card the {@link Card} used to create this payment token
+     * @return a {@link StripeFuture} for the created {@link Token}
+     */
+    @NonNull
+    public StripeFuture<Token> createToken(@NonNull final Card card) {
+        if (card == null) {
+            throw new RuntimeException(
+                    "Required Parameter: 'card' is required to create a token");
+        }
+
+        final String publishableKey = mDefaultPublishableKey;
+        try {
+            validateKey(publishableKey);
+        } catch (AuthenticationException e) {
+            return StripeFuture.failed(e);
+        }
+
+        final Map<String, Object> tokenParams = hashMapFromCard(mContext, card);
+        return executeForFuture(RequestEngine.LANE_TOKEN, new RequestEngine.Request<Token>() {
+            @Override
+            public Token call() throws StripeException {
+                Token token = StripeApiHandler.createTokenOnServer(
+                        tokenParams,
+                        RequestOptions.builder(publishableKey).build(),
+                        mLoggingResponseListener);
+                if (token == null) {
+                    throw new RuntimeException(
+                            "Somehow got neither a token response or an error response");
+                }
+                return token;
+            }
+        });
+    }
+
     /**
      * Call to create a {@link Token} with a specific public key.
      *
@@ -435,18 +510,68 @@ public class Stripe {
      * @param callback a {@link PollingResponseHandler} to use as a callback
      * @param timeoutMs the amount of time before the polling expires. If {@code null} is passed
      *                  in, 10000ms will be used.
+     * @return a {@link PollingHandle} that can cancel the polling, for example when the user
+     * leaves the screen that is waiting for the result, or {@code null} if there is no
+     * publishable key to poll with
      */
-    public void pollSource(@NonNull @Size(min = 1) String sourceId,
-                           @NonNull @Size(min = 1) String clientSecret,
-                           @Nullable String publishableKey,
-                           @NonNull PollingResponseHandler callback,
-                           @Nullable Integer timeoutMs) {
+    @Nullable
+    public PollingHandle pollSource(@NonNull @Size(min = 1) String sourceId,
+                                    @NonNull @Size(min = 1) String clientSecret,
+                                    @Nullable String publishableKey,
+                                    @NonNull PollingResponseHandler callback,
+                                    @Nullable Integer timeoutMs) {
         String apiKey = publishableKey == null ? mDefaultPublishableKey : publishableKey;
         if (apiKey == null) {
-            return;
+            return null;
         }
 
-        StripeApiHandler.pollSource(sourceId, clientSecret, apiKey, callback, timeoutMs);
+        return StripeApiHandler.pollSource(sourceId, clientSecret, apiKey, callback, timeoutMs);
+    }
+
+    /**
+     * Starts polling the {@link Source} object with the given ID, using the publishable api key
+     * that has already been set on this {@link Stripe} instance. The returned
+     * {@link StripeFuture} succeeds with the same {@link PollingResponse} that
+     * {@link #pollSource(String, String, String, PollingResponseHandler, Integer)} would pass to
+     * its callback, including when polling stops because of an error or a timeout. Canceling the
+     * future stops polling.
+     *
+     * @param sourceId the {@link Source#mId} to check on
+     * @param clientSecret the {@link Source#mClientSecret} to check on
+     * @param timeoutMs the amount of time before the polling expires. If {@code null} is passed
+     *                  in, 10000ms will be used.
+     * @return a {@link StripeFuture} for the final {@link PollingResponse}
+     */
+    @NonNull
+    public StripeFuture<PollingResponse> pollSource(@NonNull @Size(min = 1) String sourceId,
+                                                    @NonNull @Size(min = 1) String clientSecret,
+                                                    @Nullable Integer timeoutMs) {
+        String publishableKey = mDefaultPublishableKey;
+        try {
+            validateKey(publishableKey);
+        } catch (AuthenticationException e) {
+            return StripeFuture.failed(e);
+        }
+
+        final StripeFuture<PollingResponse> future = new StripeFuture<>();
+        final PollingHandle handle = StripeApiHandler.pollSource(
+                sourceId,
+                clientSecret,
+                publishableKey,
+                new PollingResponseHandler() {
+                    @Override
+                    public void onPollingResponse(PollingResponse pollingResponse) {
+                        future.complete(pollingResponse);
+                    }
+                },
+                timeoutMs);
+        future.setCancelAction(new Runnable() {
+            @Override
+            public void run() {
+                handle.cancel();
+            }
+        });
+        return future;
     }
 
     /**
@@ -478,6 +603,36 @@ public class Stripe {
         return StripeApiHandler.pollSourceSynchronous(sourceId, clientSecret, apiKey, timeoutMs);
     }
 
+    /**
+     * Retrieve an existing {@link Source} from the Stripe API in the background, using the
+     * publishable api key that has already been set on this {@link Stripe} instance.
+     *
+     * @param sourceId the {@link Source#mId} field of the desired Source object
+     * @param clientSecret the {@link Source#mClientSecret} field of the desired Source object
+     * @return a {@link StripeFuture} for the {@link Source}
+     */
+    @NonNull
+    public StripeFuture<Source> retrieveSource(
+            @NonNull @Size(min = 1) final String sourceId,
+            @NonNull @Size(min = 1) final String clientSecret) {
+        final String publishableKey = mDefaultPublishableKey;
+        try {
+            validateKey(publishableKey);
+        } catch (AuthenticationException e) {
+            return StripeFuture.failed(e);
+        }
+
+        return executeForFuture(
+                RequestEngine.LANE_RETRIEVAL,
+                new RequestEngine.Request<Source>() {
+                    @Override
+                    public Source call() throws StripeException {
+                        return StripeApiHandler.retrieveSource(
+                                sourceId, clientSecret, publishableKey);
+                    }
+                });
+    }
+
     /**
      * Retrieve an existing {@link Source} from the Stripe API. Note that this is a
      * synchronous method, and cannot be called on the main thread. Doing so will cause your app
@@ -508,7 +663,8 @@ public class Stripe {
     /**
      * Retrieve an existing {@link Source} from the Stripe API. Note that this is a
      * synchronous method, and cannot be called on the main thread. Doing so will cause your app
-     * to crash.
+     * to crash. A source retrieved recently may be returned from the
+     * {@link com.stripe.android.net.SourceCache} without asking Stripe.
      *
      * @param sourceId the {@link Source#mId} field of the desired Source object
      * @param clientSecret the {@link Source#mClientSecret} field of the desired Source object
@@ -538,6 +694,26 @@ public class Stripe {
         return StripeApiHandler.retrieveSource(sourceId, clientSecret, apiKey);
     }
 
+    /**
+     * Get ready to talk to Stripe in the background, so that the first token or source created
+     * afterwards does not wait for a connection to be opened or for classes to be loaded. Call
+     * this when a payment screen opens; calling it again while a connection is still open only
+     * costs one short request over that connection.
+     *
+     * @return a {@link StripeFuture} that completes once Stripe is ready, or fails if it could
+     * not be reached
+     */
+    @NonNull
+    public StripeFuture<Void> warmUp() {
+        return executeForFuture(RequestEngine.LANE_RETRIEVAL, new RequestEngine.Request<Void>() {
+            @Override
+            public Void call() throws StripeException {
+                StripeApiHandler.warmUp();
+                return null;
+            }
+        });
+    }
+
     /**
      * Set the default publishable key to use with this {@link Stripe} instance.
      *
@@ -550,6 +726,17 @@ public class Stripe {
         this.mDefaultPublishableKey = publishableKey;
     }
 
+    /**
+     * Set the {@link RequestEngine} that runs this instance's asynchronous requests when no
+     * {@link Executor} is given. By default, every {@link Stripe} instance shares
+     * {@link RequestEngine#getDefault()}.
+     *
+     * @param requestEngine the engine to use
+     */
+    public void setRequestEngine(@NonNull RequestEngine requestEngine) {
+        mRequestEngine = requestEngine;
+    }
+
     @VisibleForTesting
     void setLoggingResponseListener(StripeApiHandler.LoggingResponseListener listener) {
         mLoggingResponseListener = listener;
@@ -575,6 +762,44 @@ public class Stripe {
         }
     }
 
+    @NonNull
+    private <T> StripeFuture<T> executeForFuture(
+            @RequestEngine.Lane int lane,
+            @NonNull RequestEngine.Request<T> request) {
+        final StripeFuture<T> future = new StripeFuture<>();
+        final RequestEngine.Cancelable cancelable = mRequestEngine.execute(
+                lane,
+                null,
+                request,
+                new RequestEngine.ResultCallback<T>() {
+                    @Override
+                    public void onSuccess(T result) {
+                        future.complete(result);
+                    }
+
+                    @Override
+                    public void onError(@NonNull Exception error) {
+                        future.fail(error);
+                    }
+                });
+        future.setCancelAction(new Runnable() {
+            @Override
+            public void run() {
+                cancelable.cancel();
+            }
+        });
+        return future;
+    }
+
+    private static void initAnalytics(@NonNull Context context) {
+        // Analytics events that do not fit in memory are kept in the cache directory until
+        // they can be sent.
+        File cacheDir = context.getCacheDir();
+        if (cacheDir != null) {
+            StripeApiHandler.getAnalyticsQueue().setSpillDirectory(cacheDir);
+        }
+    }
+
     private void validateKey(@NonNull @Size(min = 1) String publishableKey)
             throws AuthenticationException {
         if (publishableKey == null || publishableKey.length() == 0) {
@@ -591,51 +816,6 @@ public class Stripe {
         }
     }
 
-    private void tokenTaskPostExecution(ResponseWrapper result, TokenCallback callback) {
-        if (result.token != null) {
-            callback.onSuccess(result.token);
-        }
-        else if (result.error != null) {
-            callback.onError(result.error);
-        }
-        else {
-            callback.onError(new RuntimeException(
-                    "Somehow got neither a token response or an error response"));
-        }
-    }
-
-    private void executeTask(Executor executor, AsyncTask<Void, Void, ResponseWrapper> task) {
-        if (executor != null && Build.VERSION.SDK_INT > Build.VERSION_CODES.HONEYCOMB) {
-            task.executeOnExecutor(executor);
-        } else {
-            task.execute();
-        }
-    }
-
-    private class ResponseWrapper {
-        final Source source;
-        final Token token;
-        final Exception error;
-
-        private ResponseWrapper(Token token) {
-            this.token = token;
-            this.source = null;
-            this.error = null;
-        }
-
-        private ResponseWrapper(Source source) {
-            this.source = source;
-            this.error = null;
-            this.token = null;
-        }
-
-        private ResponseWrapper(Exception error) {
-            this.error = error;
-            this.source = null;
-            this.token = null;
-        }
-    }
-
     interface SourceCreator {
         void create(
                 @NonNull SourceParams params,
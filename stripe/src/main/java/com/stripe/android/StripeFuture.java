@@ -0,0 +1,445 @@
+package com.stripe.android;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * The pending result of an asynchronous {@link Stripe} request.
+ *
+ * Results can be waited for with {@link #get()}, off the main thread, but the point of a future
+ * is that they need not be: {@link #addCallback(Callback)} is told about the result on the main
+ * thread, {@link #then(Continuation)} starts another request once this one succeeds, and
+ * {@link #allOf(List)} combines several requests that run side by side. None of these hold on to
+ * a thread while they wait.
+ *
+ * Canceling a future stops the request behind it if it has not started yet, or stops polling,
+ * and makes every future that depends on it fail with a {@link CancellationException}.
+ *
+ * @param <T> the type of the result
+ */
+public class StripeFuture<T> implements Future<T> {
+
+    private static final int PENDING = 0;
+    private static final int SUCCEEDED = 1;
+    private static final int FAILED = 2;
+    private static final int CANCELED = 3;
+
+    @Nullable private static Handler sMainHandler;
+
+    // Guarded by this.
+    private int mState = PENDING;
+    @Nullable private T mResult;
+    @Nullable private Exception mError;
+    @Nullable private Runnable mCancelAction;
+    private boolean mIsAborted;
+    @Nullable private Runnable mTimeout;
+    @NonNull private final List<Listener<T>> mListeners = new ArrayList<>();
+
+    StripeFuture() { }
+
+    /**
+     * @param result the result
+     * @param <T> the type of the result
+     * @return a future that has already succeeded with the given result
+     */
+    @NonNull
+    public static <T> StripeFuture<T> completed(@Nullable T result) {
+        StripeFuture<T> future = new StripeFuture<>();
+        future.complete(result);
+        return future;
+    }
+
+    /**
+     * @param error the error
+     * @param <T> the type of the result
+     * @return a future that has already failed with the given error
+     */
+    @NonNull
+    public static <T> StripeFuture<T> failed(@NonNull Exception error) {
+        StripeFuture<T> future = new StripeFuture<>();
+        future.fail(error);
+        return future;
+    }
+
+    /**
+     * Combine futures whose requests run side by side.
+     *
+     * @param futures the futures to combine
+     * @param <T> the type of their results
+     * @return a future that succeeds with every result, in the same order, once they have all
+     * succeeded, or fails as soon as any of them fails. When it fails or is canceled, the futures
+     * that have not finished yet are canceled.
+     */
+    @NonNull
+    public static <T> StripeFuture<List<T>> allOf(@NonNull List<StripeFuture<T>> futures) {
+        final List<StripeFuture<T>> sources = new ArrayList<>(futures);
+        final StripeFuture<List<T>> combined = new StripeFuture<>();
+        if (sources.isEmpty()) {
+            combined.complete(Collections.<T>emptyList());
+            return combined;
+        }
+
+        final Object[] results = new Object[sources.size()];
+        final int[] remaining = { sources.size() };
+        combined.setCancelAction(new Runnable() {
+            @Override
+            public void run() {
+                for (StripeFuture<T> source : sources) {
+                    source.cancel(false);
+                }
+            }
+        });
+
+        for (int i = 0; i < sources.size(); i++) {
+            final int index = i;
+            sources.get(i).addListener(new Listener<T>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public void onSuccess(@Nullable T result) {
+                    boolean isLast;
+                    synchronized (results) {
+                        results[index] = result;
+                        isLast = --remaining[0] == 0;
+                    }
+                    if (isLast) {
+                        combined.complete((List<T>) Arrays.asList(results));
+                    }
+                }
+
+                @Override
+                public void onError(@NonNull Exception error) {
+                    combined.abort(FAILED, error);
+                }
+            });
+        }
+        return combined;
+    }
+
+    /**
+     * Be told about the result on the main thread. If the future has already finished, the
+     * callback is still made asynchronously.
+     *
+     * @param callback the {@link Callback} to call
+     * @return {@code this}, for chaining purposes
+     */
+    @NonNull
+    public StripeFuture<T> addCallback(@NonNull final Callback<T> callback) {
+        addListener(new Listener<T>() {
+            @Override
+            public void onSuccess(@Nullable final T result) {
+                postToMainThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onSuccess(result);
+                    }
+                });
+            }
+
+            @Override
+            public void onError(@NonNull final Exception error) {
+                postToMainThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onError(error);
+                    }
+                });
+            }
+        });
+        return this;
+    }
+
+    /**
+     * Start another request once this one succeeds, for example to create a 3D Secure source
+     * from a card source that has just been created.
+     *
+     * @param continuation the {@link Continuation} that starts the next request. It runs on the
+     *                     thread that finished this request, so it should not block.
+     * @param <R> the type of the next request's result
+     * @return a future for the result of the next request. It fails if this future fails, or if
+     * the continuation throws, and canceling it cancels whichever request is under way.
+     */
+    @NonNull
+    public <R> StripeFuture<R> then(@NonNull final Continuation<T, R> continuation) {
+        final StripeFuture<R> next = new StripeFuture<>();
+        next.setCancelAction(new Runnable() {
+            @Override
+            public void run() {
+                cancel(false);
+            }
+        });
+
+        addListener(new Listener<T>() {
+            @Override
+            public void onSuccess(@Nullable T result) {
+                final StripeFuture<R> inner;
+                try {
+                    inner = continuation.then(result);
+                } catch (Exception error) {
+                    next.fail(error);
+                    return;
+                }
+
+                next.setCancelAction(new Runnable() {
+                    @Override
+                    public void run() {
+                        inner.cancel(false);
+                    }
+                });
+                inner.addListener(new Listener<R>() {
+                    @Override
+                    public void onSuccess(@Nullable R innerResult) {
+                        next.complete(innerResult);
+                    }
+
+                    @Override
+                    public void onError(@NonNull Exception error) {
+                        next.fail(error);
+                    }
+                });
+            }
+
+            @Override
+            public void onError(@NonNull Exception error) {
+                next.fail(error);
+            }
+        });
+        return next;
+    }
+
+    /**
+     * Give up on the request if it has not finished in time. The future then fails with a
+     * {@link TimeoutException}, and the request behind it is canceled.
+     *
+     * @param timeoutMs the time to wait, in milliseconds
+     * @return {@code this}, for chaining purposes
+     */
+    @NonNull
+    public StripeFuture<T> withTimeout(final long timeoutMs) {
+        Runnable timeout = new Runnable() {
+            @Override
+            public void run() {
+                abort(FAILED, new TimeoutException("Timed out after " + timeoutMs + "ms."));
+            }
+        };
+
+        synchronized (this) {
+            if (mState != PENDING) {
+                return this;
+            }
+            if (mTimeout != null) {
+                getMainHandler().removeCallbacks(mTimeout);
+            }
+            mTimeout = timeout;
+        }
+        getMainHandler().postDelayed(timeout, timeoutMs);
+        return this;
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return abort(CANCELED, new CancellationException("The request was canceled."));
+    }
+
+    @Override
+    public synchronized boolean isCancelled() {
+        return mState == CANCELED;
+    }
+
+    @Override
+    public synchronized boolean isDone() {
+        return mState != PENDING;
+    }
+
+    /**
+     * Wait for the result. This must not be called on the main thread, where results are
+     * delivered.
+     */
+    @Override
+    @Nullable
+    public synchronized T get() throws InterruptedException, ExecutionException {
+        while (mState == PENDING) {
+            wait();
+        }
+        return getResult();
+    }
+
+    /**
+     * Wait for the result for up to the given time. This must not be called on the main thread,
+     * where results are delivered.
+     */
+    @Override
+    @Nullable
+    public synchronized T get(long timeout, @NonNull TimeUnit unit)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        long deadlineNanos = System.nanoTime() + unit.toNanos(timeout);
+        while (mState == PENDING) {
+            long remainingNanos = deadlineNanos - System.nanoTime();
+            if (remainingNanos <= 0L) {
+                throw new TimeoutException();
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remainingNanos);
+        }
+        return getResult();
+    }
+
+    /**
+     * Set what canceling this future does to the work behind it.
+     */
+    void setCancelAction(@NonNull Runnable cancelAction) {
+        boolean isAborted;
+        synchronized (this) {
+            mCancelAction = cancelAction;
+            isAborted = mIsAborted;
+        }
+        if (isAborted) {
+            cancelAction.run();
+        }
+    }
+
+    boolean complete(@Nullable T result) {
+        return finish(SUCCEEDED, result, null);
+    }
+
+    boolean fail(@NonNull Exception error) {
+        return finish(FAILED, null, error);
+    }
+
+    /**
+     * Be told about the result on whichever thread finishes the future.
+     */
+    void addListener(@NonNull Listener<T> listener) {
+        synchronized (this) {
+            if (mState == PENDING) {
+                mListeners.add(listener);
+                return;
+            }
+        }
+        notifyListener(listener);
+    }
+
+    /**
+     * Finish the future without a result, and stop the work behind it.
+     */
+    private boolean abort(int state, @NonNull Exception error) {
+        if (!finish(state, null, error)) {
+            return false;
+        }
+
+        Runnable cancelAction;
+        synchronized (this) {
+            mIsAborted = true;
+            cancelAction = mCancelAction;
+        }
+        if (cancelAction != null) {
+            cancelAction.run();
+        }
+        return true;
+    }
+
+    private boolean finish(int state, @Nullable T result, @Nullable Exception error) {
+        List<Listener<T>> listeners;
+        Runnable timeout;
+        synchronized (this) {
+            if (mState != PENDING) {
+                return false;
+            }
+            mState = state;
+            mResult = result;
+            mError = error;
+            listeners = new ArrayList<>(mListeners);
+            mListeners.clear();
+            timeout = mTimeout;
+            mTimeout = null;
+            notifyAll();
+        }
+
+        if (timeout != null) {
+            getMainHandler().removeCallbacks(timeout);
+        }
+        for (Listener<T> listener : listeners) {
+            notifyListener(listener);
+        }
+        return true;
+    }
+
+    private void notifyListener(@NonNull Listener<T> listener) {
+        T result;
+        Exception error;
+        synchronized (this) {
+            result = mResult;
+            error = mError;
+        }
+        if (error == null) {
+            listener.onSuccess(result);
+        } else {
+            listener.onError(error);
+        }
+    }
+
+    @Nullable
+    private T getResult() throws ExecutionException {
+        if (mState == CANCELED) {
+            throw new CancellationException("The request was canceled.");
+        } else if (mState == FAILED) {
+            throw new ExecutionException(mError);
+        }
+        return mResult;
+    }
+
+    private static void postToMainThread(@NonNull Runnable runnable) {
+        getMainHandler().post(runnable);
+    }
+
+    @NonNull
+    private static synchronized Handler getMainHandler() {
+        if (sMainHandler == null) {
+            sMainHandler = new Handler(Looper.getMainLooper());
+        }
+        return sMainHandler;
+    }
+
+    /**
+     * Represents something that is told about the result of a {@link StripeFuture} on the main
+     * thread.
+     *
+     * @param <T> the type of the result
+     */
+    public interface Callback<T> {
+        void onSuccess(@Nullable T result);
+
+        void onError(@NonNull Exception error);
+    }
+
+    /**
+     * Represents the next step of a chain of requests.
+     *
+     * @param <T> the type of the previous request's result
+     * @param <R> the type of the next request's result
+     */
+    public interface Continuation<T, R> {
+        @NonNull
+        StripeFuture<R> then(@Nullable T result) throws Exception;
+    }
+
+    /**
+     * Represents something that is told about the result of a {@link StripeFuture} on the
+     * thread that finished it.
+     */
+    interface Listener<T> {
+        void onSuccess(@Nullable T result);
+
+        void onError(@NonNull Exception error);
+    }
+}
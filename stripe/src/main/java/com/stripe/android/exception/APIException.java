@@ -1,11 +1,34 @@
 package com.stripe.android.exception;
 
+import android.support.annotation.Nullable;
+
 /**
  * An {@link Exception} that represents an internal problem with Stripe's servers.
  */
 public class APIException extends StripeException {
 
+    @Nullable private final Long retryAfterMs;
+
     public APIException(String message, String requestId, Integer statusCode, Throwable e) {
+        this(message, requestId, statusCode, e, null);
+    }
+
+    public APIException(
+            String message,
+            String requestId,
+            Integer statusCode,
+            Throwable e,
+            @Nullable Long retryAfterMs) {
         super(message, requestId, statusCode, e);
+        this.retryAfterMs = retryAfterMs;
+    }
+
+    /**
+     * @return how long the server asked us to wait before trying again, in milliseconds, or
+     * {@code null} if it did not send a {@code Retry-After} header
+     */
+    @Nullable
+    public Long getRetryAfterMs() {
+        return retryAfterMs;
     }
 }
@@ -1,16 +1,40 @@
 package com.stripe.android.exception;
 
+import android.support.annotation.Nullable;
+
 /**
  * An {@link Exception} indicating that too many requests have hit the API too quickly.
  */
 public class RateLimitException extends InvalidRequestException {
 
+    @Nullable private final Long retryAfterMs;
+
     public RateLimitException(
             String message,
             String param,
             String requestId,
             Integer statusCode,
             Throwable e) {
+        this(message, param, requestId, statusCode, e, null);
+    }
+
+    public RateLimitException(
+            String message,
+            String param,
+            String requestId,
+            Integer statusCode,
+            Throwable e,
+            @Nullable Long retryAfterMs) {
         super(message, param, requestId, statusCode, e);
+        this.retryAfterMs = retryAfterMs;
+    }
+
+    /**
+     * @return how long the server asked us to wait before trying again, in milliseconds, or
+     * {@code null} if it did not send a {@code Retry-After} header
+     */
+    @Nullable
+    public Long getRetryAfterMs() {
+        return retryAfterMs;
     }
 }
@@ -4,12 +4,15 @@ import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.annotation.Size;
 import android.support.annotation.StringDef;
+import android.util.JsonReader;
+import android.util.JsonToken;
 
 import com.stripe.android.util.StripeJsonUtils;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.IOException;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.util.HashMap;
@@ -132,6 +135,11 @@ public class Source extends StripeJsonModel {
     private @SourceType String mType;
     private @Usage String mUsage;
 
+    // The parts of the JSON that the metadata and source type data maps are built from the
+    // first time they are asked for, so that parsing does not pay for maps nobody reads.
+    @Nullable private JSONObject mMetaDataJson;
+    @Nullable private JSONObject mSourceTypeDataJson;
+
     Source(
             String id,
             Long amount,
@@ -203,7 +211,11 @@ public class Source extends StripeJsonModel {
         return mLiveMode;
     }
 
-    public Map<String, String> getMetaData() {
+    public synchronized Map<String, String> getMetaData() {
+        if (mMetaDataJson != null) {
+            mMetaData = StripeJsonUtils.jsonObjectToStringMap(mMetaDataJson);
+            mMetaDataJson = null;
+        }
         return mMetaData;
     }
 
@@ -224,7 +236,11 @@ public class Source extends StripeJsonModel {
         return mStatus;
     }
 
-    public Map<String, Object> getSourceTypeData() {
+    public synchronized Map<String, Object> getSourceTypeData() {
+        if (mSourceTypeDataJson != null) {
+            mSourceTypeData = StripeJsonUtils.jsonObjectToMap(mSourceTypeDataJson);
+            mSourceTypeDataJson = null;
+        }
         return mSourceTypeData;
     }
 
@@ -274,7 +290,8 @@ public class Source extends StripeJsonModel {
         mLiveMode = liveMode;
     }
 
-    public void setMetaData(Map<String, String> metaData) {
+    public synchronized void setMetaData(Map<String, String> metaData) {
+        mMetaDataJson = null;
         mMetaData = metaData;
     }
 
@@ -294,7 +311,8 @@ public class Source extends StripeJsonModel {
         mStatus = status;
     }
 
-    public void setSourceTypeData(Map<String, Object> sourceTypeData) {
+    public synchronized void setSourceTypeData(Map<String, Object> sourceTypeData) {
+        mSourceTypeDataJson = null;
         mSourceTypeData = sourceTypeData;
     }
 
@@ -320,14 +338,14 @@ public class Source extends StripeJsonModel {
         hashMap.put(FIELD_CURRENCY, mCurrency);
         hashMap.put(FIELD_FLOW, mFlow);
         hashMap.put(FIELD_LIVEMODE, mLiveMode);
-        hashMap.put(FIELD_METADATA, mMetaData);
+        hashMap.put(FIELD_METADATA, getMetaData());
 
         putStripeJsonModelMapIfNotNull(hashMap, FIELD_OWNER, mOwner);
         putStripeJsonModelMapIfNotNull(hashMap, FIELD_RECEIVER, mReceiver);
         putStripeJsonModelMapIfNotNull(hashMap, FIELD_REDIRECT, mRedirect);
 
         if (mType != null) {
-            hashMap.put(mType, mSourceTypeData);
+            hashMap.put(mType, getSourceTypeData());
         }
 
         hashMap.put(FIELD_STATUS, mStatus);
@@ -352,12 +370,12 @@ public class Source extends StripeJsonModel {
             putStringIfNotNull(jsonObject, FIELD_FLOW, mFlow);
             jsonObject.put(FIELD_LIVEMODE, mLiveMode);
 
-            JSONObject metaDataObject = StripeJsonUtils.mapToJsonObject(mMetaData);
+            JSONObject metaDataObject = StripeJsonUtils.mapToJsonObject(getMetaData());
             if (metaDataObject != null) {
                 jsonObject.put(FIELD_METADATA, metaDataObject);
             }
 
-            JSONObject sourceTypeJsonObject = mapToJsonObject(mSourceTypeData);
+            JSONObject sourceTypeJsonObject = mapToJsonObject(getSourceTypeData());
             if (mType != null && sourceTypeJsonObject != null) {
                 jsonObject.put(mType, sourceTypeJsonObject);
             }
@@ -398,8 +416,6 @@ public class Source extends StripeJsonModel {
         String currency = optString(jsonObject, FIELD_CURRENCY);
         @SourceFlow String flow = asSourceFlow(optString(jsonObject, FIELD_FLOW));
         Boolean liveMode = jsonObject.optBoolean(FIELD_LIVEMODE);
-        Map<String, String> metadata =
-                StripeJsonUtils.jsonObjectToStringMap(jsonObject.optJSONObject(FIELD_METADATA));
         SourceOwner owner = optStripeJsonModel(jsonObject, FIELD_OWNER, SourceOwner.class);
         SourceReceiver receiver = optStripeJsonModel(
                 jsonObject,
@@ -413,15 +429,153 @@ public class Source extends StripeJsonModel {
         @SourceType String type = asSourceType(optString(jsonObject, FIELD_TYPE));
 
         // Until we have models for all types, keep the original hash and the
-        // model object.
-        Map<String, Object> sourceTypeData =
-                StripeJsonUtils.jsonObjectToMap(jsonObject.optJSONObject(type));
+        // model object. The hash is only built if it is asked for.
         StripeSourceTypeModel sourceTypeModel = type != null && MODELED_TYPES.contains(type)
                 ? optStripeJsonModel(jsonObject, type, StripeSourceTypeModel.class)
                 : null;
 
         @Usage String usage = asUsage(optString(jsonObject, FIELD_USAGE));
 
+        Source source = new Source(
+                id,
+                amount,
+                clientSecret,
+                codeVerification,
+                created,
+                currency,
+                flow,
+                liveMode,
+                null,
+                owner,
+                receiver,
+                redirect,
+                status,
+                null,
+                sourceTypeModel,
+                type,
+                usage);
+        source.mMetaDataJson = jsonObject.optJSONObject(FIELD_METADATA);
+        source.mSourceTypeDataJson = type == null ? null : jsonObject.optJSONObject(type);
+        return source;
+    }
+
+    /**
+     * Read a {@link Source} from a streaming {@link JsonReader} in a single pass, without
+     * building a {@link JSONObject} first. The result is the same as that of
+     * {@link #fromJson(JSONObject)} for the equivalent object.
+     *
+     * @param reader a reader positioned at the source object
+     * @return the {@link Source}, or {@code null} if the value does not describe a source
+     * @throws IOException if the value could not be read
+     */
+    @Nullable
+    public static Source fromJson(@NonNull JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return null;
+        }
+
+        String object = null;
+        String id = null;
+        Long amount = null;
+        String clientSecret = null;
+        SourceCodeVerification codeVerification = null;
+        Long created = null;
+        String currency = null;
+        @SourceFlow String flow = null;
+        boolean liveMode = false;
+        Map<String, String> metadata = null;
+        SourceOwner owner = null;
+        SourceReceiver receiver = null;
+        SourceRedirect redirect = null;
+        @SourceStatus String status = null;
+        @SourceType String type = null;
+        @Usage String usage = null;
+
+        // The type-specific data is keyed by the type, which may come after it in the response,
+        // so any object that might turn out to be that data is kept until the type is known.
+        Map<String, Map<String, Object>> objectFields = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            switch (name) {
+                case FIELD_OBJECT:
+                    object = optString(reader);
+                    break;
+                case FIELD_ID:
+                    id = optString(reader);
+                    break;
+                case FIELD_AMOUNT:
+                    amount = optLong(reader);
+                    break;
+                case FIELD_CLIENT_SECRET:
+                    clientSecret = optString(reader);
+                    break;
+                case FIELD_CODE_VERIFICATION:
+                    codeVerification = SourceCodeVerification.fromJson(reader);
+                    break;
+                case FIELD_CREATED:
+                    created = optLong(reader);
+                    break;
+                case FIELD_CURRENCY:
+                    currency = optString(reader);
+                    break;
+                case FIELD_FLOW:
+                    flow = asSourceFlow(optString(reader));
+                    break;
+                case FIELD_LIVEMODE:
+                    liveMode = StripeJsonUtils.optBoolean(reader);
+                    break;
+                case FIELD_METADATA:
+                    metadata = StripeJsonUtils.readStringMap(reader);
+                    break;
+                case FIELD_OWNER:
+                    owner = SourceOwner.fromJson(reader);
+                    break;
+                case FIELD_RECEIVER:
+                    receiver = SourceReceiver.fromJson(reader);
+                    break;
+                case FIELD_REDIRECT:
+                    redirect = SourceRedirect.fromJson(reader);
+                    break;
+                case FIELD_STATUS:
+                    status = asSourceStatus(optString(reader));
+                    break;
+                case FIELD_TYPE:
+                    type = asSourceType(optString(reader));
+                    break;
+                case FIELD_USAGE:
+                    usage = asUsage(optString(reader));
+                    break;
+                default:
+                    if ((type == null || type.equals(name))
+                            && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                        if (objectFields == null) {
+                            objectFields = new HashMap<>();
+                        }
+                        objectFields.put(name, StripeJsonUtils.readMap(reader));
+                    } else {
+                        reader.skipValue();
+                    }
+            }
+        }
+        reader.endObject();
+
+        if (!VALUE_SOURCE.equals(object)) {
+            return null;
+        }
+
+        Map<String, Object> sourceTypeData = type == null || objectFields == null
+                ? null
+                : objectFields.get(type);
+        StripeSourceTypeModel sourceTypeModel = null;
+        if (CARD.equals(type)) {
+            sourceTypeModel = SourceCardData.fromSourceTypeData(sourceTypeData);
+        } else if (SEPA_DEBIT.equals(type)) {
+            sourceTypeModel = SourceSepaDebitData.fromSourceTypeData(sourceTypeData);
+        }
+
         return new Source(
                 id,
                 amount,
@@ -2,10 +2,13 @@ package com.stripe.android.model;
 
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
+import android.util.JsonReader;
+import android.util.JsonToken;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -145,4 +148,56 @@ public class SourceAddress extends StripeJsonModel {
 
         return new SourceAddress(city, country, line1, line2, postalCode, state);
     }
+
+    /**
+     * Read a {@link SourceAddress} from a streaming {@link JsonReader}, with the same result as
+     * {@link #fromJson(JSONObject)}.
+     *
+     * @param reader a reader positioned at the address object
+     * @return the address, or {@code null} if the value is not an object
+     * @throws IOException if the value could not be read
+     */
+    @Nullable
+    static SourceAddress fromJson(@NonNull JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return null;
+        }
+
+        String city = null;
+        String country = null;
+        String line1 = null;
+        String line2 = null;
+        String postalCode = null;
+        String state = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case FIELD_CITY:
+                    city = optString(reader);
+                    break;
+                case FIELD_COUNTRY:
+                    country = optString(reader);
+                    break;
+                case FIELD_LINE_1:
+                    line1 = optString(reader);
+                    break;
+                case FIELD_LINE_2:
+                    line2 = optString(reader);
+                    break;
+                case FIELD_POSTAL_CODE:
+                    postalCode = optString(reader);
+                    break;
+                case FIELD_STATE:
+                    state = optString(reader);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        return new SourceAddress(city, country, line1, line2, postalCode, state);
+    }
 }
@@ -162,7 +162,7 @@ public class SourceCardData extends StripeSourceTypeModel {
         putStringIfNotNull(jsonObject, FIELD_THREE_D_SECURE, mThreeDSecureStatus);
         putStringIfNotNull(jsonObject, FIELD_TOKENIZATION_METHOD, mTokenizationMethod);
 
-        putAdditionalFieldsIntoJsonObject(jsonObject, mAdditionalFields);
+        putAdditionalFieldsIntoJsonObject(jsonObject, getAdditionalFields());
         return jsonObject;
     }
 
@@ -182,7 +182,7 @@ public class SourceCardData extends StripeSourceTypeModel {
         objectMap.put(FIELD_THREE_D_SECURE, mThreeDSecureStatus);
         objectMap.put(FIELD_TOKENIZATION_METHOD, mTokenizationMethod);
 
-        putAdditionalFieldsIntoMap(objectMap, mAdditionalFields);
+        putAdditionalFieldsIntoMap(objectMap, getAdditionalFields());
         StripeNetworkUtils.removeNullParams(objectMap);
         return objectMap;
     }
@@ -268,12 +268,43 @@ public class SourceCardData extends StripeSourceTypeModel {
                         FIELD_THREE_D_SECURE)))
                 .setTokenizationMethod(optString(jsonObject, FIELD_TOKENIZATION_METHOD));
 
-        Map<String, Object> nonStandardFields =
-                jsonObjectToMapWithoutKeys(jsonObject, cardData.mStandardFields);
-        if (nonStandardFields != null) {
-            cardData.setAdditionalFields(nonStandardFields);
+        cardData.setAdditionalFieldsSource(jsonObject);
+
+        return cardData;
+    }
+
+    /**
+     * Create a {@link SourceCardData} from the source type data of a card {@link Source}, as
+     * read by {@link StripeJsonUtils#readMap(android.util.JsonReader)}, so that the streaming
+     * parser does not have to read the card object twice.
+     *
+     * @param sourceTypeData the {@code card} field of a {@link Source}
+     * @return the card data, or {@code null} if the input is {@code null}
+     */
+    @Nullable
+    static SourceCardData fromSourceTypeData(@Nullable Map<String, Object> sourceTypeData) {
+        if (sourceTypeData == null) {
+            return null;
         }
 
+        SourceCardData cardData = new SourceCardData();
+        cardData.setAddressLine1Check(optMapString(sourceTypeData, FIELD_ADDRESS_LINE1_CHECK))
+                .setAddressZipCheck(optMapString(sourceTypeData, FIELD_ADDRESS_ZIP_CHECK))
+                .setBrand(StripeTextUtils.asCardBrand(optMapString(sourceTypeData, FIELD_BRAND)))
+                .setCountry(optMapString(sourceTypeData, FIELD_COUNTRY))
+                .setCvcCheck(optMapString(sourceTypeData, FIELD_CVC_CHECK))
+                .setDynamicLast4(optMapString(sourceTypeData, FIELD_DYNAMIC_LAST4))
+                .setExpiryMonth(optMapInteger(sourceTypeData, FIELD_EXP_MONTH))
+                .setExpiryYear(optMapInteger(sourceTypeData, FIELD_EXP_YEAR))
+                .setFunding(StripeTextUtils.asFundingType(
+                        optMapString(sourceTypeData, FIELD_FUNDING)))
+                .setLast4(optMapString(sourceTypeData, FIELD_LAST4))
+                .setThreeDSecureStatus(asThreeDSecureStatus(
+                        optMapString(sourceTypeData, FIELD_THREE_D_SECURE)))
+                .setTokenizationMethod(optMapString(sourceTypeData, FIELD_TOKENIZATION_METHOD));
+
+        cardData.setAdditionalFieldsSource(sourceTypeData);
+
         return cardData;
     }
 
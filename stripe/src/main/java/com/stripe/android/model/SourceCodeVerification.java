@@ -3,6 +3,8 @@ package com.stripe.android.model;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.annotation.StringDef;
+import android.util.JsonReader;
+import android.util.JsonToken;
 
 import com.stripe.android.util.StripeJsonUtils;
 import com.stripe.android.util.StripeTextUtils;
@@ -10,6 +12,7 @@ import com.stripe.android.util.StripeTextUtils;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.IOException;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.util.HashMap;
@@ -109,6 +112,46 @@ public class SourceCodeVerification extends StripeJsonModel {
                 asStatus(optString(jsonObject, FIELD_STATUS)));
     }
 
+    /**
+     * Read a {@link SourceCodeVerification} from a streaming {@link JsonReader}, with the same
+     * result as {@link #fromJson(JSONObject)}.
+     *
+     * @param reader a reader positioned at the code verification object
+     * @return the code verification, or {@code null} if the value is not an object
+     * @throws IOException if the value could not be read
+     */
+    @Nullable
+    static SourceCodeVerification fromJson(@NonNull JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return null;
+        }
+
+        int attemptsRemaining = INVALID_ATTEMPTS_REMAINING;
+        String status = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case FIELD_ATTEMPTS_REMAINING:
+                    if (reader.peek() == JsonToken.NUMBER) {
+                        attemptsRemaining = StripeJsonUtils.optInteger(reader);
+                    } else {
+                        reader.skipValue();
+                    }
+                    break;
+                case FIELD_STATUS:
+                    status = optString(reader);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        return new SourceCodeVerification(attemptsRemaining, asStatus(status));
+    }
+
     @Nullable
     @Status
     private static String asStatus(@Nullable String stringStatus) {
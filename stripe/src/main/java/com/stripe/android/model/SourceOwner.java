@@ -2,12 +2,15 @@ package com.stripe.android.model;
 
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
+import android.util.JsonReader;
+import android.util.JsonToken;
 
 import com.stripe.android.util.StripeNetworkUtils;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -219,4 +222,72 @@ public class SourceOwner extends StripeJsonModel {
                 verifiedName,
                 verifiedPhone);
     }
+
+    /**
+     * Read a {@link SourceOwner} from a streaming {@link JsonReader}, with the same result as
+     * {@link #fromJson(JSONObject)}.
+     *
+     * @param reader a reader positioned at the owner object
+     * @return the owner, or {@code null} if the value is not an object
+     * @throws IOException if the value could not be read
+     */
+    @Nullable
+    static SourceOwner fromJson(@NonNull JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return null;
+        }
+
+        SourceAddress address = null;
+        String email = null;
+        String name = null;
+        String phone = null;
+        SourceAddress verifiedAddress = null;
+        String verifiedEmail = null;
+        String verifiedName = null;
+        String verifiedPhone = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case FIELD_ADDRESS:
+                    address = SourceAddress.fromJson(reader);
+                    break;
+                case FIELD_EMAIL:
+                    email = optString(reader);
+                    break;
+                case FIELD_NAME:
+                    name = optString(reader);
+                    break;
+                case FIELD_PHONE:
+                    phone = optString(reader);
+                    break;
+                case FIELD_VERIFIED_ADDRESS:
+                    verifiedAddress = SourceAddress.fromJson(reader);
+                    break;
+                case FIELD_VERIFIED_EMAIL:
+                    verifiedEmail = optString(reader);
+                    break;
+                case FIELD_VERIFIED_NAME:
+                    verifiedName = optString(reader);
+                    break;
+                case FIELD_VERIFIED_PHONE:
+                    verifiedPhone = optString(reader);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        return new SourceOwner(
+                address,
+                email,
+                name,
+                phone,
+                verifiedAddress,
+                verifiedEmail,
+                verifiedName,
+                verifiedPhone);
+    }
 }
@@ -2,6 +2,8 @@ package com.stripe.android.model;
 
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
+import android.util.JsonReader;
+import android.util.JsonToken;
 
 import com.stripe.android.util.StripeJsonUtils;
 import com.stripe.android.util.StripeTextUtils;
@@ -9,6 +11,7 @@ import com.stripe.android.util.StripeTextUtils;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -122,4 +125,48 @@ public class SourceReceiver extends StripeJsonModel {
                 jsonObject.optLong(FIELD_AMOUNT_RECEIVED),
                 jsonObject.optLong(FIELD_AMOUNT_RETURNED));
     }
+
+    /**
+     * Read a {@link SourceReceiver} from a streaming {@link JsonReader}, with the same result as
+     * {@link #fromJson(JSONObject)}.
+     *
+     * @param reader a reader positioned at the receiver object
+     * @return the receiver, or {@code null} if the value is not an object
+     * @throws IOException if the value could not be read
+     */
+    @Nullable
+    static SourceReceiver fromJson(@NonNull JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return null;
+        }
+
+        String address = null;
+        long amountCharged = 0L;
+        long amountReceived = 0L;
+        long amountReturned = 0L;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case FIELD_ADDRESS:
+                    address = StripeJsonUtils.optString(reader);
+                    break;
+                case FIELD_AMOUNT_CHARGED:
+                    amountCharged = StripeJsonUtils.optLong(reader);
+                    break;
+                case FIELD_AMOUNT_RECEIVED:
+                    amountReceived = StripeJsonUtils.optLong(reader);
+                    break;
+                case FIELD_AMOUNT_RETURNED:
+                    amountReturned = StripeJsonUtils.optLong(reader);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        return new SourceReceiver(address, amountCharged, amountReceived, amountReturned);
+    }
 }
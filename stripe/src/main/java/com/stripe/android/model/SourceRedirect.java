@@ -3,10 +3,13 @@ package com.stripe.android.model;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.annotation.StringDef;
+import android.util.JsonReader;
+import android.util.JsonToken;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.IOException;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.util.HashMap;
@@ -115,6 +118,46 @@ public class SourceRedirect extends StripeJsonModel {
         return new SourceRedirect(returnUrl, status, url);
     }
 
+    /**
+     * Read a {@link SourceRedirect} from a streaming {@link JsonReader}, with the same result as
+     * {@link #fromJson(JSONObject)}.
+     *
+     * @param reader a reader positioned at the redirect object
+     * @return the redirect, or {@code null} if the value is not an object
+     * @throws IOException if the value could not be read
+     */
+    @Nullable
+    static SourceRedirect fromJson(@NonNull JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return null;
+        }
+
+        String returnUrl = null;
+        String status = null;
+        String url = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case FIELD_RETURN_URL:
+                    returnUrl = optString(reader);
+                    break;
+                case FIELD_STATUS:
+                    status = optString(reader);
+                    break;
+                case FIELD_URL:
+                    url = optString(reader);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        return new SourceRedirect(returnUrl, asStatus(status), url);
+    }
+
     @Nullable
     @Status
     private static String asStatus(@Nullable String stringStatus) {
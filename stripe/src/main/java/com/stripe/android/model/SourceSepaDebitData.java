@@ -4,6 +4,7 @@ import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.annotation.VisibleForTesting;
 
+import com.stripe.android.util.StripeJsonUtils;
 import com.stripe.android.util.StripeNetworkUtils;
 
 import org.json.JSONException;
@@ -63,11 +64,34 @@ public class SourceSepaDebitData extends StripeSourceTypeModel {
                 .setMandateReference(optString(jsonObject, FIELD_MANDATE_REFERENCE))
                 .setMandateUrl(optString(jsonObject, FIELD_MANDATE_URL));
 
-        Map<String, Object> nonStandardFields =
-                jsonObjectToMapWithoutKeys(jsonObject, sepaData.mStandardFields);
-        if (nonStandardFields != null) {
-            sepaData.setAdditionalFields(nonStandardFields);
+        sepaData.setAdditionalFieldsSource(jsonObject);
+        return sepaData;
+    }
+
+    /**
+     * Create a {@link SourceSepaDebitData} from the source type data of a SEPA Debit
+     * {@link Source}, as read by {@link StripeJsonUtils#readMap(android.util.JsonReader)}, so
+     * that the streaming parser does not have to read the object twice.
+     *
+     * @param sourceTypeData the {@code sepa_debit} field of a {@link Source}
+     * @return the SEPA Debit data, or {@code null} if the input is {@code null}
+     */
+    @Nullable
+    static SourceSepaDebitData fromSourceTypeData(@Nullable Map<String, Object> sourceTypeData) {
+        if (sourceTypeData == null) {
+            return null;
         }
+
+        SourceSepaDebitData sepaData = new SourceSepaDebitData();
+        sepaData.setBankCode(optMapString(sourceTypeData, FIELD_BANK_CODE))
+                .setBranchCode(optMapString(sourceTypeData, FIELD_BRANCH_CODE))
+                .setCountry(optMapString(sourceTypeData, FIELD_COUNTRY))
+                .setFingerPrint(optMapString(sourceTypeData, FIELD_FINGERPRINT))
+                .setLast4(optMapString(sourceTypeData, FIELD_LAST4))
+                .setMandateReference(optMapString(sourceTypeData, FIELD_MANDATE_REFERENCE))
+                .setMandateUrl(optMapString(sourceTypeData, FIELD_MANDATE_URL));
+
+        sepaData.setAdditionalFieldsSource(sourceTypeData);
         return sepaData;
     }
 
@@ -111,7 +135,7 @@ public class SourceSepaDebitData extends StripeSourceTypeModel {
         putStringIfNotNull(jsonObject, FIELD_MANDATE_REFERENCE, mMandateReference);
         putStringIfNotNull(jsonObject, FIELD_MANDATE_URL, mMandateUrl);
 
-        putAdditionalFieldsIntoJsonObject(jsonObject, mAdditionalFields);
+        putAdditionalFieldsIntoJsonObject(jsonObject, getAdditionalFields());
         return jsonObject;
     }
 
@@ -127,7 +151,7 @@ public class SourceSepaDebitData extends StripeSourceTypeModel {
         objectMap.put(FIELD_MANDATE_REFERENCE, mMandateReference);
         objectMap.put(FIELD_MANDATE_URL, mMandateUrl);
 
-        putAdditionalFieldsIntoMap(objectMap, mAdditionalFields);
+        putAdditionalFieldsIntoMap(objectMap, getAdditionalFields());
         StripeNetworkUtils.removeNullParams(objectMap);
         return objectMap;
     }
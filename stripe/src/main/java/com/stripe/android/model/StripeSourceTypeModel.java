@@ -4,6 +4,9 @@ package com.stripe.android.model;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 
+import com.stripe.android.util.StripeJsonUtils;
+
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
@@ -11,6 +14,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -20,12 +24,28 @@ abstract class StripeSourceTypeModel extends StripeJsonModel {
     Set<String> mStandardFields = new HashSet<>();
     private static final String NULL = "null";
 
+    // The JSONObject or streamed Map that the additional fields are copied from the first time
+    // they are asked for, so that parsing does not pay for a map nobody reads.
+    @Nullable private Object mAdditionalFieldsSource;
+
     StripeSourceTypeModel() {
         mAdditionalFields = new HashMap<>();
     }
 
     @NonNull
-    public Map<String, Object> getAdditionalFields() {
+    @SuppressWarnings("unchecked")
+    public synchronized Map<String, Object> getAdditionalFields() {
+        if (mAdditionalFieldsSource != null) {
+            Map<String, Object> nonStandardFields = mAdditionalFieldsSource instanceof JSONObject
+                    ? jsonObjectToMapWithoutKeys(
+                            (JSONObject) mAdditionalFieldsSource, mStandardFields)
+                    : mapWithoutKeys(
+                            (Map<String, Object>) mAdditionalFieldsSource, mStandardFields);
+            mAdditionalFieldsSource = null;
+            if (nonStandardFields != null) {
+                mAdditionalFields = nonStandardFields;
+            }
+        }
         return mAdditionalFields;
     }
 
@@ -33,10 +53,31 @@ abstract class StripeSourceTypeModel extends StripeJsonModel {
         Collections.addAll(mStandardFields, fields);
     }
 
-    void setAdditionalFields(@NonNull Map<String, Object> additionalFields) {
+    synchronized void setAdditionalFields(@NonNull Map<String, Object> additionalFields) {
+        mAdditionalFieldsSource = null;
         mAdditionalFields = additionalFields;
     }
 
+    /**
+     * Set the object whose non-standard fields become the additional fields. They are copied out
+     * of it the first time {@link #getAdditionalFields()} is called.
+     *
+     * @param jsonObject the object this model was parsed from
+     */
+    synchronized void setAdditionalFieldsSource(@NonNull JSONObject jsonObject) {
+        mAdditionalFieldsSource = jsonObject;
+    }
+
+    /**
+     * Set the map whose non-standard fields become the additional fields. They are copied out
+     * of it the first time {@link #getAdditionalFields()} is called.
+     *
+     * @param sourceTypeData the map this model was built from
+     */
+    synchronized void setAdditionalFieldsSource(@NonNull Map<String, Object> sourceTypeData) {
+        mAdditionalFieldsSource = sourceTypeData;
+    }
+
     /**
      * Convert a {@link JSONObject} to a flat, string-keyed map.
      *
@@ -73,6 +114,88 @@ abstract class StripeSourceTypeModel extends StripeJsonModel {
         }
     }
 
+    /**
+     * Copy a map read by {@link StripeJsonUtils#readMap(android.util.JsonReader)} into a flat,
+     * string-keyed map, the way {@link #jsonObjectToMapWithoutKeys(JSONObject, Set)} copies the
+     * equivalent {@link JSONObject}. Nested maps and lists are turned back into
+     * {@link JSONObject JSONObjects} and {@link JSONArray JSONArrays} so that the result holds
+     * the same kinds of values.
+     *
+     * @param map the input {@link Map}
+     * @param omitKeys a set of keys to be omitted from the map
+     * @return a {@link Map} representing the input, or {@code null} if the input is {@code null}
+     * or if the output would be an empty map.
+     */
+    @Nullable
+    @SuppressWarnings("unchecked")
+    static Map<String, Object> mapWithoutKeys(
+            @Nullable Map<String, Object> map,
+            @Nullable Set<String> omitKeys) {
+        if (map == null) {
+            return null;
+        }
+
+        Set<String> keysToOmit = omitKeys == null ? new HashSet<String>() : omitKeys;
+        Map<String, Object> copy = new HashMap<>();
+        for (Map.Entry<String, Object> entry : map.entrySet()) {
+            Object value = entry.getValue();
+            if (NULL.equals(value) || value == null || keysToOmit.contains(entry.getKey())) {
+                continue;
+            }
+
+            if (value instanceof Map) {
+                value = StripeJsonUtils.mapToJsonObject((Map<String, Object>) value);
+            } else if (value instanceof List) {
+                value = StripeJsonUtils.listToJsonArray((List) value);
+            }
+            copy.put(entry.getKey(), value);
+        }
+
+        if (copy.isEmpty()) {
+            return null;
+        } else {
+            return copy;
+        }
+    }
+
+    /**
+     * Read a field from a map read by {@link StripeJsonUtils#readMap(android.util.JsonReader)}
+     * the way {@link StripeJsonUtils#optString(JSONObject, String)} reads it from a
+     * {@link JSONObject}.
+     */
+    @Nullable
+    static String optMapString(@NonNull Map<String, Object> map, @NonNull String key) {
+        Object value = map.get(key);
+        if (value == null || value instanceof Map || value instanceof List) {
+            return null;
+        }
+        return StripeJsonUtils.nullIfNullOrEmpty(value.toString());
+    }
+
+    /**
+     * Read a field from a map read by {@link StripeJsonUtils#readMap(android.util.JsonReader)}
+     * the way {@link StripeJsonUtils#optInteger(JSONObject, String)} reads it from a
+     * {@link JSONObject}.
+     */
+    @Nullable
+    static Integer optMapInteger(@NonNull Map<String, Object> map, @NonNull String key) {
+        if (!map.containsKey(key)) {
+            return null;
+        }
+
+        Object value = map.get(key);
+        if (value instanceof Number) {
+            return ((Number) value).intValue();
+        } else if (value instanceof String) {
+            try {
+                return (int) Double.parseDouble((String) value);
+            } catch (NumberFormatException ignored) {
+                // Read as 0 below, as JSONObject#optInt does.
+            }
+        }
+        return 0;
+    }
+
     /**
      * Put the key-value pairs from the map into the JSON Object. Note: this does
      * not protect against overwriting original values in the JSON. This method assumes
@@ -0,0 +1,104 @@
+package com.stripe.android.net;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+
+/**
+ * Negotiates the application protocol of a TLS connection (ALPN), which is how a client and
+ * server agree to speak HTTP/2. The API for it is only public from Android 10, so older
+ * platforms' sockets are configured through the methods their TLS provider has had since
+ * Android 5. Where neither is available, nothing is negotiated and the connection speaks
+ * HTTP/1.1.
+ */
+final class Alpn {
+
+    private Alpn() { }
+
+    /**
+     * Offer protocols to the server. This has to happen before the handshake.
+     *
+     * @param socket the socket to configure
+     * @param protocols the protocols to offer, most preferred first
+     * @return {@code true} if the protocols were offered, {@code false} if the socket cannot
+     * negotiate a protocol
+     */
+    static boolean setProtocols(@NonNull SSLSocket socket, @NonNull String... protocols) {
+        try {
+            Method setApplicationProtocols =
+                    SSLParameters.class.getMethod("setApplicationProtocols", String[].class);
+            SSLParameters parameters = socket.getSSLParameters();
+            setApplicationProtocols.invoke(parameters, (Object) protocols);
+            socket.setSSLParameters(parameters);
+            return true;
+        } catch (NoSuchMethodException notPublic) {
+            // Fall through to the platform's own method.
+        } catch (IllegalAccessException | InvocationTargetException failed) {
+            return false;
+        }
+
+        try {
+            Method setAlpnProtocols =
+                    socket.getClass().getMethod("setAlpnProtocols", byte[].class);
+            setAlpnProtocols.invoke(socket, (Object) encode(protocols));
+            return true;
+        } catch (NoSuchMethodException | IllegalAccessException
+                | InvocationTargetException notSupported) {
+            return false;
+        }
+    }
+
+    /**
+     * @param socket a socket that has completed its handshake
+     * @return the protocol the server picked, or {@code null} if none was negotiated
+     */
+    @Nullable
+    static String getSelectedProtocol(@NonNull SSLSocket socket) {
+        try {
+            Method getApplicationProtocol = SSLSocket.class.getMethod("getApplicationProtocol");
+            String protocol = (String) getApplicationProtocol.invoke(socket);
+            return protocol == null || protocol.isEmpty() ? null : protocol;
+        } catch (NoSuchMethodException notPublic) {
+            // Fall through to the platform's own method.
+        } catch (IllegalAccessException | InvocationTargetException failed) {
+            return null;
+        }
+
+        try {
+            Method getAlpnSelectedProtocol =
+                    socket.getClass().getMethod("getAlpnSelectedProtocol");
+            byte[] protocol = (byte[]) getAlpnSelectedProtocol.invoke(socket);
+            return protocol == null ? null : new String(protocol, "US-ASCII");
+        } catch (NoSuchMethodException | IllegalAccessException
+                | InvocationTargetException | UnsupportedEncodingException notSupported) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the protocols in the wire format of the ALPN extension: each name preceded by its
+     * length
+     */
+    @NonNull
+    static byte[] encode(@NonNull String... protocols) {
+        int length = 0;
+        for (String protocol : protocols) {
+            length += 1 + protocol.length();
+        }
+        byte[] encoded = new byte[length];
+        int position = 0;
+        for (String protocol : protocols) {
+            encoded[position++] = (byte) protocol.length();
+            for (int i = 0; i < protocol.length(); i++) {
+                encoded[position++] = (byte) protocol.charAt(i);
+            }
+        }
+        return encoded;
+    }
+}
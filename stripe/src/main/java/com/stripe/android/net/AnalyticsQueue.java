@@ -0,0 +1,481 @@
+package com.stripe.android.net;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.StringDef;
+import android.support.annotation.VisibleForTesting;
+
+import com.stripe.android.exception.APIConnectionException;
+import com.stripe.android.exception.StripeException;
+import com.stripe.android.util.StripeJsonUtils;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static com.stripe.android.net.StripeApiHandler.CHARSET;
+
+/**
+ * Buffers analytics events and sends them on a background thread, so that a token or source
+ * request never waits on telemetry. Events are sent in batches once {@link #mBatchSize} of them
+ * have been queued, or {@link #mFlushDelayMs} after the first one arrives.
+ *
+ * The in-memory buffer is bounded. When it is full, the oldest events are spilled to a file in the
+ * {@link #setSpillDirectory(File) spill directory}, if one has been set, and read back once the
+ * buffer has room again. Without a spill directory, or once the spill file is full too, events are
+ * dropped according to the {@link DropPolicy}.
+ */
+public class AnalyticsQueue {
+
+    @Retention(RetentionPolicy.SOURCE)
+    @StringDef({
+            DROP_OLDEST,
+            DROP_NEWEST
+    })
+    public @interface DropPolicy { }
+    public static final String DROP_OLDEST = "drop_oldest";
+    public static final String DROP_NEWEST = "drop_newest";
+
+    static final int DEFAULT_CAPACITY = 50;
+    static final int DEFAULT_BATCH_SIZE = 10;
+    static final long DEFAULT_FLUSH_DELAY_MS = 2000L;
+    static final long RETRY_DELAY_MS = 30L * 1000L;
+    static final int MAX_SEND_ATTEMPTS = 3;
+    static final int MAX_SPILLED_EVENTS = 500;
+    static final String SPILL_FILE_NAME = "stripe_analytics_events";
+
+    private static final String FIELD_PUBLISHABLE_KEY = "publishable_key";
+    private static final String FIELD_PARAMS = "params";
+
+    @NonNull private final EventSender mEventSender;
+    @NonNull private final ScheduledExecutorService mExecutor;
+    private final int mCapacity;
+    private final int mBatchSize;
+    private final long mFlushDelayMs;
+    @NonNull @DropPolicy private final String mDropPolicy;
+
+    @NonNull private final Deque<Event> mEvents = new ArrayDeque<>();
+    @Nullable private volatile File mSpillFile;
+    @Nullable private ScheduledFuture<?> mScheduledFlush;
+    private int mDroppedCount;
+    // Only touched on the executor thread.
+    private int mSpilledCount;
+
+    AnalyticsQueue(@NonNull EventSender eventSender) {
+        this(eventSender,
+                createExecutor(),
+                DEFAULT_CAPACITY,
+                DEFAULT_BATCH_SIZE,
+                DEFAULT_FLUSH_DELAY_MS,
+                DROP_OLDEST);
+    }
+
+    @VisibleForTesting
+    AnalyticsQueue(
+            @NonNull EventSender eventSender,
+            @NonNull ScheduledExecutorService executor,
+            int capacity,
+            int batchSize,
+            long flushDelayMs,
+            @NonNull @DropPolicy String dropPolicy) {
+        mEventSender = eventSender;
+        mExecutor = executor;
+        mCapacity = capacity;
+        mBatchSize = batchSize;
+        mFlushDelayMs = flushDelayMs;
+        mDropPolicy = dropPolicy;
+    }
+
+    /**
+     * Set the directory used to hold events that do not fit in memory, typically
+     * {@link android.content.Context#getCacheDir()}. Events already in the directory from a
+     * previous run are sent with the next batch.
+     *
+     * @param directory the spill directory, or {@code null} to drop overflowing events instead
+     */
+    public void setSpillDirectory(@Nullable File directory) {
+        mSpillFile = directory == null ? null : new File(directory, SPILL_FILE_NAME);
+        if (directory != null) {
+            scheduleFlush(mFlushDelayMs);
+        }
+    }
+
+    /**
+     * Send everything that is queued now instead of waiting for the batch to fill up.
+     */
+    public void flush() {
+        scheduleFlush(0L);
+    }
+
+    /**
+     * Queue an event. This never blocks on the network or on disk.
+     *
+     * @param params the event parameters, as created by
+     *               {@link com.stripe.android.util.LoggingUtils}
+     * @param options the {@link RequestOptions} to send the event with
+     * @param listener an optional listener told about the outcome once the event is sent
+     */
+    void enqueue(
+            @NonNull Map<String, Object> params,
+            @NonNull RequestOptions options,
+            @Nullable StripeApiHandler.LoggingResponseListener listener) {
+        Event overflow = null;
+        int queued;
+        synchronized (this) {
+            mEvents.addLast(new Event(params, options, listener));
+            if (mEvents.size() > mCapacity) {
+                if (mSpillFile != null) {
+                    overflow = mEvents.pollFirst();
+                } else {
+                    drop();
+                }
+            }
+            queued = mEvents.size();
+        }
+
+        if (overflow != null) {
+            spill(overflow);
+        }
+        scheduleFlush(queued >= mBatchSize ? 0L : mFlushDelayMs);
+    }
+
+    synchronized int size() {
+        return mEvents.size();
+    }
+
+    synchronized int getDroppedCount() {
+        return mDroppedCount;
+    }
+
+    @VisibleForTesting
+    void awaitIdle(long timeoutMs) throws InterruptedException {
+        // Tasks run in order on a single thread, so once a no-op submitted now has run, every
+        // flush that was due before it has run too. Flushes may schedule follow-up flushes, so
+        // keep going until nothing is due.
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        Runnable noOp = new Runnable() {
+            @Override
+            public void run() { }
+        };
+        while (System.currentTimeMillis() < deadline) {
+            try {
+                mExecutor.submit(noOp).get(timeoutMs, TimeUnit.MILLISECONDS);
+            } catch (ExecutionException | TimeoutException ignored) {
+                return;
+            }
+            synchronized (this) {
+                if (mScheduledFlush == null
+                        || mScheduledFlush.isDone()
+                        || mScheduledFlush.getDelay(TimeUnit.MILLISECONDS) > 0L) {
+                    // Nothing is due to run.
+                    return;
+                }
+            }
+            Thread.sleep(10L);
+        }
+    }
+
+    private void drop() {
+        // Called with the lock held, when the buffer is one over capacity.
+        if (DROP_NEWEST.equals(mDropPolicy)) {
+            mEvents.pollLast();
+        } else {
+            mEvents.pollFirst();
+        }
+        mDroppedCount++;
+    }
+
+    private synchronized void scheduleFlush(long delayMs) {
+        if (mScheduledFlush != null && !mScheduledFlush.isDone() && delayMs > 0L) {
+            // A flush is already on its way.
+            return;
+        }
+
+        mScheduledFlush = mExecutor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                flushBatch();
+            }
+        }, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void flushBatch() {
+        restoreSpilledEvents();
+
+        List<Event> batch = new ArrayList<>(mBatchSize);
+        synchronized (this) {
+            while (batch.size() < mBatchSize && !mEvents.isEmpty()) {
+                batch.add(mEvents.pollFirst());
+            }
+        }
+
+        for (int i = 0; i < batch.size(); i++) {
+            Event event = batch.get(i);
+            try {
+                StripeResponse response = mEventSender.send(event.params, event.options);
+                if (event.listener != null) {
+                    event.listener.onLoggingResponse(response);
+                }
+            } catch (APIConnectionException connectionException) {
+                // We are probably offline. Put the batch back and try again later, unless this
+                // event has already been tried too many times.
+                event.attempts++;
+                List<Event> remaining = batch.subList(i, batch.size());
+                if (event.attempts >= MAX_SEND_ATTEMPTS) {
+                    remaining = batch.subList(i + 1, batch.size());
+                    synchronized (this) {
+                        mDroppedCount++;
+                    }
+                    if (event.listener != null) {
+                        event.listener.onStripeException(connectionException);
+                    }
+                }
+                requeue(remaining);
+                scheduleFlush(RETRY_DELAY_MS);
+                return;
+            } catch (StripeException stripeException) {
+                // The event was rejected, so there is no point in sending it again.
+                if (event.listener != null) {
+                    event.listener.onStripeException(stripeException);
+                }
+            }
+        }
+
+        boolean hasMore;
+        synchronized (this) {
+            hasMore = !mEvents.isEmpty();
+        }
+        if (hasMore || mSpilledCount > 0) {
+            scheduleFlush(0L);
+        }
+    }
+
+    private void requeue(@NonNull List<Event> events) {
+        List<Event> overflow = new ArrayList<>();
+        synchronized (this) {
+            for (int i = events.size() - 1; i >= 0; i--) {
+                mEvents.addFirst(events.get(i));
+            }
+            while (mEvents.size() > mCapacity) {
+                if (mSpillFile != null) {
+                    overflow.add(mEvents.pollLast());
+                } else {
+                    drop();
+                }
+            }
+        }
+        for (int i = overflow.size() - 1; i >= 0; i--) {
+            spill(overflow.get(i));
+        }
+    }
+
+    private void spill(@NonNull final Event event) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                File spillFile = mSpillFile;
+                if (spillFile == null || mSpilledCount >= MAX_SPILLED_EVENTS) {
+                    synchronized (AnalyticsQueue.this) {
+                        mDroppedCount++;
+                    }
+                    return;
+                }
+
+                if (appendToSpillFile(spillFile, event)) {
+                    mSpilledCount++;
+                } else {
+                    synchronized (AnalyticsQueue.this) {
+                        mDroppedCount++;
+                    }
+                }
+            }
+        });
+    }
+
+    private void restoreSpilledEvents() {
+        File spillFile = mSpillFile;
+        if (spillFile == null || !spillFile.exists()) {
+            mSpilledCount = 0;
+            return;
+        }
+
+        int room;
+        synchronized (this) {
+            room = mCapacity - mEvents.size();
+        }
+        if (room <= 0) {
+            return;
+        }
+
+        List<String> lines = readLines(spillFile);
+        List<Event> restored = new ArrayList<>();
+        int consumed = 0;
+        while (consumed < lines.size() && restored.size() < room) {
+            Event event = fromSpillLine(lines.get(consumed++));
+            if (event != null) {
+                restored.add(event);
+            }
+        }
+
+        List<String> remaining = lines.subList(consumed, lines.size());
+        if (remaining.isEmpty()) {
+            spillFile.delete();
+        } else {
+            writeLines(spillFile, remaining, false);
+        }
+        mSpilledCount = remaining.size();
+
+        synchronized (this) {
+            for (int i = restored.size() - 1; i >= 0; i--) {
+                mEvents.addFirst(restored.get(i));
+            }
+        }
+    }
+
+    private static boolean appendToSpillFile(@NonNull File spillFile, @NonNull Event event) {
+        JSONObject line = new JSONObject();
+        try {
+            line.put(FIELD_PUBLISHABLE_KEY, event.options.getPublishableApiKey());
+            line.put(FIELD_PARAMS, StripeJsonUtils.mapToJsonObject(event.params));
+        } catch (JSONException jsonException) {
+            return false;
+        }
+
+        List<String> lines = new ArrayList<>(1);
+        lines.add(line.toString());
+        return writeLines(spillFile, lines, true);
+    }
+
+    @Nullable
+    private static Event fromSpillLine(@NonNull String line) {
+        try {
+            JSONObject jsonObject = new JSONObject(line);
+            Map<String, Object> params =
+                    StripeJsonUtils.jsonObjectToMap(jsonObject.getJSONObject(FIELD_PARAMS));
+            String publishableKey = jsonObject.getString(FIELD_PUBLISHABLE_KEY);
+            if (params == null) {
+                return null;
+            }
+            return new Event(params, RequestOptions.builder(publishableKey).build(), null);
+        } catch (JSONException jsonException) {
+            // A partially written line; skip it.
+            return null;
+        }
+    }
+
+    @NonNull
+    private static List<String> readLines(@NonNull File file) {
+        List<String> lines = new ArrayList<>();
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(
+                    new InputStreamReader(new FileInputStream(file), CHARSET));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    lines.add(line);
+                }
+            }
+        } catch (IOException ignored) {
+            // Whatever we managed to read is still usable.
+        } finally {
+            closeQuietly(reader);
+        }
+        return lines;
+    }
+
+    private static boolean writeLines(
+            @NonNull File file,
+            @NonNull List<String> lines,
+            boolean append) {
+        Writer writer = null;
+        try {
+            writer = new OutputStreamWriter(new FileOutputStream(file, append), CHARSET);
+            for (String line : lines) {
+                writer.write(line);
+                writer.write('\n');
+            }
+            return true;
+        } catch (IOException ioException) {
+            return false;
+        } finally {
+            closeQuietly(writer);
+        }
+    }
+
+    private static void closeQuietly(@Nullable Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException ignored) { }
+    }
+
+    @NonNull
+    private static ScheduledExecutorService createExecutor() {
+        ScheduledThreadPoolExecutor executor =
+                new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                    @Override
+                    public Thread newThread(@NonNull Runnable runnable) {
+                        Thread thread = new Thread(runnable, "Stripe Analytics Thread");
+                        thread.setDaemon(true);
+                        thread.setPriority(Thread.MIN_PRIORITY);
+                        return thread;
+                    }
+                });
+        executor.setKeepAliveTime(30L, TimeUnit.SECONDS);
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Represents something that sends a single analytics event.
+     */
+    interface EventSender {
+        @NonNull
+        StripeResponse send(
+                @NonNull Map<String, Object> params,
+                @NonNull RequestOptions options) throws StripeException;
+    }
+
+    private static final class Event {
+        @NonNull final Map<String, Object> params;
+        @NonNull final RequestOptions options;
+        @Nullable final StripeApiHandler.LoggingResponseListener listener;
+        // Only touched on the executor thread.
+        int attempts;
+
+        Event(
+                @NonNull Map<String, Object> params,
+                @NonNull RequestOptions options,
+                @Nullable StripeApiHandler.LoggingResponseListener listener) {
+            this.params = params;
+            this.options = options;
+            this.listener = listener;
+        }
+    }
+}
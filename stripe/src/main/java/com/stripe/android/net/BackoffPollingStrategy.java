@@ -0,0 +1,78 @@
+package com.stripe.android.net;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.stripe.android.exception.APIException;
+import com.stripe.android.exception.RateLimitException;
+import com.stripe.android.exception.StripeException;
+
+import java.util.Random;
+
+/**
+ * A {@link PollingStrategy} that backs off exponentially, using the delays and retry count from
+ * {@link PollingParameters}.
+ *
+ * While a source stays pending, the delay grows from the initial delay up to the maximum, and
+ * each delay is shortened by a random amount of up to half, so that clients that started polling
+ * together do not keep hitting the API at the same moment. Failed requests back off the same way
+ * without the randomness, and polling stops after the maximum number of failures in a row.
+ *
+ * A {@code Retry-After} sent with an error is always honored. Being rate limited is not counted
+ * as a failure: the poll waits and tries again until it expires.
+ */
+class BackoffPollingStrategy implements PollingStrategy {
+
+    private static final double JITTER_FACTOR = 0.5;
+
+    @NonNull private final PollingParameters mPollingParameters;
+    @NonNull private final Random mRandom;
+
+    BackoffPollingStrategy(@NonNull PollingParameters pollingParameters) {
+        this(pollingParameters, new Random());
+    }
+
+    BackoffPollingStrategy(
+            @NonNull PollingParameters pollingParameters,
+            @NonNull Random random) {
+        mPollingParameters = pollingParameters;
+        mRandom = random;
+    }
+
+    @Override
+    public long getPendingDelayMs(int pendingCount) {
+        long delayMs = getBackoffMs(pendingCount - 1);
+        return delayMs - (long) (delayMs * JITTER_FACTOR * mRandom.nextDouble());
+    }
+
+    @Override
+    public long getErrorDelayMs(@NonNull StripeException exception, int errorCount) {
+        boolean isRateLimited = exception instanceof RateLimitException;
+        if (!isRateLimited && errorCount >= mPollingParameters.getMaxRetryCount()) {
+            return STOP;
+        }
+
+        long delayMs = getBackoffMs(errorCount);
+        Long retryAfterMs = getRetryAfterMs(exception);
+        return retryAfterMs == null ? delayMs : Math.max(delayMs, retryAfterMs);
+    }
+
+    private long getBackoffMs(int steps) {
+        long maxDelayMs = mPollingParameters.getMaxDelayMs();
+        long delayMs = mPollingParameters.getInitialDelayMs();
+        for (int i = 0; i < steps && delayMs < maxDelayMs; i++) {
+            delayMs *= mPollingParameters.getPollingMultiplier();
+        }
+        return Math.min(delayMs, maxDelayMs);
+    }
+
+    @Nullable
+    private static Long getRetryAfterMs(@NonNull StripeException exception) {
+        if (exception instanceof RateLimitException) {
+            return ((RateLimitException) exception).getRetryAfterMs();
+        } else if (exception instanceof APIException) {
+            return ((APIException) exception).getRetryAfterMs();
+        }
+        return null;
+    }
+}
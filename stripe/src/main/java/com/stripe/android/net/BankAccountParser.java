@@ -1,5 +1,10 @@
 package com.stripe.android.net;
 
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.JsonReader;
+import android.util.JsonToken;
+
 import com.stripe.android.model.BankAccount;
 import com.stripe.android.util.StripeJsonUtils;
 import com.stripe.android.util.StripeTextUtils;
@@ -7,6 +12,8 @@ import com.stripe.android.util.StripeTextUtils;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.IOException;
+
 /**
  * Helper class for parsing {@link BankAccount} objects.
  */
@@ -39,4 +46,84 @@ class BankAccountParser {
                 StripeJsonUtils.optString(objectAccount, FIELD_ROUTING_NUMBER));
     }
 
+    /**
+     * Read a {@link BankAccount} from a streaming {@link JsonReader}, with the same result as
+     * {@link #parseBankAccount(JSONObject)}.
+     *
+     * @param reader a reader positioned at the bank account object
+     * @return the {@link BankAccount}, or {@code null} if the value is not an object
+     * @throws IOException if the value could not be read
+     */
+    @Nullable
+    static BankAccount parseBankAccount(@NonNull JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return null;
+        }
+
+        String accountHolderName = null;
+        String accountHolderType = null;
+        String bankName = null;
+        String country = null;
+        String currency = null;
+        String fingerprint = null;
+        String last4 = null;
+        String routingNumber = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case FIELD_ACCOUNT_HOLDER_NAME:
+                    accountHolderName = StripeJsonUtils.optString(reader);
+                    break;
+                case FIELD_ACCOUNT_HOLDER_TYPE:
+                    accountHolderType =
+                            StripeTextUtils.asBankAccountType(StripeJsonUtils.optString(reader));
+                    break;
+                case FIELD_BANK_NAME:
+                    bankName = StripeJsonUtils.optString(reader);
+                    break;
+                case FIELD_COUNTRY:
+                    country = optStringOfLength(reader, 2);
+                    break;
+                case FIELD_CURRENCY:
+                    currency = optStringOfLength(reader, 3);
+                    break;
+                case FIELD_FINGERPRINT:
+                    fingerprint = StripeJsonUtils.optString(reader);
+                    break;
+                case FIELD_LAST4:
+                    last4 = StripeJsonUtils.optString(reader);
+                    break;
+                case FIELD_ROUTING_NUMBER:
+                    routingNumber = StripeJsonUtils.optString(reader);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        return new BankAccount(
+                accountHolderName,
+                accountHolderType,
+                bankName,
+                country,
+                currency,
+                fingerprint,
+                last4,
+                routingNumber);
+    }
+
+    /**
+     * Reads a country or currency code the way {@link StripeJsonUtils#optCountryCode} and
+     * {@link StripeJsonUtils#optCurrency} do, discarding values of any other length.
+     */
+    @Nullable
+    private static String optStringOfLength(@NonNull JsonReader reader, int length)
+            throws IOException {
+        String value = StripeJsonUtils.optString(reader);
+        return value != null && value.length() == length ? value : null;
+    }
+
 }
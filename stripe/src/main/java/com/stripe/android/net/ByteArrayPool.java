@@ -0,0 +1,66 @@
+package com.stripe.android.net;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * A small pool of equally sized byte arrays, so that reading response bodies does not allocate a
+ * new buffer for every request. Arrays of any other size are never pooled.
+ */
+class ByteArrayPool {
+
+    static final int DEFAULT_BUFFER_SIZE = 8 * 1024;
+    static final int DEFAULT_MAX_POOLED = 4;
+
+    @NonNull private final Deque<byte[]> mBuffers = new ArrayDeque<>();
+    private final int mBufferSize;
+    private final int mMaxPooled;
+
+    ByteArrayPool() {
+        this(DEFAULT_BUFFER_SIZE, DEFAULT_MAX_POOLED);
+    }
+
+    ByteArrayPool(int bufferSize, int maxPooled) {
+        mBufferSize = bufferSize;
+        mMaxPooled = maxPooled;
+    }
+
+    /**
+     * @return a buffer of {@link #getBufferSize()} bytes, either pooled or newly allocated
+     */
+    @NonNull
+    byte[] acquire() {
+        byte[] buffer;
+        synchronized (this) {
+            buffer = mBuffers.pollFirst();
+        }
+        return buffer == null ? new byte[mBufferSize] : buffer;
+    }
+
+    /**
+     * Give a buffer back to the pool. It must not be used by the caller afterwards.
+     *
+     * @param buffer a buffer previously returned by {@link #acquire()}, or {@code null}
+     */
+    void release(@Nullable byte[] buffer) {
+        if (buffer == null || buffer.length != mBufferSize) {
+            return;
+        }
+        synchronized (this) {
+            if (mBuffers.size() < mMaxPooled) {
+                mBuffers.addFirst(buffer);
+            }
+        }
+    }
+
+    int getBufferSize() {
+        return mBufferSize;
+    }
+
+    synchronized int getPooledCount() {
+        return mBuffers.size();
+    }
+}
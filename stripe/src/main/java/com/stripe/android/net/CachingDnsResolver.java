@@ -0,0 +1,202 @@
+package com.stripe.android.net;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link DnsResolver} that keeps its own bounded cache of lookups, so that requests do not
+ * depend on (or change) the process-wide DNS cache settings.
+ *
+ * An entry younger than the TTL is returned as is. An entry that is past its TTL but still
+ * inside the stale window is returned immediately while a refresh runs in the background, so a
+ * request never waits on a lookup for a host it has resolved recently. Older entries are resolved
+ * again before returning. A failed refresh keeps the stale entry until its window ends.
+ */
+public class CachingDnsResolver implements DnsResolver {
+
+    static final int DEFAULT_MAX_ENTRIES = 16;
+    static final long DEFAULT_TTL_MS = 60L * 1000L; // one minute
+    static final long DEFAULT_STALE_MS = 10L * 60L * 1000L; // ten minutes
+    private static final long REFRESH_THREAD_KEEP_ALIVE_SECONDS = 30L;
+
+    @NonNull private final DnsResolver mDelegate;
+    @NonNull private final Executor mRefreshExecutor;
+    private final long mTtlMs;
+    private final long mStaleMs;
+
+    @NonNull private final Map<String, Entry> mEntries;
+    @NonNull private final Set<String> mRefreshing = new HashSet<>();
+
+    private int mHitCount;
+    private int mStaleHitCount;
+    private int mMissCount;
+
+    /**
+     * Create a resolver on top of the {@link DnsResolver#SYSTEM system resolver} with the default
+     * cache size, TTL and stale window.
+     */
+    public CachingDnsResolver() {
+        this(DnsResolver.SYSTEM, DEFAULT_MAX_ENTRIES, DEFAULT_TTL_MS, DEFAULT_STALE_MS, null);
+    }
+
+    /**
+     * @param delegate the resolver that performs the actual lookups
+     * @param maxEntries the maximum number of hosts to keep; the least recently used host is
+     *                   dropped when the cache is full
+     * @param ttlMs how long a lookup is used without being refreshed
+     * @param staleMs how long after the TTL a lookup may still be served while it is refreshed
+     * @param refreshExecutor the {@link Executor} background refreshes run on, or {@code null} for
+     *                        a default single background thread that exits when it is idle
+     */
+    public CachingDnsResolver(
+            @NonNull DnsResolver delegate,
+            final int maxEntries,
+            long ttlMs,
+            long staleMs,
+            @Nullable Executor refreshExecutor) {
+        mDelegate = delegate;
+        mTtlMs = ttlMs;
+        mStaleMs = staleMs;
+        mRefreshExecutor = refreshExecutor == null ? createRefreshExecutor() : refreshExecutor;
+        mEntries = new LinkedHashMap<String, Entry>(maxEntries, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    @NonNull
+    @Override
+    public List<InetAddress> resolve(@NonNull String host) throws UnknownHostException {
+        long now = now();
+        synchronized (this) {
+            Entry entry = mEntries.get(host);
+            if (entry != null) {
+                long age = now - entry.resolvedAtMs;
+                if (age < mTtlMs) {
+                    mHitCount++;
+                    return entry.addresses;
+                } else if (age < mTtlMs + mStaleMs) {
+                    mStaleHitCount++;
+                    scheduleRefresh(host);
+                    return entry.addresses;
+                }
+            }
+            mMissCount++;
+        }
+
+        return lookup(host);
+    }
+
+    /**
+     * Drop every cached lookup, for instance after a network change.
+     */
+    public synchronized void clear() {
+        mEntries.clear();
+    }
+
+    synchronized int getHitCount() {
+        return mHitCount;
+    }
+
+    synchronized int getStaleHitCount() {
+        return mStaleHitCount;
+    }
+
+    synchronized int getMissCount() {
+        return mMissCount;
+    }
+
+    synchronized int size() {
+        return mEntries.size();
+    }
+
+    @VisibleForTesting
+    long now() {
+        return System.currentTimeMillis();
+    }
+
+    @NonNull
+    private List<InetAddress> lookup(@NonNull String host) throws UnknownHostException {
+        List<InetAddress> addresses = mDelegate.resolve(host);
+        if (addresses.isEmpty()) {
+            throw new UnknownHostException(host);
+        }
+
+        addresses = Collections.unmodifiableList(addresses);
+        synchronized (this) {
+            mEntries.put(host, new Entry(addresses, now()));
+        }
+        return addresses;
+    }
+
+    private void scheduleRefresh(@NonNull final String host) {
+        // Called with the lock held.
+        if (!mRefreshing.add(host)) {
+            return;
+        }
+
+        mRefreshExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    lookup(host);
+                } catch (UnknownHostException ignored) {
+                    // Keep serving the stale entry until its window closes.
+                } finally {
+                    synchronized (CachingDnsResolver.this) {
+                        mRefreshing.remove(host);
+                    }
+                }
+            }
+        });
+    }
+
+    @NonNull
+    private static ExecutorService createRefreshExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                1,
+                1,
+                REFRESH_THREAD_KEEP_ALIVE_SECONDS,
+                TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(@NonNull Runnable runnable) {
+                        Thread thread = new Thread(runnable, "Stripe DNS Refresh Thread");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        // Refreshes are rare, so don't keep a thread around between them.
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private static final class Entry {
+        @NonNull final List<InetAddress> addresses;
+        final long resolvedAtMs;
+
+        Entry(@NonNull List<InetAddress> addresses, long resolvedAtMs) {
+            this.addresses = addresses;
+            this.resolvedAtMs = resolvedAtMs;
+        }
+    }
+}
@@ -1,6 +1,9 @@
 package com.stripe.android.net;
 
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.JsonReader;
+import android.util.JsonToken;
 
 import com.stripe.android.model.Card;
 import com.stripe.android.util.StripeJsonUtils;
@@ -9,6 +12,8 @@ import com.stripe.android.util.StripeTextUtils;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.IOException;
+
 /**
  * A helper class for parsing {@link Card} objects returned from the server.
  */
@@ -73,4 +78,133 @@ class CardParser {
                 StripeJsonUtils.optString(objectCard, FIELD_CURRENCY),
                 StripeJsonUtils.optString(objectCard, FIELD_ID));
     }
+
+    /**
+     * Read a {@link Card} from a streaming {@link JsonReader}, with the same result as
+     * {@link #parseCard(JSONObject)}.
+     *
+     * @param reader a reader positioned at the card object
+     * @return a {@link Card} with fields determined by the input, or {@code null} if the value is
+     * not an object or is missing a required field
+     * @throws IOException if the value could not be read
+     */
+    @Nullable
+    static Card parseCard(@NonNull JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return null;
+        }
+
+        Integer expMonth = null;
+        Integer expYear = null;
+        String name = null;
+        String addressLine1 = null;
+        String addressLine2 = null;
+        String addressCity = null;
+        String addressState = null;
+        String addressZip = null;
+        String addressCountry = null;
+        String brand = null;
+        String last4 = null;
+        String fingerprint = null;
+        String funding = null;
+        String country = null;
+        String currency = null;
+        String id = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case FIELD_EXP_MONTH:
+                    expMonth = optRequiredInteger(reader);
+                    break;
+                case FIELD_EXP_YEAR:
+                    expYear = optRequiredInteger(reader);
+                    break;
+                case FIELD_NAME:
+                    name = StripeJsonUtils.optString(reader);
+                    break;
+                case FIELD_ADDRESS_LINE1:
+                    addressLine1 = StripeJsonUtils.optString(reader);
+                    break;
+                case FIELD_ADDRESS_LINE2:
+                    addressLine2 = StripeJsonUtils.optString(reader);
+                    break;
+                case FIELD_ADDRESS_CITY:
+                    addressCity = StripeJsonUtils.optString(reader);
+                    break;
+                case FIELD_ADDRESS_STATE:
+                    addressState = StripeJsonUtils.optString(reader);
+                    break;
+                case FIELD_ADDRESS_ZIP:
+                    addressZip = StripeJsonUtils.optString(reader);
+                    break;
+                case FIELD_ADDRESS_COUNTRY:
+                    addressCountry = StripeJsonUtils.optString(reader);
+                    break;
+                case FIELD_BRAND:
+                    brand = StripeTextUtils.asCardBrand(StripeJsonUtils.optString(reader));
+                    break;
+                case FIELD_LAST4:
+                    last4 = StripeJsonUtils.optString(reader);
+                    break;
+                case FIELD_FINGERPRINT:
+                    fingerprint = StripeJsonUtils.optString(reader);
+                    break;
+                case FIELD_FUNDING:
+                    funding = StripeTextUtils.asFundingType(StripeJsonUtils.optString(reader));
+                    break;
+                case FIELD_COUNTRY:
+                    country = StripeJsonUtils.optString(reader);
+                    break;
+                case FIELD_CURRENCY:
+                    currency = StripeJsonUtils.optString(reader);
+                    break;
+                case FIELD_ID:
+                    id = StripeJsonUtils.optString(reader);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (expMonth == null || expYear == null) {
+            return null;
+        }
+
+        return new Card(
+                null,
+                expMonth,
+                expYear,
+                null,
+                name,
+                addressLine1,
+                addressLine2,
+                addressCity,
+                addressState,
+                addressZip,
+                addressCountry,
+                brand,
+                last4,
+                fingerprint,
+                funding,
+                country,
+                currency,
+                id);
+    }
+
+    /**
+     * Reads a required integer field, which {@link JSONObject#getInt(String)} accepts as either a
+     * number or a numeric string.
+     */
+    @Nullable
+    private static Integer optRequiredInteger(@NonNull JsonReader reader) throws IOException {
+        JsonToken token = reader.peek();
+        if (token != JsonToken.NUMBER && token != JsonToken.STRING) {
+            reader.skipValue();
+            return null;
+        }
+        return StripeJsonUtils.optInteger(reader);
+    }
 }
@@ -0,0 +1,91 @@
+package com.stripe.android.net;
+
+import android.support.annotation.NonNull;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits how many requests {@link UrlConnectionHttpTransport} has open at once to each host,
+ * making further requests wait for one of them to finish. The connections themselves, and how
+ * long they are kept alive between requests, belong to the platform's
+ * {@link java.net.HttpURLConnection} keep-alive cache, which this class neither sees nor controls.
+ */
+class ConnectionLimiter {
+
+    static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 5;
+
+    private final int mMaxConnectionsPerHost;
+    @NonNull private final Map<String, Integer> mInUse = new HashMap<>();
+
+    ConnectionLimiter() {
+        this(DEFAULT_MAX_CONNECTIONS_PER_HOST);
+    }
+
+    ConnectionLimiter(int maxConnectionsPerHost) {
+        if (maxConnectionsPerHost < 1) {
+            throw new IllegalArgumentException("maxConnectionsPerHost must be at least 1");
+        }
+        mMaxConnectionsPerHost = maxConnectionsPerHost;
+    }
+
+    /**
+     * Reserve a connection to the given host, blocking while the host already has as many
+     * requests open as are allowed.
+     *
+     * @param host the host key, as returned by {@link #hostKey(URL)}
+     * @param timeoutMs how long to wait for another request to the host to finish
+     * @throws IOException if no request finished in time, or the wait was interrupted
+     */
+    synchronized void acquire(@NonNull String host, long timeoutMs) throws IOException {
+        long deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        while (getInUseConnectionCount(host) >= mMaxConnectionsPerHost) {
+            long remaining = TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime());
+            if (remaining <= 0) {
+                throw new SocketTimeoutException(
+                        "Timed out waiting for a connection to " + host);
+            }
+            try {
+                wait(remaining);
+            } catch (InterruptedException interrupted) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for a connection to " + host);
+            }
+        }
+        mInUse.put(host, getInUseConnectionCount(host) + 1);
+    }
+
+    /**
+     * Return a connection previously reserved with {@link #acquire(String, long)}.
+     *
+     * @param host the host key the connection was acquired for
+     */
+    synchronized void release(@NonNull String host) {
+        int inUse = getInUseConnectionCount(host) - 1;
+        if (inUse > 0) {
+            mInUse.put(host, inUse);
+        } else {
+            mInUse.remove(host);
+        }
+        notifyAll();
+    }
+
+    synchronized int getInUseConnectionCount(@NonNull String host) {
+        Integer inUse = mInUse.get(host);
+        return inUse == null ? 0 : inUse;
+    }
+
+    int getMaxConnectionsPerHost() {
+        return mMaxConnectionsPerHost;
+    }
+
+    @NonNull
+    static String hostKey(@NonNull URL url) {
+        int port = url.getPort() == -1 ? url.getDefaultPort() : url.getPort();
+        return url.getProtocol() + "://" + url.getHost() + ":" + port;
+    }
+}
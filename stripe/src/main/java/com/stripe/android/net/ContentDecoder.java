@@ -0,0 +1,131 @@
+package com.stripe.android.net;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Undoes the compression a server applied to a response body. The transports ask for it with
+ * {@link #ACCEPT_ENCODING}, and decode the body as it is read rather than all at once, so that
+ * a compressed response takes no more memory than an uncompressed one.
+ *
+ * Asking for compression ourselves also means that Android's {@link java.net.HttpURLConnection}
+ * no longer decompresses gzip behind our back, which it only does when the request does not
+ * name an encoding. That way every platform takes the same path.
+ */
+final class ContentDecoder {
+
+    /**
+     * The value of the {@code Accept-Encoding} header for the encodings we can decode.
+     */
+    static final String ACCEPT_ENCODING = "gzip, deflate";
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private ContentDecoder() { }
+
+    /**
+     * @param headers the response headers, in the form {@link java.net.HttpURLConnection} gives
+     *                them
+     * @return the value of the {@code Content-Encoding} header, or {@code null} if there is none
+     */
+    @Nullable
+    static String getContentEncoding(@Nullable Map<String, List<String>> headers) {
+        if (headers == null) {
+            return null;
+        }
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            // HttpURLConnection puts the status line under a null name.
+            if ("Content-Encoding".equalsIgnoreCase(header.getKey())
+                    && header.getValue() != null
+                    && !header.getValue().isEmpty()) {
+                return header.getValue().get(0);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return {@code true} if a body with the given {@code Content-Encoding} has to be decoded
+     */
+    static boolean isEncoded(@Nullable String contentEncoding) {
+        return contentEncoding != null
+                && !contentEncoding.trim().isEmpty()
+                && !"identity".equalsIgnoreCase(contentEncoding.trim());
+    }
+
+    /**
+     * Wrap a body in a stream that decodes it. Closing the returned stream closes the body.
+     *
+     * @param contentEncoding the value of the {@code Content-Encoding} header
+     * @param body the body as received
+     * @return the decoded body
+     * @throws IOException if the encoding is not one we asked for, or the body does not start
+     * the way the encoding says it should
+     */
+    @NonNull
+    static InputStream decode(
+            @Nullable String contentEncoding,
+            @NonNull InputStream body) throws IOException {
+        if (!isEncoded(contentEncoding)) {
+            return body;
+        }
+
+        String encoding = contentEncoding.trim().toLowerCase(Locale.ENGLISH);
+        if (!"gzip".equals(encoding) && !"x-gzip".equals(encoding)
+                && !"deflate".equals(encoding)) {
+            throw new IOException("Unsupported Content-Encoding: " + contentEncoding);
+        }
+
+        PushbackInputStream peekable = new PushbackInputStream(body, 2);
+        int first = peekable.read();
+        if (first == -1) {
+            // Servers may label an empty body as compressed; there is nothing to decode.
+            return peekable;
+        }
+        int second = peekable.read();
+        if (second != -1) {
+            peekable.unread(second);
+        }
+        peekable.unread(first);
+
+        if ("deflate".equals(encoding)) {
+            // The encoding is meant to be a zlib stream, but some servers send raw deflate
+            // data instead, which has no header.
+            boolean isZlib = second != -1
+                    && (first & 0x0F) == 8
+                    && ((first << 8) | second) % 31 == 0;
+            return new InflaterStream(peekable, new Inflater(!isZlib));
+        }
+        return new GZIPInputStream(peekable, BUFFER_SIZE);
+    }
+
+    /**
+     * An {@link InflaterInputStream} that releases its {@link Inflater}'s native memory when
+     * closed, which the base class only does for inflaters it created itself.
+     */
+    private static final class InflaterStream extends InflaterInputStream {
+
+        InflaterStream(@NonNull InputStream in, @NonNull Inflater inflater) {
+            super(in, inflater, BUFFER_SIZE);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                inf.end();
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.stripe.android.net;
+
+import android.support.annotation.NonNull;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An {@link InputStream} that counts the bytes read through it, and the time spent waiting for
+ * them. It is meant to be read from one thread at a time, like the response bodies it wraps.
+ */
+final class CountingInputStream extends FilterInputStream {
+
+    private long mCount;
+    private long mReadNanos;
+
+    CountingInputStream(@NonNull InputStream in) {
+        super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+        long start = System.nanoTime();
+        int b = super.read();
+        mReadNanos += System.nanoTime() - start;
+        if (b != -1) {
+            mCount++;
+        }
+        return b;
+    }
+
+    @Override
+    public int read(@NonNull byte[] buffer, int offset, int length) throws IOException {
+        long start = System.nanoTime();
+        int read = super.read(buffer, offset, length);
+        mReadNanos += System.nanoTime() - start;
+        if (read > 0) {
+            mCount += read;
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long start = System.nanoTime();
+        long skipped = super.skip(n);
+        mReadNanos += System.nanoTime() - start;
+        mCount += skipped;
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        // A reset would make the count meaningless.
+        return false;
+    }
+
+    /**
+     * @return the number of bytes read or skipped so far
+     */
+    long getCount() {
+        return mCount;
+    }
+
+    /**
+     * @return the time spent in reads and skips so far, in nanoseconds
+     */
+    long getReadNanos() {
+        return mReadNanos;
+    }
+}
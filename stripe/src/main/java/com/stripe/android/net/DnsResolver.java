@@ -0,0 +1,35 @@
+package com.stripe.android.net;
+
+import android.support.annotation.NonNull;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Represents something that can resolve a host name to its addresses.
+ */
+public interface DnsResolver {
+
+    /**
+     * A {@link DnsResolver} that asks the platform with {@link InetAddress#getAllByName(String)}.
+     */
+    DnsResolver SYSTEM = new DnsResolver() {
+        @NonNull
+        @Override
+        public List<InetAddress> resolve(@NonNull String host) throws UnknownHostException {
+            return Arrays.asList(InetAddress.getAllByName(host));
+        }
+    };
+
+    /**
+     * Resolve a host name.
+     *
+     * @param host the host name to look up
+     * @return the addresses of the host, never empty
+     * @throws UnknownHostException if the host could not be resolved
+     */
+    @NonNull
+    List<InetAddress> resolve(@NonNull String host) throws UnknownHostException;
+}
@@ -0,0 +1,108 @@
+package com.stripe.android.net;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Remembers the {@code ETag} of recent responses together with what was parsed from them, so
+ * that the same request can be sent again with {@code If-None-Match} and, if the server answers
+ * {@code 304 Not Modified}, the earlier result reused without a body being sent or parsed.
+ * Only the most recently used entries are kept.
+ *
+ * @param <T> the type of the parsed responses
+ */
+final class EntityTagCache<T> {
+
+    static final int HTTP_NOT_MODIFIED = 304;
+    static final String HEADER_ETAG = "ETag";
+    static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+
+    @NonNull private final LinkedHashMap<String, Entry<T>> mEntries;
+
+    /**
+     * @param maxSize the number of entries to keep
+     */
+    EntityTagCache(final int maxSize) {
+        mEntries = new LinkedHashMap<String, Entry<T>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry<T>> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * @param key the key of the request, such as one from
+     *            {@link SingleFlight#createKey(String, String, Map, RequestOptions)}
+     * @return the entry for the request, or {@code null} if there is none
+     */
+    @Nullable
+    synchronized Entry<T> get(@NonNull String key) {
+        return mEntries.get(key);
+    }
+
+    /**
+     * Remember the result of a response, or forget the request if the response had no
+     * {@code ETag} or no result.
+     */
+    synchronized void put(
+            @NonNull String key,
+            @Nullable String entityTag,
+            @Nullable T value) {
+        if (entityTag == null || value == null) {
+            mEntries.remove(key);
+        } else {
+            mEntries.put(key, new Entry<>(entityTag, value));
+        }
+    }
+
+    synchronized int size() {
+        return mEntries.size();
+    }
+
+    synchronized void clear() {
+        mEntries.clear();
+    }
+
+    /**
+     * @return a copy of the headers with {@code If-None-Match} added
+     */
+    @NonNull
+    static Map<String, String> addIfNoneMatch(
+            @NonNull Map<String, String> headers,
+            @NonNull String entityTag) {
+        Map<String, String> conditionalHeaders = new HashMap<>(headers.size() + 1, 1.0f);
+        conditionalHeaders.putAll(headers);
+        conditionalHeaders.put(HEADER_IF_NONE_MATCH, entityTag);
+        return conditionalHeaders;
+    }
+
+    /**
+     * @return the {@code ETag} of a response, or {@code null} if it has none
+     */
+    @Nullable
+    static String getEntityTag(@Nullable Map<String, List<String>> headers) {
+        List<String> values = headers == null
+                ? null
+                : ParsedResponse.getHeader(headers, HEADER_ETAG);
+        return values == null || values.isEmpty() ? null : values.get(0);
+    }
+
+    /**
+     * A remembered result, with the {@code ETag} it was sent with.
+     */
+    static final class Entry<T> {
+        @NonNull final String mEntityTag;
+        @NonNull final T mValue;
+
+        Entry(@NonNull String entityTag, @NonNull T value) {
+            mEntityTag = entityTag;
+            mValue = value;
+        }
+    }
+}
@@ -2,12 +2,17 @@ package com.stripe.android.net;
 
 import android.support.annotation.NonNull;
 import android.support.annotation.VisibleForTesting;
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.MalformedJsonException;
 
 import com.stripe.android.util.StripeJsonUtils;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.IOException;
+
 /**
  * A helper class for parsing errors coming from Stripe servers.
  */
@@ -43,6 +48,67 @@ class ErrorParser {
         return stripeError;
     }
 
+    /**
+     * Parse an error straight from the response stream, without reading it into a
+     * {@link String} first.
+     *
+     * @param reader a {@link JsonReader} positioned at the start of the response
+     * @return the parsed error, whose message says the response was malformed if it did not
+     * contain an error object
+     * @throws IOException if the response could not be read
+     */
+    @NonNull
+    static StripeError parseError(@NonNull JsonReader reader) throws IOException {
+        StripeError stripeError = null;
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (FIELD_ERROR.equals(reader.nextName())
+                        && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                    stripeError = readErrorObject(reader);
+                } else {
+                    reader.skipValue();
+                }
+            }
+        } catch (IllegalStateException invalidJson) {
+            stripeError = null;
+        } catch (MalformedJsonException malformedJson) {
+            stripeError = null;
+        }
+
+        if (stripeError == null) {
+            stripeError = new StripeError();
+            stripeError.message = MALFORMED_RESPONSE_MESSAGE;
+        }
+        return stripeError;
+    }
+
+    @NonNull
+    private static StripeError readErrorObject(@NonNull JsonReader reader) throws IOException {
+        StripeError stripeError = new StripeError();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (FIELD_CHARGE.equals(name)) {
+                stripeError.charge = StripeJsonUtils.optString(reader);
+            } else if (FIELD_CODE.equals(name)) {
+                stripeError.code = StripeJsonUtils.optString(reader);
+            } else if (FIELD_DECLINE_CODE.equals(name)) {
+                stripeError.decline_code = StripeJsonUtils.optString(reader);
+            } else if (FIELD_MESSAGE.equals(name)) {
+                stripeError.message = StripeJsonUtils.optString(reader);
+            } else if (FIELD_PARAM.equals(name)) {
+                stripeError.param = StripeJsonUtils.optString(reader);
+            } else if (FIELD_TYPE.equals(name)) {
+                stripeError.type = StripeJsonUtils.optString(reader);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return stripeError;
+    }
+
     /**
      * A model for error objects sent from the server.
      */
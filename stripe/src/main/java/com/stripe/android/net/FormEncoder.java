@@ -0,0 +1,273 @@
+package com.stripe.android.net;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+
+import com.stripe.android.exception.InvalidRequestException;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Encodes a (possibly nested) parameter map as {@code application/x-www-form-urlencoded} in a
+ * single pass. Keys and values are percent-encoded straight into a reusable byte buffer, the same
+ * way {@link java.net.URLEncoder} would encode them in UTF-8, without building intermediate lists
+ * or strings.
+ *
+ * Nested maps are flattened to {@code outer[inner]=value}, lists to {@code key[]=value}, and an
+ * empty list to {@code key=}.
+ */
+final class FormEncoder {
+
+    private static final int INITIAL_CAPACITY = 512;
+    // Buffers that grew past this are not kept around for the next request.
+    private static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+
+    private static final byte[] HEX_DIGITS = {
+            '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'A', 'B', 'C', 'D', 'E', 'F'
+    };
+
+    private static final ThreadLocal<FormEncoder> CACHED_ENCODER = new ThreadLocal<>();
+
+    @NonNull private final StringBuilder mKey = new StringBuilder(64);
+    @NonNull private byte[] mBuffer;
+    private int mSize;
+
+    @VisibleForTesting
+    FormEncoder() {
+        mBuffer = new byte[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Encode the parameters to a query string, reusing this thread's buffer.
+     *
+     * @param params the parameters to encode, or {@code null} for an empty query
+     * @return the encoded query
+     * @throws InvalidRequestException if a value is an empty string
+     */
+    @NonNull
+    static String encode(@Nullable Map<String, Object> params) throws InvalidRequestException {
+        FormEncoder encoder = obtain();
+        try {
+            return encoder.encodeParams(params).toString();
+        } finally {
+            recycle(encoder);
+        }
+    }
+
+    /**
+     * Write an ASCII string, such as an encoded query, to a stream without going through a
+     * charset encoder.
+     *
+     * @param ascii the string to write; every character must be below {@code 0x80}
+     * @param output the stream to write to
+     */
+    static void writeAscii(@NonNull String ascii, @NonNull OutputStream output)
+            throws IOException {
+        FormEncoder encoder = obtain();
+        try {
+            byte[] buffer = encoder.mBuffer;
+            int length = ascii.length();
+            int offset = 0;
+            while (offset < length) {
+                int count = Math.min(buffer.length, length - offset);
+                for (int i = 0; i < count; i++) {
+                    buffer[i] = (byte) ascii.charAt(offset + i);
+                }
+                output.write(buffer, 0, count);
+                offset += count;
+            }
+        } finally {
+            recycle(encoder);
+        }
+    }
+
+    /**
+     * Replace the contents of this encoder with the encoded parameters.
+     *
+     * @param params the parameters to encode, or {@code null} for an empty query
+     * @return this encoder
+     * @throws InvalidRequestException if a value is an empty string
+     */
+    @NonNull
+    FormEncoder encodeParams(@Nullable Map<String, Object> params)
+            throws InvalidRequestException {
+        reset();
+        if (params != null) {
+            try {
+                writeMap(params);
+            } catch (InvalidRequestException invalidRequest) {
+                reset();
+                throw invalidRequest;
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Write the encoded bytes to a stream.
+     *
+     * @param output the stream to write to
+     */
+    void writeTo(@NonNull OutputStream output) throws IOException {
+        output.write(mBuffer, 0, mSize);
+    }
+
+    int size() {
+        return mSize;
+    }
+
+    void reset() {
+        mSize = 0;
+        mKey.setLength(0);
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        // The output is plain ASCII, so there is nothing for a charset decoder to do.
+        char[] chars = new char[mSize];
+        for (int i = 0; i < mSize; i++) {
+            chars[i] = (char) mBuffer[i];
+        }
+        return new String(chars);
+    }
+
+    private void writeMap(@NonNull Map<String, Object> params) throws InvalidRequestException {
+        int keyLength = mKey.length();
+        for (Map.Entry<String, Object> entry : params.entrySet()) {
+            if (keyLength == 0) {
+                mKey.append(entry.getKey());
+            } else {
+                mKey.append('[').append(entry.getKey()).append(']');
+            }
+            writeValue(entry.getValue());
+            mKey.setLength(keyLength);
+        }
+    }
+
+    private void writeList(@NonNull List<?> values) throws InvalidRequestException {
+        // Because application/x-www-form-urlencoded cannot represent an empty
+        // list, convention is to take the list parameter and just set it to an
+        // empty string. (e.g. A regular list might look like `a[]=1&b[]=2`.
+        // Emptying it would look like `a=`.)
+        if (values.isEmpty()) {
+            writePair("");
+            return;
+        }
+
+        int keyLength = mKey.length();
+        mKey.append("[]");
+        for (int i = 0; i < values.size(); i++) {
+            writeValue(values.get(i));
+        }
+        mKey.setLength(keyLength);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void writeValue(@Nullable Object value) throws InvalidRequestException {
+        if (value instanceof Map<?, ?>) {
+            writeMap((Map<String, Object>) value);
+        } else if (value instanceof List<?>) {
+            writeList((List<?>) value);
+        } else if ("".equals(value)) {
+            String key = mKey.toString();
+            throw new InvalidRequestException("You cannot set '"+key+"' to an empty string. "+
+                    "We interpret empty strings as null in requests. "+
+                    "You may set '"+key+"' to null to delete the property.",
+                    key, null, 0, null);
+        } else if (value == null) {
+            writePair("");
+        } else {
+            writePair(value.toString());
+        }
+    }
+
+    private void writePair(@NonNull CharSequence value) {
+        if (mSize > 0) {
+            writeByte('&');
+        }
+        writeEncoded(mKey);
+        writeByte('=');
+        writeEncoded(value);
+    }
+
+    /**
+     * Percent-encode the characters as UTF-8, matching {@link java.net.URLEncoder}: letters,
+     * digits and {@code .-*_} are kept, a space becomes {@code +}, and a lone surrogate is
+     * replaced by {@code ?}.
+     */
+    private void writeEncoded(@NonNull CharSequence chars) {
+        int length = chars.length();
+        for (int i = 0; i < length; i++) {
+            char c = chars.charAt(i);
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                    || c == '.' || c == '-' || c == '*' || c == '_') {
+                writeByte(c);
+            } else if (c == ' ') {
+                writeByte('+');
+            } else if (c < 0x80) {
+                writePercent(c);
+            } else if (c < 0x800) {
+                writePercent(0xC0 | (c >> 6));
+                writePercent(0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c)
+                    && i + 1 < length
+                    && Character.isLowSurrogate(chars.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, chars.charAt(++i));
+                writePercent(0xF0 | (codePoint >> 18));
+                writePercent(0x80 | ((codePoint >> 12) & 0x3F));
+                writePercent(0x80 | ((codePoint >> 6) & 0x3F));
+                writePercent(0x80 | (codePoint & 0x3F));
+            } else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) {
+                writePercent('?');
+            } else {
+                writePercent(0xE0 | (c >> 12));
+                writePercent(0x80 | ((c >> 6) & 0x3F));
+                writePercent(0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    private void writePercent(int b) {
+        ensureCapacity(3);
+        mBuffer[mSize++] = '%';
+        mBuffer[mSize++] = HEX_DIGITS[(b >> 4) & 0xF];
+        mBuffer[mSize++] = HEX_DIGITS[b & 0xF];
+    }
+
+    private void writeByte(int b) {
+        ensureCapacity(1);
+        mBuffer[mSize++] = (byte) b;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (mSize + extra <= mBuffer.length) {
+            return;
+        }
+        byte[] grown = new byte[Math.max(mBuffer.length * 2, mSize + extra)];
+        System.arraycopy(mBuffer, 0, grown, 0, mSize);
+        mBuffer = grown;
+    }
+
+    @NonNull
+    private static FormEncoder obtain() {
+        FormEncoder encoder = CACHED_ENCODER.get();
+        if (encoder == null) {
+            return new FormEncoder();
+        }
+        // Take it out while in use, in case encoding ever re-enters on the same thread.
+        CACHED_ENCODER.set(null);
+        return encoder;
+    }
+
+    private static void recycle(@NonNull FormEncoder encoder) {
+        if (encoder.mBuffer.length <= MAX_RETAINED_CAPACITY) {
+            encoder.reset();
+            CACHED_ENCODER.set(encoder);
+        }
+    }
+}
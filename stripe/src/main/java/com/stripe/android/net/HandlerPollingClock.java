@@ -0,0 +1,33 @@
+package com.stripe.android.net;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+
+/**
+ * A {@link PollingClock} that runs its tasks on a {@link Looper}, such as the main thread's.
+ */
+final class HandlerPollingClock implements PollingClock {
+
+    @NonNull private final Handler mHandler;
+
+    HandlerPollingClock(@NonNull Looper looper) {
+        mHandler = new Handler(looper);
+    }
+
+    @Override
+    public long uptimeMillis() {
+        return SystemClock.uptimeMillis();
+    }
+
+    @Override
+    public void postDelayed(@NonNull Runnable task, @NonNull Object token, long delayMs) {
+        mHandler.postAtTime(task, token, SystemClock.uptimeMillis() + delayMs);
+    }
+
+    @Override
+    public void cancel(@NonNull Object token) {
+        mHandler.removeCallbacksAndMessages(token);
+    }
+}
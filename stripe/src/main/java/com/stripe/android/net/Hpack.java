@@ -0,0 +1,411 @@
+package com.stripe.android.net;
+
+import android.support.annotation.NonNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.stripe.android.net.StripeApiHandler.CHARSET;
+
+/**
+ * The header compression of HTTP/2 (HPACK, RFC 7541).
+ *
+ * The {@link Decoder} understands everything a server may send, including Huffman coded strings
+ * and references to its dynamic table. The {@link Encoder} only refers to the static table and
+ * never adds to the server's dynamic table, which the format always allows; the headers Stripe
+ * requests carry are few enough that this costs little.
+ */
+final class Hpack {
+
+    /**
+     * The dynamic table size both sides start with.
+     */
+    static final int DEFAULT_TABLE_SIZE = 4096;
+
+    private static final Header[] STATIC_TABLE = {
+            new Header(":authority", ""),
+            new Header(":method", "GET"),
+            new Header(":method", "POST"),
+            new Header(":path", "/"),
+            new Header(":path", "/index.html"),
+            new Header(":scheme", "http"),
+            new Header(":scheme", "https"),
+            new Header(":status", "200"),
+            new Header(":status", "204"),
+            new Header(":status", "206"),
+            new Header(":status", "304"),
+            new Header(":status", "400"),
+            new Header(":status", "404"),
+            new Header(":status", "500"),
+            new Header("accept-charset", ""),
+            new Header("accept-encoding", "gzip, deflate"),
+            new Header("accept-language", ""),
+            new Header("accept-ranges", ""),
+            new Header("accept", ""),
+            new Header("access-control-allow-origin", ""),
+            new Header("age", ""),
+            new Header("allow", ""),
+            new Header("authorization", ""),
+            new Header("cache-control", ""),
+            new Header("content-disposition", ""),
+            new Header("content-encoding", ""),
+            new Header("content-language", ""),
+            new Header("content-length", ""),
+            new Header("content-location", ""),
+            new Header("content-range", ""),
+            new Header("content-type", ""),
+            new Header("cookie", ""),
+            new Header("date", ""),
+            new Header("etag", ""),
+            new Header("expect", ""),
+            new Header("expires", ""),
+            new Header("from", ""),
+            new Header("host", ""),
+            new Header("if-match", ""),
+            new Header("if-modified-since", ""),
+            new Header("if-none-match", ""),
+            new Header("if-range", ""),
+            new Header("if-unmodified-since", ""),
+            new Header("last-modified", ""),
+            new Header("link", ""),
+            new Header("location", ""),
+            new Header("max-forwards", ""),
+            new Header("proxy-authenticate", ""),
+            new Header("proxy-authorization", ""),
+            new Header("range", ""),
+            new Header("referer", ""),
+            new Header("refresh", ""),
+            new Header("retry-after", ""),
+            new Header("server", ""),
+            new Header("set-cookie", ""),
+            new Header("strict-transport-security", ""),
+            new Header("transfer-encoding", ""),
+            new Header("user-agent", ""),
+            new Header("vary", ""),
+            new Header("via", ""),
+            new Header("www-authenticate", ""),
+    };
+
+    // The first static table index of each name.
+    private static final Map<String, Integer> STATIC_NAME_INDEX = buildNameIndex();
+
+    private Hpack() { }
+
+    /**
+     * A header name and value. Names are lower case, as HTTP/2 requires.
+     */
+    static final class Header {
+        @NonNull final String name;
+        @NonNull final String value;
+
+        Header(@NonNull String name, @NonNull String value) {
+            this.name = name;
+            this.value = value;
+        }
+
+        /**
+         * @return the size the header takes up in a dynamic table
+         */
+        int size() {
+            // Each entry is charged 32 bytes of overhead on top of its name and value.
+            return 32 + utf8Length(name) + utf8Length(value);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Header
+                    && name.equals(((Header) other).name)
+                    && value.equals(((Header) other).value);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * name.hashCode() + value.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return name + ": " + value;
+        }
+    }
+
+    /**
+     * Writes header blocks.
+     */
+    static final class Encoder {
+
+        /**
+         * Encode a header list.
+         *
+         * @param headers the headers, pseudo-headers first
+         * @param output where to write the header block
+         */
+        void encode(@NonNull List<Header> headers, @NonNull ByteArrayOutputStream output) {
+            for (Header header : headers) {
+                Integer nameIndex = STATIC_NAME_INDEX.get(header.name);
+                int fullIndex = nameIndex == null ? -1 : findStaticEntry(nameIndex, header);
+                if (fullIndex > 0) {
+                    // Indexed header field.
+                    writeInt(output, 0x80, 7, fullIndex);
+                    continue;
+                }
+
+                // A literal that is not added to the table. Credentials are marked as never to be
+                // indexed, so that no intermediary compresses them either.
+                boolean isSensitive = "authorization".equals(header.name);
+                int flags = isSensitive ? 0x10 : 0x00;
+                if (nameIndex != null) {
+                    writeInt(output, flags, 4, nameIndex);
+                } else {
+                    output.write(flags);
+                    writeString(output, header.name);
+                }
+                writeString(output, header.value);
+            }
+        }
+
+        private static int findStaticEntry(int nameIndex, @NonNull Header header) {
+            for (int i = nameIndex; i <= STATIC_TABLE.length; i++) {
+                Header entry = STATIC_TABLE[i - 1];
+                if (!entry.name.equals(header.name)) {
+                    break;
+                }
+                if (entry.value.equals(header.value)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private static void writeString(@NonNull ByteArrayOutputStream output, @NonNull String s) {
+            byte[] bytes = toBytes(s);
+            writeInt(output, 0x00, 7, bytes.length);
+            output.write(bytes, 0, bytes.length);
+        }
+
+        private static void writeInt(
+                @NonNull ByteArrayOutputStream output,
+                int flags,
+                int prefixBits,
+                int value) {
+            int maxPrefix = (1 << prefixBits) - 1;
+            if (value < maxPrefix) {
+                output.write(flags | value);
+                return;
+            }
+            output.write(flags | maxPrefix);
+            value -= maxPrefix;
+            while (value >= 0x80) {
+                output.write((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            output.write(value);
+        }
+    }
+
+    /**
+     * Reads header blocks, keeping the dynamic table the server refers to in step with its own.
+     * Every block a connection receives has to go through the same decoder, in order, whether
+     * or not anyone wants its headers.
+     */
+    static final class Decoder {
+
+        private final int mMaxTableSize;
+        // Oldest entry first.
+        @NonNull private final List<Header> mDynamicTable = new ArrayList<>();
+        private int mTableCapacity;
+        private int mTableSize;
+
+        // The block being decoded.
+        private byte[] mBlock;
+        private int mPosition;
+        private int mLimit;
+
+        /**
+         * @param maxTableSize the largest dynamic table the server may ask for, as announced in
+         *                     our settings
+         */
+        Decoder(int maxTableSize) {
+            mMaxTableSize = maxTableSize;
+            mTableCapacity = maxTableSize;
+        }
+
+        /**
+         * Decode a complete header block.
+         *
+         * @param block the buffer holding the block
+         * @param offset where the block starts
+         * @param length the length of the block
+         * @return the headers, in the order they were sent
+         * @throws IOException if the block is malformed
+         */
+        @NonNull
+        List<Header> decode(@NonNull byte[] block, int offset, int length) throws IOException {
+            mBlock = block;
+            mPosition = offset;
+            mLimit = offset + length;
+            List<Header> headers = new ArrayList<>();
+            try {
+                while (mPosition < mLimit) {
+                    int b = mBlock[mPosition] & 0xFF;
+                    if ((b & 0x80) != 0) {
+                        // Indexed header field.
+                        headers.add(getEntry(readInt(7)));
+                    } else if ((b & 0xC0) == 0x40) {
+                        // Literal with incremental indexing.
+                        Header header = readLiteral(6);
+                        headers.add(header);
+                        add(header);
+                    } else if ((b & 0xE0) == 0x20) {
+                        // Dynamic table size update.
+                        int capacity = readInt(5);
+                        if (capacity > mMaxTableSize) {
+                            throw new IOException("HPACK table size update too large: "
+                                    + capacity);
+                        }
+                        mTableCapacity = capacity;
+                        evict(0);
+                    } else {
+                        // Literal without indexing, or never indexed.
+                        headers.add(readLiteral(4));
+                    }
+                }
+            } finally {
+                mBlock = null;
+            }
+            return headers;
+        }
+
+        int getTableSize() {
+            return mTableSize;
+        }
+
+        @NonNull
+        private Header readLiteral(int prefixBits) throws IOException {
+            int nameIndex = readInt(prefixBits);
+            String name = nameIndex == 0 ? readString() : getEntry(nameIndex).name;
+            return new Header(name, readString());
+        }
+
+        @NonNull
+        private Header getEntry(int index) throws IOException {
+            if (index >= 1 && index <= STATIC_TABLE.length) {
+                return STATIC_TABLE[index - 1];
+            }
+            int dynamicIndex = index - STATIC_TABLE.length;
+            if (dynamicIndex >= 1 && dynamicIndex <= mDynamicTable.size()) {
+                return mDynamicTable.get(mDynamicTable.size() - dynamicIndex);
+            }
+            throw new IOException("HPACK index out of range: " + index);
+        }
+
+        private void add(@NonNull Header header) {
+            int size = header.size();
+            if (size > mTableCapacity) {
+                // An entry larger than the table empties it and is not added.
+                mDynamicTable.clear();
+                mTableSize = 0;
+                return;
+            }
+            evict(size);
+            mDynamicTable.add(header);
+            mTableSize += size;
+        }
+
+        private void evict(int spaceNeeded) {
+            while (!mDynamicTable.isEmpty() && mTableSize + spaceNeeded > mTableCapacity) {
+                mTableSize -= mDynamicTable.remove(0).size();
+            }
+        }
+
+        private int readInt(int prefixBits) throws IOException {
+            int maxPrefix = (1 << prefixBits) - 1;
+            int value = readByte() & maxPrefix;
+            if (value < maxPrefix) {
+                return value;
+            }
+            for (int shift = 0; shift < 28; shift += 7) {
+                int b = readByte();
+                value += (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("HPACK integer too large");
+        }
+
+        @NonNull
+        private String readString() throws IOException {
+            checkAvailable(1);
+            boolean isHuffman = (mBlock[mPosition] & 0x80) != 0;
+            int length = readInt(7);
+            int start = checkAvailable(length);
+            mPosition += length;
+            byte[] bytes = isHuffman
+                    ? Huffman.decode(mBlock, start, length)
+                    : copyOfRange(mBlock, start, length);
+            return new String(bytes, CHARSET);
+        }
+
+        private int readByte() throws IOException {
+            checkAvailable(1);
+            return mBlock[mPosition++] & 0xFF;
+        }
+
+        private int checkAvailable(int count) throws IOException {
+            if (count < 0 || mLimit - mPosition < count) {
+                throw new IOException("Truncated HPACK header block");
+            }
+            return mPosition;
+        }
+    }
+
+    @NonNull
+    private static byte[] copyOfRange(@NonNull byte[] source, int offset, int length) {
+        byte[] copy = new byte[length];
+        System.arraycopy(source, offset, copy, 0, length);
+        return copy;
+    }
+
+    @NonNull
+    private static byte[] toBytes(@NonNull String s) {
+        try {
+            return s.getBytes(CHARSET);
+        } catch (UnsupportedEncodingException unexpected) {
+            // Every Android device has UTF-8.
+            throw new IllegalStateException(unexpected);
+        }
+    }
+
+    private static int utf8Length(@NonNull String s) {
+        int length = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c)) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    @NonNull
+    private static Map<String, Integer> buildNameIndex() {
+        Map<String, Integer> index = new HashMap<>();
+        for (int i = STATIC_TABLE.length; i >= 1; i--) {
+            index.put(STATIC_TABLE[i - 1].name, i);
+        }
+        return index;
+    }
+}
@@ -0,0 +1,817 @@
+package com.stripe.android.net;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One HTTP/2 connection (RFC 7540) to a host. Any number of requests run over it at the same
+ * time, each on a stream of its own, so that a burst of requests shares one socket and one TLS
+ * session, and a slow response does not hold up the others.
+ *
+ * A background thread reads frames from the server and hands them to their {@link Http2Stream};
+ * requests write their own frames. This is a client that never accepts pushed streams, and only
+ * what such a client needs is implemented.
+ */
+final class Http2Connection {
+
+    static final String PROTOCOL = "h2";
+
+    private static final byte[] PREFACE = {
+            'P', 'R', 'I', ' ', '*', ' ', 'H', 'T', 'T', 'P', '/', '2', '.', '0', '\r', '\n',
+            '\r', '\n', 'S', 'M', '\r', '\n', '\r', '\n'
+    };
+
+    private static final int TYPE_DATA = 0x0;
+    private static final int TYPE_HEADERS = 0x1;
+    private static final int TYPE_PRIORITY = 0x2;
+    private static final int TYPE_RST_STREAM = 0x3;
+    private static final int TYPE_SETTINGS = 0x4;
+    private static final int TYPE_PUSH_PROMISE = 0x5;
+    private static final int TYPE_PING = 0x6;
+    private static final int TYPE_GOAWAY = 0x7;
+    private static final int TYPE_WINDOW_UPDATE = 0x8;
+    private static final int TYPE_CONTINUATION = 0x9;
+
+    private static final int FLAG_END_STREAM = 0x1;
+    private static final int FLAG_ACK = 0x1;
+    private static final int FLAG_END_HEADERS = 0x4;
+    private static final int FLAG_PADDED = 0x8;
+    private static final int FLAG_PRIORITY = 0x20;
+
+    private static final int SETTINGS_ENABLE_PUSH = 0x2;
+    private static final int SETTINGS_MAX_CONCURRENT_STREAMS = 0x3;
+    private static final int SETTINGS_INITIAL_WINDOW_SIZE = 0x4;
+    private static final int SETTINGS_MAX_FRAME_SIZE = 0x5;
+
+    static final int ERROR_NO_ERROR = 0x0;
+    static final int ERROR_PROTOCOL_ERROR = 0x1;
+    static final int ERROR_FLOW_CONTROL_ERROR = 0x3;
+    static final int ERROR_FRAME_SIZE_ERROR = 0x6;
+    static final int ERROR_REFUSED_STREAM = 0x7;
+    static final int ERROR_CANCEL = 0x8;
+    static final int ERROR_COMPRESSION_ERROR = 0x9;
+
+    private static final int DEFAULT_WINDOW_SIZE = 65535;
+    private static final int DEFAULT_MAX_FRAME_SIZE = 16384;
+    private static final int MAX_MAX_FRAME_SIZE = 16777215;
+    private static final int MAX_STREAM_ID = Integer.MAX_VALUE;
+
+    // How much response data the server may send, per stream and in all, before we have read it.
+    @VisibleForTesting
+    static final int RECEIVE_WINDOW_SIZE = 1024 * 1024;
+
+    @NonNull private final Socket mSocket;
+    @NonNull private final DataInputStream mInput;
+    @NonNull private final OutputStream mOutput;
+    // Held while writing a frame, or frames that must not be interleaved with others. Taken
+    // before, never while holding, the connection's own lock.
+    @NonNull private final Object mWriteLock = new Object();
+    @NonNull private final Hpack.Encoder mEncoder = new Hpack.Encoder();
+    @NonNull private final Hpack.Decoder mDecoder = new Hpack.Decoder(Hpack.DEFAULT_TABLE_SIZE);
+
+    // Guarded by this.
+    @NonNull private final Map<Integer, Http2Stream> mStreams = new HashMap<>();
+    private int mNextStreamId = 1;
+    private int mReservedStreams;
+    private boolean mIsShutdown;
+    @Nullable private IOException mFailure;
+    private long mIdleSinceMs;
+    private long mSendWindow = DEFAULT_WINDOW_SIZE;
+    private int mReceiveWindow = DEFAULT_WINDOW_SIZE;
+    private int mUnacknowledgedBytes;
+    private int mPeerMaxConcurrentStreams = Integer.MAX_VALUE;
+    private int mPeerInitialWindowSize = DEFAULT_WINDOW_SIZE;
+    private int mPeerMaxFrameSize = DEFAULT_MAX_FRAME_SIZE;
+
+    /**
+     * Start speaking HTTP/2 on a connected socket, which must either have negotiated
+     * {@link #PROTOCOL} or be known to speak it.
+     *
+     * @param socket the socket; it is closed with the connection
+     * @return the connection
+     * @throws IOException if the connection preface could not be sent
+     */
+    @NonNull
+    static Http2Connection start(@NonNull Socket socket) throws IOException {
+        final Http2Connection connection = new Http2Connection(socket);
+        connection.writePreface();
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                connection.readFrames();
+            }
+        }, "Stripe HTTP/2 reader");
+        reader.setDaemon(true);
+        reader.start();
+        return connection;
+    }
+
+    private Http2Connection(@NonNull Socket socket) throws IOException {
+        mSocket = socket;
+        mInput = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        mOutput = new BufferedOutputStream(socket.getOutputStream());
+        mIdleSinceMs = nowMs();
+    }
+
+    /**
+     * Send a request on a new stream.
+     *
+     * @param headers the request headers, pseudo-headers first
+     * @param body the request body, or {@code null} if there is none
+     * @param readTimeoutMs how long to wait for room on the connection, and later for each
+     *                      part of the response
+     * @return the stream, on which to wait for the response
+     * @throws StreamRefusedException if the connection no longer takes new streams; the request
+     * was not sent and can be sent on another connection
+     * @throws IOException if the request could not be sent
+     */
+    @NonNull
+    Http2Stream newStream(
+            @NonNull List<Hpack.Header> headers,
+            @Nullable byte[] body,
+            long readTimeoutMs) throws IOException {
+        reserveStream(readTimeoutMs);
+
+        boolean hasBody = body != null && body.length > 0;
+        Http2Stream stream;
+        synchronized (mWriteLock) {
+            synchronized (this) {
+                mReservedStreams--;
+                if (mIsShutdown) {
+                    throw new StreamRefusedException("HTTP/2 connection is shut down");
+                }
+                stream = new Http2Stream(
+                        this, mNextStreamId, mPeerInitialWindowSize, RECEIVE_WINDOW_SIZE,
+                        readTimeoutMs);
+                mStreams.put(stream.mId, stream);
+                if (mNextStreamId >= MAX_STREAM_ID - 2) {
+                    // Stream IDs are never reused; this connection has run out of them.
+                    mIsShutdown = true;
+                } else {
+                    mNextStreamId += 2;
+                }
+            }
+
+            try {
+                ByteArrayOutputStream block = new ByteArrayOutputStream(256);
+                mEncoder.encode(headers, block);
+                writeHeaders(stream.mId, block.toByteArray(), !hasBody);
+                mOutput.flush();
+            } catch (IOException e) {
+                fail(e);
+                throw e;
+            }
+        }
+
+        if (hasBody) {
+            writeData(stream, body, readTimeoutMs);
+        }
+        return stream;
+    }
+
+    /**
+     * @return {@code true} if new streams may be opened on this connection
+     */
+    synchronized boolean isUsable() {
+        return !mIsShutdown;
+    }
+
+    /**
+     * @return how long the connection has had no streams, or {@code 0} if it has some
+     */
+    synchronized long getIdleMs() {
+        return mStreams.isEmpty() && mReservedStreams == 0 ? nowMs() - mIdleSinceMs : 0L;
+    }
+
+    synchronized int getStreamCount() {
+        return mStreams.size();
+    }
+
+    /**
+     * Take no new streams, and close the connection once the open ones finish.
+     */
+    void retire() {
+        boolean isIdle;
+        synchronized (this) {
+            mIsShutdown = true;
+            isIdle = mStreams.isEmpty();
+            notifyAll();
+        }
+        if (isIdle) {
+            close();
+        }
+    }
+
+    /**
+     * Close the connection, failing any streams still open on it.
+     */
+    void close() {
+        synchronized (this) {
+            if (mFailure != null) {
+                return;
+            }
+        }
+        try {
+            synchronized (mWriteLock) {
+                writeGoAway(ERROR_NO_ERROR);
+                mOutput.flush();
+            }
+        } catch (IOException ignored) {
+            // The connection is being closed anyway.
+        }
+        fail(new IOException("HTTP/2 connection closed"));
+    }
+
+    // Called by streams.
+
+    void onDataConsumed(@NonNull Http2Stream stream, int count) {
+        int connectionIncrement = 0;
+        int streamIncrement = 0;
+        synchronized (this) {
+            mUnacknowledgedBytes += count;
+            if (mUnacknowledgedBytes >= RECEIVE_WINDOW_SIZE / 2) {
+                connectionIncrement = mUnacknowledgedBytes;
+                mReceiveWindow += connectionIncrement;
+                mUnacknowledgedBytes = 0;
+            }
+            if (!stream.isFinished()) {
+                stream.mUnacknowledgedBytes += count;
+                if (stream.mUnacknowledgedBytes >= RECEIVE_WINDOW_SIZE / 2) {
+                    streamIncrement = stream.mUnacknowledgedBytes;
+                    stream.mReceiveWindow += streamIncrement;
+                    stream.mUnacknowledgedBytes = 0;
+                }
+            }
+        }
+        writeWindowUpdates(stream.mId, connectionIncrement, streamIncrement);
+    }
+
+    void removeStream(@NonNull Http2Stream stream, boolean reset) {
+        boolean closeSocket;
+        synchronized (this) {
+            mStreams.remove(stream.mId);
+            if (mStreams.isEmpty()) {
+                mIdleSinceMs = nowMs();
+            }
+            closeSocket = mIsShutdown && mStreams.isEmpty() && mFailure == null;
+            notifyAll();
+        }
+        if (reset) {
+            try {
+                synchronized (mWriteLock) {
+                    writeRstStream(stream.mId, ERROR_CANCEL);
+                    mOutput.flush();
+                }
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+        if (closeSocket) {
+            close();
+        }
+    }
+
+    private synchronized void reserveStream(long timeoutMs) throws IOException {
+        long deadlineMs = nowMs() + timeoutMs;
+        while (!mIsShutdown
+                && mStreams.size() + mReservedStreams >= mPeerMaxConcurrentStreams) {
+            waitUntil(deadlineMs);
+        }
+        if (mIsShutdown) {
+            throw new StreamRefusedException("HTTP/2 connection is shut down");
+        }
+        mReservedStreams++;
+    }
+
+    private void writeData(
+            @NonNull Http2Stream stream,
+            @NonNull byte[] body,
+            long timeoutMs) throws IOException {
+        int offset = 0;
+        while (offset < body.length) {
+            int length;
+            synchronized (this) {
+                long deadlineMs = nowMs() + timeoutMs;
+                while (mSendWindow <= 0 || stream.mSendWindow <= 0) {
+                    stream.throwIfFailed();
+                    waitUntil(deadlineMs);
+                }
+                stream.throwIfFailed();
+                length = (int) Math.min(Math.min(body.length - offset, mPeerMaxFrameSize),
+                        Math.min(mSendWindow, stream.mSendWindow));
+                mSendWindow -= length;
+                stream.mSendWindow -= length;
+            }
+
+            boolean isLast = offset + length == body.length;
+            try {
+                synchronized (mWriteLock) {
+                    writeFrameHeader(length, TYPE_DATA, isLast ? FLAG_END_STREAM : 0, stream.mId);
+                    mOutput.write(body, offset, length);
+                    if (isLast) {
+                        mOutput.flush();
+                    }
+                }
+            } catch (IOException e) {
+                fail(e);
+                throw e;
+            }
+            offset += length;
+        }
+    }
+
+    private void writePreface() throws IOException {
+        synchronized (mWriteLock) {
+            mOutput.write(PREFACE);
+            writeFrameHeader(3 * 6, TYPE_SETTINGS, 0, 0);
+            writeSetting(SETTINGS_ENABLE_PUSH, 0);
+            writeSetting(SETTINGS_INITIAL_WINDOW_SIZE, RECEIVE_WINDOW_SIZE);
+            writeSetting(SETTINGS_MAX_FRAME_SIZE, DEFAULT_MAX_FRAME_SIZE);
+            writeWindowUpdate(0, RECEIVE_WINDOW_SIZE - DEFAULT_WINDOW_SIZE);
+            mOutput.flush();
+        }
+        synchronized (this) {
+            mReceiveWindow = RECEIVE_WINDOW_SIZE;
+        }
+    }
+
+    private void readFrames() {
+        try {
+            while (true) {
+                readFrame();
+            }
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    private void readFrame() throws IOException {
+        int length = readMedium();
+        int type = mInput.readUnsignedByte();
+        int flags = mInput.readUnsignedByte();
+        int streamId = mInput.readInt() & 0x7FFFFFFF;
+        if (length > DEFAULT_MAX_FRAME_SIZE) {
+            throw new ProtocolException(ERROR_FRAME_SIZE_ERROR, "Frame too large: " + length);
+        }
+        byte[] payload = new byte[length];
+        mInput.readFully(payload);
+
+        switch (type) {
+            case TYPE_DATA:
+                readData(payload, flags, streamId);
+                break;
+            case TYPE_HEADERS:
+                readHeaders(payload, flags, streamId);
+                break;
+            case TYPE_RST_STREAM:
+                readRstStream(payload, streamId);
+                break;
+            case TYPE_SETTINGS:
+                readSettings(payload, flags, streamId);
+                break;
+            case TYPE_PING:
+                readPing(payload, flags, streamId);
+                break;
+            case TYPE_GOAWAY:
+                readGoAway(payload, streamId);
+                break;
+            case TYPE_WINDOW_UPDATE:
+                readWindowUpdate(payload, streamId);
+                break;
+            case TYPE_PUSH_PROMISE:
+                throw new ProtocolException(ERROR_PROTOCOL_ERROR, "Push was not enabled");
+            case TYPE_CONTINUATION:
+                throw new ProtocolException(ERROR_PROTOCOL_ERROR, "Unexpected CONTINUATION");
+            case TYPE_PRIORITY:
+            default:
+                // Priorities are advice, and unknown frame types are to be ignored.
+                break;
+        }
+    }
+
+    private void readData(@NonNull byte[] payload, int flags, int streamId) throws IOException {
+        if (streamId == 0) {
+            throw new ProtocolException(ERROR_PROTOCOL_ERROR, "DATA on stream 0");
+        }
+        int start = 0;
+        int end = payload.length;
+        if ((flags & FLAG_PADDED) != 0) {
+            end -= getPadding(payload);
+            start = 1;
+        }
+
+        boolean accepted = true;
+        int discarded;
+        synchronized (this) {
+            if (payload.length > mReceiveWindow) {
+                throw new ProtocolException(ERROR_FLOW_CONTROL_ERROR,
+                        "Connection flow control window exceeded");
+            }
+            mReceiveWindow -= payload.length;
+            Http2Stream stream = mStreams.get(streamId);
+            if (stream != null && !stream.isClosed()) {
+                accepted = stream.onData(
+                        payload, start, end - start, (flags & FLAG_END_STREAM) != 0);
+                // Padding counts against the window, but is never read.
+                discarded = accepted ? payload.length - (end - start) : payload.length;
+                if (!accepted) {
+                    stream.onError(new IOException("Stream flow control window exceeded"));
+                }
+            } else {
+                // A stream we have given up on; the server has not heard yet.
+                discarded = payload.length;
+            }
+        }
+        if (!accepted) {
+            synchronized (mWriteLock) {
+                writeRstStream(streamId, ERROR_FLOW_CONTROL_ERROR);
+                mOutput.flush();
+            }
+        }
+        if (discarded > 0) {
+            creditConnection(discarded);
+        }
+    }
+
+    private void readHeaders(
+            @NonNull byte[] payload,
+            int flags,
+            int streamId) throws IOException {
+        if (streamId == 0) {
+            throw new ProtocolException(ERROR_PROTOCOL_ERROR, "HEADERS on stream 0");
+        }
+        int start = 0;
+        int end = payload.length;
+        if ((flags & FLAG_PADDED) != 0) {
+            end -= getPadding(payload);
+            start = 1;
+        }
+        if ((flags & FLAG_PRIORITY) != 0) {
+            start += 5;
+        }
+        if (start > end) {
+            throw new ProtocolException(ERROR_PROTOCOL_ERROR, "Malformed HEADERS");
+        }
+
+        ByteArrayOutputStream block = new ByteArrayOutputStream(end - start);
+        block.write(payload, start, end - start);
+        int continuationFlags = flags;
+        while ((continuationFlags & FLAG_END_HEADERS) == 0) {
+            int length = readMedium();
+            int type = mInput.readUnsignedByte();
+            continuationFlags = mInput.readUnsignedByte();
+            int continuationStreamId = mInput.readInt() & 0x7FFFFFFF;
+            if (type != TYPE_CONTINUATION || continuationStreamId != streamId) {
+                throw new ProtocolException(ERROR_PROTOCOL_ERROR, "Expected CONTINUATION");
+            }
+            if (length > DEFAULT_MAX_FRAME_SIZE) {
+                throw new ProtocolException(ERROR_FRAME_SIZE_ERROR, "Frame too large");
+            }
+            byte[] continuation = new byte[length];
+            mInput.readFully(continuation);
+            block.write(continuation, 0, length);
+        }
+
+        // Every block is decoded, wanted or not, to keep the decoder's table in step.
+        byte[] blockBytes = block.toByteArray();
+        List<Hpack.Header> headers;
+        try {
+            headers = mDecoder.decode(blockBytes, 0, blockBytes.length);
+        } catch (IOException malformed) {
+            throw new ProtocolException(ERROR_COMPRESSION_ERROR, malformed.getMessage());
+        }
+
+        synchronized (this) {
+            Http2Stream stream = mStreams.get(streamId);
+            if (stream != null && !stream.isClosed()) {
+                stream.onHeaders(headers, (flags & FLAG_END_STREAM) != 0);
+            }
+        }
+    }
+
+    private void readRstStream(@NonNull byte[] payload, int streamId) throws IOException {
+        if (payload.length != 4 || streamId == 0) {
+            throw new ProtocolException(ERROR_PROTOCOL_ERROR, "Malformed RST_STREAM");
+        }
+        int errorCode = readInt(payload, 0);
+        synchronized (this) {
+            Http2Stream stream = mStreams.get(streamId);
+            if (stream != null) {
+                stream.onError(errorCode == ERROR_REFUSED_STREAM
+                        ? new StreamRefusedException("Stream refused by server")
+                        : new IOException("Stream reset by server, error code " + errorCode));
+            }
+        }
+    }
+
+    private void readSettings(
+            @NonNull byte[] payload,
+            int flags,
+            int streamId) throws IOException {
+        if (streamId != 0 || payload.length % 6 != 0) {
+            throw new ProtocolException(ERROR_FRAME_SIZE_ERROR, "Malformed SETTINGS");
+        }
+        if ((flags & FLAG_ACK) != 0) {
+            return;
+        }
+
+        synchronized (this) {
+            for (int i = 0; i < payload.length; i += 6) {
+                int id = ((payload[i] & 0xFF) << 8) | (payload[i + 1] & 0xFF);
+                int value = readInt(payload, i + 2);
+                switch (id) {
+                    case SETTINGS_MAX_CONCURRENT_STREAMS:
+                        mPeerMaxConcurrentStreams = value < 0 ? Integer.MAX_VALUE : value;
+                        break;
+                    case SETTINGS_INITIAL_WINDOW_SIZE:
+                        if (value < 0) {
+                            throw new ProtocolException(ERROR_FLOW_CONTROL_ERROR,
+                                    "Initial window size too large");
+                        }
+                        int delta = value - mPeerInitialWindowSize;
+                        mPeerInitialWindowSize = value;
+                        for (Http2Stream stream : mStreams.values()) {
+                            stream.mSendWindow += delta;
+                        }
+                        break;
+                    case SETTINGS_MAX_FRAME_SIZE:
+                        if (value < DEFAULT_MAX_FRAME_SIZE || value > MAX_MAX_FRAME_SIZE) {
+                            throw new ProtocolException(ERROR_PROTOCOL_ERROR,
+                                    "Invalid max frame size: " + value);
+                        }
+                        mPeerMaxFrameSize = value;
+                        break;
+                    default:
+                        // The encoder never indexes, so the server's table size is irrelevant,
+                        // and unknown settings are to be ignored.
+                        break;
+                }
+            }
+            notifyAll();
+        }
+
+        synchronized (mWriteLock) {
+            writeFrameHeader(0, TYPE_SETTINGS, FLAG_ACK, 0);
+            mOutput.flush();
+        }
+    }
+
+    private void readPing(@NonNull byte[] payload, int flags, int streamId) throws IOException {
+        if (streamId != 0 || payload.length != 8) {
+            throw new ProtocolException(ERROR_FRAME_SIZE_ERROR, "Malformed PING");
+        }
+        if ((flags & FLAG_ACK) != 0) {
+            return;
+        }
+        synchronized (mWriteLock) {
+            writeFrameHeader(8, TYPE_PING, FLAG_ACK, 0);
+            mOutput.write(payload);
+            mOutput.flush();
+        }
+    }
+
+    private void readGoAway(@NonNull byte[] payload, int streamId) throws IOException {
+        if (streamId != 0 || payload.length < 8) {
+            throw new ProtocolException(ERROR_PROTOCOL_ERROR, "Malformed GOAWAY");
+        }
+        int lastStreamId = readInt(payload, 0) & 0x7FFFFFFF;
+        int errorCode = readInt(payload, 4);
+        boolean closeSocket;
+        synchronized (this) {
+            mIsShutdown = true;
+            // Streams the server never started can safely be sent again elsewhere; the rest
+            // are allowed to finish.
+            for (Http2Stream stream : new ArrayList<>(mStreams.values())) {
+                if (stream.mId > lastStreamId) {
+                    stream.onError(new StreamRefusedException(
+                            "HTTP/2 connection shut down by server, error code " + errorCode));
+                }
+            }
+            closeSocket = mStreams.isEmpty();
+            notifyAll();
+        }
+        if (closeSocket) {
+            fail(new IOException("HTTP/2 connection shut down by server"));
+        }
+    }
+
+    private void readWindowUpdate(@NonNull byte[] payload, int streamId) throws IOException {
+        if (payload.length != 4) {
+            throw new ProtocolException(ERROR_FRAME_SIZE_ERROR, "Malformed WINDOW_UPDATE");
+        }
+        int increment = readInt(payload, 0) & 0x7FFFFFFF;
+        if (increment == 0) {
+            throw new ProtocolException(ERROR_PROTOCOL_ERROR, "Zero window increment");
+        }
+        synchronized (this) {
+            if (streamId == 0) {
+                mSendWindow += increment;
+            } else {
+                Http2Stream stream = mStreams.get(streamId);
+                if (stream != null) {
+                    stream.mSendWindow += increment;
+                }
+            }
+            notifyAll();
+        }
+    }
+
+    private void creditConnection(int count) {
+        int increment = 0;
+        synchronized (this) {
+            mUnacknowledgedBytes += count;
+            if (mUnacknowledgedBytes >= RECEIVE_WINDOW_SIZE / 2) {
+                increment = mUnacknowledgedBytes;
+                mReceiveWindow += increment;
+                mUnacknowledgedBytes = 0;
+            }
+        }
+        writeWindowUpdates(0, increment, 0);
+    }
+
+    private void writeWindowUpdates(int streamId, int connectionIncrement, int streamIncrement) {
+        if (connectionIncrement == 0 && streamIncrement == 0) {
+            return;
+        }
+        try {
+            synchronized (mWriteLock) {
+                if (connectionIncrement > 0) {
+                    writeWindowUpdate(0, connectionIncrement);
+                }
+                if (streamIncrement > 0) {
+                    writeWindowUpdate(streamId, streamIncrement);
+                }
+                mOutput.flush();
+            }
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * Shut the connection down for good, failing every stream that is still open.
+     */
+    private void fail(@NonNull IOException cause) {
+        synchronized (this) {
+            if (mFailure != null) {
+                return;
+            }
+            mFailure = cause;
+            mIsShutdown = true;
+            for (Http2Stream stream : mStreams.values()) {
+                stream.onError(cause);
+            }
+            notifyAll();
+        }
+
+        if (cause instanceof ProtocolException) {
+            try {
+                synchronized (mWriteLock) {
+                    writeGoAway(((ProtocolException) cause).mErrorCode);
+                    mOutput.flush();
+                }
+            } catch (IOException ignored) {
+                // The server will notice the connection closing instead.
+            }
+        }
+        try {
+            mSocket.close();
+        } catch (IOException ignored) {
+            // Nothing more can go wrong with it.
+        }
+    }
+
+    private void waitUntil(long deadlineMs) throws IOException {
+        long remainingMs = deadlineMs - nowMs();
+        if (remainingMs <= 0) {
+            throw new SocketTimeoutException("Timed out waiting for the HTTP/2 connection");
+        }
+        try {
+            wait(remainingMs);
+        } catch (InterruptedException interrupted) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for the HTTP/2 connection");
+        }
+    }
+
+    // Frame writing; callers hold mWriteLock.
+
+    private void writeHeaders(int streamId, @NonNull byte[] block, boolean endStream)
+            throws IOException {
+        int maxFrameSize;
+        synchronized (this) {
+            maxFrameSize = mPeerMaxFrameSize;
+        }
+        int length = Math.min(block.length, maxFrameSize);
+        int flags = (endStream ? FLAG_END_STREAM : 0)
+                | (length == block.length ? FLAG_END_HEADERS : 0);
+        writeFrameHeader(length, TYPE_HEADERS, flags, streamId);
+        mOutput.write(block, 0, length);
+        for (int offset = length; offset < block.length; offset += length) {
+            length = Math.min(block.length - offset, maxFrameSize);
+            boolean isLast = offset + length == block.length;
+            writeFrameHeader(length, TYPE_CONTINUATION, isLast ? FLAG_END_HEADERS : 0, streamId);
+            mOutput.write(block, offset, length);
+        }
+    }
+
+    private void writeRstStream(int streamId, int errorCode) throws IOException {
+        writeFrameHeader(4, TYPE_RST_STREAM, 0, streamId);
+        writeInt(errorCode);
+    }
+
+    private void writeGoAway(int errorCode) throws IOException {
+        writeFrameHeader(8, TYPE_GOAWAY, 0, 0);
+        // We never accept streams from the server, so the last one we processed is 0.
+        writeInt(0);
+        writeInt(errorCode);
+    }
+
+    private void writeWindowUpdate(int streamId, int increment) throws IOException {
+        writeFrameHeader(4, TYPE_WINDOW_UPDATE, 0, streamId);
+        writeInt(increment);
+    }
+
+    private void writeSetting(int id, int value) throws IOException {
+        mOutput.write(id >>> 8);
+        mOutput.write(id);
+        writeInt(value);
+    }
+
+    private void writeFrameHeader(int length, int type, int flags, int streamId)
+            throws IOException {
+        mOutput.write(length >>> 16);
+        mOutput.write(length >>> 8);
+        mOutput.write(length);
+        mOutput.write(type);
+        mOutput.write(flags);
+        writeInt(streamId);
+    }
+
+    private void writeInt(int value) throws IOException {
+        mOutput.write(value >>> 24);
+        mOutput.write(value >>> 16);
+        mOutput.write(value >>> 8);
+        mOutput.write(value);
+    }
+
+    private int readMedium() throws IOException {
+        return (mInput.readUnsignedByte() << 16)
+                | (mInput.readUnsignedByte() << 8)
+                | mInput.readUnsignedByte();
+    }
+
+    private static int readInt(@NonNull byte[] bytes, int offset) {
+        return ((bytes[offset] & 0xFF) << 24)
+                | ((bytes[offset + 1] & 0xFF) << 16)
+                | ((bytes[offset + 2] & 0xFF) << 8)
+                | (bytes[offset + 3] & 0xFF);
+    }
+
+    private static int getPadding(@NonNull byte[] payload) throws ProtocolException {
+        if (payload.length == 0 || (payload[0] & 0xFF) >= payload.length) {
+            throw new ProtocolException(ERROR_PROTOCOL_ERROR, "Invalid padding");
+        }
+        return payload[0] & 0xFF;
+    }
+
+    private static long nowMs() {
+        return System.nanoTime() / 1000000L;
+    }
+
+    /**
+     * Thrown when a request was not processed by the server, and can be sent again.
+     */
+    static final class StreamRefusedException extends IOException {
+        StreamRefusedException(@Nullable String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * A violation of the protocol that ends the connection.
+     */
+    private static final class ProtocolException extends IOException {
+        final int mErrorCode;
+
+        ProtocolException(int errorCode, @Nullable String message) {
+            super(message);
+            mErrorCode = errorCode;
+        }
+    }
+}
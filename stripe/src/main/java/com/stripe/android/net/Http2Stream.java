@@ -0,0 +1,247 @@
+package com.stripe.android.net;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * One request and its response on an {@link Http2Connection}. All of its state is guarded by
+ * the connection, which is also what threads waiting on the stream wait on.
+ */
+final class Http2Stream {
+
+    final int mId;
+    @NonNull private final Http2Connection mConnection;
+    private final long mReadTimeoutMs;
+    @NonNull private final InputStream mBody = new Body();
+
+    // Guarded by mConnection.
+    long mSendWindow;
+    int mReceiveWindow;
+    int mUnacknowledgedBytes;
+    @Nullable private List<Hpack.Header> mResponseHeaders;
+    @NonNull private final Deque<Chunk> mChunks = new ArrayDeque<>();
+    private boolean mIsFinished;
+    private boolean mIsClosed;
+    @Nullable private IOException mError;
+
+    Http2Stream(
+            @NonNull Http2Connection connection,
+            int id,
+            long sendWindow,
+            int receiveWindow,
+            long readTimeoutMs) {
+        mConnection = connection;
+        mId = id;
+        mSendWindow = sendWindow;
+        mReceiveWindow = receiveWindow;
+        mReadTimeoutMs = readTimeoutMs;
+    }
+
+    /**
+     * Wait for the response headers.
+     *
+     * @return the headers of the final response, including {@code :status}
+     * @throws IOException if the stream failed, or no response arrived within the read timeout
+     */
+    @NonNull
+    List<Hpack.Header> awaitResponseHeaders() throws IOException {
+        synchronized (mConnection) {
+            long deadlineMs = nowMs() + mReadTimeoutMs;
+            while (mResponseHeaders == null) {
+                throwIfFailed();
+                waitUntil(deadlineMs);
+            }
+            return mResponseHeaders;
+        }
+    }
+
+    /**
+     * @return the response body, which blocks until data arrives
+     */
+    @NonNull
+    InputStream getBody() {
+        return mBody;
+    }
+
+    /**
+     * Finish with the stream. If the server has not finished sending the response, it is told
+     * to stop.
+     */
+    void close() {
+        boolean reset;
+        synchronized (mConnection) {
+            if (mIsClosed) {
+                return;
+            }
+            mIsClosed = true;
+            reset = !mIsFinished && mError == null;
+            mChunks.clear();
+        }
+        mConnection.removeStream(this, reset);
+    }
+
+    // Called by the connection's reader, holding the connection's lock.
+
+    void onHeaders(@NonNull List<Hpack.Header> headers, boolean endStream) {
+        if (mResponseHeaders == null) {
+            String status = getStatus(headers);
+            if (status != null && status.startsWith("1")) {
+                // An informational response; the real one follows.
+                return;
+            }
+            mResponseHeaders = headers;
+        }
+        // Anything after the response headers is trailers, which are of no use here.
+        if (endStream) {
+            mIsFinished = true;
+        }
+        mConnection.notifyAll();
+    }
+
+    /**
+     * @return {@code false} if the server sent more than it was allowed to
+     */
+    boolean onData(@NonNull byte[] data, int offset, int length, boolean endStream) {
+        if (length > mReceiveWindow) {
+            return false;
+        }
+        mReceiveWindow -= length;
+        if (length > 0 && !mIsClosed) {
+            mChunks.add(new Chunk(data, offset, offset + length));
+        }
+        if (endStream) {
+            mIsFinished = true;
+        }
+        mConnection.notifyAll();
+        return true;
+    }
+
+    void onError(@NonNull IOException error) {
+        if (mError == null && !mIsFinished) {
+            mError = error;
+        }
+        mConnection.notifyAll();
+    }
+
+    boolean isFinished() {
+        return mIsFinished;
+    }
+
+    boolean isClosed() {
+        return mIsClosed;
+    }
+
+    /**
+     * @throws IOException the error the stream failed with, if any
+     */
+    void throwIfFailed() throws IOException {
+        if (mError != null) {
+            // Thrown from the caller's thread, so that its stack trace shows up.
+            IOException error = mError instanceof Http2Connection.StreamRefusedException
+                    ? new Http2Connection.StreamRefusedException(mError.getMessage())
+                    : new IOException(mError.getMessage());
+            error.initCause(mError);
+            throw error;
+        }
+    }
+
+    @Nullable
+    static String getStatus(@NonNull List<Hpack.Header> headers) {
+        for (Hpack.Header header : headers) {
+            if (":status".equals(header.name)) {
+                return header.value;
+            }
+        }
+        return null;
+    }
+
+    private void waitUntil(long deadlineMs) throws IOException {
+        long remainingMs = deadlineMs - nowMs();
+        if (remainingMs <= 0) {
+            throw new SocketTimeoutException("Timed out waiting for HTTP/2 stream " + mId);
+        }
+        try {
+            mConnection.wait(remainingMs);
+        } catch (InterruptedException interrupted) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for HTTP/2 stream");
+        }
+    }
+
+    private static long nowMs() {
+        return System.nanoTime() / 1000000L;
+    }
+
+    private final class Body extends InputStream {
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(@NonNull byte[] buffer, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            int read;
+            synchronized (mConnection) {
+                if (mIsClosed) {
+                    throw new IOException("HTTP/2 stream closed");
+                }
+                long deadlineMs = nowMs() + mReadTimeoutMs;
+                while (mChunks.isEmpty() && !mIsFinished) {
+                    throwIfFailed();
+                    waitUntil(deadlineMs);
+                }
+                Chunk chunk = mChunks.peek();
+                if (chunk == null) {
+                    return -1;
+                }
+                read = Math.min(length, chunk.mLimit - chunk.mPosition);
+                System.arraycopy(chunk.mData, chunk.mPosition, buffer, offset, read);
+                chunk.mPosition += read;
+                if (chunk.mPosition == chunk.mLimit) {
+                    mChunks.poll();
+                }
+            }
+            // Let the server send more once the data has been taken off our hands.
+            mConnection.onDataConsumed(Http2Stream.this, read);
+            return read;
+        }
+
+        @Override
+        public int available() {
+            synchronized (mConnection) {
+                Chunk chunk = mChunks.peek();
+                return chunk == null ? 0 : chunk.mLimit - chunk.mPosition;
+            }
+        }
+
+        @Override
+        public void close() {
+            Http2Stream.this.close();
+        }
+    }
+
+    private static final class Chunk {
+        @NonNull final byte[] mData;
+        int mPosition;
+        final int mLimit;
+
+        Chunk(@NonNull byte[] data, int position, int limit) {
+            mData = data;
+            mPosition = position;
+            mLimit = limit;
+        }
+    }
+}
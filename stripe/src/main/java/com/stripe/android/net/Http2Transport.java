@@ -0,0 +1,502 @@
+package com.stripe.android.net;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLPeerUnverifiedException;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+import static com.stripe.android.net.StripeApiHandler.CHARSET;
+import static com.stripe.android.net.StripeApiHandler.GET;
+import static com.stripe.android.net.StripeApiHandler.POST;
+
+/**
+ * An {@link HttpTransport} that sends requests over HTTP/2 where the server supports it, so that
+ * requests made at the same time, such as creating a card source, a 3D Secure source and
+ * retrieving a third, share one connection per host instead of opening one each.
+ *
+ * Whether a host speaks HTTP/2 is negotiated during the TLS handshake. Hosts that do not, and
+ * devices whose TLS provider cannot negotiate it, are sent requests through a fallback
+ * transport over HTTP/1.1 instead. This transport is not the default; to use it, pass it to
+ * {@link StripeApiHandler#setHttpTransport(HttpTransport)}.
+ */
+public class Http2Transport implements StreamingHttpTransport {
+
+    static final long DEFAULT_IDLE_TIMEOUT_MS = 5L * 60L * 1000L; // five minutes
+
+    private static final String HTTP_1_1 = "http/1.1";
+
+    // Headers that only mean something on an HTTP/1.1 connection, and are not allowed in HTTP/2.
+    private static final Set<String> CONNECTION_HEADERS = new HashSet<>(Arrays.asList(
+            "connection", "host", "keep-alive", "proxy-connection", "te", "transfer-encoding",
+            "upgrade"));
+
+    @NonNull private final StreamingHttpTransport mFallback;
+    @NonNull private final DnsResolver mDnsResolver;
+    @NonNull private final SSLSocketFactory mSslSocketFactory;
+    @NonNull private final Set<String> mCleartextHosts;
+    private final int mConnectTimeoutMs;
+    private final int mReadTimeoutMs;
+    private final long mIdleTimeoutMs;
+    @NonNull private final TransferStats mTransferStats = new TransferStats();
+
+    // Guarded by this.
+    @NonNull private final Map<String, HostEntry> mHosts = new HashMap<>();
+    private int mConnectCount;
+
+    /**
+     * Create a transport that falls back to a default {@link UrlConnectionHttpTransport}.
+     */
+    public Http2Transport() {
+        this(new UrlConnectionHttpTransport());
+    }
+
+    /**
+     * Create a transport with a custom fallback. The transport gets its own
+     * {@link CachingDnsResolver}.
+     *
+     * @param fallback the transport used for hosts that do not speak HTTP/2
+     */
+    public Http2Transport(@NonNull StreamingHttpTransport fallback) {
+        this(fallback, new CachingDnsResolver());
+    }
+
+    /**
+     * Create a transport with a custom fallback and {@link DnsResolver}.
+     *
+     * @param fallback the transport used for hosts that do not speak HTTP/2
+     * @param dnsResolver the resolver used to look up each host this transport connects to
+     *                    itself. The fallback looks up hosts its own way.
+     */
+    public Http2Transport(
+            @NonNull StreamingHttpTransport fallback,
+            @NonNull DnsResolver dnsResolver) {
+        this(fallback,
+                dnsResolver,
+                UrlConnectionHttpTransport.SSL_SOCKET_FACTORY,
+                Collections.<String>emptySet(),
+                UrlConnectionHttpTransport.DEFAULT_CONNECT_TIMEOUT_MS,
+                UrlConnectionHttpTransport.DEFAULT_READ_TIMEOUT_MS,
+                DEFAULT_IDLE_TIMEOUT_MS);
+    }
+
+    /**
+     * @param cleartextHosts host keys, as returned by {@link ConnectionLimiter#hostKey(URL)}, that
+     *                       are known to speak HTTP/2 without TLS. Other {@code http} URLs are
+     *                       sent through the fallback.
+     */
+    @VisibleForTesting
+    Http2Transport(
+            @NonNull StreamingHttpTransport fallback,
+            @NonNull DnsResolver dnsResolver,
+            @NonNull SSLSocketFactory sslSocketFactory,
+            @NonNull Set<String> cleartextHosts,
+            int connectTimeoutMs,
+            int readTimeoutMs,
+            long idleTimeoutMs) {
+        mFallback = fallback;
+        mDnsResolver = dnsResolver;
+        mSslSocketFactory = sslSocketFactory;
+        mCleartextHosts = cleartextHosts;
+        mConnectTimeoutMs = connectTimeoutMs;
+        mReadTimeoutMs = readTimeoutMs;
+        mIdleTimeoutMs = idleTimeoutMs;
+    }
+
+    @NonNull
+    @Override
+    public StripeResponse execute(
+            @NonNull String method,
+            @NonNull String url,
+            @Nullable String query,
+            @NonNull Map<String, String> headers) throws IOException {
+        return execute(method, url, query, headers, new ResponseHandler<StripeResponse>() {
+            @Override
+            public StripeResponse handleResponse(
+                    int responseCode,
+                    @Nullable Map<String, List<String>> responseHeaders,
+                    @Nullable InputStream body,
+                    int contentLength) throws IOException {
+                return new StripeResponse(
+                        responseCode,
+                        ResponseBodyReader.readString(body, contentLength),
+                        responseHeaders);
+            }
+        });
+    }
+
+    @Override
+    public <T> T execute(
+            @NonNull String method,
+            @NonNull String url,
+            @Nullable String query,
+            @NonNull Map<String, String> headers,
+            @NonNull ResponseHandler<T> handler) throws IOException {
+        URL requestUrl = new URL(
+                GET.equals(method) ? UrlConnectionHttpTransport.formatURL(url, query) : url);
+        for (int attempt = 1; ; attempt++) {
+            Http2Connection connection = getConnection(requestUrl);
+            if (connection == null) {
+                return mFallback.execute(method, url, query, headers, handler);
+            }
+
+            try {
+                return exchange(connection, method, requestUrl, query, headers, handler);
+            } catch (Http2Connection.StreamRefusedException refused) {
+                // The server did not process the request, so it is safe to send it again on a
+                // new connection, but only once.
+                if (attempt > 1) {
+                    throw refused;
+                }
+            }
+        }
+    }
+
+    /**
+     * Open an HTTP/2 connection to the host of the given URL ahead of the first request to it.
+     * If the host does not speak HTTP/2, the fallback is warmed up instead, if it can be.
+     *
+     * @param url a URL on the host to connect to
+     * @return {@code true} if an HTTP/2 connection to the host is open
+     * @throws IOException if the host could not be reached
+     */
+    public boolean warmUp(@NonNull String url) throws IOException {
+        if (getConnection(new URL(url)) != null) {
+            return true;
+        }
+        if (mFallback instanceof UrlConnectionHttpTransport) {
+            ((UrlConnectionHttpTransport) mFallback).warmUp(url);
+        }
+        return false;
+    }
+
+    /**
+     * Close every HTTP/2 connection once its requests have finished, for instance when the app
+     * goes to the background. Connections that the fallback keeps alive belong to the platform's
+     * keep-alive cache and are left to it.
+     */
+    public void evictAll() {
+        List<HostEntry> entries;
+        synchronized (this) {
+            entries = new ArrayList<>(mHosts.values());
+        }
+        for (HostEntry entry : entries) {
+            synchronized (entry) {
+                if (entry.mConnection != null) {
+                    entry.mConnection.retire();
+                    entry.mConnection = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the number of HTTP/2 connections opened so far
+     */
+    synchronized int getConnectCount() {
+        return mConnectCount;
+    }
+
+    /**
+     * @return the totals of responses received over HTTP/2; those sent through the fallback
+     * are counted by it
+     */
+    @NonNull
+    TransferStats getTransferStats() {
+        return mTransferStats;
+    }
+
+    /**
+     * @return an HTTP/2 connection to the host of the URL, or {@code null} if the host is to be
+     * sent requests over HTTP/1.1
+     */
+    @Nullable
+    private Http2Connection getConnection(@NonNull URL url) throws IOException {
+        String host = ConnectionLimiter.hostKey(url);
+        boolean isTls = "https".equals(url.getProtocol());
+        if (!isTls && !mCleartextHosts.contains(host)) {
+            return null;
+        }
+
+        HostEntry entry;
+        synchronized (this) {
+            entry = mHosts.get(host);
+            if (entry == null) {
+                entry = new HostEntry();
+                mHosts.put(host, entry);
+            }
+        }
+
+        // Requests to a host that has no connection yet wait here for the first one to open
+        // it, rather than each opening their own.
+        synchronized (entry) {
+            if (entry.mIsHttp11Only) {
+                return null;
+            }
+
+            Http2Connection connection = entry.mConnection;
+            if (connection != null && connection.isUsable()) {
+                if (connection.getIdleMs() < mIdleTimeoutMs) {
+                    return connection;
+                }
+                // Idle for so long that the server has probably dropped it.
+                connection.retire();
+            }
+            entry.mConnection = null;
+
+            Socket socket = connect(url, isTls);
+            if (socket == null) {
+                entry.mIsHttp11Only = true;
+                return null;
+            }
+            connection = Http2Connection.start(socket);
+            entry.mConnection = connection;
+            synchronized (this) {
+                mConnectCount++;
+            }
+            return connection;
+        }
+    }
+
+    /**
+     * @return a socket that speaks HTTP/2, or {@code null} if the server or the device could not
+     * agree on it
+     */
+    @Nullable
+    private Socket connect(@NonNull URL url, boolean isTls) throws IOException {
+        String host = url.getHost();
+        int port = url.getPort() == -1 ? url.getDefaultPort() : url.getPort();
+        RequestTrace trace = RequestTrace.current();
+        long dnsStart = System.nanoTime();
+        List<InetAddress> addresses = mDnsResolver.resolve(host);
+        long connectStart = System.nanoTime();
+        if (trace != null) {
+            trace.add(RequestMetrics.PHASE_DNS, connectStart - dnsStart);
+        }
+        Socket socket = connectSocket(addresses, port);
+        Socket result = null;
+        try {
+            if (!isTls) {
+                result = socket;
+            } else {
+                SSLSocket sslSocket =
+                        (SSLSocket) mSslSocketFactory.createSocket(socket, host, port, true);
+                if (Alpn.setProtocols(sslSocket, Http2Connection.PROTOCOL, HTTP_1_1)) {
+                    sslSocket.startHandshake();
+                    if (trace != null) {
+                        trace.onTlsHandshake();
+                    }
+                    if (!HttpsURLConnection.getDefaultHostnameVerifier()
+                            .verify(host, sslSocket.getSession())) {
+                        throw new SSLPeerUnverifiedException("Hostname " + host + " not verified");
+                    }
+                    if (Http2Connection.PROTOCOL.equals(Alpn.getSelectedProtocol(sslSocket))) {
+                        result = sslSocket;
+                    }
+                }
+            }
+            if (result != null) {
+                // Reads now happen on the connection's own thread, which waits for frames for
+                // as long as the connection is open. Each request enforces its own timeout.
+                result.setSoTimeout(0);
+            }
+            return result;
+        } finally {
+            if (trace != null) {
+                trace.onConnect(connectStart, System.nanoTime());
+            }
+            if (result == null) {
+                socket.close();
+            }
+        }
+    }
+
+    @NonNull
+    private Socket connectSocket(
+            @NonNull List<InetAddress> addresses,
+            int port) throws IOException {
+        IOException lastFailure = null;
+        for (InetAddress address : addresses) {
+            Socket socket = new Socket();
+            try {
+                socket.setTcpNoDelay(true);
+                socket.setSoTimeout(mReadTimeoutMs);
+                socket.connect(new InetSocketAddress(address, port), mConnectTimeoutMs);
+                return socket;
+            } catch (IOException e) {
+                socket.close();
+                lastFailure = e;
+            }
+        }
+        throw lastFailure != null ? lastFailure : new IOException("No addresses to connect to");
+    }
+
+    private <T> T exchange(
+            @NonNull Http2Connection connection,
+            @NonNull String method,
+            @NonNull URL url,
+            @Nullable String query,
+            @NonNull Map<String, String> headers,
+            @NonNull ResponseHandler<T> handler) throws IOException {
+        byte[] body = null;
+        List<Hpack.Header> requestHeaders = new ArrayList<>(headers.size() + 6);
+        requestHeaders.add(new Hpack.Header(":method", method));
+        requestHeaders.add(new Hpack.Header(":scheme", url.getProtocol()));
+        requestHeaders.add(new Hpack.Header(":authority", getAuthority(url)));
+        String path = url.getFile();
+        requestHeaders.add(new Hpack.Header(":path", path.isEmpty() ? "/" : path));
+        boolean hasAcceptEncoding = false;
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            String name = header.getKey().toLowerCase(Locale.ENGLISH);
+            if (!CONNECTION_HEADERS.contains(name)) {
+                requestHeaders.add(new Hpack.Header(name, header.getValue()));
+                hasAcceptEncoding |= "accept-encoding".equals(name);
+            }
+        }
+        if (!hasAcceptEncoding) {
+            requestHeaders.add(
+                    new Hpack.Header("accept-encoding", ContentDecoder.ACCEPT_ENCODING));
+        }
+        if (POST.equals(method)) {
+            // The query is already form-encoded, so it is plain ASCII.
+            body = query == null ? new byte[0] : query.getBytes(CHARSET);
+            requestHeaders.add(new Hpack.Header("content-type", String.format(
+                    "application/x-www-form-urlencoded;charset=%s", CHARSET)));
+            requestHeaders.add(new Hpack.Header("content-length", String.valueOf(body.length)));
+        }
+
+        RequestTrace trace = RequestTrace.current();
+        long writeStart = System.nanoTime();
+        Http2Stream stream = connection.newStream(requestHeaders, body, mReadTimeoutMs);
+        long requestSent = System.nanoTime();
+        if (trace != null) {
+            trace.add(RequestMetrics.PHASE_REQUEST_WRITE, requestSent - writeStart);
+            trace.onRequestBody(body == null ? 0 : body.length);
+        }
+        CountingInputStream wireBody = new CountingInputStream(stream.getBody());
+        CountingInputStream decodedBody = null;
+        InputStream responseBody = wireBody;
+        try {
+            List<Hpack.Header> responseHeaders = stream.awaitResponseHeaders();
+            if (trace != null) {
+                trace.add(RequestMetrics.PHASE_TIME_TO_FIRST_BYTE,
+                        System.nanoTime() - requestSent);
+            }
+            Map<String, List<String>> headerMap = toHeaderMap(responseHeaders);
+            String contentEncoding = ContentDecoder.getContentEncoding(headerMap);
+            int contentLength = getContentLength(responseHeaders);
+            if (ContentDecoder.isEncoded(contentEncoding)) {
+                decodedBody = new CountingInputStream(
+                        ContentDecoder.decode(contentEncoding, wireBody));
+                responseBody = decodedBody;
+                // The length on the wire says nothing about the decoded length.
+                contentLength = -1;
+            }
+            long handleStart = System.nanoTime();
+            T result = handler.handleResponse(
+                    getResponseCode(responseHeaders), headerMap, responseBody, contentLength);
+            // Whatever the handler left unread is consumed, so that the stream ends cleanly
+            // rather than being reset. Long leftovers are reset when the stream closes.
+            ResponseBodyReader.drain(wireBody);
+            long decodedCount =
+                    decodedBody == null ? wireBody.getCount() : decodedBody.getCount();
+            mTransferStats.record(wireBody.getCount(), decodedCount, decodedBody != null);
+            if (trace != null) {
+                trace.onResponseBody(wireBody, decodedCount, System.nanoTime() - handleStart);
+            }
+            return result;
+        } catch (SocketTimeoutException timeout) {
+            // A connection that stopped answering is given no more requests.
+            connection.retire();
+            throw timeout;
+        } finally {
+            try {
+                // Frees the decoder, if there is one.
+                responseBody.close();
+            } finally {
+                stream.close();
+            }
+        }
+    }
+
+    @NonNull
+    private static String getAuthority(@NonNull URL url) {
+        int port = url.getPort();
+        return port == -1 || port == url.getDefaultPort()
+                ? url.getHost()
+                : url.getHost() + ":" + port;
+    }
+
+    private static int getResponseCode(@NonNull List<Hpack.Header> headers) throws IOException {
+        String status = Http2Stream.getStatus(headers);
+        try {
+            return Integer.parseInt(status);
+        } catch (NumberFormatException invalid) {
+            throw new IOException("Invalid HTTP/2 response status: " + status);
+        }
+    }
+
+    private static int getContentLength(@NonNull List<Hpack.Header> headers) {
+        for (Hpack.Header header : headers) {
+            if ("content-length".equals(header.name)) {
+                try {
+                    return Integer.parseInt(header.value);
+                } catch (NumberFormatException invalid) {
+                    return -1;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the headers in the form {@link java.net.HttpURLConnection} gives them, except that
+     * names are looked up ignoring case, since HTTP/2 sends them all in lower case
+     */
+    @NonNull
+    private static Map<String, List<String>> toHeaderMap(@NonNull List<Hpack.Header> headers) {
+        Map<String, List<String>> map = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (Hpack.Header header : headers) {
+            if (header.name.startsWith(":")) {
+                continue;
+            }
+            List<String> values = map.get(header.name);
+            if (values == null) {
+                values = new ArrayList<>(1);
+                map.put(header.name, values);
+            }
+            values.add(header.value);
+        }
+        return map;
+    }
+
+    /**
+     * What is known about a host: its connection, or that it does not speak HTTP/2.
+     */
+    private static final class HostEntry {
+        // Guarded by the entry.
+        @Nullable Http2Connection mConnection;
+        boolean mIsHttp11Only;
+    }
+}
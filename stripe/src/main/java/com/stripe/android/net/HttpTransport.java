@@ -0,0 +1,33 @@
+package com.stripe.android.net;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Represents something that can send an HTTP request to a Stripe server and read its response.
+ * The default implementation is {@link UrlConnectionHttpTransport}; a different one can be
+ * supplied through {@link StripeApiHandler#setHttpTransport(HttpTransport)}.
+ */
+public interface HttpTransport {
+
+    /**
+     * Send a request and block until its full response has been read.
+     *
+     * @param method the HTTP method, either {@code GET} or {@code POST}
+     * @param url the URL to send the request to, without a query string
+     * @param query the form-encoded parameters of the request. These are appended to the URL for
+     *              a {@code GET} and written as the body of a {@code POST}.
+     * @param headers the request headers
+     * @return the {@link StripeResponse} read from the server
+     * @throws IOException if the request could not be sent or the response could not be read
+     */
+    @NonNull
+    StripeResponse execute(
+            @NonNull String method,
+            @NonNull String url,
+            @Nullable String query,
+            @NonNull Map<String, String> headers) throws IOException;
+}
@@ -0,0 +1,76 @@
+package com.stripe.android.net;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.JsonReader;
+import android.util.MalformedJsonException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.List;
+import java.util.Map;
+
+import static com.stripe.android.net.StripeApiHandler.CHARSET;
+
+/**
+ * A {@link StreamingHttpTransport.ResponseHandler} that parses the response with a
+ * {@link JsonReader} as it is read from the network. Successful responses are handed to
+ * {@link #parse(JsonReader)}; error responses are parsed with
+ * {@link ErrorParser#parseError(JsonReader)}. An error response without a body, which includes
+ * a {@code 304 Not Modified}, comes with an error saying the response was malformed; only a
+ * caller that sent {@code If-None-Match} knows to expect a {@code 304}, and checks for it first.
+ *
+ * @param <T> the type of a successful response's body
+ */
+abstract class JsonResponseHandler<T>
+        implements StreamingHttpTransport.ResponseHandler<ParsedResponse<T>> {
+
+    @NonNull
+    @Override
+    public ParsedResponse<T> handleResponse(
+            int responseCode,
+            @Nullable Map<String, List<String>> responseHeaders,
+            @Nullable InputStream body,
+            int contentLength) throws IOException {
+        boolean successful = responseCode >= 200 && responseCode < 300;
+        if (body == null || contentLength == 0) {
+            ErrorParser.StripeError error = null;
+            if (!successful) {
+                error = new ErrorParser.StripeError();
+                error.message = ErrorParser.MALFORMED_RESPONSE_MESSAGE;
+            }
+            return new ParsedResponse<>(responseCode, responseHeaders, null, error);
+        }
+
+        // The reader is deliberately not closed: that would close the body, which the transport
+        // still has to drain and close itself.
+        JsonReader reader = new JsonReader(new InputStreamReader(body, CHARSET));
+        if (!successful) {
+            return new ParsedResponse<>(
+                    responseCode, responseHeaders, null, ErrorParser.parseError(reader));
+        }
+
+        T parsed;
+        try {
+            parsed = parse(reader);
+        } catch (IllegalStateException invalidJson) {
+            parsed = null;
+        } catch (NumberFormatException invalidNumber) {
+            parsed = null;
+        } catch (MalformedJsonException malformedJson) {
+            parsed = null;
+        }
+        return new ParsedResponse<>(responseCode, responseHeaders, parsed, null);
+    }
+
+    /**
+     * Parse the body of a successful response.
+     *
+     * @param reader a {@link JsonReader} positioned at the start of the body
+     * @return the parsed body, or {@code null} if it does not describe a {@code T}
+     * @throws IOException if the body could not be read
+     */
+    @Nullable
+    abstract T parse(@NonNull JsonReader reader) throws IOException;
+}
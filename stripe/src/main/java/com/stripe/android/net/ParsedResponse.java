@@ -0,0 +1,93 @@
+package com.stripe.android.net;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A response whose body was parsed while it was read from the network, by a
+ * {@link JsonResponseHandler}.
+ *
+ * @param <T> the type of a successful response's body
+ */
+final class ParsedResponse<T> {
+
+    private static final String HEADER_REQUEST_ID = "Request-Id";
+
+    private final int mResponseCode;
+    @Nullable private final Map<String, List<String>> mResponseHeaders;
+    @Nullable private final T mBody;
+    @Nullable private final ErrorParser.StripeError mError;
+
+    ParsedResponse(
+            int responseCode,
+            @Nullable Map<String, List<String>> responseHeaders,
+            @Nullable T body,
+            @Nullable ErrorParser.StripeError error) {
+        mResponseCode = responseCode;
+        mResponseHeaders = responseHeaders;
+        mBody = body;
+        mError = error;
+    }
+
+    int getResponseCode() {
+        return mResponseCode;
+    }
+
+    boolean isSuccessful() {
+        return mResponseCode >= 200 && mResponseCode < 300;
+    }
+
+    @Nullable
+    Map<String, List<String>> getResponseHeaders() {
+        return mResponseHeaders;
+    }
+
+    /**
+     * @return the parsed body of a successful response, or {@code null} if the response failed or
+     * its body could not be parsed
+     */
+    @Nullable
+    T getBody() {
+        return mBody;
+    }
+
+    /**
+     * @return the error sent with a failed response, or {@code null} if the response succeeded
+     */
+    @Nullable
+    ErrorParser.StripeError getError() {
+        return mError;
+    }
+
+    @Nullable
+    String getRequestId() {
+        if (mResponseHeaders == null) {
+            return null;
+        }
+        List<String> requestIdList = getHeader(mResponseHeaders, HEADER_REQUEST_ID);
+        return requestIdList == null || requestIdList.isEmpty() ? null : requestIdList.get(0);
+    }
+
+    /**
+     * Look up a header by name, ignoring case.
+     */
+    @Nullable
+    static List<String> getHeader(
+            @NonNull Map<String, List<String>> headers,
+            @NonNull String name) {
+        List<String> values = headers.get(name);
+        if (values != null) {
+            return values;
+        }
+        // Header names are case-insensitive, and not every server sends them as documented.
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            if (name.equalsIgnoreCase(header.getKey())) {
+                return header.getValue();
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,31 @@
+package com.stripe.android.net;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Represents the clock a source poll keeps time with: where its polls, results and timeouts
+ * are run, and when. A {@link PollingNetworkHandler} does nothing but post work to its clocks,
+ * so the same polling logic runs on the main thread, on the thread of a synchronous caller, or
+ * in virtual time.
+ */
+interface PollingClock {
+
+    /**
+     * @return the current time in milliseconds, on the clock's own time base
+     */
+    long uptimeMillis();
+
+    /**
+     * Run a task once the delay has passed.
+     *
+     * @param task the task to run
+     * @param token an object that identifies the task to {@link #cancel(Object)}
+     * @param delayMs the delay before the task is run
+     */
+    void postDelayed(@NonNull Runnable task, @NonNull Object token, long delayMs);
+
+    /**
+     * Cancel every task posted with the given token that has not started yet.
+     */
+    void cancel(@NonNull Object token);
+}
@@ -0,0 +1,91 @@
+package com.stripe.android.net;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.StringDef;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+
+/**
+ * A handle on a source poll started with {@link com.stripe.android.Stripe#pollSource}. It tells
+ * whether the poll is still running, and can cancel it once its result is no longer wanted, for
+ * example when the user leaves the screen that started it.
+ */
+public class PollingHandle {
+
+    @Retention(RetentionPolicy.SOURCE)
+    @StringDef({
+            ACTIVE,
+            COMPLETED,
+            CANCELED
+    })
+    public @interface PollingState { }
+    public static final String ACTIVE = "active";
+    public static final String COMPLETED = "completed";
+    public static final String CANCELED = "canceled";
+
+    @NonNull private final Canceller mCanceller;
+    @NonNull @PollingState private String mState = ACTIVE;
+
+    PollingHandle(@NonNull Canceller canceller) {
+        mCanceller = canceller;
+    }
+
+    /**
+     * @return {@link #ACTIVE} while the poll is running, {@link #COMPLETED} once the
+     * {@link PollingResponseHandler} has been called, or {@link #CANCELED} if the poll was
+     * canceled first
+     */
+    @NonNull
+    @PollingState
+    public synchronized String getState() {
+        return mState;
+    }
+
+    /**
+     * @return {@code true} if the poll is still running
+     */
+    public boolean isActive() {
+        return ACTIVE.equals(getState());
+    }
+
+    /**
+     * Stop polling. The {@link PollingResponseHandler} will not be called, and any pending
+     * polls, timers and threads that were only kept for this poll are released straight away.
+     * If other callers are polling the same source, their poll carries on.
+     *
+     * A network request that is already under way is left to finish, but its result is ignored.
+     *
+     * @return {@code true} if the poll was canceled, or {@code false} if it had already completed
+     * or been canceled
+     */
+    public boolean cancel() {
+        if (!isActive() || !mCanceller.cancel(this)) {
+            return false;
+        }
+
+        synchronized (this) {
+            mState = CANCELED;
+        }
+        return true;
+    }
+
+    /**
+     * Mark the poll as completed, just before its callback is made.
+     */
+    synchronized void complete() {
+        if (ACTIVE.equals(mState)) {
+            mState = COMPLETED;
+        }
+    }
+
+    /**
+     * Represents something that can stop the poll behind a handle.
+     */
+    interface Canceller {
+        /**
+         * @return {@code true} if the poll was stopped before its callback was made
+         */
+        boolean cancel(@NonNull PollingHandle handle);
+    }
+}
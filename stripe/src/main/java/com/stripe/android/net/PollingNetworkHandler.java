@@ -1,9 +1,6 @@
 package com.stripe.android.net;
 
-import android.os.Handler;
-import android.os.HandlerThread;
 import android.os.Looper;
-import android.os.Message;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.annotation.VisibleForTesting;
@@ -11,68 +8,63 @@ import android.support.annotation.VisibleForTesting;
 import com.stripe.android.exception.StripeException;
 import com.stripe.android.model.Source;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
- * Class to handle polling on a background thread.
+ * The state machine behind every source poll. It retrieves the source, waits as its
+ * {@link PollingStrategy} says while the source is pending or requests fail, and stops once the
+ * source is chargeable, consumed, canceled or failed, or once too many requests have failed.
+ * Results are delivered to every {@link PollingResponseHandler} that has
+ * {@link #subscribe(PollingResponseHandler, Integer) subscribed} to this poll and whose
+ * {@link PollingHandle} has not been canceled, or that it has expired once its own timeout
+ * passes. Polling stops as soon as no callbacks are left.
+ *
+ * The handler itself never blocks or starts a thread. Its results, timeouts and callbacks run on
+ * a {@link PollingClock}, the main thread's unless another is given, and its polls on the shared
+ * {@link PollingScheduler} if there is one, or on the same clock if not. That is how one state
+ * machine serves asynchronous polls, {@link PollingSyncNetworkHandler synchronous} ones that run
+ * on their caller's thread, and simulations that run in virtual time.
  */
 class PollingNetworkHandler {
 
-    private static final int SUCCESS = 1;
-    private static final int PENDING = 2;
-    private static final int FAILURE = 3;
-    private static final int ERROR = -1;
-    private static final int EXPIRED = -2;
-
     private final String mClientSecret;
     private final String mPublishableKey;
     private final String mSourceId;
 
     private final long mTimeoutMs;
-    private final boolean mIsInSingleThreadMode;
     private final PollingParameters mPollingParameters;
+    @NonNull private final PollingStrategy mPollingStrategy;
+    @NonNull private final PollingResponseHandler mCallback;
+    @Nullable private final PollingScheduler mScheduler;
 
-    private Handler mNetworkHandler;
-    private Handler mUiHandler;
+    @NonNull private final PollingClock mClock;
+    @NonNull private final PollingClock mPollClock;
 
-    @Nullable private Source mLatestRetrievedSource;
+    @Nullable private volatile Source mLatestRetrievedSource;
     private int mRetryCount;
-    @NonNull private SourceRetriever mSourceRetriever;
+    private int mPendingCount;
+    @NonNull private volatile SourceRetriever mSourceRetriever;
+
+    // Guarded by this.
+    @NonNull private final List<Subscriber> mSubscribers = new ArrayList<>();
+    private boolean mTerminated;
 
     private final Runnable pollRunnable = new Runnable() {
         @Override
         public void run() {
-            Message message = null;
+            Source source = null;
+            StripeException exception = null;
             try {
-                Source source = mSourceRetriever.retrieveSource(
+                source = mSourceRetriever.retrieveSource(
                         mSourceId,
                         mClientSecret,
                         mPublishableKey);
-                mLatestRetrievedSource = source;
-                if (source.getStatus() != null) {
-                    switch (source.getStatus()) {
-                        case Source.PENDING:
-                            message = mUiHandler.obtainMessage(PENDING);
-                            break;
-                        case Source.CHARGEABLE:
-                            message = mUiHandler.obtainMessage(SUCCESS, source);
-                            break;
-                        case Source.CONSUMED:
-                            message = mUiHandler.obtainMessage(SUCCESS, source);
-                            break;
-                        case Source.CANCELED:
-                            message = mUiHandler.obtainMessage(FAILURE, source);
-                            break;
-                        case Source.FAILED:
-                            message = mUiHandler.obtainMessage(FAILURE, source);
-                            break;
-                    }
-                }
             } catch (StripeException stripeEx) {
-                message = mUiHandler.obtainMessage(ERROR, stripeEx);
-            } finally {
-                if (message != null) {
-                    mUiHandler.sendMessage(message);
-                }
+                exception = stripeEx;
             }
+            mClock.postDelayed(
+                    new PollResult(source, exception), PollingNetworkHandler.this, 0L);
         }
     };
 
@@ -82,13 +74,44 @@ class PollingNetworkHandler {
                           @NonNull final PollingResponseHandler callback,
                           @Nullable Integer timeOutMs,
                           @Nullable SourceRetriever sourceRetriever,
-                          @NonNull final PollingParameters pollingParameters) {
+                          @NonNull final PollingParameters pollingParameters,
+                          @NonNull PollingStrategy pollingStrategy,
+                          @Nullable PollingScheduler scheduler) {
+        this(sourceId,
+                clientSecret,
+                publishableKey,
+                callback,
+                timeOutMs,
+                sourceRetriever,
+                pollingParameters,
+                pollingStrategy,
+                new HandlerPollingClock(Looper.getMainLooper()),
+                scheduler);
+    }
+
+    /**
+     * @param clock the {@link PollingClock} that results, timeouts and callbacks run on
+     * @param scheduler the {@link PollingScheduler} to run polls on, or {@code null} to run them
+     *                  on the clock
+     */
+    PollingNetworkHandler(@NonNull final String sourceId,
+                          @NonNull final String clientSecret,
+                          @NonNull final String publishableKey,
+                          @NonNull final PollingResponseHandler callback,
+                          @Nullable Integer timeOutMs,
+                          @Nullable SourceRetriever sourceRetriever,
+                          @NonNull final PollingParameters pollingParameters,
+                          @NonNull PollingStrategy pollingStrategy,
+                          @NonNull PollingClock clock,
+                          @Nullable PollingScheduler scheduler) {
 
         mSourceId = sourceId;
         mClientSecret = clientSecret;
         mPublishableKey = publishableKey;
-        mIsInSingleThreadMode = sourceRetriever != null;
+        mCallback = callback;
+        mScheduler = scheduler;
         mPollingParameters = pollingParameters;
+        mPollingStrategy = pollingStrategy;
         mSourceRetriever = sourceRetriever == null
                 ? new SourceRetriever() {
                     @Override
@@ -96,110 +119,25 @@ class PollingNetworkHandler {
                             @NonNull String sourceId,
                             @NonNull String clientSecret,
                             @NonNull String publishableKey) throws StripeException {
+                        // Polling backs off on its own, so each poll is a single attempt,
+                        // and it is waiting for a change, so a pending source is fetched anew.
                         return StripeApiHandler.retrieveSource(
                                 sourceId,
                                 clientSecret,
-                                publishableKey);
+                                publishableKey,
+                                RetryPolicy.NONE,
+                                false);
                     }
                 }
                 : sourceRetriever;
 
-        mTimeoutMs = timeOutMs == null
-                ? mPollingParameters.getDefaultTimeoutMs()
-                : Math.min(timeOutMs.longValue(), mPollingParameters.getMaxTimeoutMs());
+        mTimeoutMs = getTimeoutMs(timeOutMs, pollingParameters);
 
         mRetryCount = 0;
+        mPendingCount = 0;
 
-        mUiHandler = new Handler(Looper.getMainLooper()) {
-            int delayMs = mPollingParameters.getInitialDelayMsInt();
-            boolean terminated = false;
-
-            @Override
-            public void handleMessage(Message msg) {
-                super.handleMessage(msg);
-                if (terminated) {
-                    return;
-                }
-
-                switch (msg.what) {
-                    case SUCCESS:
-                        terminated = true;
-                        callback.onPollingResponse(
-                                new PollingResponse((Source) msg.obj, true, false));
-                        removeCallbacksAndMessages(null);
-                        break;
-                    case PENDING:
-                        mRetryCount = 0;
-                        delayMs = mPollingParameters.getInitialDelayMsInt();
-                        mNetworkHandler.sendEmptyMessage(delayMs);
-                        break;
-                    case FAILURE:
-                        terminated = true;
-                        callback.onPollingResponse(
-                                new PollingResponse((Source) msg.obj, false, false));
-                        removeCallbacksAndMessages(null);
-                        break;
-                    case EXPIRED:
-                        terminated = true;
-                        callback.onPollingResponse(
-                                new PollingResponse(mLatestRetrievedSource, false, true));
-                        removeCallbacksAndMessages(null);
-                        break;
-                    case ERROR:
-                        mRetryCount++;
-                        if (mRetryCount >= mPollingParameters.getMaxRetryCount()) {
-                            terminated = true;
-                            callback.onPollingResponse(
-                                    new PollingResponse(mLatestRetrievedSource,
-                                            (StripeException) msg.obj));
-                            removeCallbacksAndMessages(null);
-                        } else {
-                            // We get this case for 500-errors
-                            delayMs = Math.min(
-                                    delayMs * mPollingParameters.getPollingMultiplier(),
-                                    (int) mPollingParameters.getMaxDelayMs());
-                            mNetworkHandler.sendEmptyMessage(delayMs);
-                        }
-                        break;
-                    default:
-                        break;
-                }
-            }
-        };
-
-        HandlerThread handlerThread = null;
-        if (!mIsInSingleThreadMode) {
-            handlerThread = new HandlerThread("Network Handler Thread");
-            handlerThread.start();
-        }
-
-        final Looper looper = mIsInSingleThreadMode
-                ? Looper.getMainLooper()
-                : handlerThread.getLooper();
-        mNetworkHandler = new Handler(looper) {
-            boolean terminated = false;
-
-            @Override
-            public void handleMessage(Message msg) {
-                super.handleMessage(msg);
-                if (terminated) {
-                    return;
-                }
-
-                if (msg.what >= 0) {
-                    postDelayed(pollRunnable, msg.what);
-                } else {
-                    terminated = true;
-                    if (!mIsInSingleThreadMode) {
-                        looper.quit();
-                    }
-                    mUiHandler.removeMessages(SUCCESS);
-                    mUiHandler.removeMessages(PENDING);
-                    mUiHandler.removeMessages(FAILURE);
-                    removeCallbacks(pollRunnable);
-                }
-            }
-        };
+        mClock = clock;
+        mPollClock = scheduler == null ? clock : scheduler;
     }
 
     @VisibleForTesting
@@ -217,9 +155,220 @@ class PollingNetworkHandler {
         mSourceRetriever = sourceRetriever;
     }
 
-    void start() {
-        mNetworkHandler.post(pollRunnable);
-        mNetworkHandler.sendEmptyMessageDelayed(EXPIRED, mTimeoutMs);
-        mUiHandler.sendEmptyMessageDelayed(EXPIRED, mTimeoutMs);
+    /**
+     * @return the source as last retrieved, if it has been
+     */
+    @Nullable
+    Source getLatestRetrievedSource() {
+        return mLatestRetrievedSource;
+    }
+
+    /**
+     * Start polling. This must only be called once.
+     *
+     * @return a {@link PollingHandle} for the callback this handler was created with
+     */
+    @NonNull
+    PollingHandle start() {
+        Subscriber subscriber = new Subscriber(mCallback);
+        synchronized (this) {
+            mSubscribers.add(subscriber);
+            mClock.postDelayed(subscriber, subscriber, mTimeoutMs);
+        }
+        schedulePoll(0L);
+        return subscriber.mHandle;
+    }
+
+    /**
+     * Check whether this handler polls the given source.
+     */
+    boolean isPolling(
+            @NonNull String sourceId,
+            @NonNull String clientSecret,
+            @NonNull String publishableKey) {
+        return mSourceId.equals(sourceId)
+                && mClientSecret.equals(clientSecret)
+                && mPublishableKey.equals(publishableKey);
+    }
+
+    /**
+     * Add a callback to a poll that has already been started. The callback is told about the
+     * result of the poll, or that it has expired if there is no result within its own timeout.
+     *
+     * @param callback the {@link PollingResponseHandler} to call on the clock
+     * @param timeOutMs the amount of time before the polling expires for this callback, or
+     *                  {@code null} to use the default
+     * @return a {@link PollingHandle} for the callback, or {@code null} if this poll has already
+     * finished and the callback will not be called
+     */
+    @Nullable
+    synchronized PollingHandle subscribe(
+            @NonNull PollingResponseHandler callback,
+            @Nullable Integer timeOutMs) {
+        if (mTerminated) {
+            return null;
+        }
+
+        Subscriber subscriber = new Subscriber(callback);
+        mSubscribers.add(subscriber);
+        mClock.postDelayed(subscriber, subscriber, getTimeoutMs(timeOutMs, mPollingParameters));
+        return subscriber.mHandle;
+    }
+
+    private synchronized boolean isTerminated() {
+        return mTerminated;
+    }
+
+    /**
+     * Act on the result of a poll. Runs on the clock.
+     */
+    private void onPollResult(@Nullable Source source, @Nullable StripeException exception) {
+        if (isTerminated()) {
+            return;
+        }
+
+        if (exception != null) {
+            mRetryCount++;
+            long delayMs = mPollingStrategy.getErrorDelayMs(exception, mRetryCount);
+            if (delayMs == PollingStrategy.STOP) {
+                finish(new PollingResponse(mLatestRetrievedSource, exception));
+            } else {
+                // We get this case for 500-errors
+                schedulePoll(delayMs);
+            }
+            return;
+        }
+
+        mLatestRetrievedSource = source;
+        String status = source == null ? null : source.getStatus();
+        if (Source.CHARGEABLE.equals(status) || Source.CONSUMED.equals(status)) {
+            finish(new PollingResponse(source, true, false));
+        } else if (Source.CANCELED.equals(status) || Source.FAILED.equals(status)) {
+            finish(new PollingResponse(source, false, false));
+        } else {
+            // Still pending, or a source we could not make sense of: ask again later.
+            mRetryCount = 0;
+            mPendingCount++;
+            schedulePoll(mPollingStrategy.getPendingDelayMs(mPendingCount));
+        }
+    }
+
+    private void schedulePoll(long delayMs) {
+        // The clock is not called while holding our lock, since the scheduler calls us with its
+        // own.
+        mPollClock.postDelayed(pollRunnable, this, delayMs);
+        if (isTerminated()) {
+            mPollClock.cancel(this);
+        }
+    }
+
+    private void finish(@NonNull PollingResponse response) {
+        List<Subscriber> subscribers;
+        synchronized (this) {
+            if (mTerminated) {
+                return;
+            }
+            mTerminated = true;
+            subscribers = new ArrayList<>(mSubscribers);
+            mSubscribers.clear();
+        }
+
+        stop();
+        for (Subscriber subscriber : subscribers) {
+            mClock.cancel(subscriber);
+            subscriber.mHandle.complete();
+            subscriber.mCallback.onPollingResponse(response);
+        }
+    }
+
+    private void expire(@NonNull Subscriber subscriber) {
+        if (remove(subscriber)) {
+            subscriber.mHandle.complete();
+            subscriber.mCallback.onPollingResponse(
+                    new PollingResponse(mLatestRetrievedSource, false, true));
+        }
+    }
+
+    private boolean cancel(@NonNull Subscriber subscriber) {
+        if (!remove(subscriber)) {
+            return false;
+        }
+
+        mClock.cancel(subscriber);
+        return true;
+    }
+
+    /**
+     * Remove a subscriber that has not been called back yet, and stop polling if it was the last
+     * one.
+     *
+     * @return {@code true} if the subscriber was removed, or {@code false} if it has already been
+     * called back or removed
+     */
+    private boolean remove(@NonNull Subscriber subscriber) {
+        boolean isLastSubscriber;
+        synchronized (this) {
+            if (mTerminated || !mSubscribers.remove(subscriber)) {
+                return false;
+            }
+            isLastSubscriber = mSubscribers.isEmpty();
+            mTerminated = isLastSubscriber;
+        }
+
+        if (isLastSubscriber) {
+            stop();
+        }
+        return true;
+    }
+
+    private void stop() {
+        mClock.cancel(this);
+        mPollClock.cancel(this);
+        if (mScheduler != null) {
+            mScheduler.onPollFinished(mSourceId, this);
+        }
+    }
+
+    static long getTimeoutMs(
+            @Nullable Integer timeOutMs,
+            @NonNull PollingParameters pollingParameters) {
+        return timeOutMs == null
+                ? pollingParameters.getDefaultTimeoutMs()
+                : Math.min(timeOutMs.longValue(), pollingParameters.getMaxTimeoutMs());
+    }
+
+    private final class PollResult implements Runnable {
+        @Nullable private final Source mSource;
+        @Nullable private final StripeException mException;
+
+        PollResult(@Nullable Source source, @Nullable StripeException exception) {
+            mSource = source;
+            mException = exception;
+        }
+
+        @Override
+        public void run() {
+            onPollResult(mSource, mException);
+        }
+    }
+
+    private final class Subscriber implements Runnable, PollingHandle.Canceller {
+        @NonNull final PollingResponseHandler mCallback;
+        @NonNull final PollingHandle mHandle;
+
+        Subscriber(@NonNull PollingResponseHandler callback) {
+            mCallback = callback;
+            mHandle = new PollingHandle(this);
+        }
+
+        @Override
+        public void run() {
+            expire(this);
+        }
+
+        @Override
+        public boolean cancel(@NonNull PollingHandle handle) {
+            return PollingNetworkHandler.this.cancel(this);
+        }
     }
 }
@@ -42,10 +42,6 @@ class PollingParameters {
         return mInitialDelayMs;
     }
 
-    int getInitialDelayMsInt() {
-        return (int) mInitialDelayMs;
-    }
-
     long getMaxDelayMs() {
         return mMaxDelayMs;
     }
@@ -0,0 +1,228 @@
+package com.stripe.android.net;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs every asynchronous source poll on one shared timer thread and a small pool of worker
+ * threads, instead of starting a thread per poll. The timer only hands polls that are due to the
+ * workers, so a slow response never delays the polls of other sources. The timer thread is
+ * stopped when there is nothing left to poll, and started again for the next poll.
+ *
+ * Polls for the same source are coalesced: a second request for a source that is already being
+ * polled joins the running poll and is told about the same result, subject to its own timeout.
+ */
+final class PollingScheduler implements PollingClock {
+
+    static final int WORKER_THREAD_COUNT = 2;
+    private static final long KEEP_ALIVE_SECONDS = 30L;
+
+    @Nullable private static PollingScheduler sInstance;
+
+    @Nullable private final SourceRetriever mSourceRetriever;
+    @NonNull private final PollingParameters mPollingParameters;
+    @Nullable private final PollingStrategy mPollingStrategy;
+    @NonNull private final Executor mWorkers;
+    @Nullable private final Looper mTimerLooper;
+
+    // Guarded by this.
+    @NonNull private final Map<String, PollingNetworkHandler> mActivePolls = new HashMap<>();
+    @Nullable private HandlerThread mTimerThread;
+    @Nullable private Handler mTimer;
+    private int mRunningPollCount;
+
+    /**
+     * @param sourceRetriever the {@link SourceRetriever} to poll with, or {@code null} to call
+     *                        {@link StripeApiHandler#retrieveSource(String, String, String)}
+     * @param pollingParameters the {@link PollingParameters} to poll with
+     * @param pollingStrategy the {@link PollingStrategy} that spaces out the polls, or
+     *                        {@code null} to use the one set on {@link StripeApiHandler} when
+     *                        each poll starts
+     * @param workers the {@link Executor} that the polls run on
+     * @param timerLooper the {@link Looper} to time polls on, or {@code null} to start a timer
+     *                    thread whenever there are polls to time
+     */
+    @VisibleForTesting
+    PollingScheduler(
+            @Nullable SourceRetriever sourceRetriever,
+            @NonNull PollingParameters pollingParameters,
+            @Nullable PollingStrategy pollingStrategy,
+            @NonNull Executor workers,
+            @Nullable Looper timerLooper) {
+        mSourceRetriever = sourceRetriever;
+        mPollingParameters = pollingParameters;
+        mPollingStrategy = pollingStrategy;
+        mWorkers = workers;
+        mTimerLooper = timerLooper;
+    }
+
+    @NonNull
+    static synchronized PollingScheduler getInstance() {
+        if (sInstance == null) {
+            PollingParameters pollingParameters = PollingParameters.generateDefaultParameters();
+            sInstance = new PollingScheduler(
+                    null,
+                    pollingParameters,
+                    null,
+                    createWorkers(),
+                    null);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Poll a source until it is chargeable, consumed, canceled or failed, or until the timeout.
+     * If the source is already being polled, the callback joins that poll instead.
+     *
+     * @param sourceId the {@link com.stripe.android.model.Source#mId} to check on
+     * @param clientSecret the {@link com.stripe.android.model.Source#mClientSecret} to check on
+     * @param publishableKey an API key
+     * @param callback a {@link PollingResponseHandler} to call on the main thread
+     * @param timeoutMs the amount of time before the polling expires for this callback, or
+     *                  {@code null} to use the default
+     * @return a {@link PollingHandle} that can cancel the poll for this callback
+     */
+    @NonNull
+    synchronized PollingHandle poll(
+            @NonNull String sourceId,
+            @NonNull String clientSecret,
+            @NonNull String publishableKey,
+            @NonNull PollingResponseHandler callback,
+            @Nullable Integer timeoutMs) {
+        PollingNetworkHandler activePoll = mActivePolls.get(sourceId);
+        if (activePoll != null && activePoll.isPolling(sourceId, clientSecret, publishableKey)) {
+            PollingHandle handle = activePoll.subscribe(callback, timeoutMs);
+            if (handle != null) {
+                return handle;
+            }
+        }
+
+        if (mTimer == null) {
+            if (mTimerLooper == null) {
+                mTimerThread = new HandlerThread("Stripe Polling Timer");
+                mTimerThread.start();
+                mTimer = new Handler(mTimerThread.getLooper());
+            } else {
+                mTimer = new Handler(mTimerLooper);
+            }
+        }
+
+        PollingNetworkHandler poll = new PollingNetworkHandler(
+                sourceId,
+                clientSecret,
+                publishableKey,
+                callback,
+                timeoutMs,
+                mSourceRetriever,
+                mPollingParameters,
+                mPollingStrategy == null
+                        ? StripeApiHandler.getPollingStrategy(mPollingParameters)
+                        : mPollingStrategy,
+                this);
+        mActivePolls.put(sourceId, poll);
+        mRunningPollCount++;
+        return poll.start();
+    }
+
+    @VisibleForTesting
+    synchronized int getActivePollCount() {
+        return mActivePolls.size();
+    }
+
+    @VisibleForTesting
+    synchronized boolean hasTimerThread() {
+        return mTimerThread != null;
+    }
+
+    @Override
+    public long uptimeMillis() {
+        return SystemClock.uptimeMillis();
+    }
+
+    /**
+     * Run a poll on a worker thread once the delay has passed.
+     *
+     * @param poll the poll to run
+     * @param token an object that identifies the poll to {@link #cancel(Object)}
+     * @param delayMs the delay before the poll is run
+     */
+    @Override
+    public synchronized void postDelayed(
+            @NonNull final Runnable poll,
+            @NonNull Object token,
+            long delayMs) {
+        if (mTimer == null) {
+            return;
+        }
+
+        mTimer.postAtTime(new Runnable() {
+            @Override
+            public void run() {
+                mWorkers.execute(poll);
+            }
+        }, token, SystemClock.uptimeMillis() + delayMs);
+    }
+
+    /**
+     * Cancel every poll scheduled with the given token, apart from those already handed to a
+     * worker.
+     */
+    @Override
+    public synchronized void cancel(@NonNull Object token) {
+        if (mTimer != null) {
+            mTimer.removeCallbacksAndMessages(token);
+        }
+    }
+
+    /**
+     * Called by a poll once it has finished, so that later requests for the source start a new
+     * poll.
+     */
+    synchronized void onPollFinished(
+            @NonNull String sourceId,
+            @NonNull PollingNetworkHandler poll) {
+        if (mActivePolls.get(sourceId) == poll) {
+            mActivePolls.remove(sourceId);
+        }
+
+        mRunningPollCount--;
+        if (mRunningPollCount == 0 && mTimerThread != null) {
+            mTimerThread.quit();
+            mTimerThread = null;
+            mTimer = null;
+        }
+    }
+
+    @NonNull
+    private static Executor createWorkers() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                WORKER_THREAD_COUNT,
+                WORKER_THREAD_COUNT,
+                KEEP_ALIVE_SECONDS,
+                TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(@NonNull Runnable runnable) {
+                        Thread thread = new Thread(runnable, "Stripe Polling Thread");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
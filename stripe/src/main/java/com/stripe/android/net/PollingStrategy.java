@@ -0,0 +1,33 @@
+package com.stripe.android.net;
+
+import android.support.annotation.NonNull;
+
+import com.stripe.android.exception.StripeException;
+
+/**
+ * Decides how long to wait between the requests made while polling a source. The default backs
+ * off exponentially; to use another, pass it to
+ * {@link StripeApiHandler#setPollingStrategy(PollingStrategy)}.
+ */
+public interface PollingStrategy {
+
+    /**
+     * Returned by {@link #getErrorDelayMs(StripeException, int)} to stop polling.
+     */
+    long STOP = -1L;
+
+    /**
+     * @param pendingCount the number of times in a row the source has been found pending,
+     *                     starting at 1
+     * @return the delay before the source is retrieved again
+     */
+    long getPendingDelayMs(int pendingCount);
+
+    /**
+     * @param exception the exception thrown by the last attempt to retrieve the source
+     * @param errorCount the number of attempts in a row that have failed, starting at 1
+     * @return the delay before the source is retrieved again, or {@link #STOP} to stop polling
+     * and report the exception
+     */
+    long getErrorDelayMs(@NonNull StripeException exception, int errorCount);
+}
@@ -1,16 +1,16 @@
 package com.stripe.android.net;
 
-import android.os.SystemClock;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.annotation.VisibleForTesting;
 
-import com.stripe.android.exception.StripeException;
-import com.stripe.android.model.Source;
-
 /**
  * A synchronous polling manager that does not manage which thread
- * it is run on.
+ * it is run on. It runs the same {@link PollingNetworkHandler} as an asynchronous poll, on a
+ * {@link ThreadPollingClock} that the calling thread drives until there is a result.
+ *
+ * Interrupting the calling thread stops the poll at once. The poll is then reported as expired,
+ * and the thread is left interrupted so that its owner can see why.
  */
 class PollingSyncNetworkHandler {
 
@@ -18,10 +18,12 @@ class PollingSyncNetworkHandler {
     @NonNull private final String mClientSecret;
     @NonNull private final String mPublishableKey;
     @NonNull private final PollingParameters mPollingParameters;
-    @NonNull private SourceRetriever mSourceRetriever;
-    @NonNull private TimeRetriever mTimeRetriever;
+    @NonNull private final PollingStrategy mPollingStrategy;
+    @NonNull private final ThreadPollingClock mClock;
+    @Nullable private final SourceRetriever mSourceRetriever;
+    @Nullable private final Integer mTimeOutMsParam;
 
-    private long mTimeOutMs;
+    private final long mTimeOutMs;
 
     PollingSyncNetworkHandler(
             @NonNull final String sourceId,
@@ -29,107 +31,82 @@ class PollingSyncNetworkHandler {
             @NonNull final String publishableKey,
             @Nullable Integer timeOutMs,
             @Nullable SourceRetriever sourceRetriever,
-            @Nullable TimeRetriever timeRetriever,
             @NonNull final PollingParameters pollingParameters) {
+        this(sourceId,
+                clientSecret,
+                publishableKey,
+                timeOutMs,
+                sourceRetriever,
+                pollingParameters,
+                StripeApiHandler.getPollingStrategy(pollingParameters),
+                new ThreadPollingClock());
+    }
+
+    /**
+     * @param pollingStrategy the {@link PollingStrategy} that spaces out the polls
+     * @param clock the {@link ThreadPollingClock} to poll on, which must not be shared with any
+     *              other synchronous poll
+     */
+    @VisibleForTesting
+    PollingSyncNetworkHandler(
+            @NonNull final String sourceId,
+            @NonNull final String clientSecret,
+            @NonNull final String publishableKey,
+            @Nullable Integer timeOutMs,
+            @Nullable SourceRetriever sourceRetriever,
+            @NonNull final PollingParameters pollingParameters,
+            @NonNull PollingStrategy pollingStrategy,
+            @NonNull ThreadPollingClock clock) {
         mSourceId = sourceId;
         mClientSecret = clientSecret;
         mPublishableKey = publishableKey;
         mPollingParameters = pollingParameters;
-        mTimeOutMs = timeOutMs == null ?
-                mPollingParameters.getDefaultTimeoutMs()
-                : Math.min(timeOutMs.longValue(), mPollingParameters.getMaxTimeoutMs());
-
-        mSourceRetriever = sourceRetriever == null ? generateSourceRetriever() : sourceRetriever;
-        mTimeRetriever = timeRetriever == null ? generateTimeRetriever() : timeRetriever;
+        mPollingStrategy = pollingStrategy;
+        mClock = clock;
+        mSourceRetriever = sourceRetriever;
+        mTimeOutMsParam = timeOutMs;
+        mTimeOutMs = PollingNetworkHandler.getTimeoutMs(timeOutMs, pollingParameters);
     }
 
     @NonNull
     PollingResponse pollForSourceUpdate() {
-        Source source = null;
-        int errorCount = 0;
-        long delayMs = mPollingParameters.getInitialDelayMs();
-        long startTime = mTimeRetriever.getCurrentTimeInMillis();
-        do {
-            long timeWaited = mTimeRetriever.getCurrentTimeInMillis() - startTime;
-            if (timeWaited > mTimeOutMs) {
-                break;
-            }
-
-            try {
-                source = mSourceRetriever.retrieveSource(
-                        mSourceId,
-                        mClientSecret,
-                        mPublishableKey);
-                delayMs = mPollingParameters.getInitialDelayMs();
-                errorCount = 0;
-            } catch (StripeException stripeEx) {
-                if (++errorCount >= mPollingParameters.getMaxRetryCount()) {
-                    return new PollingResponse(source, stripeEx);
-                }
-                delayMs =
-                        Math.min(
-                                delayMs * mPollingParameters.getPollingMultiplier(),
-                                mPollingParameters.getMaxDelayMs());
-            }
-
-            if (source != null) {
-                switch (source.getStatus()) {
-                    case Source.CHARGEABLE:
-                        return new PollingResponse(source, true, false);
-                    case Source.CONSUMED:
-                        return new PollingResponse(source, true, false);
-                    case Source.CANCELED:
-                        return new PollingResponse(source, false, false);
-                    case Source.FAILED:
-                        return new PollingResponse(source, false, false);
-                    default:
-                        // Then the source is still PENDING
-                        break;
-                }
-            }
-
-            try {
-                synchronized (this) {
-                    wait(delayMs);
-                }
-            } catch (InterruptedException ignored) {
-                // This will decrease our wait time, but our timeout and
-                // max retries will be unaffected.
+        final PollingResponse[] result = new PollingResponse[1];
+        PollingNetworkHandler poll = new PollingNetworkHandler(
+                mSourceId,
+                mClientSecret,
+                mPublishableKey,
+                new PollingResponseHandler() {
+                    @Override
+                    public void onPollingResponse(@NonNull PollingResponse pollingResponse) {
+                        result[0] = pollingResponse;
+                    }
+                },
+                mTimeOutMsParam,
+                mSourceRetriever,
+                mPollingParameters,
+                mPollingStrategy,
+                mClock,
+                null);
+        PollingHandle handle = poll.start();
+
+        try {
+            while (result[0] == null && mClock.runNext()) {
+                // Every task runs on this thread, so the result is set by one of them.
             }
-        } while (source == null || Source.PENDING.equals(source.getStatus()));
-
-        return new PollingResponse(source, false, true);
+        } catch (InterruptedException interrupted) {
+            handle.cancel();
+            Thread.currentThread().interrupt();
+        }
+
+        // Without a result the poll was interrupted, or ran out of work without expiring, which
+        // is reported the same way.
+        return result[0] == null
+                ? new PollingResponse(poll.getLatestRetrievedSource(), false, true)
+                : result[0];
     }
 
     @VisibleForTesting
     long getTimeOutMs() {
         return mTimeOutMs;
     }
-
-    interface TimeRetriever {
-        long getCurrentTimeInMillis();
-    }
-
-    @NonNull
-    private static SourceRetriever generateSourceRetriever() {
-        return new SourceRetriever() {
-            @Override
-            public Source retrieveSource(
-                    @NonNull String sourceId,
-                    @NonNull String clientSecret,
-                    @NonNull String publishableKey) throws StripeException {
-                return StripeApiHandler.retrieveSource(sourceId, clientSecret, publishableKey);
-            }
-        };
-    }
-
-    @NonNull
-    private static TimeRetriever generateTimeRetriever() {
-        return new TimeRetriever() {
-            @Override
-            public long getCurrentTimeInMillis() {
-                return SystemClock.uptimeMillis();
-            }
-        };
-    }
 }
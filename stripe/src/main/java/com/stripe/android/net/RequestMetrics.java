@@ -0,0 +1,366 @@
+package com.stripe.android.net;
+
+import android.support.annotation.IntDef;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.StringDef;
+
+import com.stripe.android.exception.APIConnectionException;
+import com.stripe.android.exception.AuthenticationException;
+import com.stripe.android.exception.CardException;
+import com.stripe.android.exception.InvalidRequestException;
+import com.stripe.android.exception.PermissionException;
+import com.stripe.android.exception.RateLimitException;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Where the time went in one request to the Stripe API, as reported to a
+ * {@link RequestMetricsListener}.
+ *
+ * The time of each phase is summed over every attempt the request took. A phase that did not
+ * happen, such as the TLS handshake of a request that reused a connection, or that the
+ * {@link HttpTransport} in use cannot see, has a duration of {@code -1}. Byte counts are of
+ * request and response bodies.
+ */
+public final class RequestMetrics {
+
+    @Retention(RetentionPolicy.SOURCE)
+    @IntDef({
+            PHASE_DNS,
+            PHASE_CONNECT,
+            PHASE_TLS,
+            PHASE_REQUEST_WRITE,
+            PHASE_TIME_TO_FIRST_BYTE,
+            PHASE_BODY_READ,
+            PHASE_PARSE,
+            PHASE_CALLBACK_DISPATCH,
+            PHASE_TOTAL
+    })
+    public @interface Phase { }
+    /** Looking up the host's addresses. */
+    public static final int PHASE_DNS = 0;
+    /** Opening the TCP connection. */
+    public static final int PHASE_CONNECT = 1;
+    /** The TLS handshake. */
+    public static final int PHASE_TLS = 2;
+    /** Sending the request body. */
+    public static final int PHASE_REQUEST_WRITE = 3;
+    /** From the request being sent until the response headers arrive. */
+    public static final int PHASE_TIME_TO_FIRST_BYTE = 4;
+    /** Waiting for the response body to arrive. */
+    public static final int PHASE_BODY_READ = 5;
+    /** Decompressing and parsing the response body. */
+    public static final int PHASE_PARSE = 6;
+    /** From the result being ready until its callback is called on the main thread. */
+    public static final int PHASE_CALLBACK_DISPATCH = 7;
+    /** The whole request, not counting {@link #PHASE_CALLBACK_DISPATCH}. */
+    public static final int PHASE_TOTAL = 8;
+
+    static final int PHASE_COUNT = 9;
+
+    @Retention(RetentionPolicy.SOURCE)
+    @StringDef({
+            OUTCOME_SUCCESS,
+            OUTCOME_CONNECTION_ERROR,
+            OUTCOME_INVALID_REQUEST,
+            OUTCOME_AUTHENTICATION_ERROR,
+            OUTCOME_PERMISSION_ERROR,
+            OUTCOME_CARD_ERROR,
+            OUTCOME_RATE_LIMITED,
+            OUTCOME_API_ERROR
+    })
+    public @interface Outcome { }
+    public static final String OUTCOME_SUCCESS = "success";
+    public static final String OUTCOME_CONNECTION_ERROR = "connection_error";
+    public static final String OUTCOME_INVALID_REQUEST = "invalid_request";
+    public static final String OUTCOME_AUTHENTICATION_ERROR = "authentication_error";
+    public static final String OUTCOME_PERMISSION_ERROR = "permission_error";
+    public static final String OUTCOME_CARD_ERROR = "card_error";
+    public static final String OUTCOME_RATE_LIMITED = "rate_limited";
+    public static final String OUTCOME_API_ERROR = "api_error";
+
+    // Metrics held back on a thread until their result has been dispatched.
+    private static final ThreadLocal<PendingDelivery> HELD = new ThreadLocal<>();
+
+    @NonNull private final String mMethod;
+    @NonNull private final String mUrl;
+    @NonNull @Outcome private final String mOutcome;
+    private final int mResponseCode;
+    @Nullable private final String mRequestId;
+    private final int mAttemptCount;
+    @NonNull private final long[] mDurationsNanos;
+    private final int mTlsHandshakeCount;
+    private final int mResumedTlsHandshakeCount;
+    private final long mBytesOut;
+    private final long mBytesIn;
+    private final long mDecodedBytesIn;
+
+    RequestMetrics(
+            @NonNull String method,
+            @NonNull String url,
+            @NonNull @Outcome String outcome,
+            int responseCode,
+            @Nullable String requestId,
+            int attemptCount,
+            @NonNull long[] durationsNanos,
+            int tlsHandshakeCount,
+            int resumedTlsHandshakeCount,
+            long bytesOut,
+            long bytesIn,
+            long decodedBytesIn) {
+        mMethod = method;
+        mUrl = url;
+        mOutcome = outcome;
+        mResponseCode = responseCode;
+        mRequestId = requestId;
+        mAttemptCount = attemptCount;
+        mDurationsNanos = durationsNanos;
+        mTlsHandshakeCount = tlsHandshakeCount;
+        mResumedTlsHandshakeCount = resumedTlsHandshakeCount;
+        mBytesOut = bytesOut;
+        mBytesIn = bytesIn;
+        mDecodedBytesIn = decodedBytesIn;
+    }
+
+    /**
+     * @return the HTTP method, {@code GET} or {@code POST}
+     */
+    @NonNull
+    public String getMethod() {
+        return mMethod;
+    }
+
+    /**
+     * @return the URL requested, without its query
+     */
+    @NonNull
+    public String getUrl() {
+        return mUrl;
+    }
+
+    /**
+     * @return how the request ended, one of the {@code OUTCOME_} constants
+     */
+    @NonNull
+    @Outcome
+    public String getOutcome() {
+        return mOutcome;
+    }
+
+    /**
+     * @return the HTTP status of the last response, or {@code -1} if none was received
+     */
+    public int getResponseCode() {
+        return mResponseCode;
+    }
+
+    /**
+     * @return the {@code Request-Id} of the last response, if it had one
+     */
+    @Nullable
+    public String getRequestId() {
+        return mRequestId;
+    }
+
+    /**
+     * @return the number of times the request was sent
+     */
+    public int getAttemptCount() {
+        return mAttemptCount;
+    }
+
+    /**
+     * @return the number of times the request was sent again after failing
+     */
+    public int getRetryCount() {
+        return Math.max(0, mAttemptCount - 1);
+    }
+
+    /**
+     * @param phase one of the {@code PHASE_} constants
+     * @return the time spent in the phase in nanoseconds, or {@code -1} if it was not measured
+     */
+    public long getDurationNanos(@Phase int phase) {
+        return mDurationsNanos[phase];
+    }
+
+    /**
+     * @param phase one of the {@code PHASE_} constants
+     * @return the time spent in the phase in milliseconds, or {@code -1} if it was not measured
+     */
+    public long getDurationMs(@Phase int phase) {
+        long nanos = mDurationsNanos[phase];
+        return nanos < 0 ? -1L : nanos / 1000000L;
+    }
+
+    /**
+     * @return the number of TLS handshakes the request made, {@code 0} if every connection it
+     * used was reused or the {@link HttpTransport} in use cannot see them
+     */
+    public int getTlsHandshakeCount() {
+        return mTlsHandshakeCount;
+    }
+
+    /**
+     * @return the number of those handshakes that resumed an earlier TLS session rather than
+     * performing a full handshake
+     */
+    public int getResumedTlsHandshakeCount() {
+        return mResumedTlsHandshakeCount;
+    }
+
+    /**
+     * @return the bytes of request body sent
+     */
+    public long getBytesOut() {
+        return mBytesOut;
+    }
+
+    /**
+     * @return the bytes of response body received, as they came over the network
+     */
+    public long getBytesIn() {
+        return mBytesIn;
+    }
+
+    /**
+     * @return the bytes of response body received, after decompression
+     */
+    public long getDecodedBytesIn() {
+        return mDecodedBytesIn;
+    }
+
+    @Override
+    public String toString() {
+        return "RequestMetrics{" + mMethod + " " + mUrl
+                + ", outcome=" + mOutcome
+                + ", responseCode=" + mResponseCode
+                + ", attempts=" + mAttemptCount
+                + ", durationsNanos=" + Arrays.toString(mDurationsNanos)
+                + ", tlsHandshakes=" + mTlsHandshakeCount
+                + ", resumedTlsHandshakes=" + mResumedTlsHandshakeCount
+                + ", bytesOut=" + mBytesOut
+                + ", bytesIn=" + mBytesIn
+                + ", decodedBytesIn=" + mDecodedBytesIn
+                + "}";
+    }
+
+    /**
+     * Hold back the metrics of requests made on this thread until their result has been handed
+     * to its callback, so that the time that took can be added. This is how
+     * {@link com.stripe.android.RequestEngine} measures {@link #PHASE_CALLBACK_DISPATCH}; apps
+     * have no need to call it.
+     *
+     * @return the held metrics, or {@code null} if no {@link RequestMetricsListener} is set
+     */
+    @Nullable
+    public static PendingDelivery holdForCallback() {
+        if (StripeApiHandler.getRequestMetricsListener() == null) {
+            return null;
+        }
+        PendingDelivery pending = new PendingDelivery();
+        HELD.set(pending);
+        return pending;
+    }
+
+    /**
+     * Report metrics now, or hold them back if the thread they were collected on asked for that.
+     */
+    static void report(@NonNull RequestMetrics metrics) {
+        PendingDelivery pending = HELD.get();
+        if (pending != null) {
+            pending.add(metrics);
+            return;
+        }
+        RequestMetricsListener listener = StripeApiHandler.getRequestMetricsListener();
+        if (listener != null) {
+            listener.onRequestMetrics(metrics);
+        }
+    }
+
+    /**
+     * @return the outcome of a request that ended with the given exception, or succeeded if it
+     * is {@code null}
+     */
+    @NonNull
+    @Outcome
+    static String getOutcome(@Nullable Exception error) {
+        if (error == null) {
+            return OUTCOME_SUCCESS;
+        } else if (error instanceof APIConnectionException) {
+            return OUTCOME_CONNECTION_ERROR;
+        } else if (error instanceof RateLimitException) {
+            return OUTCOME_RATE_LIMITED;
+        } else if (error instanceof InvalidRequestException) {
+            return OUTCOME_INVALID_REQUEST;
+        } else if (error instanceof PermissionException) {
+            return OUTCOME_PERMISSION_ERROR;
+        } else if (error instanceof AuthenticationException) {
+            return OUTCOME_AUTHENTICATION_ERROR;
+        } else if (error instanceof CardException) {
+            return OUTCOME_CARD_ERROR;
+        }
+        // APIException, and anything the response handlers throw that is not a StripeException.
+        return OUTCOME_API_ERROR;
+    }
+
+    @NonNull
+    private RequestMetrics withCallbackDispatch(long dispatchNanos) {
+        long[] durations = mDurationsNanos.clone();
+        durations[PHASE_CALLBACK_DISPATCH] = dispatchNanos;
+        return new RequestMetrics(mMethod, mUrl, mOutcome, mResponseCode, mRequestId,
+                mAttemptCount, durations, mTlsHandshakeCount, mResumedTlsHandshakeCount,
+                mBytesOut, mBytesIn, mDecodedBytesIn);
+    }
+
+    /**
+     * Metrics held back by {@link #holdForCallback()}.
+     */
+    public static final class PendingDelivery {
+
+        // Guarded by this.
+        @NonNull private final List<RequestMetrics> mMetrics = new ArrayList<>(1);
+
+        private PendingDelivery() { }
+
+        /**
+         * Stop holding back metrics collected on the calling thread. Call this on the thread
+         * that called {@link #holdForCallback()} once its request has returned.
+         */
+        public void detach() {
+            if (HELD.get() == this) {
+                HELD.remove();
+            }
+        }
+
+        /**
+         * Report the held metrics.
+         *
+         * @param callbackDispatchNanos how long the result took to reach its callback, or
+         *                              {@code -1} if it never did
+         */
+        public void deliver(long callbackDispatchNanos) {
+            List<RequestMetrics> metrics;
+            synchronized (this) {
+                metrics = new ArrayList<>(mMetrics);
+                mMetrics.clear();
+            }
+            RequestMetricsListener listener = StripeApiHandler.getRequestMetricsListener();
+            if (listener == null) {
+                return;
+            }
+            for (RequestMetrics held : metrics) {
+                listener.onRequestMetrics(held.withCallbackDispatch(callbackDispatchNanos));
+            }
+        }
+
+        private synchronized void add(@NonNull RequestMetrics metrics) {
+            mMetrics.add(metrics);
+        }
+    }
+}
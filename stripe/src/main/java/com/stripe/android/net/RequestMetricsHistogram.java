@@ -0,0 +1,155 @@
+package com.stripe.android.net;
+
+import android.support.annotation.NonNull;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A {@link RequestMetricsListener} that adds up the metrics of every request into a histogram
+ * per phase, so that their distribution can be read without keeping each request around.
+ *
+ * The buckets are fixed, going up in steps of 1, 2 and 5 from one millisecond to a minute, so
+ * the histograms of several devices or sessions can be added bucket by bucket. A percentile is
+ * reported as the upper bound of the bucket it falls in.
+ */
+public class RequestMetricsHistogram implements RequestMetricsListener {
+
+    private static final long[] BUCKET_UPPER_BOUNDS_MS = {
+            1L, 2L, 5L,
+            10L, 20L, 50L,
+            100L, 200L, 500L,
+            1000L, 2000L, 5000L,
+            10000L, 20000L, 60000L
+    };
+
+    // One bucket per bound, and one for everything slower than the last.
+    @NonNull private final int[][] mBucketCounts =
+            new int[RequestMetrics.PHASE_COUNT][BUCKET_UPPER_BOUNDS_MS.length + 1];
+    @NonNull private final long[] mMaxMs = new long[RequestMetrics.PHASE_COUNT];
+    @NonNull private final Map<String, Integer> mOutcomeCounts = new HashMap<>();
+
+    private int mRequestCount;
+    private int mRetryCount;
+    private long mBytesOut;
+    private long mBytesIn;
+    private long mDecodedBytesIn;
+
+    @Override
+    public synchronized void onRequestMetrics(@NonNull RequestMetrics metrics) {
+        mRequestCount++;
+        mRetryCount += metrics.getRetryCount();
+        mBytesOut += metrics.getBytesOut();
+        mBytesIn += metrics.getBytesIn();
+        mDecodedBytesIn += metrics.getDecodedBytesIn();
+
+        Integer outcomeCount = mOutcomeCounts.get(metrics.getOutcome());
+        mOutcomeCounts.put(metrics.getOutcome(), outcomeCount == null ? 1 : outcomeCount + 1);
+
+        for (int phase = 0; phase < RequestMetrics.PHASE_COUNT; phase++) {
+            long nanos = metrics.getDurationNanos(phase);
+            if (nanos < 0) {
+                continue;
+            }
+            long ms = nanos / 1000000L;
+            mBucketCounts[phase][getBucket(ms)]++;
+            mMaxMs[phase] = Math.max(mMaxMs[phase], ms);
+        }
+    }
+
+    /**
+     * @return the upper bounds of the buckets in milliseconds, each inclusive. Times above the
+     * last bound go in one more bucket.
+     */
+    @NonNull
+    public static long[] getBucketUpperBoundsMs() {
+        return BUCKET_UPPER_BOUNDS_MS.clone();
+    }
+
+    /**
+     * @param phase one of the {@link RequestMetrics} {@code PHASE_} constants
+     * @return the number of requests in each bucket, one more than there are
+     * {@link #getBucketUpperBoundsMs() bounds}
+     */
+    @NonNull
+    public synchronized int[] getBucketCounts(@RequestMetrics.Phase int phase) {
+        return mBucketCounts[phase].clone();
+    }
+
+    /**
+     * @param phase one of the {@link RequestMetrics} {@code PHASE_} constants
+     * @return the number of requests in which the phase was measured
+     */
+    public synchronized int getCount(@RequestMetrics.Phase int phase) {
+        int count = 0;
+        for (int bucketCount : mBucketCounts[phase]) {
+            count += bucketCount;
+        }
+        return count;
+    }
+
+    /**
+     * @param phase one of the {@link RequestMetrics} {@code PHASE_} constants
+     * @param percentile between 0 and 100
+     * @return the upper bound in milliseconds of the bucket that holds the percentile, or the
+     * slowest time seen if that is lower, or {@code -1} if the phase was never measured
+     */
+    public synchronized long getPercentileMs(
+            @RequestMetrics.Phase int phase,
+            double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("percentile must be between 0 and 100");
+        }
+        int count = getCount(phase);
+        if (count == 0) {
+            return -1L;
+        }
+        long rank = Math.max(1L, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKET_UPPER_BOUNDS_MS.length; bucket++) {
+            seen += mBucketCounts[phase][bucket];
+            if (seen >= rank) {
+                return Math.min(BUCKET_UPPER_BOUNDS_MS[bucket], mMaxMs[phase]);
+            }
+        }
+        return mMaxMs[phase];
+    }
+
+    /**
+     * @param outcome one of the {@link RequestMetrics} {@code OUTCOME_} constants
+     * @return the number of requests that ended that way
+     */
+    public synchronized int getOutcomeCount(@NonNull @RequestMetrics.Outcome String outcome) {
+        Integer count = mOutcomeCounts.get(outcome);
+        return count == null ? 0 : count;
+    }
+
+    public synchronized int getRequestCount() {
+        return mRequestCount;
+    }
+
+    public synchronized int getRetryCount() {
+        return mRetryCount;
+    }
+
+    public synchronized long getBytesOut() {
+        return mBytesOut;
+    }
+
+    public synchronized long getBytesIn() {
+        return mBytesIn;
+    }
+
+    public synchronized long getDecodedBytesIn() {
+        return mDecodedBytesIn;
+    }
+
+    private static int getBucket(long ms) {
+        for (int bucket = 0; bucket < BUCKET_UPPER_BOUNDS_MS.length; bucket++) {
+            if (ms <= BUCKET_UPPER_BOUNDS_MS[bucket]) {
+                return bucket;
+            }
+        }
+        return BUCKET_UPPER_BOUNDS_MS.length;
+    }
+}
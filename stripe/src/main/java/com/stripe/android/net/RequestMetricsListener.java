@@ -0,0 +1,17 @@
+package com.stripe.android.net;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Represents a listener that is told where the time went in each request to the Stripe API.
+ * Set one with {@link StripeApiHandler#setRequestMetricsListener(RequestMetricsListener)}, or
+ * use a {@link RequestMetricsHistogram} to aggregate them.
+ *
+ * Metrics of requests made through {@link com.stripe.android.Stripe}'s asynchronous methods are
+ * reported on the main thread, after the result has reached its callback. Those of requests
+ * made synchronously are reported on the calling thread, before the call returns. Either way,
+ * the listener should return quickly.
+ */
+public interface RequestMetricsListener {
+    void onRequestMetrics(@NonNull RequestMetrics metrics);
+}
@@ -5,6 +5,9 @@ import android.support.annotation.Nullable;
 
 import com.stripe.android.util.StripeTextUtils;
 
+import java.util.Map;
+import java.util.UUID;
+
 /**
  * Data class representing options for a Stripe API request.
  */
@@ -13,6 +16,7 @@ public class RequestOptions {
     @NonNull private final String mApiVersion;
     @Nullable private final String mIdempotencyKey;
     @NonNull private final String mPublishableApiKey;
+    @Nullable private volatile Map<String, String> mHeaders;
 
     private RequestOptions(
             @NonNull String apiVersion,
@@ -47,6 +51,32 @@ public class RequestOptions {
         return mPublishableApiKey;
     }
 
+    /**
+     * @return these options if they already have an idempotency key, or a copy of them with a
+     * newly generated one, so that a creation request that reaches Stripe more than once only
+     * creates one object
+     */
+    @NonNull
+    RequestOptions withIdempotencyKey() {
+        if (mIdempotencyKey != null) {
+            return this;
+        }
+        return new RequestOptions(mApiVersion, UUID.randomUUID().toString(), mPublishableApiKey);
+    }
+
+    /**
+     * @return the headers built for these options by {@link StripeApiHandler}, or {@code null}
+     * if they have not been built yet
+     */
+    @Nullable
+    Map<String, String> getHeaders() {
+        return mHeaders;
+    }
+
+    void setHeaders(@NonNull Map<String, String> headers) {
+        mHeaders = headers;
+    }
+
     /**
      * Static accessor for the {@link RequestOptionsBuilder} class.
      *
@@ -0,0 +1,190 @@
+package com.stripe.android.net;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.Arrays;
+
+import javax.net.ssl.SSLSocket;
+
+/**
+ * Collects the {@link RequestMetrics} of the request being made on the current thread. The
+ * trace is bound to the thread so that the transports can add to it without it being passed
+ * through {@link HttpTransport} and its callers; a transport that knows nothing of it simply
+ * leaves its phases unmeasured.
+ */
+final class RequestTrace {
+
+    private static final ThreadLocal<RequestTrace> CURRENT = new ThreadLocal<>();
+
+    @NonNull private final String mMethod;
+    @NonNull private final String mUrl;
+    private final long mStartNanos;
+    @NonNull private final long[] mDurationsNanos = new long[RequestMetrics.PHASE_COUNT];
+
+    private int mAttemptCount;
+    private int mResponseCode = -1;
+    @Nullable private String mRequestId;
+    private long mBytesOut;
+    private long mBytesIn;
+    private long mDecodedBytesIn;
+    private long mTlsStartNanos = -1L;
+    @Nullable private SSLSocket mTlsSocket;
+    private long mTlsSocketCreatedAtMs;
+    private int mTlsHandshakeCount;
+    private int mResumedTlsHandshakeCount;
+
+    private RequestTrace(@NonNull String method, @NonNull String url) {
+        mMethod = method;
+        mUrl = url;
+        mStartNanos = System.nanoTime();
+        Arrays.fill(mDurationsNanos, -1L);
+    }
+
+    /**
+     * Start tracing a request on the current thread.
+     *
+     * @return the trace, or {@code null} if no {@link RequestMetricsListener} is set or a
+     * request is already being traced on this thread, in which case this one is part of it
+     */
+    @Nullable
+    static RequestTrace begin(@NonNull String method, @NonNull String url) {
+        if (StripeApiHandler.getRequestMetricsListener() == null || CURRENT.get() != null) {
+            return null;
+        }
+        RequestTrace trace = new RequestTrace(method, url);
+        CURRENT.set(trace);
+        return trace;
+    }
+
+    /**
+     * @return the trace of the request being made on the current thread, if any
+     */
+    @Nullable
+    static RequestTrace current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Add time to a phase. Phases that happen more than once, because the request was retried,
+     * add up.
+     */
+    void add(@RequestMetrics.Phase int phase, long nanos) {
+        if (nanos < 0) {
+            return;
+        }
+        mDurationsNanos[phase] = Math.max(0L, mDurationsNanos[phase]) + nanos;
+    }
+
+    void onAttempt() {
+        mAttemptCount++;
+        // A socket made by an attempt that failed never finished its handshake.
+        mTlsSocket = null;
+    }
+
+    void onRequestBody(long bytes) {
+        mBytesOut += bytes;
+    }
+
+    /**
+     * Add a response body. Of the time spent handling it, the part spent waiting on the network
+     * counts as reading the body, and the rest as decoding and parsing it.
+     *
+     * @param wireBody the body as it came over the network, read to the end
+     * @param decodedBytes the bytes of body after decompression
+     * @param handleNanos the time spent handling the body
+     */
+    void onResponseBody(
+            @NonNull CountingInputStream wireBody,
+            long decodedBytes,
+            long handleNanos) {
+        mBytesIn += wireBody.getCount();
+        mDecodedBytesIn += decodedBytes;
+        add(RequestMetrics.PHASE_BODY_READ, wireBody.getReadNanos());
+        add(RequestMetrics.PHASE_PARSE, Math.max(0L, handleNanos - wireBody.getReadNanos()));
+    }
+
+    void onResponse(int responseCode, @Nullable String requestId) {
+        mResponseCode = responseCode;
+        mRequestId = requestId;
+    }
+
+    /**
+     * Mark the end of the TCP connect and the start of the TLS handshake.
+     */
+    void onTlsStart() {
+        mTlsStartNanos = System.nanoTime();
+    }
+
+    /**
+     * Remember a TLS socket that was just made, so that {@link #onTlsHandshake()} can tell
+     * whether its handshake resumed an earlier session.
+     *
+     * @param socket the socket, not yet connected or not yet handshaken
+     * @param createdAtMs when the socket was made, in wall clock milliseconds
+     */
+    void onTlsSocket(@NonNull SSLSocket socket, long createdAtMs) {
+        mTlsSocket = socket;
+        mTlsSocketCreatedAtMs = createdAtMs;
+    }
+
+    /**
+     * Count the handshake of the socket given to {@link #onTlsSocket(SSLSocket, long)}, which
+     * the transport has just seen complete. Does nothing if no socket was made, as when the
+     * connection was reused.
+     */
+    void onTlsHandshake() {
+        SSLSocket socket = mTlsSocket;
+        mTlsSocket = null;
+        if (socket == null) {
+            return;
+        }
+        mTlsHandshakeCount++;
+        if (StripeSSLSocketFactory.isResumed(socket.getSession(), mTlsSocketCreatedAtMs)) {
+            mResumedTlsHandshakeCount++;
+        }
+    }
+
+    /**
+     * Add the time it took to open a connection, TLS handshake included. Connections do not say
+     * how long their handshake took, so the split comes from {@link #onTlsStart()}. Without that
+     * mark, as when the connection was reused, all of it counts as connecting.
+     */
+    void onConnect(long connectStartNanos, long connectEndNanos) {
+        long tlsStartNanos = mTlsStartNanos;
+        mTlsStartNanos = -1L;
+        if (tlsStartNanos >= connectStartNanos && tlsStartNanos <= connectEndNanos) {
+            add(RequestMetrics.PHASE_CONNECT, tlsStartNanos - connectStartNanos);
+            add(RequestMetrics.PHASE_TLS, connectEndNanos - tlsStartNanos);
+        } else {
+            add(RequestMetrics.PHASE_CONNECT, connectEndNanos - connectStartNanos);
+        }
+    }
+
+    /**
+     * Stop tracing and report the request's metrics.
+     *
+     * @param error what the request threw, or {@code null} if it succeeded
+     */
+    void finish(@Nullable Exception error) {
+        if (CURRENT.get() == this) {
+            CURRENT.remove();
+        }
+        mTlsSocket = null;
+        long[] durations = mDurationsNanos.clone();
+        durations[RequestMetrics.PHASE_TOTAL] = System.nanoTime() - mStartNanos;
+        RequestMetrics.report(new RequestMetrics(
+                mMethod,
+                mUrl,
+                RequestMetrics.getOutcome(error),
+                mResponseCode,
+                mRequestId,
+                mAttemptCount,
+                durations,
+                mTlsHandshakeCount,
+                mResumedTlsHandshakeCount,
+                mBytesOut,
+                mBytesIn,
+                mDecodedBytesIn));
+    }
+}
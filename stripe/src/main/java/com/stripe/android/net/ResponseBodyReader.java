@@ -0,0 +1,118 @@
+package com.stripe.android.net;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import static com.stripe.android.net.StripeApiHandler.CHARSET;
+
+/**
+ * Reads response bodies with pooled buffers. When the server sends a {@code Content-Length}, the
+ * body is read into a buffer of exactly that size; otherwise it is read in chunks into a buffer
+ * that grows as needed. Either way the bytes are decoded to a {@link String} once, at the end.
+ */
+final class ResponseBodyReader {
+
+    // Bodies larger than this are read in chunks even if their length is known, so that a bad
+    // Content-Length cannot make us allocate an arbitrarily large array up front.
+    private static final int MAX_PREALLOCATED_LENGTH = 1024 * 1024;
+    // Leftover bytes beyond this are not worth reading just to keep the connection alive.
+    private static final int MAX_DRAIN_LENGTH = 64 * 1024;
+
+    static final ByteArrayPool BUFFER_POOL = new ByteArrayPool();
+
+    private ResponseBodyReader() { }
+
+    /**
+     * Read a body to the end and decode it as UTF-8. The stream is left open for the caller to
+     * close.
+     *
+     * @param stream the body, or {@code null} if the response had none
+     * @param contentLength the value of the {@code Content-Length} header, or {@code -1} if it is
+     *                      unknown
+     * @return the body, an empty string if the body was empty, or {@code null} if
+     * {@code stream} was {@code null}
+     */
+    @Nullable
+    static String readString(@Nullable InputStream stream, int contentLength) throws IOException {
+        if (stream == null) {
+            return null;
+        }
+
+        byte[] buffer = null;
+        try {
+            if (contentLength == 0) {
+                return "";
+            }
+
+            if (contentLength > 0 && contentLength <= MAX_PREALLOCATED_LENGTH) {
+                buffer = contentLength <= BUFFER_POOL.getBufferSize()
+                        ? BUFFER_POOL.acquire()
+                        : new byte[contentLength];
+                int length = readUpTo(stream, buffer, contentLength);
+                return new String(buffer, 0, length, CHARSET);
+            }
+
+            buffer = BUFFER_POOL.acquire();
+            int length = 0;
+            int read;
+            while ((read = stream.read(buffer, length, buffer.length - length)) != -1) {
+                length += read;
+                if (length == buffer.length) {
+                    byte[] grown = new byte[buffer.length * 2];
+                    System.arraycopy(buffer, 0, grown, 0, length);
+                    BUFFER_POOL.release(buffer);
+                    buffer = grown;
+                }
+            }
+            return new String(buffer, 0, length, CHARSET);
+        } finally {
+            BUFFER_POOL.release(buffer);
+        }
+    }
+
+    /**
+     * Read and discard whatever is left of a body, so that the connection can be reused.
+     *
+     * @param stream the body, or {@code null}
+     * @return {@code true} if the body was read to its end, or {@code false} if more than a
+     * reasonable amount was left
+     */
+    static boolean drain(@Nullable InputStream stream) throws IOException {
+        if (stream == null) {
+            return true;
+        }
+
+        byte[] buffer = BUFFER_POOL.acquire();
+        try {
+            int drained = 0;
+            int read;
+            while ((read = stream.read(buffer)) != -1) {
+                drained += read;
+                if (drained > MAX_DRAIN_LENGTH) {
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            BUFFER_POOL.release(buffer);
+        }
+    }
+
+    private static int readUpTo(
+            @NonNull InputStream stream,
+            @NonNull byte[] buffer,
+            int length) throws IOException {
+        int offset = 0;
+        while (offset < length) {
+            int read = stream.read(buffer, offset, length - offset);
+            if (read == -1) {
+                break;
+            }
+            offset += read;
+        }
+        return offset;
+    }
+}
@@ -0,0 +1,294 @@
+package com.stripe.android.net;
+
+import android.support.annotation.IntRange;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+
+import com.stripe.android.exception.APIConnectionException;
+import com.stripe.android.exception.APIException;
+import com.stripe.android.exception.AuthenticationException;
+import com.stripe.android.exception.CardException;
+import com.stripe.android.exception.InvalidRequestException;
+import com.stripe.android.exception.RateLimitException;
+import com.stripe.android.exception.StripeException;
+
+import java.io.IOException;
+import java.security.cert.CertificateException;
+import java.util.Random;
+
+import javax.net.ssl.SSLHandshakeException;
+import javax.net.ssl.SSLPeerUnverifiedException;
+
+/**
+ * Decides whether a failed request to Stripe is sent again, and when.
+ *
+ * A request is only retried when sending it twice cannot do anything twice: a {@code GET}, or a
+ * {@code POST} that carries an idempotency key, which every attempt reuses. Of those, only
+ * failures that may go away on their own are retried: the connection failing, being rate
+ * limited, and errors on Stripe's side ({@code 5xx}). Declined cards, invalid parameters and
+ * authentication problems are returned straight away.
+ *
+ * The delay between attempts grows exponentially up to a maximum and is shortened by a random
+ * amount of up to half, so that clients that failed together do not retry together. A
+ * {@code Retry-After} sent with an error is always honored. No attempt is started once the
+ * overall deadline would be passed while waiting for it, in which case the last error is
+ * returned.
+ */
+public class RetryPolicy {
+
+    static final int DEFAULT_MAX_ATTEMPTS = 3;
+    static final long DEFAULT_INITIAL_DELAY_MS = 500L;
+    static final long DEFAULT_MAX_DELAY_MS = 5000L;
+    static final long DEFAULT_DEADLINE_MS = 15000L;
+
+    private static final double JITTER_FACTOR = 0.5;
+    private static final int BACKOFF_MULTIPLIER = 2;
+
+    private static final Clock SYSTEM_CLOCK = new Clock() {
+        @Override
+        public long nowMs() {
+            return System.nanoTime() / 1000000L;
+        }
+
+        @Override
+        public void sleep(long delayMs) throws InterruptedException {
+            Thread.sleep(delayMs);
+        }
+    };
+
+    /**
+     * A policy that never retries.
+     */
+    @NonNull public static final RetryPolicy NONE = builder().setMaxAttempts(1).build();
+
+    private final int mMaxAttempts;
+    private final long mInitialDelayMs;
+    private final long mMaxDelayMs;
+    private final long mDeadlineMs;
+    @NonNull private final Random mRandom;
+    @NonNull private final Clock mClock;
+
+    @VisibleForTesting
+    RetryPolicy(
+            int maxAttempts,
+            long initialDelayMs,
+            long maxDelayMs,
+            long deadlineMs,
+            @NonNull Random random,
+            @NonNull Clock clock) {
+        mMaxAttempts = maxAttempts;
+        mInitialDelayMs = initialDelayMs;
+        mMaxDelayMs = maxDelayMs;
+        mDeadlineMs = deadlineMs;
+        mRandom = random;
+        mClock = clock;
+    }
+
+    /**
+     * @return a {@link Builder} for a {@link RetryPolicy}, starting from the default settings
+     */
+    @NonNull
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Make a request, retrying it as long as this policy allows.
+     *
+     * @param method the HTTP method of the request
+     * @param options the {@link RequestOptions} sent with every attempt
+     * @param attempt makes one attempt at the request
+     * @param <T> the type of the result
+     * @return the result of the first successful attempt
+     */
+    @Nullable
+    <T> T execute(
+            @NonNull @StripeApiHandler.RestMethod String method,
+            @NonNull RequestOptions options,
+            @NonNull Attempt<T> attempt)
+            throws AuthenticationException, InvalidRequestException,
+            APIConnectionException, CardException, APIException {
+        long deadlineMs = mClock.nowMs() + mDeadlineMs;
+        for (int attemptCount = 1; ; attemptCount++) {
+            try {
+                return attempt.attempt();
+            } catch (InvalidRequestException failure) {
+                sleepBeforeRetry(method, options, failure, attemptCount, deadlineMs);
+            } catch (APIConnectionException failure) {
+                sleepBeforeRetry(method, options, failure, attemptCount, deadlineMs);
+            } catch (APIException failure) {
+                sleepBeforeRetry(method, options, failure, attemptCount, deadlineMs);
+            }
+        }
+    }
+
+    /**
+     * @return {@code true} if the request can be sent again after failing this way
+     */
+    boolean isRetryable(
+            @NonNull @StripeApiHandler.RestMethod String method,
+            @NonNull RequestOptions options,
+            @NonNull StripeException failure) {
+        boolean isIdempotent = StripeApiHandler.GET.equals(method)
+                || options.getIdempotencyKey() != null;
+        if (!isIdempotent) {
+            return false;
+        }
+
+        if (failure instanceof RateLimitException) {
+            return true;
+        } else if (failure instanceof APIConnectionException) {
+            return isTransientConnectionFailure(failure.getCause());
+        } else if (failure instanceof APIException) {
+            Integer statusCode = failure.getStatusCode();
+            return statusCode != null && statusCode >= 500;
+        }
+        return false;
+    }
+
+    /**
+     * @param attemptCount the number of attempts that have failed so far
+     * @param failure the last failure
+     * @return how long to wait before the next attempt
+     */
+    long getDelayMs(int attemptCount, @NonNull StripeException failure) {
+        long delayMs = mInitialDelayMs;
+        for (int i = 1; i < attemptCount && delayMs < mMaxDelayMs; i++) {
+            delayMs *= BACKOFF_MULTIPLIER;
+        }
+        delayMs = Math.min(delayMs, mMaxDelayMs);
+        delayMs -= (long) (delayMs * JITTER_FACTOR * mRandom.nextDouble());
+
+        Long retryAfterMs = null;
+        if (failure instanceof RateLimitException) {
+            retryAfterMs = ((RateLimitException) failure).getRetryAfterMs();
+        } else if (failure instanceof APIException) {
+            retryAfterMs = ((APIException) failure).getRetryAfterMs();
+        }
+        return retryAfterMs == null ? delayMs : Math.max(delayMs, retryAfterMs);
+    }
+
+    private <E extends StripeException> void sleepBeforeRetry(
+            @NonNull String method,
+            @NonNull RequestOptions options,
+            @NonNull E failure,
+            int attemptCount,
+            long deadlineMs) throws E {
+        if (attemptCount >= mMaxAttempts || !isRetryable(method, options, failure)) {
+            throw failure;
+        }
+
+        long delayMs = getDelayMs(attemptCount, failure);
+        if (mClock.nowMs() + delayMs >= deadlineMs) {
+            throw failure;
+        }
+
+        try {
+            mClock.sleep(delayMs);
+        } catch (InterruptedException interrupted) {
+            Thread.currentThread().interrupt();
+            throw failure;
+        }
+    }
+
+    private static boolean isTransientConnectionFailure(@Nullable Throwable cause) {
+        if (!(cause instanceof IOException)) {
+            return false;
+        }
+        // A certificate that cannot be trusted will not become trusted by asking again.
+        return !(cause instanceof SSLPeerUnverifiedException)
+                && !(cause instanceof SSLHandshakeException
+                        && cause.getCause() instanceof CertificateException);
+    }
+
+    /**
+     * Represents one attempt at a request.
+     *
+     * @param <T> the type of the result
+     */
+    interface Attempt<T> {
+        @Nullable
+        T attempt() throws AuthenticationException, InvalidRequestException,
+                APIConnectionException, CardException, APIException;
+    }
+
+    /**
+     * Represents the passing of time between attempts.
+     */
+    interface Clock {
+        long nowMs();
+
+        void sleep(long delayMs) throws InterruptedException;
+    }
+
+    /**
+     * Builder class for a {@link RetryPolicy}.
+     */
+    public static final class Builder {
+
+        private int mMaxAttempts = DEFAULT_MAX_ATTEMPTS;
+        private long mInitialDelayMs = DEFAULT_INITIAL_DELAY_MS;
+        private long mMaxDelayMs = DEFAULT_MAX_DELAY_MS;
+        private long mDeadlineMs = DEFAULT_DEADLINE_MS;
+
+        private Builder() { }
+
+        /**
+         * @param maxAttempts the largest number of times a request is sent, including the
+         *                    first; {@code 1} turns retrying off
+         * @return {@code this}, for chaining purposes
+         */
+        @NonNull
+        public Builder setMaxAttempts(@IntRange(from = 1) int maxAttempts) {
+            if (maxAttempts < 1) {
+                throw new IllegalArgumentException("A request needs at least one attempt.");
+            }
+            mMaxAttempts = maxAttempts;
+            return this;
+        }
+
+        /**
+         * @param initialDelayMs the delay before the first retry, in milliseconds
+         * @return {@code this}, for chaining purposes
+         */
+        @NonNull
+        public Builder setInitialDelayMs(@IntRange(from = 0) long initialDelayMs) {
+            mInitialDelayMs = initialDelayMs;
+            return this;
+        }
+
+        /**
+         * @param maxDelayMs the longest delay between two attempts, in milliseconds, unless
+         *                   Stripe asks for a longer one
+         * @return {@code this}, for chaining purposes
+         */
+        @NonNull
+        public Builder setMaxDelayMs(@IntRange(from = 0) long maxDelayMs) {
+            mMaxDelayMs = maxDelayMs;
+            return this;
+        }
+
+        /**
+         * @param deadlineMs the time after the first attempt past which no retry is started,
+         *                   in milliseconds
+         * @return {@code this}, for chaining purposes
+         */
+        @NonNull
+        public Builder setDeadlineMs(@IntRange(from = 0) long deadlineMs) {
+            mDeadlineMs = deadlineMs;
+            return this;
+        }
+
+        @NonNull
+        public RetryPolicy build() {
+            return new RetryPolicy(
+                    mMaxAttempts,
+                    mInitialDelayMs,
+                    mMaxDelayMs,
+                    mDeadlineMs,
+                    new Random(),
+                    SYSTEM_CLOCK);
+        }
+    }
+}
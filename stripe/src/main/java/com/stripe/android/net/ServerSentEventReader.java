@@ -0,0 +1,97 @@
+package com.stripe.android.net;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+
+import static com.stripe.android.net.StripeApiHandler.CHARSET;
+
+/**
+ * Reads events from a {@code text/event-stream} body, as sent by a server that pushes
+ * <a href="https://html.spec.whatwg.org/multipage/server-sent-events.html">server-sent
+ * events</a>. Comments, event ids, retry hints and fields it does not know are skipped, and
+ * the lines of a multi-line {@code data} field are joined with newlines.
+ */
+final class ServerSentEventReader {
+
+    static final String CONTENT_TYPE = "text/event-stream";
+
+    @NonNull private final BufferedReader mReader;
+
+    ServerSentEventReader(@NonNull InputStream stream) throws IOException {
+        mReader = new BufferedReader(new InputStreamReader(stream, CHARSET));
+    }
+
+    /**
+     * Block until the next event has been read.
+     *
+     * @return the next {@link Event}, or {@code null} if the stream ended first
+     * @throws IOException if the stream could not be read
+     */
+    @Nullable
+    Event readEvent() throws IOException {
+        String name = null;
+        StringBuilder data = null;
+        String line;
+        while ((line = mReader.readLine()) != null) {
+            if (line.isEmpty()) {
+                if (data != null && data.length() > 0) {
+                    return new Event(name == null ? Event.DEFAULT_NAME : name, data.toString());
+                }
+                // An event without data is not dispatched.
+                name = null;
+                data = null;
+                continue;
+            }
+
+            int colon = line.indexOf(':');
+            if (colon == 0) {
+                // A comment, which servers send to keep the connection open.
+                continue;
+            }
+
+            String field = colon < 0 ? line : line.substring(0, colon);
+            String value = colon < 0 ? "" : line.substring(colon + 1);
+            if (value.startsWith(" ")) {
+                value = value.substring(1);
+            }
+
+            if ("data".equals(field)) {
+                if (data == null) {
+                    data = new StringBuilder(value);
+                } else {
+                    data.append('\n').append(value);
+                }
+            } else if ("event".equals(field)) {
+                name = value;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Close the underlying stream.
+     */
+    void close() throws IOException {
+        mReader.close();
+    }
+
+    /**
+     * A single event from the stream.
+     */
+    static final class Event {
+        static final String DEFAULT_NAME = "message";
+
+        @NonNull final String mName;
+        @NonNull final String mData;
+
+        Event(@NonNull String name, @NonNull String data) {
+            mName = name;
+            mData = data;
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package com.stripe.android.net;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+
+import com.stripe.android.exception.APIConnectionException;
+import com.stripe.android.exception.APIException;
+import com.stripe.android.exception.AuthenticationException;
+import com.stripe.android.exception.CardException;
+import com.stripe.android.exception.InvalidRequestException;
+import com.stripe.android.exception.StripeException;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Lets identical requests that are made at the same time share one network call. The first
+ * caller for a key makes the call; anyone asking for the same key before it finishes waits for,
+ * and is given, the same result or exception. Once the call finishes the key is forgotten, so a
+ * later request is sent again.
+ *
+ * This is what keeps a double tap on a pay button from creating two tokens.
+ */
+final class SingleFlight {
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    @NonNull private final Map<String, Flight> mFlights = new HashMap<>();
+
+    /**
+     * Build the key for a request. Parameters are compared by value, whatever order their maps
+     * iterate in. The key is a digest, so that card details are not kept in it.
+     *
+     * @param method the HTTP method
+     * @param url the URL the request is sent to
+     * @param params the request parameters
+     * @param options the {@link RequestOptions} of the request. Requests made with different
+     *                keys, API versions or explicit idempotency keys are never shared.
+     * @return the key
+     */
+    @NonNull
+    static String createKey(
+            @NonNull String method,
+            @NonNull String url,
+            @Nullable Map<String, ?> params,
+            @NonNull RequestOptions options) {
+        StringBuilder canonical = new StringBuilder(256)
+                .append(method).append(' ')
+                .append(url).append('\n')
+                .append(options.getPublishableApiKey()).append('\n')
+                .append(options.getApiVersion()).append('\n')
+                .append(options.getIdempotencyKey()).append('\n');
+        appendCanonical(canonical, params);
+        return digest(canonical.toString());
+    }
+
+    /**
+     * Make the call, or wait for an identical one that is already under way.
+     *
+     * @param key the key built by {@link #createKey(String, String, Map, RequestOptions)}
+     * @param call the call to make if no identical call is under way
+     * @param <T> the type of the result
+     * @return the result of the shared call
+     */
+    @Nullable
+    @SuppressWarnings("unchecked")
+    <T> T execute(@NonNull String key, @NonNull Call<T> call)
+            throws AuthenticationException, InvalidRequestException,
+            APIConnectionException, CardException, APIException {
+        Flight flight;
+        boolean isLeader = false;
+        synchronized (this) {
+            flight = mFlights.get(key);
+            if (flight == null) {
+                flight = new Flight();
+                mFlights.put(key, flight);
+                isLeader = true;
+            } else {
+                flight.mFollowerCount++;
+            }
+        }
+
+        if (isLeader) {
+            try {
+                flight.mResult = call.call();
+            } catch (StripeException stripeException) {
+                flight.mStripeException = stripeException;
+            } catch (RuntimeException runtimeException) {
+                flight.mRuntimeException = runtimeException;
+            } finally {
+                synchronized (this) {
+                    mFlights.remove(key);
+                }
+                flight.mDone.countDown();
+            }
+        } else {
+            try {
+                flight.mDone.await();
+            } catch (InterruptedException interrupted) {
+                Thread.currentThread().interrupt();
+                throw new APIConnectionException(
+                        "Interrupted while waiting for an identical request to Stripe.",
+                        interrupted);
+            }
+        }
+
+        if (flight.mRuntimeException != null) {
+            throw flight.mRuntimeException;
+        }
+        if (flight.mStripeException != null) {
+            rethrow(flight.mStripeException);
+        }
+        return (T) flight.mResult;
+    }
+
+    @VisibleForTesting
+    synchronized int getFollowerCount(@NonNull String key) {
+        Flight flight = mFlights.get(key);
+        return flight == null ? 0 : flight.mFollowerCount;
+    }
+
+    private static void rethrow(@NonNull StripeException exception)
+            throws AuthenticationException, InvalidRequestException,
+            APIConnectionException, CardException, APIException {
+        if (exception instanceof AuthenticationException) {
+            throw (AuthenticationException) exception;
+        } else if (exception instanceof InvalidRequestException) {
+            throw (InvalidRequestException) exception;
+        } else if (exception instanceof APIConnectionException) {
+            throw (APIConnectionException) exception;
+        } else if (exception instanceof CardException) {
+            throw (CardException) exception;
+        } else if (exception instanceof APIException) {
+            throw (APIException) exception;
+        }
+        throw new APIException(
+                exception.getMessage(),
+                exception.getRequestId(),
+                exception.getStatusCode(),
+                exception);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void appendCanonical(@NonNull StringBuilder builder, @Nullable Object value) {
+        if (value instanceof Map) {
+            Map<String, ?> map = (Map<String, ?>) value;
+            List<String> keys = new ArrayList<>(map.keySet());
+            Collections.sort(keys);
+            builder.append('{');
+            for (String key : keys) {
+                builder.append(key.length()).append(':').append(key).append('=');
+                appendCanonical(builder, map.get(key));
+                builder.append(';');
+            }
+            builder.append('}');
+        } else if (value instanceof List) {
+            builder.append('[');
+            for (Object item : (List<?>) value) {
+                appendCanonical(builder, item);
+                builder.append(';');
+            }
+            builder.append(']');
+        } else if (value == null) {
+            builder.append('~');
+        } else {
+            String string = value.toString();
+            builder.append(string.length()).append(':').append(string);
+        }
+    }
+
+    @NonNull
+    private static String digest(@NonNull String canonical) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(canonical.getBytes("UTF-8"));
+            char[] hex = new char[hash.length * 2];
+            for (int i = 0; i < hash.length; i++) {
+                hex[i * 2] = HEX_DIGITS[(hash[i] >> 4) & 0xF];
+                hex[i * 2 + 1] = HEX_DIGITS[hash[i] & 0xF];
+            }
+            return new String(hex);
+        } catch (NoSuchAlgorithmException | UnsupportedEncodingException unexpected) {
+            // Every Android device has SHA-256 and UTF-8.
+            throw new IllegalStateException(unexpected);
+        }
+    }
+
+    /**
+     * Represents the network call behind a request.
+     *
+     * @param <T> the type of the result
+     */
+    interface Call<T> {
+        @Nullable
+        T call() throws AuthenticationException, InvalidRequestException,
+                APIConnectionException, CardException, APIException;
+    }
+
+    /**
+     * A call that is under way, and the callers waiting for it.
+     */
+    private static final class Flight {
+        @NonNull final CountDownLatch mDone = new CountDownLatch(1);
+        // Guarded by the SingleFlight.
+        int mFollowerCount;
+        // Written before mDone is counted down, and read after it.
+        @Nullable Object mResult;
+        @Nullable StripeException mStripeException;
+        @Nullable RuntimeException mRuntimeException;
+    }
+}
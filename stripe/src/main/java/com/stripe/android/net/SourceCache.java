@@ -0,0 +1,218 @@
+package com.stripe.android.net;
+
+import android.support.annotation.IntRange;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+
+import com.stripe.android.model.Source;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps recently retrieved {@link Source} objects in memory, so that asking for the same source
+ * again soon does not cost a request to Stripe. Entries are found by source id and client
+ * secret, and only the most recently used ones are kept.
+ *
+ * How long an entry stays fresh depends on the status of its source. A source that has settled
+ * ({@link Source#CHARGEABLE}, {@link Source#CONSUMED}, {@link Source#CANCELED} or
+ * {@link Source#FAILED}) changes rarely, so it is kept for a while. A {@link Source#PENDING}
+ * source, or one whose status is unknown, is waiting on the customer and is only kept for a
+ * moment. Polling never reuses a pending entry, and every source it retrieves replaces the
+ * entry before it, so a change of status is seen as soon as a poll sees it.
+ */
+public class SourceCache {
+
+    static final int DEFAULT_MAX_SIZE = 64;
+    static final long DEFAULT_PENDING_TTL_MS = 1000L;
+    static final long DEFAULT_SETTLED_TTL_MS = 60000L;
+
+    private static final Clock SYSTEM_CLOCK = new Clock() {
+        @Override
+        public long nowMs() {
+            return System.nanoTime() / 1000000L;
+        }
+    };
+
+    /**
+     * A cache that keeps nothing, so that every retrieval makes a request.
+     */
+    @NonNull public static final SourceCache NONE = builder().setMaxSize(0).build();
+
+    private final int mMaxSize;
+    private final long mPendingTtlMs;
+    private final long mSettledTtlMs;
+    @NonNull private final Clock mClock;
+    @NonNull private final LinkedHashMap<String, Entry> mEntries;
+
+    @VisibleForTesting
+    SourceCache(
+            final int maxSize,
+            long pendingTtlMs,
+            long settledTtlMs,
+            @NonNull Clock clock) {
+        mMaxSize = maxSize;
+        mPendingTtlMs = pendingTtlMs;
+        mSettledTtlMs = settledTtlMs;
+        mClock = clock;
+        mEntries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * @return a {@link Builder} for a {@link SourceCache}, starting from the default settings
+     */
+    @NonNull
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @param sourceId the {@link Source#mId} of the source
+     * @param clientSecret the {@link Source#mClientSecret} of the source
+     * @param acceptPending whether a source that has not settled may be returned
+     * @return the source, if it was retrieved recently enough, or {@code null}
+     */
+    @Nullable
+    synchronized Source get(
+            @NonNull String sourceId,
+            @NonNull String clientSecret,
+            boolean acceptPending) {
+        String key = createKey(sourceId, clientSecret);
+        Entry entry = mEntries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (mClock.nowMs() >= entry.mExpiresAtMs) {
+            mEntries.remove(key);
+            return null;
+        }
+        return acceptPending || isSettled(entry.mSource) ? entry.mSource : null;
+    }
+
+    /**
+     * Remember a source that was just retrieved, in place of any entry for it.
+     *
+     * @param sourceId the {@link Source#mId} of the source
+     * @param clientSecret the {@link Source#mClientSecret} of the source
+     * @param source the source, or {@code null} to forget it
+     */
+    synchronized void put(
+            @NonNull String sourceId,
+            @NonNull String clientSecret,
+            @Nullable Source source) {
+        String key = createKey(sourceId, clientSecret);
+        long ttlMs = source == null ? 0L : isSettled(source) ? mSettledTtlMs : mPendingTtlMs;
+        if (mMaxSize <= 0 || ttlMs <= 0L) {
+            mEntries.remove(key);
+        } else {
+            mEntries.put(key, new Entry(source, mClock.nowMs() + ttlMs));
+        }
+    }
+
+    /**
+     * Forget a source, so that the next retrieval asks Stripe.
+     *
+     * @param sourceId the {@link Source#mId} of the source
+     * @param clientSecret the {@link Source#mClientSecret} of the source
+     */
+    public synchronized void invalidate(@NonNull String sourceId, @NonNull String clientSecret) {
+        mEntries.remove(createKey(sourceId, clientSecret));
+    }
+
+    /**
+     * Forget every source.
+     */
+    public synchronized void clear() {
+        mEntries.clear();
+    }
+
+    synchronized int size() {
+        return mEntries.size();
+    }
+
+    static boolean isSettled(@NonNull Source source) {
+        String status = source.getStatus();
+        return Source.CHARGEABLE.equals(status)
+                || Source.CONSUMED.equals(status)
+                || Source.CANCELED.equals(status)
+                || Source.FAILED.equals(status);
+    }
+
+    @NonNull
+    private static String createKey(@NonNull String sourceId, @NonNull String clientSecret) {
+        return sourceId + '\n' + clientSecret;
+    }
+
+    /**
+     * Represents the passing of time, for deciding when an entry is too old.
+     */
+    interface Clock {
+        long nowMs();
+    }
+
+    private static final class Entry {
+        @NonNull final Source mSource;
+        final long mExpiresAtMs;
+
+        Entry(@NonNull Source source, long expiresAtMs) {
+            mSource = source;
+            mExpiresAtMs = expiresAtMs;
+        }
+    }
+
+    /**
+     * Builder class for a {@link SourceCache}.
+     */
+    public static final class Builder {
+
+        private int mMaxSize = DEFAULT_MAX_SIZE;
+        private long mPendingTtlMs = DEFAULT_PENDING_TTL_MS;
+        private long mSettledTtlMs = DEFAULT_SETTLED_TTL_MS;
+
+        private Builder() { }
+
+        /**
+         * @param maxSize the largest number of sources kept; {@code 0} turns caching off
+         * @return {@code this}, for chaining purposes
+         */
+        @NonNull
+        public Builder setMaxSize(@IntRange(from = 0) int maxSize) {
+            if (maxSize < 0) {
+                throw new IllegalArgumentException("A cache cannot hold fewer than 0 sources.");
+            }
+            mMaxSize = maxSize;
+            return this;
+        }
+
+        /**
+         * @param pendingTtlMs how long a source that has not settled is reused, in milliseconds
+         * @return {@code this}, for chaining purposes
+         */
+        @NonNull
+        public Builder setPendingTtlMs(@IntRange(from = 0) long pendingTtlMs) {
+            mPendingTtlMs = pendingTtlMs;
+            return this;
+        }
+
+        /**
+         * @param settledTtlMs how long a source that has settled is reused, in milliseconds
+         * @return {@code this}, for chaining purposes
+         */
+        @NonNull
+        public Builder setSettledTtlMs(@IntRange(from = 0) long settledTtlMs) {
+            mSettledTtlMs = settledTtlMs;
+            return this;
+        }
+
+        @NonNull
+        public SourceCache build() {
+            return new SourceCache(mMaxSize, mPendingTtlMs, mSettledTtlMs, SYSTEM_CLOCK);
+        }
+    }
+}
@@ -0,0 +1,383 @@
+package com.stripe.android.net;
+
+import android.net.Uri;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+
+import com.stripe.android.model.Source;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * Watches sources through a relay run by the merchant, which pushes each change of a source's
+ * status over one long-lived connection instead of the client asking for it again and again.
+ * If the relay cannot be reached, or the connection drops before the source has settled, the
+ * source is polled for the rest of the time instead, exactly as
+ * {@link com.stripe.android.Stripe#pollSource} would.
+ *
+ * The relay is asked for a source with a {@code GET} to its URL, with {@code source} and
+ * {@code client_secret} query parameters and an {@code Accept: text/event-stream} header. It
+ * should answer with a {@code text/event-stream} body that has an event for every status the
+ * source passes through, each with the source JSON as returned by the Stripe API as its data.
+ * Events named anything but {@code message} or {@code source} are ignored, and so are comments,
+ * which the relay can send to keep the connection open.
+ */
+public class SourceStatusStream {
+
+    static final int CONNECT_TIMEOUT_MS = 15 * 1000;
+    // A relay is expected to send something at least this often, even just a comment.
+    static final int READ_TIMEOUT_MS = 60 * 1000;
+
+    private static final String SOURCE_EVENT_NAME = "source";
+
+    @NonNull private final String mRelayUrl;
+    @NonNull private final PollingParameters mPollingParameters;
+    @NonNull private final PollingClock mClock;
+    @Nullable private final PollingScheduler mScheduler;
+
+    /**
+     * @param relayUrl the URL of the merchant's relay
+     */
+    public SourceStatusStream(@NonNull String relayUrl) {
+        this(relayUrl,
+                PollingParameters.generateDefaultParameters(),
+                new HandlerPollingClock(Looper.getMainLooper()),
+                null);
+    }
+
+    /**
+     * @param clock the {@link PollingClock} that timeouts and callbacks run on
+     * @param scheduler the {@link PollingScheduler} to fall back to, or {@code null} to use the
+     *                  shared one
+     */
+    @VisibleForTesting
+    SourceStatusStream(
+            @NonNull String relayUrl,
+            @NonNull PollingParameters pollingParameters,
+            @NonNull PollingClock clock,
+            @Nullable PollingScheduler scheduler) {
+        mRelayUrl = relayUrl;
+        mPollingParameters = pollingParameters;
+        mClock = clock;
+        mScheduler = scheduler;
+    }
+
+    /**
+     * Watch a source until it is chargeable, consumed, canceled or failed, or until the timeout.
+     * Each change of status is passed to the {@link Listener} as soon as the relay reports it,
+     * followed by the result once the source has settled. All calls are made on the main
+     * thread.
+     *
+     * @param sourceId the {@link Source#mId} to watch
+     * @param clientSecret the {@link Source#mClientSecret} of the source
+     * @param publishableKey an API key, used if the source has to be polled instead
+     * @param listener the {@link Listener} to call
+     * @param timeoutMs the amount of time before watching expires, or {@code null} to use the
+     *                  default of 10 seconds
+     * @return a {@link PollingHandle} that can cancel watching the source
+     */
+    @NonNull
+    public PollingHandle watch(
+            @NonNull String sourceId,
+            @NonNull String clientSecret,
+            @NonNull String publishableKey,
+            @NonNull Listener listener,
+            @Nullable Integer timeoutMs) {
+        Watch watch = new Watch(
+                sourceId,
+                clientSecret,
+                publishableKey,
+                listener,
+                PollingNetworkHandler.getTimeoutMs(timeoutMs, mPollingParameters));
+        watch.start();
+        return watch.mHandle;
+    }
+
+    @NonNull
+    String getRelayUrl(@NonNull String sourceId, @NonNull String clientSecret) {
+        return Uri.parse(mRelayUrl)
+                .buildUpon()
+                .appendQueryParameter("source", sourceId)
+                .appendQueryParameter("client_secret", clientSecret)
+                .build()
+                .toString();
+    }
+
+    private static boolean isSettled(@Nullable String status) {
+        return Source.CHARGEABLE.equals(status)
+                || Source.CONSUMED.equals(status)
+                || Source.CANCELED.equals(status)
+                || Source.FAILED.equals(status);
+    }
+
+    /**
+     * Represents something that wants to know about every change of a source's status, and not
+     * only the result.
+     */
+    public interface Listener extends PollingResponseHandler {
+
+        /**
+         * Called whenever the source reaches a new status. Once the source has settled, this is
+         * called with its final status just before {@link #onPollingResponse(PollingResponse)}.
+         *
+         * @param source the source as the relay reported it
+         */
+        void onStatusChanged(@NonNull Source source);
+    }
+
+    /**
+     * A single call to {@link #watch}. The stream is read on a thread of its own, and everything
+     * else happens on the clock.
+     */
+    private final class Watch
+            implements Runnable, PollingResponseHandler, PollingHandle.Canceller {
+
+        @NonNull private final String mSourceId;
+        @NonNull private final String mClientSecret;
+        @NonNull private final String mPublishableKey;
+        @NonNull private final Listener mListener;
+        @NonNull private final PollingHandle mHandle;
+        private final long mTimeoutMs;
+        private final long mDeadlineMs;
+
+        // Only touched on the clock.
+        @Nullable private Source mLatestSource;
+
+        // Guarded by this.
+        private boolean mIsFinished;
+        @Nullable private HttpURLConnection mConnection;
+        @Nullable private PollingHandle mFallbackHandle;
+
+        Watch(@NonNull String sourceId,
+              @NonNull String clientSecret,
+              @NonNull String publishableKey,
+              @NonNull Listener listener,
+              long timeoutMs) {
+            mSourceId = sourceId;
+            mClientSecret = clientSecret;
+            mPublishableKey = publishableKey;
+            mListener = listener;
+            mHandle = new PollingHandle(this);
+            mTimeoutMs = timeoutMs;
+            mDeadlineMs = mClock.uptimeMillis() + timeoutMs;
+        }
+
+        void start() {
+            mClock.postDelayed(new Runnable() {
+                @Override
+                public void run() {
+                    finish(new PollingResponse(mLatestSource, false, true));
+                }
+            }, this, mTimeoutMs);
+
+            Thread thread = new Thread(this, "Stripe Source Stream");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        @Override
+        public void run() {
+            boolean isSettled = false;
+            try {
+                isSettled = readStream();
+            } catch (IOException ignored) {
+                // Handled below, like any other stream that ended too soon.
+            } finally {
+                disconnect();
+            }
+
+            if (!isSettled) {
+                mClock.postDelayed(new Runnable() {
+                    @Override
+                    public void run() {
+                        fallBack();
+                    }
+                }, this, 0L);
+            }
+        }
+
+        /**
+         * Read events from the relay until the source settles.
+         *
+         * @return {@code true} if the source settled, or {@code false} if the relay could not be
+         * reached or the stream ended first
+         */
+        private boolean readStream() throws IOException {
+            HttpURLConnection connection = (HttpURLConnection)
+                    new URL(getRelayUrl(mSourceId, mClientSecret)).openConnection();
+            connection.setConnectTimeout(CONNECT_TIMEOUT_MS);
+            connection.setReadTimeout(READ_TIMEOUT_MS);
+            connection.setUseCaches(false);
+            connection.setRequestProperty("Accept", ServerSentEventReader.CONTENT_TYPE);
+            connection.setRequestProperty("Accept-Charset", StripeApiHandler.CHARSET);
+            synchronized (this) {
+                if (mIsFinished) {
+                    return true;
+                }
+                mConnection = connection;
+            }
+
+            String contentType = connection.getContentType();
+            if (connection.getResponseCode() != HttpURLConnection.HTTP_OK
+                    || contentType == null
+                    || !contentType.startsWith(ServerSentEventReader.CONTENT_TYPE)) {
+                return false;
+            }
+
+            ServerSentEventReader reader =
+                    new ServerSentEventReader(connection.getInputStream());
+            try {
+                ServerSentEventReader.Event event;
+                while ((event = reader.readEvent()) != null) {
+                    if (!ServerSentEventReader.Event.DEFAULT_NAME.equals(event.mName)
+                            && !SOURCE_EVENT_NAME.equals(event.mName)) {
+                        continue;
+                    }
+
+                    final Source source = Source.fromString(event.mData);
+                    if (source == null) {
+                        continue;
+                    }
+
+                    mClock.postDelayed(new Runnable() {
+                        @Override
+                        public void run() {
+                            onSource(source);
+                        }
+                    }, this, 0L);
+                    if (isSettled(source.getStatus())) {
+                        return true;
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+            return false;
+        }
+
+        private void onSource(@NonNull Source source) {
+            if (isFinished()) {
+                return;
+            }
+
+            notifyIfChanged(source);
+            String status = source.getStatus();
+            if (Source.CHARGEABLE.equals(status) || Source.CONSUMED.equals(status)) {
+                finish(new PollingResponse(source, true, false));
+            } else if (isSettled(status)) {
+                finish(new PollingResponse(source, false, false));
+            }
+        }
+
+        /**
+         * Poll the source for whatever time is left, since the relay cannot tell us about it.
+         */
+        private void fallBack() {
+            long remainingMs = mDeadlineMs - mClock.uptimeMillis();
+            if (isFinished() || remainingMs <= 0) {
+                return;
+            }
+
+            PollingScheduler scheduler =
+                    mScheduler == null ? PollingScheduler.getInstance() : mScheduler;
+            PollingHandle fallbackHandle = scheduler.poll(
+                    mSourceId,
+                    mClientSecret,
+                    mPublishableKey,
+                    this,
+                    (int) remainingMs);
+            boolean isFinished;
+            synchronized (this) {
+                isFinished = mIsFinished;
+                mFallbackHandle = fallbackHandle;
+            }
+            if (isFinished) {
+                fallbackHandle.cancel();
+            }
+        }
+
+        /**
+         * Called with the result of polling, once the stream has been given up on.
+         */
+        @Override
+        public void onPollingResponse(@NonNull PollingResponse pollingResponse) {
+            if (isFinished()) {
+                return;
+            }
+
+            if (pollingResponse.getSource() != null) {
+                notifyIfChanged(pollingResponse.getSource());
+            }
+            finish(pollingResponse);
+        }
+
+        private void notifyIfChanged(@NonNull Source source) {
+            String status = source.getStatus();
+            boolean isChanged = mLatestSource == null
+                    || status == null
+                    || !status.equals(mLatestSource.getStatus());
+            mLatestSource = source;
+            if (isChanged) {
+                mListener.onStatusChanged(source);
+            }
+        }
+
+        @Override
+        public boolean cancel(@NonNull PollingHandle handle) {
+            return stop();
+        }
+
+        private void finish(@NonNull PollingResponse response) {
+            if (stop()) {
+                mHandle.complete();
+                mListener.onPollingResponse(response);
+            }
+        }
+
+        /**
+         * Stop watching, releasing the connection, the fallback poll and the timeout.
+         *
+         * @return {@code true} if watching was stopped, or {@code false} if it already had been
+         */
+        private boolean stop() {
+            PollingHandle fallbackHandle;
+            synchronized (this) {
+                if (mIsFinished) {
+                    return false;
+                }
+                mIsFinished = true;
+                fallbackHandle = mFallbackHandle;
+            }
+
+            mClock.cancel(this);
+            disconnect();
+            if (fallbackHandle != null) {
+                fallbackHandle.cancel();
+            }
+            return true;
+        }
+
+        private synchronized boolean isFinished() {
+            return mIsFinished;
+        }
+
+        /**
+         * Close the connection to the relay, if it is open. Called from the clock, this stops
+         * the stream thread from reading any further.
+         */
+        private void disconnect() {
+            HttpURLConnection connection;
+            synchronized (this) {
+                connection = mConnection;
+                mConnection = null;
+            }
+            if (connection != null) {
+                connection.disconnect();
+            }
+        }
+    }
+}
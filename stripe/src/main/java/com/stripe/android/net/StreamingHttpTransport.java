@@ -0,0 +1,61 @@
+package com.stripe.android.net;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An {@link HttpTransport} that can also hand the raw response body to a {@link ResponseHandler},
+ * so that a response can be parsed as it arrives instead of being read into a {@link String}
+ * first.
+ */
+public interface StreamingHttpTransport extends HttpTransport {
+
+    /**
+     * Send a request and let the handler consume the response body.
+     *
+     * @param method the HTTP method, either {@code GET} or {@code POST}
+     * @param url the full URL of the endpoint
+     * @param query the form-encoded parameters, or {@code null} if there are none
+     * @param headers the request headers
+     * @param handler the {@link ResponseHandler} that turns the response into a result
+     * @param <T> the type of the result
+     * @return whatever the handler returned
+     * @throws IOException if the request could not be sent or the response could not be read
+     */
+    <T> T execute(
+            @NonNull String method,
+            @NonNull String url,
+            @Nullable String query,
+            @NonNull Map<String, String> headers,
+            @NonNull ResponseHandler<T> handler) throws IOException;
+
+    /**
+     * Represents something that consumes a response as it is read from the network.
+     *
+     * @param <T> the type of the result
+     */
+    interface ResponseHandler<T> {
+
+        /**
+         * Consume a response. The transport closes the body afterwards, reading and discarding
+         * whatever the handler left unread.
+         *
+         * @param responseCode the HTTP status code
+         * @param responseHeaders the response headers
+         * @param body the response body, or {@code null} if there is none
+         * @param contentLength the length of the body, or {@code -1} if it is unknown
+         * @return the result of handling the response
+         * @throws IOException if the body could not be read
+         */
+        T handleResponse(
+                int responseCode,
+                @Nullable Map<String, List<String>> responseHeaders,
+                @Nullable InputStream body,
+                int contentLength) throws IOException;
+    }
+}
@@ -5,6 +5,7 @@ import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.annotation.StringDef;
 import android.support.annotation.VisibleForTesting;
+import android.util.JsonReader;
 
 import com.stripe.android.BuildConfig;
 import com.stripe.android.exception.APIConnectionException;
@@ -24,25 +25,19 @@ import com.stripe.android.util.StripeTextUtils;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.net.URLEncoder;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.Scanner;
-
-import javax.net.ssl.HttpsURLConnection;
-import javax.net.ssl.SSLSocketFactory;
+import java.util.TimeZone;
 
 /**
  * Handler for calls to the Stripe API.
@@ -64,8 +59,54 @@ public class StripeApiHandler {
     static final String GET = "GET";
     static final String POST = "POST";
 
-    private static final String DNS_CACHE_TTL_PROPERTY_NAME = "networkaddress.cache.ttl";
-    private static final SSLSocketFactory SSL_SOCKET_FACTORY = new StripeSSLSocketFactory();
+    private static final String HEADER_RETRY_AFTER = "Retry-After";
+    private static final int SOURCE_ENTITY_TAG_CACHE_SIZE = 32;
+    private static final String HTTP_DATE_FORMAT = "EEE, dd MMM yyyy HH:mm:ss zzz";
+
+    // Inputs that make hashing and parsing load their classes before the first real request.
+    private static final String WARM_UP_INPUT = "warm up";
+    private static final String WARM_UP_SOURCE =
+            "{\"id\":\"src_warm_up\",\"object\":\"source\",\"amount\":0}";
+    private static final String WARM_UP_TOKEN =
+            "{\"id\":\"tok_warm_up\",\"object\":\"token\",\"type\":\"card\"}";
+    private static final String WARM_UP_ERROR =
+            "{\"error\":{\"type\":\"invalid_request_error\",\"message\":\"warm up\"}}";
+    private static final RequestOptions WARM_UP_OPTIONS =
+            RequestOptions.builder("pk_warm_up").build();
+
+    private static final JsonResponseHandler<Source> SOURCE_RESPONSE_HANDLER =
+            new JsonResponseHandler<Source>() {
+                @Nullable
+                @Override
+                Source parse(@NonNull JsonReader reader) throws IOException {
+                    return Source.fromJson(reader);
+                }
+            };
+
+    private static final JsonResponseHandler<Token> TOKEN_RESPONSE_HANDLER =
+            new JsonResponseHandler<Token>() {
+                @Nullable
+                @Override
+                Token parse(@NonNull JsonReader reader) throws IOException {
+                    try {
+                        return TokenParser.parseToken(reader);
+                    } catch (JSONException invalidToken) {
+                        return null;
+                    }
+                }
+            };
+
+    @NonNull private static final SingleFlight sSingleFlight = new SingleFlight();
+    @NonNull private static final EntityTagCache<Source> sSourceEntityTags =
+            new EntityTagCache<>(SOURCE_ENTITY_TAG_CACHE_SIZE);
+
+    @Nullable private static volatile Map<String, String> sStaticHeaders;
+    @Nullable private static volatile HttpTransport sHttpTransport;
+    @NonNull private static volatile RetryPolicy sRetryPolicy = RetryPolicy.builder().build();
+    @NonNull private static volatile SourceCache sSourceCache = SourceCache.builder().build();
+    @Nullable private static volatile PollingStrategy sPollingStrategy;
+    @Nullable private static volatile AnalyticsQueue sAnalyticsQueue;
+    @Nullable private static volatile RequestMetricsListener sRequestMetricsListener;
 
     /**
      * Create a {@link Source} using the input {@link SourceParams}.
@@ -125,7 +166,7 @@ public class StripeApiHandler {
                     apiKey,
                     sourceParams.getType());
             logTokenRequest(loggingParams, options, loggingResponseListener);
-            return Source.fromString(requestData(POST, getSourcesUrl(), paramMap, options));
+            return createSharedSource(paramMap, options);
         } catch (CardException unexpected) {
             // This particular kind of exception should not be possible from a Source API endpoint.
             throw new APIException(
@@ -158,12 +199,56 @@ public class StripeApiHandler {
             InvalidRequestException,
             APIConnectionException,
             APIException {
+        return retrieveSource(sourceId, clientSecret, publishableKey, sRetryPolicy);
+    }
+
+    /**
+     * Retrieve an existing {@link Source} object from the server, retrying failures as the given
+     * {@link RetryPolicy} allows, unless the {@link SourceCache} has it.
+     */
+    @Nullable
+    static Source retrieveSource(
+            @NonNull String sourceId,
+            @NonNull String clientSecret,
+            @NonNull String publishableKey,
+            @NonNull RetryPolicy retryPolicy)
+            throws AuthenticationException,
+            InvalidRequestException,
+            APIConnectionException,
+            APIException {
+        return retrieveSource(sourceId, clientSecret, publishableKey, retryPolicy, true);
+    }
+
+    /**
+     * Retrieve an existing {@link Source} object from the server, retrying failures as the given
+     * {@link RetryPolicy} allows. Polling, which has its own backoff, uses
+     * {@link RetryPolicy#NONE}, and does not accept a pending source from the
+     * {@link SourceCache}, since it is waiting for that source to change.
+     */
+    @Nullable
+    static Source retrieveSource(
+            @NonNull String sourceId,
+            @NonNull String clientSecret,
+            @NonNull String publishableKey,
+            @NonNull RetryPolicy retryPolicy,
+            boolean acceptPending)
+            throws AuthenticationException,
+            InvalidRequestException,
+            APIConnectionException,
+            APIException {
+        SourceCache sourceCache = sSourceCache;
+        Source cachedSource = sourceCache.get(sourceId, clientSecret, acceptPending);
+        if (cachedSource != null) {
+            return cachedSource;
+        }
 
         Map<String, Object> paramMap = SourceParams.createRetrieveSourceParams(clientSecret);
         RequestOptions options = RequestOptions.builder(publishableKey).build();
         try {
-            return Source.fromString(
-                    requestData(GET, getRetrieveSourceApiUrl(sourceId), paramMap, options));
+            Source source = requestSource(
+                    GET, getRetrieveSourceApiUrl(sourceId), paramMap, options, retryPolicy);
+            sourceCache.put(sourceId, clientSecret, source);
+            return source;
         } catch (CardException unexpected) {
             // This particular kind of exception should not be possible from a Source API endpoint.
             throw new APIException(
@@ -176,6 +261,7 @@ public class StripeApiHandler {
 
     /**
      * Poll for changes in a {@link Source} using a background thread with an exponential backoff.
+     * If the same source is already being polled, the callback shares the result of that poll.
      *
      * @param sourceId the {@link Source#mId} to check on
      * @param clientSecret the {@link Source#mClientSecret} to check on
@@ -183,24 +269,22 @@ public class StripeApiHandler {
      * @param callback a {@link PollingResponseHandler} to use as a callback
      * @param timeoutMs the amount of time before the polling expires. If {@code null} is passed
      *                  in, 10000ms will be used.
+     * @return a {@link PollingHandle} that can cancel the polling
      */
-    public static void pollSource(
+    @NonNull
+    public static PollingHandle pollSource(
             @NonNull final String sourceId,
             @NonNull final String clientSecret,
             @NonNull final String publishableKey,
             @NonNull final PollingResponseHandler callback,
             @Nullable Integer timeoutMs) {
 
-        PollingNetworkHandler networkHandler =
-                new PollingNetworkHandler(
-                        sourceId,
-                        clientSecret,
-                        publishableKey,
-                        callback,
-                        timeoutMs,
-                        null,
-                        PollingParameters.generateDefaultParameters());
-        networkHandler.start();
+        return PollingScheduler.getInstance().poll(
+                sourceId,
+                clientSecret,
+                publishableKey,
+                callback,
+                timeoutMs);
     }
 
     /**
@@ -226,7 +310,6 @@ public class StripeApiHandler {
                         publishableKey,
                         timeoutMs,
                         null,
-                        null,
                         PollingParameters.generateDefaultParameters());
         return pollingSyncNetworkHandler.pollForSourceUpdate();
     }
@@ -278,7 +361,7 @@ public class StripeApiHandler {
             }
         }
 
-        return requestToken(POST, getApiUrl(), cardParams, options);
+        return createSharedToken(cardParams, options);
     }
 
     /**
@@ -301,7 +384,8 @@ public class StripeApiHandler {
             APIConnectionException,
             APIException {
         try {
-            return requestToken(GET, getRetrieveTokenApiUrl(tokenId), null, options);
+            return requestToken(
+                    GET, getRetrieveTokenApiUrl(tokenId), null, options, sRetryPolicy);
         } catch (CardException cardException) {
             // It shouldn't be possible to throw a CardException from the retrieve token method.
             throw new APIException(
@@ -312,46 +396,195 @@ public class StripeApiHandler {
         }
     }
 
-    static String createQuery(Map<String, Object> params)
-            throws UnsupportedEncodingException, InvalidRequestException {
-        StringBuilder queryStringBuffer = new StringBuilder();
-        List<Parameter> flatParams = flattenParams(params);
-        Iterator<Parameter> it = flatParams.iterator();
+    /**
+     * Do the work that otherwise makes the first request to Stripe slow. A request is sent to
+     * Stripe, so that the next one finds a connection kept alive. The classes that building
+     * headers and parsing responses need are loaded. A SHA-1 {@link java.security.MessageDigest}
+     * is created once, which loads the security provider that hashing device identifiers needs.
+     * This blocks while the connection is opened, so do not call it on the main thread;
+     * {@link com.stripe.android.Stripe#warmUp()} runs it in the background.
+     *
+     * No connection is opened if a custom {@link HttpTransport} has been set.
+     *
+     * @throws APIConnectionException if Stripe could not be reached
+     */
+    public static void warmUp() throws APIConnectionException {
+        StripeTextUtils.shaHashInput(WARM_UP_INPUT);
+        SingleFlight.createKey(POST, getSourcesUrl(), null, WARM_UP_OPTIONS);
+        getStaticHeaders();
+        try {
+            parseWarmUpBody(SOURCE_RESPONSE_HANDLER, 200, WARM_UP_SOURCE);
+            parseWarmUpBody(TOKEN_RESPONSE_HANDLER, 200, WARM_UP_TOKEN);
+            parseWarmUpBody(SOURCE_RESPONSE_HANDLER, 400, WARM_UP_ERROR);
+        } catch (IOException unexpected) {
+            // Reading from memory cannot fail, and the classes are loaded either way.
+        }
 
-        while (it.hasNext()) {
-            if (queryStringBuffer.length() > 0) {
-                queryStringBuffer.append("&");
+        HttpTransport transport = getHttpTransport();
+        try {
+            if (transport instanceof UrlConnectionHttpTransport) {
+                ((UrlConnectionHttpTransport) transport).warmUp(LIVE_API_BASE + "/v1/");
+            } else if (transport instanceof Http2Transport) {
+                ((Http2Transport) transport).warmUp(LIVE_API_BASE + "/v1/");
             }
-            Parameter param = it.next();
-            queryStringBuffer.append(urlEncodePair(param.key, param.value));
+        } catch (IOException e) {
+            throw createConnectionException(e);
         }
+    }
 
-        return queryStringBuffer.toString();
+    /**
+     * Set the {@link HttpTransport} used to send every request to Stripe. By default, a
+     * {@link UrlConnectionHttpTransport} is used, which leaves the platform to keep connections
+     * alive between requests.
+     *
+     * @param httpTransport the transport to use, or {@code null} to restore the default
+     */
+    public static void setHttpTransport(@Nullable HttpTransport httpTransport) {
+        sHttpTransport = httpTransport;
     }
 
-    static Map<String, String> getHeaders(RequestOptions options) {
-        Map<String, String> headers = new HashMap<>();
-        String apiVersion = options.getApiVersion();
-        headers.put("Accept-Charset", CHARSET);
-        headers.put("Accept", "application/json");
-        headers.put("User-Agent",
-                String.format("Stripe/v1 AndroidBindings/%s", BuildConfig.VERSION_NAME));
-
-        headers.put("Authorization", String.format("Bearer %s", options.getPublishableApiKey()));
-
-        // debug headers
-        Map<String, String> propertyMap = new HashMap<>();
-
-        final String systemPropertyName = "java.version";
-        propertyMap.put(systemPropertyName, System.getProperty(systemPropertyName));
-        propertyMap.put("os.name", "android");
-        propertyMap.put("os.version", String.valueOf(Build.VERSION.SDK_INT));
-        propertyMap.put("bindings.version", BuildConfig.VERSION_NAME);
-        propertyMap.put("lang", "Java");
-        propertyMap.put("publisher", "Stripe");
-        JSONObject headerMappingObject = new JSONObject(propertyMap);
-        headers.put("X-Stripe-Client-User-Agent", headerMappingObject.toString());
+    /**
+     * Set the {@link RetryPolicy} that decides whether failed requests to Stripe are sent
+     * again. By default, transient failures of requests that are safe to repeat are retried a
+     * couple of times within a few seconds.
+     *
+     * @param retryPolicy the policy to use, or {@code null} to restore the default
+     */
+    public static void setRetryPolicy(@Nullable RetryPolicy retryPolicy) {
+        sRetryPolicy = retryPolicy == null ? RetryPolicy.builder().build() : retryPolicy;
+    }
+
+    /**
+     * Set the {@link SourceCache} that keeps recently retrieved {@link Source} objects. By
+     * default, a few dozen sources are kept: settled ones for a minute, and pending ones for a
+     * second. Use {@link SourceCache#NONE} to always ask Stripe.
+     *
+     * @param sourceCache the cache to use, or {@code null} to restore the default
+     */
+    public static void setSourceCache(@Nullable SourceCache sourceCache) {
+        sSourceCache = sourceCache == null ? SourceCache.builder().build() : sourceCache;
+    }
+
+    @VisibleForTesting
+    @NonNull
+    static SourceCache getSourceCache() {
+        return sSourceCache;
+    }
 
+    /**
+     * Set the {@link PollingStrategy} that spaces out the requests made while polling a source.
+     * By default, polls back off exponentially while the source is pending, and stop after a
+     * few failures in a row. Polls that are already running keep the strategy they started with.
+     *
+     * @param pollingStrategy the strategy to use, or {@code null} to restore the default
+     */
+    public static void setPollingStrategy(@Nullable PollingStrategy pollingStrategy) {
+        sPollingStrategy = pollingStrategy;
+    }
+
+    /**
+     * @param pollingParameters the {@link PollingParameters} the default strategy backs off with
+     * @return the {@link PollingStrategy} set with {@link #setPollingStrategy(PollingStrategy)},
+     * or the default one
+     */
+    @NonNull
+    static PollingStrategy getPollingStrategy(@NonNull PollingParameters pollingParameters) {
+        PollingStrategy pollingStrategy = sPollingStrategy;
+        return pollingStrategy == null
+                ? new BackoffPollingStrategy(pollingParameters)
+                : pollingStrategy;
+    }
+
+    /**
+     * Set the {@link RequestMetricsListener} that is told where the time went in each request
+     * to Stripe that creates or retrieves a {@link Source} or {@link Token}. No metrics are
+     * collected unless one is set.
+     *
+     * @param listener the listener to use, or {@code null} to stop collecting metrics
+     */
+    public static void setRequestMetricsListener(@Nullable RequestMetricsListener listener) {
+        sRequestMetricsListener = listener;
+    }
+
+    @Nullable
+    static RequestMetricsListener getRequestMetricsListener() {
+        return sRequestMetricsListener;
+    }
+
+    @VisibleForTesting
+    @NonNull
+    static EntityTagCache<Source> getSourceEntityTags() {
+        return sSourceEntityTags;
+    }
+
+    @NonNull
+    static HttpTransport getHttpTransport() {
+        HttpTransport httpTransport = sHttpTransport;
+        if (httpTransport == null) {
+            synchronized (StripeApiHandler.class) {
+                if (sHttpTransport == null) {
+                    sHttpTransport = new UrlConnectionHttpTransport();
+                }
+                httpTransport = sHttpTransport;
+            }
+        }
+        return httpTransport;
+    }
+
+    /**
+     * Get the {@link AnalyticsQueue} that token and source creation events are sent through.
+     *
+     * @return the shared {@link AnalyticsQueue}
+     */
+    @NonNull
+    public static AnalyticsQueue getAnalyticsQueue() {
+        AnalyticsQueue analyticsQueue = sAnalyticsQueue;
+        if (analyticsQueue == null) {
+            synchronized (StripeApiHandler.class) {
+                if (sAnalyticsQueue == null) {
+                    sAnalyticsQueue = new AnalyticsQueue(new AnalyticsQueue.EventSender() {
+                        @NonNull
+                        @Override
+                        public StripeResponse send(
+                                @NonNull Map<String, Object> params,
+                                @NonNull RequestOptions options) throws StripeException {
+                            return getStripeResponse(
+                                    GET, LIVE_LOGGING_BASE, params, options, null);
+                        }
+                    });
+                }
+                analyticsQueue = sAnalyticsQueue;
+            }
+        }
+        return analyticsQueue;
+    }
+
+    static String createQuery(Map<String, Object> params)
+            throws UnsupportedEncodingException, InvalidRequestException {
+        return FormEncoder.encode(params);
+    }
+
+    /**
+     * Get the headers to send with a request. The headers that are the same for every request
+     * are only built once, and the full set is kept on the {@link RequestOptions}, so that
+     * sending the same options again, such as on a retry, builds nothing at all.
+     *
+     * @param options the {@link RequestOptions} of the request
+     * @return the headers, which must not be modified
+     */
+    @NonNull
+    static Map<String, String> getHeaders(@NonNull RequestOptions options) {
+        Map<String, String> headers = options.getHeaders();
+        if (headers != null) {
+            return headers;
+        }
+
+        Map<String, String> staticHeaders = getStaticHeaders();
+        headers = new HashMap<>(staticHeaders.size() + 3, 1.0f);
+        headers.putAll(staticHeaders);
+        headers.put("Authorization", "Bearer " + options.getPublishableApiKey());
+
+        String apiVersion = options.getApiVersion();
         if (apiVersion != null) {
             headers.put("Stripe-Version", apiVersion);
         }
@@ -360,9 +593,69 @@ public class StripeApiHandler {
             headers.put("Idempotency-Key", options.getIdempotencyKey());
         }
 
+        headers = Collections.unmodifiableMap(headers);
+        options.setHeaders(headers);
         return headers;
     }
 
+    /**
+     * Get the headers to send with a request, asking for the response only if it does not have
+     * the given {@code ETag}.
+     */
+    @NonNull
+    private static Map<String, String> getHeaders(
+            @NonNull RequestOptions options,
+            @Nullable String ifNoneMatch) {
+        Map<String, String> headers = getHeaders(options);
+        return ifNoneMatch == null ? headers : EntityTagCache.addIfNoneMatch(headers, ifNoneMatch);
+    }
+
+    private static boolean isNotModified(int responseCode, @Nullable String ifNoneMatch) {
+        return ifNoneMatch != null && responseCode == EntityTagCache.HTTP_NOT_MODIFIED;
+    }
+
+    private static void parseWarmUpBody(
+            @NonNull JsonResponseHandler<?> responseHandler,
+            int responseCode,
+            @NonNull String body) throws IOException {
+        byte[] bytes = body.getBytes(CHARSET);
+        responseHandler.handleResponse(
+                responseCode, null, new ByteArrayInputStream(bytes), bytes.length);
+    }
+
+    /**
+     * @return the headers that do not depend on the {@link RequestOptions}
+     */
+    @NonNull
+    private static Map<String, String> getStaticHeaders() {
+        Map<String, String> staticHeaders = sStaticHeaders;
+        if (staticHeaders == null) {
+            staticHeaders = new HashMap<>();
+            staticHeaders.put("Accept-Charset", CHARSET);
+            staticHeaders.put("Accept", "application/json");
+            staticHeaders.put("User-Agent",
+                    "Stripe/v1 AndroidBindings/" + BuildConfig.VERSION_NAME);
+
+            // debug headers
+            Map<String, String> propertyMap = new HashMap<>();
+
+            final String systemPropertyName = "java.version";
+            propertyMap.put(systemPropertyName, System.getProperty(systemPropertyName));
+            propertyMap.put("os.name", "android");
+            propertyMap.put("os.version", String.valueOf(Build.VERSION.SDK_INT));
+            propertyMap.put("bindings.version", BuildConfig.VERSION_NAME);
+            propertyMap.put("lang", "Java");
+            propertyMap.put("publisher", "Stripe");
+            JSONObject headerMappingObject = new JSONObject(propertyMap);
+            staticHeaders.put("X-Stripe-Client-User-Agent", headerMappingObject.toString());
+
+            // Building these twice on a race is harmless, so there is no need to lock.
+            staticHeaders = Collections.unmodifiableMap(staticHeaders);
+            sStaticHeaders = staticHeaders;
+        }
+        return staticHeaders;
+    }
+
     @VisibleForTesting
     static String getApiUrl() {
         return String.format(Locale.ENGLISH, "%s/v1/%s", LIVE_API_BASE, TOKENS);
@@ -383,68 +676,6 @@ public class StripeApiHandler {
         return String.format("%s/%s", getApiUrl(), tokenId);
     }
 
-    private static String formatURL(String url, String query) {
-        if (query == null || query.isEmpty()) {
-            return url;
-        } else {
-            // In some cases, URL can already contain a question mark (eg, upcoming invoice lines)
-            String separator = url.contains("?") ? "&" : "?";
-            return String.format("%s%s%s", url, separator, query);
-        }
-    }
-
-    private static java.net.HttpURLConnection createGetConnection(
-            String url, String query, RequestOptions options) throws IOException {
-        String getURL = formatURL(url, query);
-        java.net.HttpURLConnection conn = createStripeConnection(getURL, options);
-        conn.setRequestMethod(GET);
-
-        return conn;
-    }
-
-    private static java.net.HttpURLConnection createPostConnection(
-            String url, String query, RequestOptions options) throws IOException {
-        java.net.HttpURLConnection conn = createStripeConnection(url, options);
-
-        conn.setDoOutput(true);
-        conn.setRequestMethod(POST);
-        conn.setRequestProperty("Content-Type", String.format(
-                "application/x-www-form-urlencoded;charset=%s", CHARSET));
-
-        OutputStream output = null;
-        try {
-            output = conn.getOutputStream();
-            output.write(query.getBytes(CHARSET));
-        } finally {
-            if (output != null) {
-                output.close();
-            }
-        }
-        return conn;
-    }
-
-    private static java.net.HttpURLConnection createStripeConnection(
-            String url,
-            RequestOptions options)
-            throws IOException {
-        URL stripeURL;
-
-        stripeURL = new URL(url);
-        HttpURLConnection conn  = (HttpURLConnection) stripeURL.openConnection();
-        conn.setConnectTimeout(30 * 1000);
-        conn.setReadTimeout(80 * 1000);
-        conn.setUseCaches(false);
-        for (Map.Entry<String, String> header : getHeaders(options).entrySet()) {
-            conn.setRequestProperty(header.getKey(), header.getValue());
-        }
-
-        if (conn instanceof HttpsURLConnection) {
-            ((HttpsURLConnection) conn).setSSLSocketFactory(SSL_SOCKET_FACTORY);
-        }
-
-        return conn;
-    }
-
     private static void logTokenRequest(
             @NonNull Map<String, Object> loggingMap,
             @Nullable RequestOptions options,
@@ -459,54 +690,86 @@ public class StripeApiHandler {
             return;
         }
 
-        String originalDNSCacheTTL = null;
-        Boolean allowedToSetTTL = true;
+        // Logging happens in the background, so the request being logged never waits on it.
+        getAnalyticsQueue().enqueue(loggingMap, options, listener);
+    }
 
-        try {
-            originalDNSCacheTTL = java.security.Security
-                    .getProperty(DNS_CACHE_TTL_PROPERTY_NAME);
-            // disable DNS cache
-            java.security.Security
-                    .setProperty(DNS_CACHE_TTL_PROPERTY_NAME, "0");
-        } catch (SecurityException se) {
-            allowedToSetTTL = false;
+    /**
+     * Send a request and read its response into a {@link String}.
+     *
+     * @param ifNoneMatch the {@code ETag} of the response the caller already has, or
+     *                    {@code null} to ask for the full response
+     * @return the response, which is only unsuccessful if it is a {@code 304 Not Modified}
+     * answer to {@code ifNoneMatch}
+     */
+    @Nullable
+    private static StripeResponse requestData(
+            @RestMethod final String method,
+            final String url,
+            final Map<String, Object> params,
+            final RequestOptions options,
+            @NonNull RetryPolicy retryPolicy,
+            @Nullable final String ifNoneMatch)
+            throws AuthenticationException, InvalidRequestException,
+            APIConnectionException, CardException, APIException {
+
+        if (options == null) {
+            return null;
         }
 
-        try {
-            StripeResponse response = getStripeResponse(
-                    GET,
-                    LIVE_LOGGING_BASE,
-                    loggingMap,
-                    options);
-
-            if (listener != null) {
-                listener.onLoggingResponse(response);
-            }
-        } catch(StripeException stripeException) {
-            if (listener != null) {
-                listener.onStripeException(stripeException);
-            }
-            // We're just logging. No need to crash here or attempt to re-log things.
-        } finally {
-            if (allowedToSetTTL) {
-                if (originalDNSCacheTTL == null) {
-                    // value unspecified by implementation
-                    // DNS_CACHE_TTL_PROPERTY_NAME of -1 = cache forever
-                    java.security.Security.setProperty(
-                            DNS_CACHE_TTL_PROPERTY_NAME, "-1");
-                } else {
-                    java.security.Security.setProperty(
-                            DNS_CACHE_TTL_PROPERTY_NAME, originalDNSCacheTTL);
+        checkApiKey(options);
+        return retryPolicy.execute(method, options, new RetryPolicy.Attempt<StripeResponse>() {
+            @Override
+            public StripeResponse attempt() throws AuthenticationException,
+                    InvalidRequestException, APIConnectionException, CardException,
+                    APIException {
+                RequestTrace trace = RequestTrace.current();
+                if (trace != null) {
+                    trace.onAttempt();
+                }
+                StripeResponse response =
+                        getStripeResponse(method, url, params, options, ifNoneMatch);
+
+                int rCode = response.getResponseCode();
+                String rBody = response.getResponseBody();
+
+                String requestId = null;
+                Map<String, List<String>> headers = response.getResponseHeaders();
+                List<String> requestIdList = headers == null ? null : headers.get("Request-Id");
+                if (requestIdList != null && requestIdList.size() > 0) {
+                    requestId = requestIdList.get(0);
                 }
+                if (trace != null) {
+                    trace.onResponse(rCode, requestId);
+                }
+
+                if ((rCode < 200 || rCode >= 300) && !isNotModified(rCode, ifNoneMatch)) {
+                    handleAPIError(rBody, rCode, requestId, getRetryAfterMs(headers));
+                }
+                return response;
             }
-        }
+        });
     }
 
-    private static String requestData(
-            @RestMethod String method,
-            String url,
+    /**
+     * Send a request whose response is parsed as it is read from the network, without being
+     * read into a {@link String} first.
+     *
+     * @param ifNoneMatch the {@code ETag} of the response the caller already has, or
+     *                    {@code null} to ask for the full response
+     * @return the response, which is only unsuccessful if it is a {@code 304 Not Modified}
+     * answer to {@code ifNoneMatch}
+     */
+    @Nullable
+    private static <T> ParsedResponse<T> requestParsed(
+            @RestMethod final String method,
+            final String url,
             Map<String, Object> params,
-            RequestOptions options)
+            final RequestOptions options,
+            @NonNull RetryPolicy retryPolicy,
+            @NonNull final StreamingHttpTransport transport,
+            @NonNull final JsonResponseHandler<T> handler,
+            @Nullable final String ifNoneMatch)
             throws AuthenticationException, InvalidRequestException,
             APIConnectionException, CardException, APIException {
 
@@ -514,69 +777,202 @@ public class StripeApiHandler {
             return null;
         }
 
-        String originalDNSCacheTTL = null;
-        Boolean allowedToSetTTL = true;
-
-        try {
-            originalDNSCacheTTL = java.security.Security
-                    .getProperty(DNS_CACHE_TTL_PROPERTY_NAME);
-            // disable DNS cache
-            java.security.Security
-                    .setProperty(DNS_CACHE_TTL_PROPERTY_NAME, "0");
-        } catch (SecurityException se) {
-            allowedToSetTTL = false;
-        }
-
-        String apiKey = options.getPublishableApiKey();
-        if (apiKey.trim().isEmpty()) {
-            throw new AuthenticationException(
-                    "No API key provided. (HINT: set your API key using 'Stripe.apiKey = <API-KEY>'. "
-                            + "You can generate API keys from the Stripe web interface. "
-                            + "See https://stripe.com/api for details or email support@stripe.com if you have questions.",
-                    null, 0);
-        }
-
-        StripeResponse response = getStripeResponse(method, url, params, options);
+        checkApiKey(options);
+        checkMethod(method);
+        final String query = encodeQuery(params);
+
+        return retryPolicy.execute(method, options, new RetryPolicy.Attempt<ParsedResponse<T>>() {
+            @Override
+            public ParsedResponse<T> attempt() throws AuthenticationException,
+                    InvalidRequestException, APIConnectionException, CardException,
+                    APIException {
+                RequestTrace trace = RequestTrace.current();
+                if (trace != null) {
+                    trace.onAttempt();
+                }
+                ParsedResponse<T> response;
+                try {
+                    response = transport.execute(
+                            method, url, query, getHeaders(options, ifNoneMatch), handler);
+                } catch (IOException e) {
+                    throw createConnectionException(e);
+                }
+                if (trace != null) {
+                    trace.onResponse(response.getResponseCode(), response.getRequestId());
+                }
 
-        int rCode = response.getResponseCode();
-        String rBody = response.getResponseBody();
+                if (!response.isSuccessful()
+                        && !isNotModified(response.getResponseCode(), ifNoneMatch)) {
+                    handleAPIError(
+                            response.getError(),
+                            response.getResponseCode(),
+                            response.getRequestId(),
+                            getRetryAfterMs(response.getResponseHeaders()));
+                }
+                return response;
+            }
+        });
+    }
 
-        String requestId = null;
-        Map<String, List<String>> headers = response.getResponseHeaders();
-        List<String> requestIdList = headers == null ? null : headers.get("Request-Id");
-        if (requestIdList != null && requestIdList.size() > 0) {
-            requestId = requestIdList.get(0);
-        }
+    /**
+     * Create a {@link Source}, sharing the network call with any identical creation that is
+     * already under way.
+     */
+    @Nullable
+    private static Source createSharedSource(
+            @NonNull final Map<String, Object> params,
+            @NonNull RequestOptions options)
+            throws AuthenticationException, InvalidRequestException,
+            APIConnectionException, CardException, APIException {
+        final String url = getSourcesUrl();
+        final RequestOptions idempotentOptions = options.withIdempotencyKey();
+        return sSingleFlight.execute(
+                SingleFlight.createKey(POST, url, params, options),
+                new SingleFlight.Call<Source>() {
+                    @Override
+                    public Source call() throws AuthenticationException,
+                            InvalidRequestException, APIConnectionException, CardException,
+                            APIException {
+                        return requestSource(
+                                POST, url, params, idempotentOptions, sRetryPolicy);
+                    }
+                });
+    }
 
-        if (rCode < 200 || rCode >= 300) {
-            handleAPIError(rBody, rCode, requestId);
-        }
+    /**
+     * Create a {@link Token}, sharing the network call with any identical creation that is
+     * already under way.
+     */
+    @Nullable
+    private static Token createSharedToken(
+            @NonNull final Map<String, Object> params,
+            @NonNull RequestOptions options)
+            throws AuthenticationException, InvalidRequestException,
+            APIConnectionException, CardException, APIException {
+        final String url = getApiUrl();
+        final RequestOptions idempotentOptions = options.withIdempotencyKey();
+        return sSingleFlight.execute(
+                SingleFlight.createKey(POST, url, params, options),
+                new SingleFlight.Call<Token>() {
+                    @Override
+                    public Token call() throws AuthenticationException,
+                            InvalidRequestException, APIConnectionException, CardException,
+                            APIException {
+                        return requestToken(
+                                POST, url, params, idempotentOptions, sRetryPolicy);
+                    }
+                });
+    }
 
-        if (allowedToSetTTL) {
-            if (originalDNSCacheTTL == null) {
-                // value unspecified by implementation
-                // DNS_CACHE_TTL_PROPERTY_NAME of -1 = cache forever
-                java.security.Security.setProperty(
-                        DNS_CACHE_TTL_PROPERTY_NAME, "-1");
+    private static Source requestSource(
+            @RestMethod String method,
+            String url,
+            Map<String, Object> params,
+            RequestOptions options,
+            @NonNull RetryPolicy retryPolicy)
+            throws AuthenticationException, InvalidRequestException,
+            APIConnectionException, CardException, APIException {
+        RequestTrace trace = RequestTrace.begin(method, url);
+        Exception error = null;
+        try {
+            // A source that is retrieved again is asked for with the ETag it last came with, so
+            // that if it has not changed it is neither sent nor parsed again.
+            String cacheKey = GET.equals(method) && options != null
+                    ? SingleFlight.createKey(method, url, params, options)
+                    : null;
+            EntityTagCache.Entry<Source> cached =
+                    cacheKey == null ? null : sSourceEntityTags.get(cacheKey);
+            String ifNoneMatch = cached == null ? null : cached.mEntityTag;
+
+            int responseCode;
+            Map<String, List<String>> responseHeaders;
+            Source source = null;
+            HttpTransport transport = getHttpTransport();
+            if (transport instanceof StreamingHttpTransport) {
+                ParsedResponse<Source> response = requestParsed(method, url, params, options,
+                        retryPolicy, (StreamingHttpTransport) transport, SOURCE_RESPONSE_HANDLER,
+                        ifNoneMatch);
+                if (response == null) {
+                    return null;
+                }
+                responseCode = response.getResponseCode();
+                responseHeaders = response.getResponseHeaders();
+                source = response.getBody();
             } else {
-                java.security.Security.setProperty(
-                        DNS_CACHE_TTL_PROPERTY_NAME, originalDNSCacheTTL);
+                StripeResponse response =
+                        requestData(method, url, params, options, retryPolicy, ifNoneMatch);
+                if (response == null) {
+                    return null;
+                }
+                responseCode = response.getResponseCode();
+                responseHeaders = response.getResponseHeaders();
+                if (!isNotModified(responseCode, ifNoneMatch)) {
+                    long parseStart = System.nanoTime();
+                    source = Source.fromString(response.getResponseBody());
+                    if (trace != null) {
+                        trace.add(RequestMetrics.PHASE_PARSE, System.nanoTime() - parseStart);
+                    }
+                }
+            }
+
+            if (cached != null && isNotModified(responseCode, ifNoneMatch)) {
+                return cached.mValue;
+            }
+            if (cacheKey != null) {
+                sSourceEntityTags.put(
+                        cacheKey, EntityTagCache.getEntityTag(responseHeaders), source);
+            }
+            return source;
+        } catch (Exception e) {
+            error = e;
+            throw e;
+        } finally {
+            if (trace != null) {
+                trace.finish(error);
             }
         }
-        return rBody;
     }
 
     private static Token requestToken(
             @RestMethod String method,
             String url,
             Map<String, Object> params,
-            RequestOptions options)
+            RequestOptions options,
+            @NonNull RetryPolicy retryPolicy)
             throws AuthenticationException, InvalidRequestException,
             APIConnectionException, CardException, APIException {
+        RequestTrace trace = RequestTrace.begin(method, url);
+        Exception error = null;
         try {
-            return TokenParser.parseToken(requestData(method, url, params, options));
-        } catch (JSONException ignored) {
-            return null;
+            HttpTransport transport = getHttpTransport();
+            if (transport instanceof StreamingHttpTransport) {
+                ParsedResponse<Token> response = requestParsed(method, url, params, options,
+                        retryPolicy, (StreamingHttpTransport) transport, TOKEN_RESPONSE_HANDLER,
+                        null);
+                return response == null ? null : response.getBody();
+            }
+            StripeResponse response =
+                    requestData(method, url, params, options, retryPolicy, null);
+            if (response == null) {
+                return null;
+            }
+            long parseStart = System.nanoTime();
+            try {
+                return TokenParser.parseToken(response.getResponseBody());
+            } catch (JSONException ignored) {
+                return null;
+            } finally {
+                if (trace != null) {
+                    trace.add(RequestMetrics.PHASE_PARSE, System.nanoTime() - parseStart);
+                }
+            }
+        } catch (Exception e) {
+            error = e;
+            throw e;
+        } finally {
+            if (trace != null) {
+                trace.finish(error);
+            }
         }
     }
 
@@ -584,99 +980,56 @@ public class StripeApiHandler {
             @RestMethod String method,
             String url,
             Map<String, Object> params,
-            RequestOptions options)
+            RequestOptions options,
+            @Nullable String ifNoneMatch)
             throws InvalidRequestException, APIConnectionException, APIException {
-        String query;
-        try {
-            query = createQuery(params);
-        } catch (UnsupportedEncodingException e) {
-            throw new InvalidRequestException("Unable to encode parameters to "
-                    + CHARSET
-                    + ". Please contact support@stripe.com for assistance.",
-                    null, null, 0, e);
-        }
+        String query = encodeQuery(params);
 
         // HTTPSURLConnection verifies SSL cert by default
-        return makeURLConnectionRequest(method, url, query, options);
-    }
-
-    private static List<Parameter> flattenParams(Map<String, Object> params)
-            throws InvalidRequestException {
-        return flattenParamsMap(params, null);
+        return makeURLConnectionRequest(method, url, query, options, ifNoneMatch);
     }
 
-    private static List<Parameter> flattenParamsList(List<Object> params, String keyPrefix)
-            throws InvalidRequestException {
-        List<Parameter> flatParams = new LinkedList<Parameter>();
-        Iterator<?> it = ((List<?>)params).iterator();
-        String newPrefix = String.format("%s[]", keyPrefix);
-
-        // Because application/x-www-form-urlencoded cannot represent an empty
-        // list, convention is to take the list parameter and just set it to an
-        // empty string. (e.g. A regular list might look like `a[]=1&b[]=2`.
-        // Emptying it would look like `a=`.)
-        if (params.isEmpty()) {
-            flatParams.add(new Parameter(keyPrefix, ""));
-        } else {
-            while (it.hasNext()) {
-                flatParams.addAll(flattenParamsValue(it.next(), newPrefix));
-            }
+    private static void checkApiKey(@NonNull RequestOptions options)
+            throws AuthenticationException {
+        String apiKey = options.getPublishableApiKey();
+        if (apiKey.trim().isEmpty()) {
+            throw new AuthenticationException(
+                    "No API key provided. (HINT: set your API key using 'Stripe.apiKey = <API-KEY>'. "
+                            + "You can generate API keys from the Stripe web interface. "
+                            + "See https://stripe.com/api for details or email support@stripe.com if you have questions.",
+                    null, 0);
         }
-
-        return flatParams;
     }
 
-    private static List<Parameter> flattenParamsMap(Map<String, Object> params, String keyPrefix)
+    private static String encodeQuery(Map<String, Object> params)
             throws InvalidRequestException {
-        List<Parameter> flatParams = new LinkedList<Parameter>();
-        if (params == null) {
-            return flatParams;
-        }
-
-        for (Map.Entry<String, Object> entry : params.entrySet()) {
-            String key = entry.getKey();
-            Object value = entry.getValue();
-
-            String newPrefix = key;
-            if (keyPrefix != null) {
-                newPrefix = String.format("%s[%s]", keyPrefix, key);
-            }
-
-            flatParams.addAll(flattenParamsValue(value, newPrefix));
+        try {
+            return createQuery(params);
+        } catch (UnsupportedEncodingException e) {
+            throw new InvalidRequestException("Unable to encode parameters to "
+                    + CHARSET
+                    + ". Please contact support@stripe.com for assistance.",
+                    null, null, 0, e);
         }
-
-        return flatParams;
     }
 
-    private static List<Parameter> flattenParamsValue(Object value, String keyPrefix)
-            throws InvalidRequestException {
-        List<Parameter> flatParams;
-
-        if (value instanceof Map<?, ?>) {
-            flatParams = flattenParamsMap((Map<String, Object>) value, keyPrefix);
-        } else if (value instanceof List<?>) {
-            flatParams = flattenParamsList((List<Object>) value, keyPrefix);
-        } else if ("".equals(value)) {
-            throw new InvalidRequestException("You cannot set '"+keyPrefix+"' to an empty string. "+
-                    "We interpret empty strings as null in requests. "+
-                    "You may set '"+keyPrefix+"' to null to delete the property.",
-                    keyPrefix, null, 0, null);
-        } else if (value == null) {
-            flatParams = new LinkedList<>();
-            flatParams.add(new Parameter(keyPrefix, ""));
-        } else {
-            flatParams = new LinkedList<>();
-            flatParams.add(new Parameter(keyPrefix, value.toString()));
-        }
-
-        return flatParams;
+    private static void handleAPIError(
+            String rBody,
+            int rCode,
+            String requestId,
+            @Nullable Long retryAfterMs)
+            throws InvalidRequestException, AuthenticationException,
+            CardException, APIException {
+        handleAPIError(ErrorParser.parseError(rBody), rCode, requestId, retryAfterMs);
     }
 
-    private static void handleAPIError(String rBody, int rCode, String requestId)
+    private static void handleAPIError(
+            @NonNull ErrorParser.StripeError stripeError,
+            int rCode,
+            String requestId,
+            @Nullable Long retryAfterMs)
             throws InvalidRequestException, AuthenticationException,
             CardException, APIException {
-
-        ErrorParser.StripeError stripeError = ErrorParser.parseError(rBody);
         switch (rCode) {
             case 400:
                 throw new InvalidRequestException(
@@ -707,25 +1060,54 @@ public class StripeApiHandler {
             case 403:
                 throw new PermissionException(stripeError.message, requestId, rCode);
             case 429:
-                throw new RateLimitException(stripeError.message, stripeError.param, requestId, rCode, null);
+                throw new RateLimitException(
+                        stripeError.message,
+                        stripeError.param,
+                        requestId,
+                        rCode,
+                        null,
+                        retryAfterMs);
             default:
-                throw new APIException(stripeError.message, requestId, rCode, null);
+                throw new APIException(stripeError.message, requestId, rCode, null, retryAfterMs);
         }
     }
 
-    private static String urlEncodePair(String k, String v)
-            throws UnsupportedEncodingException {
-        return String.format("%s=%s", urlEncode(k), urlEncode(v));
+    @Nullable
+    private static Long getRetryAfterMs(@Nullable Map<String, List<String>> headers) {
+        return headers == null
+                ? null
+                : parseRetryAfterMs(
+                        ParsedResponse.getHeader(headers, HEADER_RETRY_AFTER),
+                        System.currentTimeMillis());
     }
 
-    private static String urlEncode(String str) throws UnsupportedEncodingException {
-        // Preserve original behavior that passing null for an object id will lead
-        // to us actually making a request to /v1/foo/null
-        if (str == null) {
+    /**
+     * Read a {@code Retry-After} header, which holds either a number of seconds or an HTTP date.
+     *
+     * @param values the values of the header, or {@code null} if it was not sent
+     * @param nowMs the current time, to measure a date against
+     * @return the delay asked for in milliseconds, or {@code null} if there is no valid header
+     */
+    @Nullable
+    static Long parseRetryAfterMs(@Nullable List<String> values, long nowMs) {
+        if (values == null || values.isEmpty() || values.get(0) == null) {
             return null;
         }
-        else {
-            return URLEncoder.encode(str, CHARSET);
+
+        String value = values.get(0).trim();
+        try {
+            long seconds = Long.parseLong(value);
+            return seconds < 0 ? null : seconds * 1000L;
+        } catch (NumberFormatException ignored) {
+            // Not a number of seconds, so try it as a date.
+        }
+
+        SimpleDateFormat dateFormat = new SimpleDateFormat(HTTP_DATE_FORMAT, Locale.US);
+        dateFormat.setTimeZone(TimeZone.getTimeZone("GMT"));
+        try {
+            return Math.max(0L, dateFormat.parse(value).getTime() - nowMs);
+        } catch (ParseException ignored) {
+            return null;
         }
     }
 
@@ -733,78 +1115,44 @@ public class StripeApiHandler {
             @RestMethod String method,
             String url,
             String query,
-            RequestOptions options)
+            RequestOptions options,
+            @Nullable String ifNoneMatch)
             throws APIConnectionException {
-        java.net.HttpURLConnection conn = null;
-        try {
-            switch (method) {
-                case GET:
-                    conn = createGetConnection(url, query, options);
-                    break;
-                case POST:
-                    conn = createPostConnection(url, query, options);
-                    break;
-                default:
-                    throw new APIConnectionException(
-                            String.format(
-                                    "Unrecognized HTTP method %s. "
-                                            + "This indicates a bug in the Stripe bindings. "
-                                            + "Please contact support@stripe.com for assistance.",
-                                    method));
-            }
-            // trigger the request
-            int rCode = conn.getResponseCode();
-            String rBody;
-            Map<String, List<String>> headers;
-
-            if (rCode >= 200 && rCode < 300) {
-                rBody = getResponseBody(conn.getInputStream());
-            } else {
-                rBody = getResponseBody(conn.getErrorStream());
-            }
-            headers = conn.getHeaderFields();
-            return new StripeResponse(rCode, rBody, headers);
+        checkMethod(method);
 
+        try {
+            return getHttpTransport().execute(
+                    method, url, query, getHeaders(options, ifNoneMatch));
         } catch (IOException e) {
+            throw createConnectionException(e);
+        }
+    }
+
+    private static void checkMethod(@RestMethod String method) throws APIConnectionException {
+        if (!GET.equals(method) && !POST.equals(method)) {
             throw new APIConnectionException(
                     String.format(
-                            "IOException during API request to Stripe (%s): %s "
-                                    + "Please check your internet connection and try again. "
-                                    + "If this problem persists, you should check Stripe's "
-                                    + "service status at https://twitter.com/stripestatus, "
-                                    + "or let us know at support@stripe.com.",
-                            getApiUrl(), e.getMessage()), e);
-        } finally {
-            if (conn != null) {
-                conn.disconnect();
-            }
+                            "Unrecognized HTTP method %s. "
+                                    + "This indicates a bug in the Stripe bindings. "
+                                    + "Please contact support@stripe.com for assistance.",
+                            method));
         }
     }
 
-    private static String getResponseBody(InputStream responseStream)
-            throws IOException {
-        //\A is the beginning of
-        // the stream boundary
-        String rBody = new Scanner(responseStream, CHARSET)
-                .useDelimiter("\\A")
-                .next(); //
-
-        responseStream.close();
-        return rBody;
+    @NonNull
+    private static APIConnectionException createConnectionException(@NonNull IOException e) {
+        return new APIConnectionException(
+                String.format(
+                        "IOException during API request to Stripe (%s): %s "
+                                + "Please check your internet connection and try again. "
+                                + "If this problem persists, you should check Stripe's "
+                                + "service status at https://twitter.com/stripestatus, "
+                                + "or let us know at support@stripe.com.",
+                        getApiUrl(), e.getMessage()), e);
     }
 
     public interface LoggingResponseListener {
         void onLoggingResponse(StripeResponse response);
         void onStripeException(StripeException exception);
     }
-
-    private static final class Parameter {
-        public final String key;
-        public final String value;
-
-        public Parameter(String key, String value) {
-            this.key = key;
-            this.value = value;
-        }
-    }
 }
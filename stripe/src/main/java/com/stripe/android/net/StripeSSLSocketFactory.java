@@ -1,42 +1,91 @@
 package com.stripe.android.net;
 
+import android.support.annotation.IntRange;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+
 import javax.net.ssl.HttpsURLConnection;
 import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
 import javax.net.ssl.SSLSocket;
 import javax.net.ssl.SSLSocketFactory;
 import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 import java.net.InetAddress;
 import java.net.Socket;
+import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Set;
 
 /**
  * Wraps a SSLSocketFactory and enables more TLS versions on older versions of Android.
  * Most of the code is taken from stripe-java.
+ *
+ * Sockets are made from an {@link SSLContext} of its own, whose client session cache is sized
+ * for the few hosts Stripe uses, so that a new connection to a host that was connected to
+ * recently resumes the earlier TLS session instead of performing a full handshake. Session
+ * tickets are turned on where the platform's sockets support them. Whether a request's handshake
+ * was resumed is reported in its {@link RequestMetrics}.
  */
 public class StripeSSLSocketFactory extends SSLSocketFactory {
 
+    static final int DEFAULT_SESSION_CACHE_SIZE = 10;
+    static final int DEFAULT_SESSION_TIMEOUT_SECONDS = 4 * 60 * 60; // four hours
+
     private final SSLSocketFactory under;
-    private final boolean tlsv11Supported, tlsv12Supported;
+    @Nullable private final SSLSessionContext sessionContext;
+    private final String[] enabledProtocols;
+
+    // setUseSessionTickets as last looked up, so that it is found once per socket class.
+    @Nullable private volatile TicketSetter ticketSetter;
 
     private static final String TLSv11Proto = "TLSv1.1", TLSv12Proto = "TLSv1.2";
 
     /**
-     * Constructor for a socket factory instance.
+     * Constructor for a socket factory instance, with the default session cache size and
+     * timeout.
      */
     public StripeSSLSocketFactory() {
-        this.under = HttpsURLConnection.getDefaultSSLSocketFactory();
+        this(DEFAULT_SESSION_CACHE_SIZE, DEFAULT_SESSION_TIMEOUT_SECONDS);
+    }
+
+    /**
+     * Constructor for a socket factory instance.
+     *
+     * @param sessionCacheSize the number of TLS sessions to keep for resumption
+     * @param sessionTimeoutSeconds how long a TLS session may be resumed after it is created
+     */
+    public StripeSSLSocketFactory(
+            @IntRange(from = 1) int sessionCacheSize,
+            @IntRange(from = 1) int sessionTimeoutSeconds) {
+        SSLContext context = createContext();
+        if (context != null) {
+            this.under = context.getSocketFactory();
+            this.sessionContext = context.getClientSessionContext();
+            this.sessionContext.setSessionCacheSize(sessionCacheSize);
+            this.sessionContext.setSessionTimeout(sessionTimeoutSeconds);
+        } else {
+            this.under = HttpsURLConnection.getDefaultSSLSocketFactory();
+            this.sessionContext = null;
+        }
 
         // For Android prior to 4.1, TLSv1.1 and TLSv1.2 might not be supported
         boolean tlsv11Supported = false, tlsv12Supported = false;
 
         String[] supportedProtocols;
+        String[] defaultProtocols;
         try {
-            supportedProtocols = SSLContext.getDefault().getSupportedSSLParameters().getProtocols();
+            SSLContext protocolContext = context != null ? context : SSLContext.getDefault();
+            supportedProtocols = protocolContext.getSupportedSSLParameters().getProtocols();
+            defaultProtocols = protocolContext.getDefaultSSLParameters().getProtocols();
         } catch (NoSuchAlgorithmException e) {
             supportedProtocols = new String[0];
+            defaultProtocols = new String[0];
         }
 
         for (String proto : supportedProtocols) {
@@ -47,8 +96,16 @@ public class StripeSSLSocketFactory extends SSLSocketFactory {
             }
         }
 
-        this.tlsv11Supported = tlsv11Supported;
-        this.tlsv12Supported = tlsv12Supported;
+        // Every socket starts out with the context's default protocols, so the protocols to
+        // enable on them only need to be worked out once.
+        Set<String> protos = new LinkedHashSet<>(Arrays.asList(defaultProtocols));
+        if (tlsv11Supported) {
+            protos.add(TLSv11Proto);
+        }
+        if (tlsv12Supported) {
+            protos.add(TLSv12Proto);
+        }
+        this.enabledProtocols = protos.toArray(new String[protos.size()]);
     }
 
     @Override
@@ -61,12 +118,23 @@ public class StripeSSLSocketFactory extends SSLSocketFactory {
         return this.under.getSupportedCipherSuites();
     }
 
+    @Override
+    public Socket createSocket() throws IOException {
+        return fixupSocket(this.under.createSocket());
+    }
+
     @Override
     public Socket createSocket(
             Socket s,
             String host,
             int port,
             boolean autoClose) throws IOException {
+        // A socket is layered over a plain one that has just connected, right before its
+        // handshake, which is the only way to tell a connection's TLS time from its TCP time.
+        RequestTrace trace = RequestTrace.current();
+        if (trace != null) {
+            trace.onTlsStart();
+        }
         return fixupSocket(this.under.createSocket(s, host, port, autoClose));
     }
 
@@ -99,22 +167,89 @@ public class StripeSSLSocketFactory extends SSLSocketFactory {
                 this.under.createSocket(address, port, localAddress, localPort));
     }
 
+    @Nullable
+    @VisibleForTesting
+    SSLSessionContext getSessionContext() {
+        return sessionContext;
+    }
+
+    /**
+     * A session that was created before its socket was can only have been resumed.
+     *
+     * @param session the session a completed handshake settled on
+     * @param socketCreatedAtMs when the socket was created, in wall clock milliseconds
+     * @return whether the handshake resumed an earlier session
+     */
+    static boolean isResumed(@NonNull SSLSession session, long socketCreatedAtMs) {
+        return session.getCreationTime() < socketCreatedAtMs;
+    }
+
     private Socket fixupSocket(Socket sock) {
         if (!(sock instanceof SSLSocket)) {
             return sock;
         }
 
         SSLSocket sslSock = (SSLSocket) sock;
+        sslSock.setEnabledProtocols(enabledProtocols);
+        enableSessionTickets(sslSock);
+
+        // Handshake listeners may be called on a thread of their own, so the request's trace is
+        // given the socket instead, to look at once the handshake has completed.
+        RequestTrace trace = RequestTrace.current();
+        if (trace != null) {
+            trace.onTlsSocket(sslSock, System.currentTimeMillis());
+        }
+        return sslSock;
+    }
 
-        Set<String> protos = new HashSet<>(Arrays.asList(sslSock.getEnabledProtocols()));
-        if (tlsv11Supported) {
-            protos.add(TLSv11Proto);
+    /**
+     * Turn on session tickets, which let a session be resumed without the server having kept
+     * it. Android's sockets support them but do not expose the setting publicly, so it is set
+     * through reflection; other sockets are left alone.
+     */
+    private void enableSessionTickets(@NonNull SSLSocket sslSock) {
+        Class<?> socketClass = sslSock.getClass();
+        TicketSetter setter = ticketSetter;
+        if (setter == null || setter.socketClass != socketClass) {
+            setter = new TicketSetter(socketClass);
+            ticketSetter = setter;
         }
-        if (tlsv12Supported) {
-            protos.add(TLSv12Proto);
+
+        Method method = setter.method;
+        if (method == null) {
+            return;
         }
+        try {
+            method.invoke(sslSock, true);
+        } catch (IllegalAccessException | InvocationTargetException ignored) {
+            // The socket still works, it just cannot resume sessions from tickets.
+        }
+    }
 
-        sslSock.setEnabledProtocols(protos.toArray(new String[0]));
-        return sslSock;
+    @Nullable
+    private static SSLContext createContext() {
+        try {
+            SSLContext context = SSLContext.getInstance("TLS");
+            context.init(null, null, null);
+            return context;
+        } catch (NoSuchAlgorithmException | KeyManagementException e) {
+            return null;
+        }
+    }
+
+    private static final class TicketSetter {
+        @NonNull final Class<?> socketClass;
+        @Nullable final Method method;
+
+        TicketSetter(@NonNull Class<?> socketClass) {
+            Method method;
+            try {
+                method = socketClass.getMethod("setUseSessionTickets", boolean.class);
+            } catch (NoSuchMethodException notSupported) {
+                method = null;
+            }
+            this.socketClass = socketClass;
+            this.method = method;
+        }
     }
 }
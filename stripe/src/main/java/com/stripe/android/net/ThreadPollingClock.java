@@ -0,0 +1,138 @@
+package com.stripe.android.net;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * A {@link PollingClock} whose tasks are run by whichever thread calls {@link #runNext()}, which
+ * sleeps until the earliest of them is due. This is how a synchronous poll runs on its caller's
+ * thread. Waiting is done with {@link Thread#sleep(long)}, so an interrupt always stops it.
+ *
+ * Tasks may be posted and canceled from any thread, but only one thread may run them.
+ */
+class ThreadPollingClock implements PollingClock {
+
+    // Guarded by this. Canceled tasks stay queued, marked, until they come up.
+    @NonNull private final PriorityQueue<Task> mTasks = new PriorityQueue<>();
+    @NonNull private final Map<Object, List<Task>> mTasksByToken = new IdentityHashMap<>();
+    private long mSequenceNumber;
+
+    @Override
+    public long uptimeMillis() {
+        return System.nanoTime() / 1000000L;
+    }
+
+    @Override
+    public synchronized void postDelayed(
+            @NonNull Runnable task,
+            @NonNull Object token,
+            long delayMs) {
+        Task queued = new Task(
+                task, token, uptimeMillis() + Math.max(0L, delayMs), mSequenceNumber++);
+        mTasks.add(queued);
+        List<Task> tasksForToken = mTasksByToken.get(token);
+        if (tasksForToken == null) {
+            tasksForToken = new ArrayList<>(2);
+            mTasksByToken.put(token, tasksForToken);
+        }
+        tasksForToken.add(queued);
+    }
+
+    @Override
+    public synchronized void cancel(@NonNull Object token) {
+        List<Task> tasksForToken = mTasksByToken.remove(token);
+        if (tasksForToken != null) {
+            for (Task task : tasksForToken) {
+                task.mIsCanceled = true;
+            }
+        }
+    }
+
+    /**
+     * Wait until the earliest task is due, and run it. Tasks that are due at the same time run
+     * in the order they were posted.
+     *
+     * @return {@code true} if a task was run, or {@code false} if there are none left
+     * @throws InterruptedException if the thread is interrupted before the task is run
+     */
+    boolean runNext() throws InterruptedException {
+        while (true) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+
+            Task next;
+            long waitMs;
+            synchronized (this) {
+                next = mTasks.peek();
+                while (next != null && next.mIsCanceled) {
+                    mTasks.poll();
+                    next = mTasks.peek();
+                }
+                if (next == null) {
+                    return false;
+                }
+                waitMs = next.mDueMs - uptimeMillis();
+                if (waitMs <= 0) {
+                    mTasks.poll();
+                    forget(next);
+                }
+            }
+
+            if (waitMs <= 0) {
+                next.mTask.run();
+                return true;
+            }
+            // Tasks may have been posted or canceled in the meantime, so look again after.
+            sleepMs(waitMs);
+        }
+    }
+
+    /**
+     * Let the given time pass.
+     */
+    void sleepMs(long delayMs) throws InterruptedException {
+        Thread.sleep(delayMs);
+    }
+
+    // Guarded by this.
+    private void forget(@NonNull Task task) {
+        List<Task> tasksForToken = mTasksByToken.get(task.mToken);
+        if (tasksForToken != null) {
+            tasksForToken.remove(task);
+            if (tasksForToken.isEmpty()) {
+                mTasksByToken.remove(task.mToken);
+            }
+        }
+    }
+
+    private static final class Task implements Comparable<Task> {
+        @NonNull final Runnable mTask;
+        @NonNull final Object mToken;
+        final long mDueMs;
+        final long mSequenceNumber;
+        boolean mIsCanceled;
+
+        Task(@NonNull Runnable task, @NonNull Object token, long dueMs, long sequenceNumber) {
+            mTask = task;
+            mToken = token;
+            mDueMs = dueMs;
+            mSequenceNumber = sequenceNumber;
+        }
+
+        @Override
+        public int compareTo(@NonNull Task other) {
+            if (mDueMs != other.mDueMs) {
+                return mDueMs < other.mDueMs ? -1 : 1;
+            }
+            return mSequenceNumber < other.mSequenceNumber
+                    ? -1
+                    : (mSequenceNumber == other.mSequenceNumber ? 0 : 1);
+        }
+    }
+}
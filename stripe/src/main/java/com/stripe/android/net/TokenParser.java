@@ -1,5 +1,10 @@
 package com.stripe.android.net;
 
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.JsonReader;
+import android.util.JsonToken;
+
 import com.stripe.android.model.BankAccount;
 import com.stripe.android.model.Card;
 import com.stripe.android.model.Token;
@@ -9,6 +14,7 @@ import com.stripe.android.util.StripeTextUtils;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.IOException;
 import java.util.Date;
 
 /**
@@ -52,4 +58,129 @@ public class TokenParser {
 
         return token;
     }
+
+    /**
+     * Read a {@link Token} from a streaming {@link JsonReader} in a single pass, without building
+     * a {@link JSONObject} first. The result is the same as that of {@link #parseToken(String)}
+     * for the equivalent JSON.
+     *
+     * @param reader a reader positioned at the token object
+     * @return the {@link Token}, or {@code null} if it is of an unknown type
+     * @throws IOException if the token could not be read
+     * @throws JSONException if the token is missing a required field
+     */
+    @Nullable
+    public static Token parseToken(@NonNull JsonReader reader)
+            throws IOException, JSONException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            throw new JSONException("Token is not an object");
+        }
+
+        boolean hasId = false;
+        String tokenId = null;
+        Long createdTimeStamp = null;
+        Boolean liveMode = null;
+        boolean hasType = false;
+        @Token.TokenType String tokenType = null;
+        Boolean used = null;
+        // Both are read as they come, since the type that says which one is wanted usually comes
+        // after them.
+        BankAccount bankAccount = null;
+        Card card = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case FIELD_ID:
+                    hasId = true;
+                    tokenId = StripeJsonUtils.optString(reader);
+                    break;
+                case FIELD_CREATED:
+                    createdTimeStamp = optRequiredLong(reader);
+                    break;
+                case FIELD_LIVEMODE:
+                    liveMode = optRequiredBoolean(reader);
+                    break;
+                case FIELD_TYPE:
+                    hasType = true;
+                    tokenType = StripeTextUtils.asTokenType(StripeJsonUtils.optString(reader));
+                    break;
+                case FIELD_USED:
+                    used = optRequiredBoolean(reader);
+                    break;
+                case FIELD_BANK_ACCOUNT:
+                    bankAccount = BankAccountParser.parseBankAccount(reader);
+                    break;
+                case FIELD_CARD:
+                    card = CardParser.parseCard(reader);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        requireField(hasId, FIELD_ID);
+        requireField(createdTimeStamp != null, FIELD_CREATED);
+        requireField(liveMode != null, FIELD_LIVEMODE);
+        requireField(hasType, FIELD_TYPE);
+        requireField(used != null, FIELD_USED);
+
+        Date date = new Date(createdTimeStamp * 1000);
+
+        Token token = null;
+        if (Token.TYPE_BANK_ACCOUNT.equals(tokenType)) {
+            requireField(bankAccount != null, FIELD_BANK_ACCOUNT);
+            token = new Token(tokenId, liveMode, date, used, bankAccount);
+        } else if (Token.TYPE_CARD.equals(tokenType)) {
+            requireField(card != null, FIELD_CARD);
+            token = new Token(tokenId, liveMode, date, used, card);
+        }
+
+        return token;
+    }
+
+    private static void requireField(boolean present, @NonNull String fieldName)
+            throws JSONException {
+        if (!present) {
+            throw new JSONException("No valid value for " + fieldName);
+        }
+    }
+
+    /**
+     * Reads a field that {@link JSONObject#getLong(String)} would read, which accepts either a
+     * number or a numeric string.
+     */
+    @Nullable
+    private static Long optRequiredLong(@NonNull JsonReader reader) throws IOException {
+        JsonToken token = reader.peek();
+        if (token != JsonToken.NUMBER && token != JsonToken.STRING) {
+            reader.skipValue();
+            return null;
+        }
+        return StripeJsonUtils.optLong(reader);
+    }
+
+    /**
+     * Reads a field that {@link JSONObject#getBoolean(String)} would read, which accepts either a
+     * boolean or the strings {@code "true"} and {@code "false"}.
+     */
+    @Nullable
+    private static Boolean optRequiredBoolean(@NonNull JsonReader reader) throws IOException {
+        JsonToken token = reader.peek();
+        if (token == JsonToken.BOOLEAN) {
+            return reader.nextBoolean();
+        } else if (token == JsonToken.STRING) {
+            String value = reader.nextString();
+            if ("true".equalsIgnoreCase(value)) {
+                return true;
+            } else if ("false".equalsIgnoreCase(value)) {
+                return false;
+            }
+            return null;
+        }
+        reader.skipValue();
+        return null;
+    }
 }
@@ -0,0 +1,47 @@
+package com.stripe.android.net;
+
+/**
+ * Running totals of the response body bytes a transport has read: as they came over the wire,
+ * and as handed to the response handler after decompression. The difference is what
+ * compression saved.
+ */
+final class TransferStats {
+
+    private int mResponseCount;
+    private int mEncodedResponseCount;
+    private long mWireByteCount;
+    private long mDecodedByteCount;
+
+    /**
+     * Add a response to the totals.
+     *
+     * @param wireBytes the body bytes received
+     * @param decodedBytes the body bytes after decompression, the same as {@code wireBytes} if
+     *                     the body was not compressed
+     * @param isEncoded whether the body was compressed
+     */
+    synchronized void record(long wireBytes, long decodedBytes, boolean isEncoded) {
+        mResponseCount++;
+        if (isEncoded) {
+            mEncodedResponseCount++;
+        }
+        mWireByteCount += wireBytes;
+        mDecodedByteCount += decodedBytes;
+    }
+
+    synchronized int getResponseCount() {
+        return mResponseCount;
+    }
+
+    synchronized int getEncodedResponseCount() {
+        return mEncodedResponseCount;
+    }
+
+    synchronized long getWireByteCount() {
+        return mWireByteCount;
+    }
+
+    synchronized long getDecodedByteCount() {
+        return mDecodedByteCount;
+    }
+}
@@ -0,0 +1,277 @@
+package com.stripe.android.net;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLSocketFactory;
+
+import static com.stripe.android.net.StripeApiHandler.CHARSET;
+import static com.stripe.android.net.StripeApiHandler.GET;
+import static com.stripe.android.net.StripeApiHandler.POST;
+
+/**
+ * The default {@link HttpTransport}. Requests are sent with {@link HttpURLConnection}, and every
+ * response body is read to the end and closed rather than disconnected, so that the underlying
+ * socket (and its TLS session) goes back to the platform's keep-alive cache and is reused by the
+ * next request to the same host. A {@link ConnectionLimiter} caps how many requests each host may
+ * have open at once. Responses are asked for compressed, and decompressed as they are read.
+ *
+ * This transport keeps no connections of its own. Whether a connection is reused, and how long
+ * an idle one is kept, is up to the platform; this transport cannot close idle connections.
+ */
+public class UrlConnectionHttpTransport implements StreamingHttpTransport {
+
+    static final int DEFAULT_CONNECT_TIMEOUT_MS = 30 * 1000;
+    static final int DEFAULT_READ_TIMEOUT_MS = 80 * 1000;
+
+    static final SSLSocketFactory SSL_SOCKET_FACTORY = new StripeSSLSocketFactory();
+
+    private static final ResponseHandler<StripeResponse> STRING_RESPONSE_HANDLER =
+            new ResponseHandler<StripeResponse>() {
+                @Override
+                public StripeResponse handleResponse(
+                        int responseCode,
+                        @Nullable Map<String, List<String>> responseHeaders,
+                        @Nullable InputStream body,
+                        int contentLength) throws IOException {
+                    return new StripeResponse(
+                            responseCode,
+                            ResponseBodyReader.readString(body, contentLength),
+                            responseHeaders);
+                }
+            };
+
+    private static final ResponseHandler<Void> DISCARDING_RESPONSE_HANDLER =
+            new ResponseHandler<Void>() {
+                @Override
+                public Void handleResponse(
+                        int responseCode,
+                        @Nullable Map<String, List<String>> responseHeaders,
+                        @Nullable InputStream body,
+                        int contentLength) {
+                    // The body is drained by the transport, which is all a warm-up needs.
+                    return null;
+                }
+            };
+
+    @NonNull private final ConnectionLimiter mConnectionLimiter;
+    @NonNull private final SSLSocketFactory mSslSocketFactory;
+    private final int mConnectTimeoutMs;
+    private final int mReadTimeoutMs;
+    @NonNull private final TransferStats mTransferStats = new TransferStats();
+
+    /**
+     * Create a transport with the default connection limit and timeouts.
+     */
+    public UrlConnectionHttpTransport() {
+        this(ConnectionLimiter.DEFAULT_MAX_CONNECTIONS_PER_HOST);
+    }
+
+    /**
+     * Create a transport with a custom connection limit.
+     *
+     * @param maxConnectionsPerHost the maximum number of requests that may be open at once to a
+     *                              single host; further requests wait for one to finish
+     */
+    public UrlConnectionHttpTransport(int maxConnectionsPerHost) {
+        this(new ConnectionLimiter(maxConnectionsPerHost),
+                SSL_SOCKET_FACTORY,
+                DEFAULT_CONNECT_TIMEOUT_MS,
+                DEFAULT_READ_TIMEOUT_MS);
+    }
+
+    @VisibleForTesting
+    UrlConnectionHttpTransport(
+            @NonNull ConnectionLimiter connectionLimiter,
+            @NonNull SSLSocketFactory sslSocketFactory,
+            int connectTimeoutMs,
+            int readTimeoutMs) {
+        mConnectionLimiter = connectionLimiter;
+        mSslSocketFactory = sslSocketFactory;
+        mConnectTimeoutMs = connectTimeoutMs;
+        mReadTimeoutMs = readTimeoutMs;
+    }
+
+    @NonNull
+    @Override
+    public StripeResponse execute(
+            @NonNull String method,
+            @NonNull String url,
+            @Nullable String query,
+            @NonNull Map<String, String> headers) throws IOException {
+        return execute(method, url, query, headers, STRING_RESPONSE_HANDLER);
+    }
+
+    @Override
+    public <T> T execute(
+            @NonNull String method,
+            @NonNull String url,
+            @Nullable String query,
+            @NonNull Map<String, String> headers,
+            @NonNull ResponseHandler<T> handler) throws IOException {
+        URL requestUrl = new URL(GET.equals(method) ? formatURL(url, query) : url);
+        String host = ConnectionLimiter.hostKey(requestUrl);
+        RequestTrace trace = RequestTrace.current();
+
+        mConnectionLimiter.acquire(host, mConnectTimeoutMs);
+        HttpURLConnection conn = null;
+        boolean reusable = false;
+        try {
+            conn = createStripeConnection(requestUrl, headers);
+            conn.setRequestMethod(method);
+            if (POST.equals(method)) {
+                conn.setDoOutput(true);
+                conn.setRequestProperty("Content-Type", String.format(
+                        "application/x-www-form-urlencoded;charset=%s", CHARSET));
+            }
+
+            // Connect explicitly, rather than leaving it to the first read or write, so that
+            // the time it takes can be told apart from the time the server takes to respond.
+            long connectStart = System.nanoTime();
+            conn.connect();
+            if (trace != null) {
+                trace.onConnect(connectStart, System.nanoTime());
+                trace.onTlsHandshake();
+            }
+            if (POST.equals(method)) {
+                long writeStart = System.nanoTime();
+                writePostBody(conn, query);
+                if (trace != null) {
+                    trace.add(RequestMetrics.PHASE_REQUEST_WRITE, System.nanoTime() - writeStart);
+                    trace.onRequestBody(query == null ? 0 : query.length());
+                }
+            }
+
+            // trigger the request
+            long requestSent = System.nanoTime();
+            int rCode = conn.getResponseCode();
+            if (trace != null) {
+                trace.add(RequestMetrics.PHASE_TIME_TO_FIRST_BYTE,
+                        System.nanoTime() - requestSent);
+            }
+            InputStream rawBody = rCode >= 200 && rCode < 300
+                    ? conn.getInputStream()
+                    : conn.getErrorStream();
+            CountingInputStream wireBody =
+                    rawBody == null ? null : new CountingInputStream(rawBody);
+            CountingInputStream decodedBody = null;
+            InputStream body = wireBody;
+            try {
+                Map<String, List<String>> responseHeaders = conn.getHeaderFields();
+                String contentEncoding = ContentDecoder.getContentEncoding(responseHeaders);
+                int contentLength = conn.getContentLength();
+                if (wireBody != null && ContentDecoder.isEncoded(contentEncoding)) {
+                    decodedBody = new CountingInputStream(
+                            ContentDecoder.decode(contentEncoding, wireBody));
+                    body = decodedBody;
+                    // The length on the wire says nothing about the decoded length.
+                    contentLength = -1;
+                }
+                long handleStart = System.nanoTime();
+                T result = handler.handleResponse(rCode, responseHeaders, body, contentLength);
+                // Whatever the handler left unread has to be consumed before the connection can
+                // carry another request.
+                reusable = ResponseBodyReader.drain(wireBody);
+                if (wireBody != null) {
+                    long decodedCount =
+                            decodedBody == null ? wireBody.getCount() : decodedBody.getCount();
+                    mTransferStats.record(wireBody.getCount(), decodedCount, decodedBody != null);
+                    if (trace != null) {
+                        trace.onResponseBody(
+                                wireBody, decodedCount, System.nanoTime() - handleStart);
+                    }
+                }
+                return result;
+            } finally {
+                if (body != null) {
+                    body.close();
+                }
+            }
+        } finally {
+            mConnectionLimiter.release(host);
+            if (!reusable && conn != null) {
+                // The exchange failed part way, so the socket cannot carry another request.
+                conn.disconnect();
+            }
+        }
+    }
+
+    /**
+     * Send a request to the host of the given URL, so that the next request to that host finds
+     * a connection in the platform's keep-alive cache and skips the DNS lookup, the TCP
+     * connection and the TLS handshake. The request is sent without credentials and its response
+     * is thrown away. It is always sent, since only the platform knows whether a connection is
+     * still open, and sending it over one that is costs a single round trip.
+     *
+     * @param url a URL on the host to connect to
+     * @throws IOException if the host could not be reached
+     */
+    public void warmUp(@NonNull String url) throws IOException {
+        execute(GET, url, null, Collections.<String, String>emptyMap(),
+                DISCARDING_RESPONSE_HANDLER);
+    }
+
+    @NonNull
+    TransferStats getTransferStats() {
+        return mTransferStats;
+    }
+
+    @NonNull
+    private HttpURLConnection createStripeConnection(
+            @NonNull URL url,
+            @NonNull Map<String, String> headers) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+        conn.setConnectTimeout(mConnectTimeoutMs);
+        conn.setReadTimeout(mReadTimeoutMs);
+        conn.setUseCaches(false);
+        conn.setRequestProperty("Accept-Encoding", ContentDecoder.ACCEPT_ENCODING);
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            conn.setRequestProperty(header.getKey(), header.getValue());
+        }
+
+        if (conn instanceof HttpsURLConnection) {
+            ((HttpsURLConnection) conn).setSSLSocketFactory(mSslSocketFactory);
+        }
+
+        return conn;
+    }
+
+    private static void writePostBody(
+            @NonNull HttpURLConnection conn,
+            @Nullable String query) throws IOException {
+        OutputStream output = null;
+        try {
+            output = conn.getOutputStream();
+            if (query != null) {
+                // The query is already form-encoded, so it is plain ASCII.
+                FormEncoder.writeAscii(query, output);
+            }
+        } finally {
+            if (output != null) {
+                output.close();
+            }
+        }
+    }
+
+    @NonNull
+    static String formatURL(@NonNull String url, @Nullable String query) {
+        if (query == null || query.isEmpty()) {
+            return url;
+        } else {
+            // In some cases, URL can already contain a question mark (eg, upcoming invoice lines)
+            String separator = url.contains("?") ? "&" : "?";
+            return String.format("%s%s%s", url, separator, query);
+        }
+    }
+}
@@ -4,11 +4,14 @@ import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.annotation.Size;
 import android.support.annotation.VisibleForTesting;
+import android.util.JsonReader;
+import android.util.JsonToken;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -345,6 +348,233 @@ public class StripeJsonUtils {
         } catch (JSONException ignored) { }
     }
 
+    /**
+     * Reads the next value from a streaming {@link JsonReader} the way
+     * {@link #optString(JSONObject, String)} reads a field: strings, numbers and booleans are
+     * returned as strings, with the raw string "null" and the empty string converted to
+     * {@code null}. Objects, arrays and JSON {@code null} are skipped and return {@code null}.
+     *
+     * @param reader a reader positioned at the value to read
+     * @return the value as a string, or {@code null}
+     * @throws IOException if the value could not be read
+     */
+    @Nullable
+    public static String optString(@NonNull JsonReader reader) throws IOException {
+        JsonToken token = reader.peek();
+        switch (token) {
+            case STRING:
+            case NUMBER:
+                return nullIfNullOrEmpty(reader.nextString());
+            case BOOLEAN:
+                return String.valueOf(reader.nextBoolean());
+            default:
+                reader.skipValue();
+                return null;
+        }
+    }
+
+    /**
+     * Reads the next value from a streaming {@link JsonReader} the way
+     * {@link #optInteger(JSONObject, String)} reads a field that is present: numbers and numeric
+     * strings are converted, and any other value is skipped and read as {@code 0}.
+     *
+     * @param reader a reader positioned at the value to read
+     * @return the value as an {@link Integer}
+     * @throws IOException if the value could not be read
+     */
+    @NonNull
+    public static Integer optInteger(@NonNull JsonReader reader) throws IOException {
+        return (int) readLong(reader);
+    }
+
+    /**
+     * Reads the next value from a streaming {@link JsonReader} the way
+     * {@link #optLong(JSONObject, String)} reads a field that is present: numbers and numeric
+     * strings are converted, and any other value is skipped and read as {@code 0}.
+     *
+     * @param reader a reader positioned at the value to read
+     * @return the value as a {@link Long}
+     * @throws IOException if the value could not be read
+     */
+    @NonNull
+    public static Long optLong(@NonNull JsonReader reader) throws IOException {
+        return readLong(reader);
+    }
+
+    /**
+     * Reads the next value from a streaming {@link JsonReader} the way
+     * {@link JSONObject#optBoolean(String)} reads a field: booleans and the strings
+     * {@code "true"} and {@code "false"} are converted, and any other value is skipped and read as
+     * {@code false}.
+     *
+     * @param reader a reader positioned at the value to read
+     * @return the value as a boolean
+     * @throws IOException if the value could not be read
+     */
+    public static boolean optBoolean(@NonNull JsonReader reader) throws IOException {
+        JsonToken token = reader.peek();
+        switch (token) {
+            case BOOLEAN:
+                return reader.nextBoolean();
+            case STRING:
+                return Boolean.parseBoolean(reader.nextString());
+            default:
+                reader.skipValue();
+                return false;
+        }
+    }
+
+    /**
+     * Reads the next object from a streaming {@link JsonReader} into a {@link Map}, producing the
+     * same map that {@link #jsonObjectToMap(JSONObject)} would for the equivalent
+     * {@link JSONObject}. Any value that is not an object is skipped.
+     *
+     * @param reader a reader positioned at the value to read
+     * @return a {@link Map} representing the object, or {@code null} if the value was not an
+     * object
+     * @throws IOException if the value could not be read
+     */
+    @Nullable
+    public static Map<String, Object> readMap(@NonNull JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return null;
+        }
+
+        Map<String, Object> map = new HashMap<>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String key = reader.nextName();
+            Object value = readValue(reader);
+            if (NULL.equals(value)) {
+                continue;
+            }
+            map.put(key, value);
+        }
+        reader.endObject();
+        return map;
+    }
+
+    /**
+     * Reads the next object from a streaming {@link JsonReader} into a flat, string-valued
+     * {@link Map}, producing the same map that {@link #jsonObjectToStringMap(JSONObject)} would
+     * for the equivalent {@link JSONObject}. Any value that is not an object is skipped.
+     *
+     * @param reader a reader positioned at the value to read
+     * @return a {@link Map} representing the object, or {@code null} if the value was not an
+     * object
+     * @throws IOException if the value could not be read
+     */
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public static Map<String, String> readStringMap(@NonNull JsonReader reader)
+            throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return null;
+        }
+
+        Map<String, String> map = new HashMap<>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String key = reader.nextName();
+            Object value = readValue(reader);
+            if (NULL.equals(value)) {
+                continue;
+            }
+
+            if (value instanceof Map) {
+                map.put(key, String.valueOf(mapToJsonObject((Map<String, Object>) value)));
+            } else if (value instanceof List) {
+                map.put(key, String.valueOf(listToJsonArray((List) value)));
+            } else {
+                map.put(key, value.toString());
+            }
+        }
+        reader.endObject();
+        return map;
+    }
+
+    /**
+     * Reads the next value from a streaming {@link JsonReader} as the object that
+     * {@link #jsonObjectToMap(JSONObject)} would hold for it: objects become {@link Map Maps},
+     * arrays become {@link List Lists}, numbers become {@link Integer}, {@link Long} or
+     * {@link Double} as they would in a {@link JSONObject}, and JSON {@code null} becomes
+     * {@link JSONObject#NULL}.
+     */
+    @NonNull
+    private static Object readValue(@NonNull JsonReader reader) throws IOException {
+        switch (reader.peek()) {
+            case BEGIN_OBJECT:
+                return readMap(reader);
+            case BEGIN_ARRAY:
+                return readList(reader);
+            case BOOLEAN:
+                return reader.nextBoolean();
+            case NUMBER:
+                return asNumber(reader.nextString());
+            case NULL:
+                reader.nextNull();
+                return JSONObject.NULL;
+            default:
+                return reader.nextString();
+        }
+    }
+
+    @NonNull
+    private static List<Object> readList(@NonNull JsonReader reader) throws IOException {
+        List<Object> list = new ArrayList<>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            Object value = readValue(reader);
+            if (NULL.equals(value)) {
+                continue;
+            }
+            list.add(value);
+        }
+        reader.endArray();
+        return list;
+    }
+
+    private static long readLong(@NonNull JsonReader reader) throws IOException {
+        JsonToken token = reader.peek();
+        if (token != JsonToken.NUMBER && token != JsonToken.STRING) {
+            reader.skipValue();
+            return 0L;
+        }
+
+        Object number = asNumber(reader.nextString());
+        return number instanceof Number ? ((Number) number).longValue() : 0L;
+    }
+
+    /**
+     * Converts a numeric literal the way {@link JSONObject} does: integers that fit in an
+     * {@code int} become {@link Integer}, other integers become {@link Long}, and anything else
+     * becomes {@link Double}. A literal that is not a number is returned unchanged.
+     */
+    @NonNull
+    private static Object asNumber(@NonNull String literal) {
+        if (literal.indexOf('.') == -1
+                && literal.indexOf('e') == -1
+                && literal.indexOf('E') == -1) {
+            try {
+                long longValue = Long.parseLong(literal);
+                if (longValue <= Integer.MAX_VALUE && longValue >= Integer.MIN_VALUE) {
+                    return (int) longValue;
+                }
+                return longValue;
+            } catch (NumberFormatException ignored) {
+                // Fall through and try it as a double.
+            }
+        }
+
+        try {
+            return Double.valueOf(literal);
+        } catch (NumberFormatException notNumeric) {
+            return literal;
+        }
+    }
+
     @Nullable
     public static String nullIfNullOrEmpty(@Nullable String possibleNull) {
         return NULL.equals(possibleNull) || EMPTY.equals(possibleNull)
@@ -0,0 +1,101 @@
+package com.stripe.android;
+
+import com.stripe.android.model.BankAccount;
+import com.stripe.android.model.Card;
+import com.stripe.android.model.Source;
+import com.stripe.android.model.Token;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.IOException;
+import java.util.Date;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for {@link PaymentObjectCodec}.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class PaymentObjectCodecTest {
+
+    private static final String CARD_NUMBER = "4242424242424242";
+
+    @Test
+    public void encodeSource_dropsCardNumberAndCvc() throws IOException {
+        Source source = Source.fromString("{\"id\":\"src_1\",\"object\":\"source\","
+                + "\"status\":\"pending\",\"type\":\"card\",\"card\":{\"last4\":\"4242\","
+                + "\"number\":\"" + CARD_NUMBER + "\",\"cvc\":\"123\",\"exp_month\":12}}");
+        assertNotNull(source);
+
+        byte[] bytes = PaymentObjectCodec.encodeSource(source);
+        String encoded = new String(bytes, "UTF-8");
+        assertFalse(encoded.contains(CARD_NUMBER));
+        assertFalse(encoded.contains("cvc"));
+
+        Source decoded = PaymentObjectCodec.decodeSource(bytes);
+        assertNotNull(decoded);
+        assertEquals("src_1", decoded.getId());
+        assertEquals(Source.PENDING, decoded.getStatus());
+        assertEquals("4242", decoded.getSourceTypeData().get("last4"));
+    }
+
+    @Test
+    public void encodeToken_withCard_keepsEverythingButNumberAndCvc() throws IOException {
+        Card card = new Card(CARD_NUMBER, 12, 2050, "123");
+        card.setName("Jenny Rosen");
+        Token token = new Token("tok_1", false, new Date(1000L), true, card);
+
+        byte[] bytes = PaymentObjectCodec.encodeToken(token);
+        assertFalse(new String(bytes, "ISO-8859-1").contains(CARD_NUMBER));
+
+        Token decoded = PaymentObjectCodec.decodeToken(bytes);
+        assertNotNull(decoded);
+        assertEquals("tok_1", decoded.getId());
+        assertEquals(Token.TYPE_CARD, decoded.getType());
+        assertEquals(new Date(1000L), decoded.getCreated());
+        assertTrue(decoded.getUsed());
+        assertFalse(decoded.getLivemode());
+        assertNull(decoded.getCard().getNumber());
+        assertNull(decoded.getCard().getCVC());
+        assertEquals("4242", decoded.getCard().getLast4());
+        assertEquals(Card.VISA, decoded.getCard().getBrand());
+        assertEquals(Integer.valueOf(12), decoded.getCard().getExpMonth());
+        assertEquals("Jenny Rosen", decoded.getCard().getName());
+    }
+
+    @Test
+    public void encodeToken_withBankAccount_dropsAccountNumber() throws IOException {
+        BankAccount bankAccount =
+                new BankAccount("000123456789", "US", "usd", "110000000");
+        Token token = new Token("btok_1", true, null, false, bankAccount);
+
+        Token decoded = PaymentObjectCodec.decodeToken(PaymentObjectCodec.encodeToken(token));
+        assertNotNull(decoded);
+        assertEquals(Token.TYPE_BANK_ACCOUNT, decoded.getType());
+        assertNull(decoded.getCreated());
+        assertTrue(decoded.getLivemode());
+        assertNull(decoded.getBankAccount().getAccountNumber());
+        assertEquals("110000000", decoded.getBankAccount().getRoutingNumber());
+        assertEquals("US", decoded.getBankAccount().getCountryCode());
+    }
+
+    @Test
+    public void decodeToken_withTruncatedBytes_returnsNull() throws IOException {
+        Card card = new Card(CARD_NUMBER, 12, 2050, null);
+        byte[] bytes = PaymentObjectCodec.encodeToken(
+                new Token("tok_1", false, new Date(), false, card));
+        byte[] truncated = new byte[bytes.length / 2];
+        System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+
+        assertNull(PaymentObjectCodec.decodeToken(truncated));
+        assertNull(PaymentObjectCodec.decodeToken(new byte[] { 9 }));
+    }
+}
@@ -0,0 +1,264 @@
+package com.stripe.android;
+
+import android.support.annotation.NonNull;
+
+import com.stripe.android.model.Card;
+import com.stripe.android.model.Source;
+import com.stripe.android.model.Token;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Test class for {@link PaymentObjectStore}.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class PaymentObjectStoreTest {
+
+    @Rule public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    private File mDirectory;
+
+    @Before
+    public void setup() throws IOException {
+        mDirectory = mTemporaryFolder.newFolder();
+    }
+
+    @Test
+    public void open_afterClose_restoresSourcesAndTokens() throws IOException {
+        PaymentObjectStore store = PaymentObjectStore.open(mDirectory);
+        store.putSource(createSource("src_1", Source.PENDING));
+        store.putSource(createSource("src_2", Source.CHARGEABLE));
+        Card card = new Card("4242424242424242", 12, 2050, "123");
+        store.putToken(new Token("tok_1", false, new Date(1000L), false, card));
+        store.close();
+
+        PaymentObjectStore restored = PaymentObjectStore.open(mDirectory);
+        Source source = restored.getSource("src_1");
+        assertNotNull(source);
+        assertEquals(Source.PENDING, source.getStatus());
+        assertEquals("src_1_secret", source.getClientSecret());
+        assertEquals(Long.valueOf(1000L), source.getAmount());
+        assertEquals(2, restored.getSources().size());
+        assertEquals("src_2", restored.getSources().get(1).getId());
+
+        Token token = restored.getToken("tok_1");
+        assertNotNull(token);
+        assertEquals("4242", token.getCard().getLast4());
+        assertNull(token.getCard().getNumber());
+        assertEquals(1, restored.getTokens().size());
+        assertNull(restored.getToken("tok_2"));
+        restored.close();
+    }
+
+    @Test
+    public void open_withoutClose_restoresEverythingWritten() throws IOException {
+        // The mapped file is shared, so a store that was never closed, as when the process is
+        // killed, still leaves its records behind.
+        PaymentObjectStore store = PaymentObjectStore.open(mDirectory);
+        store.putSource(createSource("src_1", Source.PENDING));
+        store.putSource(createSource("src_1", Source.CHARGEABLE));
+
+        PaymentObjectStore restored = PaymentObjectStore.open(mDirectory);
+        assertEquals(Source.CHARGEABLE, restored.getSource("src_1").getStatus());
+        assertEquals(1, restored.getSources().size());
+        restored.close();
+        store.close();
+    }
+
+    @Test
+    public void remove_isRemembered() throws IOException {
+        PaymentObjectStore store = PaymentObjectStore.open(mDirectory);
+        store.putSource(createSource("src_1", Source.PENDING));
+        store.putToken(new Token("tok_1", false, null, false, (Card) null));
+
+        assertTrue(store.removeSource("src_1"));
+        assertFalse(store.removeSource("src_1"));
+        assertTrue(store.removeToken("tok_1"));
+        store.close();
+
+        PaymentObjectStore restored = PaymentObjectStore.open(mDirectory);
+        assertNull(restored.getSource("src_1"));
+        assertNull(restored.getToken("tok_1"));
+        assertTrue(restored.getSources().isEmpty());
+        restored.close();
+    }
+
+    @Test
+    public void putSource_withSameSnapshot_writesNothing() throws IOException {
+        PaymentObjectStore store = PaymentObjectStore.open(mDirectory);
+        store.putSource(createSource("src_1", Source.PENDING));
+        int writePosition = store.getWritePosition();
+
+        store.putSource(createSource("src_1", Source.PENDING));
+        assertEquals(writePosition, store.getWritePosition());
+        store.close();
+    }
+
+    @Test
+    public void putSource_whenReplacedOften_compactsFile() throws IOException {
+        PaymentObjectStore store = PaymentObjectStore.open(mDirectory);
+        for (int i = 0; i < 1000; i++) {
+            store.putSource(createSource("src_1", i % 2 == 0 ? Source.PENDING : Source.FAILED));
+            store.putSource(createSource("src_2", Source.CHARGEABLE));
+        }
+
+        assertEquals(PaymentObjectStore.INITIAL_CAPACITY, store.getFile().length());
+        assertFalse(new File(store.getFile().getPath() + ".compact").exists());
+        store.close();
+
+        PaymentObjectStore restored = PaymentObjectStore.open(mDirectory);
+        assertEquals(Source.FAILED, restored.getSource("src_1").getStatus());
+        assertEquals(Source.CHARGEABLE, restored.getSource("src_2").getStatus());
+        restored.close();
+    }
+
+    @Test
+    public void putSource_beyondCapacity_growsFile() throws IOException {
+        PaymentObjectStore store = PaymentObjectStore.open(mDirectory);
+        for (int i = 0; i < 200; i++) {
+            store.putSource(createSource("src_" + i, Source.PENDING));
+        }
+        assertTrue(store.getFile().length() > PaymentObjectStore.INITIAL_CAPACITY);
+        store.close();
+
+        PaymentObjectStore restored = PaymentObjectStore.open(mDirectory);
+        List<Source> sources = restored.getSources();
+        assertEquals(200, sources.size());
+        assertEquals("src_0", sources.get(0).getId());
+        assertEquals("src_199", sources.get(199).getId());
+        restored.close();
+    }
+
+    @Test
+    public void putSource_whenCompactingForLargeSource_leavesRoomForIt() throws IOException {
+        PaymentObjectStore store = PaymentObjectStore.open(mDirectory);
+        for (int i = 0; i < 300; i++) {
+            store.putSource(createSource("src_" + i, Source.PENDING));
+        }
+        for (int i = 1; i < 300; i++) {
+            store.removeSource("src_" + i);
+        }
+        int capacity = (int) store.getFile().length();
+        assertTrue(capacity >= 4 * PaymentObjectStore.INITIAL_CAPACITY);
+        for (int i = 0; store.getWritePosition() < capacity * 3 / 4; i++) {
+            store.putSource(createSource("src_0", i % 2 == 0 ? Source.FAILED : Source.PENDING));
+        }
+
+        // Too large for the space left, yet small enough to compact for rather than grow, and
+        // larger than the live records alone would make the compacted file.
+        Source large = createSource("src_large", Source.CHARGEABLE, capacity / 4);
+        store.putSource(large);
+        assertFalse(new File(store.getFile().getPath() + ".compact").exists());
+        store.close();
+
+        PaymentObjectStore restored = PaymentObjectStore.open(mDirectory);
+        assertEquals(2, restored.getSources().size());
+        assertEquals(large.getMetaData(), restored.getSource("src_large").getMetaData());
+        restored.close();
+    }
+
+    @Test
+    public void open_withDamagedRecord_keepsRecordsBeforeIt() throws IOException {
+        PaymentObjectStore store = PaymentObjectStore.open(mDirectory);
+        store.putSource(createSource("src_1", Source.PENDING));
+        int damagedPosition = store.getWritePosition();
+        store.putSource(createSource("src_2", Source.PENDING));
+        store.putSource(createSource("src_3", Source.PENDING));
+        store.close();
+
+        RandomAccessFile file = new RandomAccessFile(store.getFile(), "rw");
+        try {
+            file.seek(damagedPosition + 20);
+            file.write(file.read() ^ 0xFF);
+        } finally {
+            file.close();
+        }
+
+        PaymentObjectStore restored = PaymentObjectStore.open(mDirectory);
+        assertNotNull(restored.getSource("src_1"));
+        assertNull(restored.getSource("src_2"));
+        assertNull(restored.getSource("src_3"));
+        restored.putSource(createSource("src_4", Source.PENDING));
+        restored.close();
+
+        PaymentObjectStore reopened = PaymentObjectStore.open(mDirectory);
+        assertEquals(2, reopened.getSources().size());
+        assertNotNull(reopened.getSource("src_4"));
+        reopened.close();
+    }
+
+    @Test
+    public void open_withUnknownFile_startsOver() throws IOException {
+        File file = new File(mDirectory, PaymentObjectStore.FILE_NAME);
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            randomAccessFile.writeBytes("not a store");
+        } finally {
+            randomAccessFile.close();
+        }
+
+        PaymentObjectStore store = PaymentObjectStore.open(mDirectory);
+        assertTrue(store.getSources().isEmpty());
+        store.putSource(createSource("src_1", Source.PENDING));
+        store.close();
+
+        PaymentObjectStore restored = PaymentObjectStore.open(mDirectory);
+        assertNotNull(restored.getSource("src_1"));
+        restored.close();
+    }
+
+    @Test
+    public void putSource_afterClose_throwsIllegalStateException() throws IOException {
+        PaymentObjectStore store = PaymentObjectStore.open(mDirectory);
+        store.close();
+        try {
+            store.putSource(createSource("src_1", Source.PENDING));
+            fail("Expected an IllegalStateException");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    @NonNull
+    private static Source createSource(@NonNull String id, @NonNull String status) {
+        return createSource(id, status, 0);
+    }
+
+    @NonNull
+    private static Source createSource(
+            @NonNull String id,
+            @NonNull String status,
+            int noteLength) {
+        StringBuilder note = new StringBuilder(noteLength);
+        for (int i = 0; i < noteLength; i++) {
+            note.append('n');
+        }
+        return Source.fromString("{\"id\":\"" + id + "\",\"object\":\"source\","
+                + "\"amount\":1000,\"client_secret\":\"" + id + "_secret\","
+                + "\"created\":1486581654,\"currency\":\"usd\",\"flow\":\"redirect\","
+                + "\"livemode\":false,\"metadata\":{\"note\":\"" + note + "\"},"
+                + "\"status\":\"" + status + "\",\"type\":\"three_d_secure\","
+                + "\"three_d_secure\":{\"card\":\"src_card\",\"customer\":null},"
+                + "\"redirect\":{\"return_url\":\"https://example.com\",\"status\":\"pending\","
+                + "\"url\":\"https://hooks.stripe.com/redirect/" + id + "\"}}");
+    }
+}
@@ -0,0 +1,265 @@
+package com.stripe.android;
+
+import android.support.annotation.NonNull;
+
+import com.stripe.android.model.Source;
+import com.stripe.android.net.HttpTransport;
+import com.stripe.android.net.RequestMetrics;
+import com.stripe.android.net.RequestMetricsListener;
+import com.stripe.android.net.StripeApiHandler;
+import com.stripe.android.net.StripeResponse;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for {@link RequestEngine}.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 23)
+public class RequestEngineTest {
+
+    private static final Executor DIRECT_EXECUTOR = new Executor() {
+        @Override
+        public void execute(@NonNull Runnable command) {
+            command.run();
+        }
+    };
+
+    @Test
+    public void execute_whenRequestSucceeds_deliversResult() {
+        RequestEngine engine = new RequestEngine(DIRECT_EXECUTOR, DIRECT_EXECUTOR);
+        RecordingCallback<String> callback = new RecordingCallback<>();
+
+        engine.execute(RequestEngine.LANE_TOKEN, null, returning("tok_1"), callback);
+
+        assertEquals("tok_1", callback.mResult);
+        assertNull(callback.mError);
+    }
+
+    @Test
+    public void execute_whenRequestThrows_deliversError() {
+        RequestEngine engine = new RequestEngine(DIRECT_EXECUTOR, DIRECT_EXECUTOR);
+        RecordingCallback<String> callback = new RecordingCallback<>();
+        final IllegalStateException exception = new IllegalStateException("expected");
+
+        engine.execute(RequestEngine.LANE_SOURCE, null, new RequestEngine.Request<String>() {
+            @Override
+            public String call() throws Exception {
+                throw exception;
+            }
+        }, callback);
+
+        assertNull(callback.mResult);
+        assertEquals(exception, callback.mError);
+    }
+
+    @Test
+    public void execute_withMetricsListener_reportsCallbackDispatchAfterCallback()
+            throws Exception {
+        final List<String> events = new ArrayList<>();
+        final List<RequestMetrics> reported = new ArrayList<>();
+        StripeApiHandler.setHttpTransport(new HttpTransport() {
+            @NonNull
+            @Override
+            public StripeResponse execute(
+                    @NonNull String method,
+                    @NonNull String url,
+                    String query,
+                    @NonNull Map<String, String> headers) {
+                return new StripeResponse(200, "{\"id\":\"src_1\",\"object\":\"source\"}",
+                        null);
+            }
+        });
+        StripeApiHandler.setRequestMetricsListener(new RequestMetricsListener() {
+            @Override
+            public void onRequestMetrics(@NonNull RequestMetrics metrics) {
+                events.add("metrics");
+                reported.add(metrics);
+            }
+        });
+        try {
+            RequestEngine engine = new RequestEngine(DIRECT_EXECUTOR, DIRECT_EXECUTOR);
+            engine.execute(RequestEngine.LANE_SOURCE, null, new RequestEngine.Request<Source>() {
+                @Override
+                public Source call() throws Exception {
+                    return StripeApiHandler.retrieveSource("src_1", "secret", "pk_test");
+                }
+            }, new RequestEngine.ResultCallback<Source>() {
+                @Override
+                public void onSuccess(Source result) {
+                    events.add("callback");
+                }
+
+                @Override
+                public void onError(@NonNull Exception error) {
+                    events.add("error");
+                }
+            });
+        } finally {
+            StripeApiHandler.setRequestMetricsListener(null);
+            StripeApiHandler.setHttpTransport(null);
+        }
+
+        assertEquals(Arrays.asList("callback", "metrics"), events);
+        assertTrue(reported.get(0).getDurationNanos(RequestMetrics.PHASE_CALLBACK_DISPATCH) >= 0);
+    }
+
+    @Test
+    public void execute_withExecutor_runsOnThatExecutor() {
+        final List<Runnable> engineTasks = new ArrayList<>();
+        final List<Runnable> overrideTasks = new ArrayList<>();
+        RequestEngine engine = new RequestEngine(new Executor() {
+            @Override
+            public void execute(@NonNull Runnable command) {
+                engineTasks.add(command);
+            }
+        }, DIRECT_EXECUTOR);
+        RecordingCallback<String> callback = new RecordingCallback<>();
+
+        engine.execute(RequestEngine.LANE_TOKEN, new Executor() {
+            @Override
+            public void execute(@NonNull Runnable command) {
+                overrideTasks.add(command);
+            }
+        }, returning("tok_1"), callback);
+
+        assertTrue(engineTasks.isEmpty());
+        assertEquals(1, overrideTasks.size());
+        overrideTasks.get(0).run();
+        assertEquals("tok_1", callback.mResult);
+    }
+
+    @Test
+    public void cancel_beforeRequestRuns_skipsRequestAndCallback() {
+        final List<Runnable> engineTasks = new ArrayList<>();
+        RequestEngine engine = new RequestEngine(new Executor() {
+            @Override
+            public void execute(@NonNull Runnable command) {
+                engineTasks.add(command);
+            }
+        }, DIRECT_EXECUTOR);
+        RecordingCallback<String> callback = new RecordingCallback<>();
+        final int[] callCount = { 0 };
+
+        RequestEngine.Cancelable cancelable = engine.execute(
+                RequestEngine.LANE_TOKEN,
+                null,
+                new RequestEngine.Request<String>() {
+                    @Override
+                    public String call() {
+                        callCount[0]++;
+                        return "tok_1";
+                    }
+                },
+                callback);
+        cancelable.cancel();
+        engineTasks.get(0).run();
+
+        assertEquals(0, callCount[0]);
+        assertNull(callback.mResult);
+        assertNull(callback.mError);
+    }
+
+    @Test
+    public void execute_whenThreadIsBusy_runsLanesInPriorityOrder() throws Exception {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 1L, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<Runnable>());
+        RequestEngine engine = new RequestEngine(executor, DIRECT_EXECUTOR);
+
+        final CountDownLatch blocker = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(5);
+        final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        engine.execute(RequestEngine.LANE_RETRIEVAL, null, new RequestEngine.Request<String>() {
+            @Override
+            public String call() throws Exception {
+                blocker.await();
+                return "blocker";
+            }
+        }, new RecordingCallback<String>(done, order));
+
+        engine.execute(RequestEngine.LANE_RETRIEVAL, null, returning("retrieve"),
+                new RecordingCallback<String>(done, order));
+        engine.execute(RequestEngine.LANE_SOURCE, null, returning("source 1"),
+                new RecordingCallback<String>(done, order));
+        engine.execute(RequestEngine.LANE_TOKEN, null, returning("token"),
+                new RecordingCallback<String>(done, order));
+        engine.execute(RequestEngine.LANE_SOURCE, null, returning("source 2"),
+                new RecordingCallback<String>(done, order));
+        blocker.countDown();
+
+        assertTrue(done.await(5L, TimeUnit.SECONDS));
+        assertEquals(
+                Arrays.asList("blocker", "token", "source 1", "source 2", "retrieve"),
+                order);
+        executor.shutdown();
+    }
+
+    @Test
+    public void builder_createsWorkingEngine() {
+        assertNotNull(RequestEngine.builder().setThreadCount(3).build());
+        assertNotNull(RequestEngine.getDefault());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void builder_withNoThreads_throws() {
+        RequestEngine.builder().setThreadCount(0);
+    }
+
+    @NonNull
+    private static RequestEngine.Request<String> returning(@NonNull final String result) {
+        return new RequestEngine.Request<String>() {
+            @Override
+            public String call() {
+                return result;
+            }
+        };
+    }
+
+    private static final class RecordingCallback<T> implements RequestEngine.ResultCallback<T> {
+        private final CountDownLatch mLatch;
+        private final List<T> mResults;
+        T mResult;
+        Exception mError;
+
+        RecordingCallback() {
+            this(new CountDownLatch(1), new ArrayList<T>());
+        }
+
+        RecordingCallback(@NonNull CountDownLatch latch, @NonNull List<T> results) {
+            mLatch = latch;
+            mResults = results;
+        }
+
+        @Override
+        public void onSuccess(T result) {
+            mResult = result;
+            mResults.add(result);
+            mLatch.countDown();
+        }
+
+        @Override
+        public void onError(@NonNull Exception error) {
+            mError = error;
+            mLatch.countDown();
+        }
+    }
+}
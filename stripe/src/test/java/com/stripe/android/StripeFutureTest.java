@@ -0,0 +1,290 @@
+package com.stripe.android;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Test class for {@link StripeFuture}.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 23)
+public class StripeFutureTest {
+
+    @Test
+    public void addCallback_whenCompleted_deliversResult() {
+        StripeFuture<String> future = new StripeFuture<>();
+        RecordingCallback<String> callback = new RecordingCallback<>();
+        future.addCallback(callback);
+        assertEquals(0, callback.mCallCount);
+
+        assertTrue(future.complete("src_1"));
+        assertEquals("src_1", callback.mResult);
+        assertEquals(1, callback.mCallCount);
+
+        assertFalse(future.complete("src_2"));
+        assertFalse(future.fail(new IllegalStateException()));
+        assertEquals(1, callback.mCallCount);
+    }
+
+    @Test
+    public void addCallback_afterFailure_deliversError() {
+        IllegalStateException error = new IllegalStateException("expected");
+        RecordingCallback<String> callback = new RecordingCallback<>();
+
+        StripeFuture.<String>failed(error).addCallback(callback);
+
+        assertNull(callback.mResult);
+        assertEquals(error, callback.mError);
+    }
+
+    @Test
+    public void get_whenCompleted_returnsResult() throws Exception {
+        assertEquals("src_1", StripeFuture.completed("src_1").get());
+        assertEquals("src_1", StripeFuture.completed("src_1").get(1L, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void get_whenFailed_throwsExecutionException() throws Exception {
+        IllegalStateException error = new IllegalStateException("expected");
+        try {
+            StripeFuture.failed(error).get();
+            fail("Expected an ExecutionException");
+        } catch (ExecutionException expected) {
+            assertEquals(error, expected.getCause());
+        }
+    }
+
+    @Test(expected = TimeoutException.class)
+    public void get_whenPending_timesOut() throws Exception {
+        new StripeFuture<String>().get(10L, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void then_chainsSecondRequestAfterFirst() {
+        StripeFuture<String> cardSource = new StripeFuture<>();
+        final StripeFuture<String> threeDSource = new StripeFuture<>();
+        final List<String> continuationInputs = new ArrayList<>();
+        RecordingCallback<String> callback = new RecordingCallback<>();
+
+        cardSource.then(new StripeFuture.Continuation<String, String>() {
+            @NonNull
+            @Override
+            public StripeFuture<String> then(@Nullable String result) {
+                continuationInputs.add(result);
+                return threeDSource;
+            }
+        }).addCallback(callback);
+
+        assertTrue(continuationInputs.isEmpty());
+        cardSource.complete("src_card");
+        assertEquals(Arrays.asList("src_card"), continuationInputs);
+        assertEquals(0, callback.mCallCount);
+
+        threeDSource.complete("src_3ds");
+        assertEquals("src_3ds", callback.mResult);
+    }
+
+    @Test
+    public void then_whenFirstRequestFails_skipsContinuation() {
+        StripeFuture<String> cardSource = new StripeFuture<>();
+        IllegalStateException error = new IllegalStateException("expected");
+        RecordingCallback<String> callback = new RecordingCallback<>();
+
+        cardSource.then(new StripeFuture.Continuation<String, String>() {
+            @NonNull
+            @Override
+            public StripeFuture<String> then(@Nullable String result) {
+                fail("The continuation should not run");
+                return new StripeFuture<>();
+            }
+        }).addCallback(callback);
+        cardSource.fail(error);
+
+        assertEquals(error, callback.mError);
+    }
+
+    @Test
+    public void then_whenContinuationThrows_fails() {
+        final IllegalArgumentException error = new IllegalArgumentException("expected");
+        RecordingCallback<String> callback = new RecordingCallback<>();
+
+        StripeFuture.completed("src_card").then(new StripeFuture.Continuation<String, String>() {
+            @NonNull
+            @Override
+            public StripeFuture<String> then(@Nullable String result) {
+                throw error;
+            }
+        }).addCallback(callback);
+
+        assertEquals(error, callback.mError);
+    }
+
+    @Test
+    public void cancel_runsCancelActionAndFailsDependents() {
+        StripeFuture<String> future = new StripeFuture<>();
+        final int[] cancelCount = { 0 };
+        future.setCancelAction(new Runnable() {
+            @Override
+            public void run() {
+                cancelCount[0]++;
+            }
+        });
+        RecordingCallback<String> callback = new RecordingCallback<>();
+        future.addCallback(callback);
+
+        assertTrue(future.cancel(false));
+        assertFalse(future.cancel(false));
+        assertTrue(future.isCancelled());
+        assertTrue(future.isDone());
+        assertEquals(1, cancelCount[0]);
+        assertTrue(callback.mError instanceof CancellationException);
+        assertFalse(future.complete("src_1"));
+    }
+
+    @Test
+    public void cancel_onChain_cancelsRequestUnderWay() {
+        StripeFuture<String> cardSource = new StripeFuture<>();
+        final StripeFuture<String> threeDSource = new StripeFuture<>();
+        StripeFuture<String> chain =
+                cardSource.then(new StripeFuture.Continuation<String, String>() {
+                    @NonNull
+                    @Override
+                    public StripeFuture<String> then(@Nullable String result) {
+                        return threeDSource;
+                    }
+                });
+
+        cardSource.complete("src_card");
+        assertTrue(chain.cancel(false));
+        assertTrue(threeDSource.isCancelled());
+        assertFalse(cardSource.isCancelled());
+    }
+
+    @Test
+    public void cancel_onChainBeforeFirstFinishes_cancelsFirst() {
+        StripeFuture<String> cardSource = new StripeFuture<>();
+        StripeFuture<String> chain =
+                cardSource.then(new StripeFuture.Continuation<String, String>() {
+                    @NonNull
+                    @Override
+                    public StripeFuture<String> then(@Nullable String result) {
+                        fail("The continuation should not run");
+                        return new StripeFuture<>();
+                    }
+                });
+
+        chain.cancel(false);
+        assertTrue(cardSource.isCancelled());
+    }
+
+    @Test
+    public void allOf_whenAllSucceed_keepsOrder() {
+        StripeFuture<String> first = new StripeFuture<>();
+        StripeFuture<String> second = new StripeFuture<>();
+        RecordingCallback<List<String>> callback = new RecordingCallback<>();
+        StripeFuture.allOf(Arrays.asList(first, second)).addCallback(callback);
+
+        second.complete("src_2");
+        assertEquals(0, callback.mCallCount);
+        first.complete("src_1");
+        assertEquals(Arrays.asList("src_1", "src_2"), callback.mResult);
+    }
+
+    @Test
+    public void allOf_whenEmpty_succeedsImmediately() throws Exception {
+        List<StripeFuture<String>> futures = new ArrayList<>();
+        assertTrue(StripeFuture.allOf(futures).get().isEmpty());
+    }
+
+    @Test
+    public void allOf_whenOneFails_failsAndCancelsTheRest() {
+        StripeFuture<String> first = new StripeFuture<>();
+        StripeFuture<String> second = new StripeFuture<>();
+        IllegalStateException error = new IllegalStateException("expected");
+        RecordingCallback<List<String>> callback = new RecordingCallback<>();
+        StripeFuture.allOf(Arrays.asList(first, second)).addCallback(callback);
+
+        first.fail(error);
+        assertEquals(error, callback.mError);
+        assertTrue(second.isCancelled());
+    }
+
+    @Test
+    public void withTimeout_whenTooSlow_failsAndCancelsWork() {
+        StripeFuture<String> future = new StripeFuture<>();
+        final int[] cancelCount = { 0 };
+        future.setCancelAction(new Runnable() {
+            @Override
+            public void run() {
+                cancelCount[0]++;
+            }
+        });
+        RecordingCallback<String> callback = new RecordingCallback<>();
+        future.withTimeout(1000L).addCallback(callback);
+
+        advanceMainLooperBy(999);
+        assertFalse(future.isDone());
+        advanceMainLooperBy(1);
+        assertTrue(callback.mError instanceof TimeoutException);
+        assertEquals(1, cancelCount[0]);
+        assertFalse(future.isCancelled());
+    }
+
+    @Test
+    public void withTimeout_whenFinishedInTime_keepsResult() {
+        StripeFuture<String> future = new StripeFuture<>();
+        RecordingCallback<String> callback = new RecordingCallback<>();
+        future.withTimeout(1000L).addCallback(callback);
+
+        future.complete("src_1");
+        advanceMainLooperBy(1000);
+        assertEquals("src_1", callback.mResult);
+        assertEquals(1, callback.mCallCount);
+    }
+
+    private static void advanceMainLooperBy(int millis) {
+        ShadowLooper.pauseMainLooper();
+        Robolectric.getForegroundThreadScheduler().advanceBy(millis, TimeUnit.MILLISECONDS);
+        ShadowLooper.unPauseMainLooper();
+        ShadowLooper.pauseMainLooper();
+    }
+
+    private static final class RecordingCallback<T> implements StripeFuture.Callback<T> {
+        T mResult;
+        Exception mError;
+        int mCallCount;
+
+        @Override
+        public void onSuccess(@Nullable T result) {
+            mResult = result;
+            mCallCount++;
+        }
+
+        @Override
+        public void onError(@NonNull Exception error) {
+            mError = error;
+            mCallCount++;
+        }
+    }
+}
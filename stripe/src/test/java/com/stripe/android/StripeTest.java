@@ -25,12 +25,16 @@ import org.mockito.MockitoAnnotations;
 import org.robolectric.RobolectricTestRunner;
 import org.robolectric.annotation.Config;
 
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
@@ -207,6 +211,48 @@ public class StripeTest {
         }
     }
 
+    @Test
+    public void createTokenFuture_withoutKey_fails() throws InterruptedException {
+        Stripe stripe = new Stripe(mContext);
+        StripeFuture<Token> future = stripe.createToken(DEFAULT_CARD);
+        assertTrue(future.isDone());
+        try {
+            future.get();
+            fail("Expected an AuthenticationException");
+        } catch (ExecutionException expected) {
+            assertTrue(expected.getCause() instanceof AuthenticationException);
+        }
+    }
+
+    @Test
+    public void createTokenFuture_whenCanceled_doesNotRunRequest() {
+        final List<Runnable> tasks = new ArrayList<>();
+        try {
+            Stripe stripe = new Stripe(mContext, DEFAULT_PUBLISHABLE_KEY);
+            stripe.setRequestEngine(new RequestEngine(new Executor() {
+                @Override
+                public void execute(Runnable command) {
+                    tasks.add(command);
+                }
+            }, new Executor() {
+                @Override
+                public void execute(Runnable command) {
+                    command.run();
+                }
+            }));
+
+            StripeFuture<Token> future = stripe.createToken(DEFAULT_CARD);
+            assertEquals(1, tasks.size());
+            assertFalse(future.isDone());
+
+            assertTrue(future.cancel(false));
+            tasks.get(0).run();
+            assertTrue(future.isCancelled());
+        } catch (AuthenticationException e) {
+            fail("Unexpected error: " + e.getMessage());
+        }
+    }
+
     @Test
     public void createBankAccountTokenSynchronous_withValidData_returnsToken() {
         try {
@@ -5,11 +5,13 @@ import org.junit.runner.RunWith;
 import org.robolectric.RobolectricTestRunner;
 import org.robolectric.annotation.Config;
 
+import java.util.HashMap;
 import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 
 /**
  * Test class for {@link SourceCardData}.
@@ -56,4 +58,30 @@ public class SourceCardDataTest {
         assertFalse(cardDataMap.containsKey("tokenization_method"));
         assertFalse(cardDataMap.containsKey("dynamic_last4"));
     }
+
+    @Test
+    public void fromJson_withExtraFields_buildsAdditionalFieldsOnFirstAccess() {
+        SourceCardData cardData = SourceCardData.fromString(EXAMPLE_JSON_CARD.replace(
+                "\"exp_month\":12,", "\"exp_month\":12,\"issuer\":\"Stripe Bank\","));
+        assertNotNull(cardData);
+
+        Map<String, Object> additionalFields = cardData.getAdditionalFields();
+        assertEquals(1, additionalFields.size());
+        assertEquals("Stripe Bank", additionalFields.get("issuer"));
+        assertSame(additionalFields, cardData.getAdditionalFields());
+        assertEquals("Stripe Bank", cardData.toMap().get("issuer"));
+    }
+
+    @Test
+    public void setAdditionalFields_beforeFirstAccess_replacesParsedFields() {
+        SourceCardData cardData = SourceCardData.fromString(EXAMPLE_JSON_CARD.replace(
+                "\"exp_month\":12,", "\"exp_month\":12,\"issuer\":\"Stripe Bank\","));
+        assertNotNull(cardData);
+        Map<String, Object> additionalFields = new HashMap<>();
+
+        cardData.setAdditionalFields(additionalFields);
+
+        assertSame(additionalFields, cardData.getAdditionalFields());
+        assertFalse(cardData.toMap().containsKey("issuer"));
+    }
 }
@@ -1,5 +1,9 @@
 package com.stripe.android.model;
 
+import android.util.JsonReader;
+
+import com.stripe.android.util.StripeJsonUtils;
+
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.junit.Before;
@@ -8,6 +12,8 @@ import org.junit.runner.RunWith;
 import org.robolectric.RobolectricTestRunner;
 import org.robolectric.annotation.Config;
 
+import java.io.IOException;
+import java.io.StringReader;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -19,7 +25,11 @@ import static com.stripe.android.model.SourceRedirectTest.EXAMPLE_JSON_REDIRECT;
 
 import static com.stripe.android.testharness.JsonTestUtils.assertJsonEquals;
 import static com.stripe.android.testharness.JsonTestUtils.assertMapEquals;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 /**
@@ -110,6 +120,35 @@ public class SourceTest {
             "}" +
             "}";
 
+    // The card data comes before the type, as it does in live responses.
+    private static final String EXAMPLE_JSON_CARD_SOURCE = "{\n"+
+            "\"id\": \"src_19t3xKBZqEXluyI4uz2dxAfQ\",\n"+
+            "\"object\": \"source\",\n"+
+            "\"amount\": null,\n"+
+            "\"card\": {\n"+
+            "\"exp_month\": 12,\n"+
+            "\"exp_year\": 2050,\n"+
+            "\"brand\": \"Visa\",\n"+
+            "\"country\": \"US\",\n"+
+            "\"funding\": \"credit\",\n"+
+            "\"last4\": \"4242\",\n"+
+            "\"three_d_secure\": \"optional\",\n"+
+            "\"tokenization_method\": null,\n"+
+            "\"issuer\": {\"name\": \"Stripe Bank\", \"codes\": [1, 2.5, \"x\"]}\n"+
+            "},\n"+
+            "\"client_secret\": \"src_client_secret_of43INi1HteJwXVe3djAUosN\",\n"+
+            "\"created\": 1488499654,\n"+
+            "\"currency\": null,\n"+
+            "\"flow\": \"none\",\n"+
+            "\"livemode\": true,\n"+
+            "\"metadata\": {\"order\": \"6735\", \"count\": 3},\n"+
+            "\"owner\": null,\n"+
+            "\"statement_descriptor\": null,\n"+
+            "\"status\": \"chargeable\",\n"+
+            "\"type\": \"card\",\n"+
+            "\"usage\": \"reusable\"\n"+
+            "}";
+
     private Source mSource;
 
     @Before
@@ -136,4 +175,99 @@ public class SourceTest {
         assertMapEquals(EXAMPLE_SOURCE_MAP, sourceWithNulls.toMap());
     }
 
+    @Test
+    public void fromJsonReader_withNulls_createsExpectedMap() throws IOException {
+        Source sourceWithNulls = readSource(EXAMPLE_JSON_SOURCE_WITH_NULLS);
+        assertNotNull(sourceWithNulls);
+        assertMapEquals(EXAMPLE_SOURCE_MAP, sourceWithNulls.toMap());
+    }
+
+    @Test
+    public void fromJsonReader_matchesFromJson() throws IOException {
+        for (String json : new String[] {
+                EXAMPLE_JSON_SOURCE_WITH_NULLS,
+                EXAMPLE_JSON_SOURCE_WITHOUT_NULLS,
+                EXAMPLE_JSON_CARD_SOURCE}) {
+            Source expected = Source.fromString(json);
+            Source actual = readSource(json);
+            assertNotNull(expected);
+            assertNotNull(actual);
+            assertMapEquals(expected.toMap(), actual.toMap());
+            assertJsonEquals(expected.toJson(), actual.toJson());
+        }
+    }
+
+    @Test
+    public void fromJsonReader_withCardDataBeforeType_createsCardModel() throws IOException {
+        Source source = readSource(EXAMPLE_JSON_CARD_SOURCE);
+        assertNotNull(source);
+        assertEquals(Source.CARD, source.getType());
+        assertEquals(Long.valueOf(0L), source.getAmount());
+        assertNull(source.getCurrency());
+        assertNull(source.getOwner());
+        assertTrue(source.isLiveMode());
+        assertEquals("3", source.getMetaData().get("count"));
+        assertEquals(2050, source.getSourceTypeData().get("exp_year"));
+
+        assertTrue(source.getSourceTypeModel() instanceof SourceCardData);
+        SourceCardData cardData = (SourceCardData) source.getSourceTypeModel();
+        assertEquals(Card.VISA, cardData.getBrand());
+        assertEquals(Integer.valueOf(12), cardData.getExpiryMonth());
+        assertEquals(SourceCardData.OPTIONAL, cardData.getThreeDSecureStatus());
+        assertTrue(cardData.getAdditionalFields().get("issuer") instanceof JSONObject);
+    }
+
+    @Test
+    public void fromJsonReader_withOtherObject_returnsNullAndConsumesIt() throws IOException {
+        JsonReader reader = new JsonReader(new StringReader(
+                "[{\"object\": \"token\", \"card\": {\"last4\": \"4242\"}}, 1]"));
+        reader.beginArray();
+        assertNull(Source.fromJson(reader));
+        assertEquals(1, reader.nextInt());
+        reader.endArray();
+    }
+
+    @Test
+    public void fromJson_buildsMapsOnFirstAccessAndKeepsThem() throws JSONException {
+        JSONObject rawSource = new JSONObject(EXAMPLE_JSON_CARD_SOURCE);
+        Source source = Source.fromJson(rawSource);
+        assertNotNull(source);
+
+        Map<String, Object> sourceTypeData = source.getSourceTypeData();
+        assertEquals(StripeJsonUtils.jsonObjectToMap(rawSource.getJSONObject("card")),
+                sourceTypeData);
+        assertSame(sourceTypeData, source.getSourceTypeData());
+
+        Map<String, String> metaData = source.getMetaData();
+        assertEquals(StripeJsonUtils.jsonObjectToStringMap(rawSource.getJSONObject("metadata")),
+                metaData);
+        assertSame(metaData, source.getMetaData());
+    }
+
+    @Test
+    public void setters_beforeFirstAccess_replaceParsedMaps() {
+        Source source = Source.fromString(EXAMPLE_JSON_CARD_SOURCE);
+        assertNotNull(source);
+        Map<String, Object> sourceTypeData = new HashMap<>();
+        Map<String, String> metaData = new HashMap<>();
+
+        source.setSourceTypeData(sourceTypeData);
+        source.setMetaData(metaData);
+
+        assertSame(sourceTypeData, source.getSourceTypeData());
+        assertSame(metaData, source.getMetaData());
+    }
+
+    @Test
+    public void fromJson_withoutMetadataOrTypeData_returnsNullMaps() {
+        Source source = Source.fromString(EXAMPLE_JSON_SOURCE_WITH_NULLS);
+        assertNotNull(source);
+        assertNull(source.getSourceTypeData());
+        assertEquals(0, source.getMetaData().size());
+    }
+
+    private static Source readSource(String json) throws IOException {
+        return Source.fromJson(new JsonReader(new StringReader(json)));
+    }
+
 }
@@ -0,0 +1,297 @@
+package com.stripe.android.net;
+
+import android.support.annotation.NonNull;
+
+import com.stripe.android.exception.APIConnectionException;
+import com.stripe.android.exception.InvalidRequestException;
+import com.stripe.android.exception.StripeException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for {@link AnalyticsQueue}.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 23)
+public class AnalyticsQueueTest {
+
+    private static final long NEVER_MS = TimeUnit.HOURS.toMillis(1);
+    private static final long TIMEOUT_MS = 5000L;
+    private static final RequestOptions OPTIONS = RequestOptions.builder("pk_test_123").build();
+
+    @Rule public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    private ScheduledExecutorService mExecutor;
+    private RecordingEventSender mEventSender;
+
+    @Before
+    public void setup() {
+        mExecutor = new ScheduledThreadPoolExecutor(1);
+        mEventSender = new RecordingEventSender();
+    }
+
+    @After
+    public void tearDown() {
+        mExecutor.shutdownNow();
+    }
+
+    @Test
+    public void enqueue_doesNotWaitForSender() throws InterruptedException {
+        final CountDownLatch release = new CountDownLatch(1);
+        mEventSender.mBlockUntil = release;
+        AnalyticsQueue queue = createQueue(10, 1, 0L, AnalyticsQueue.DROP_OLDEST);
+
+        long start = System.nanoTime();
+        queue.enqueue(createEvent(1), OPTIONS, null);
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        release.countDown();
+        queue.awaitIdle(TIMEOUT_MS);
+
+        assertTrue(elapsedMs < 1000L);
+        assertEquals(1, mEventSender.mSent.size());
+    }
+
+    @Test
+    public void enqueue_whenBatchIsFull_sendsWithoutWaitingForDelay()
+            throws InterruptedException {
+        AnalyticsQueue queue = createQueue(10, 3, NEVER_MS, AnalyticsQueue.DROP_OLDEST);
+
+        queue.enqueue(createEvent(1), OPTIONS, null);
+        queue.enqueue(createEvent(2), OPTIONS, null);
+        queue.awaitIdle(TIMEOUT_MS);
+        assertEquals(0, mEventSender.mSent.size());
+        assertEquals(2, queue.size());
+
+        queue.enqueue(createEvent(3), OPTIONS, null);
+        queue.awaitIdle(TIMEOUT_MS);
+        assertEquals(Arrays.asList(1, 2, 3), mEventSender.sentIds());
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void enqueue_whenFull_dropsOldest() throws InterruptedException {
+        AnalyticsQueue queue = createQueue(2, 10, NEVER_MS, AnalyticsQueue.DROP_OLDEST);
+
+        queue.enqueue(createEvent(1), OPTIONS, null);
+        queue.enqueue(createEvent(2), OPTIONS, null);
+        queue.enqueue(createEvent(3), OPTIONS, null);
+        queue.flush();
+        queue.awaitIdle(TIMEOUT_MS);
+
+        assertEquals(1, queue.getDroppedCount());
+        assertEquals(Arrays.asList(2, 3), mEventSender.sentIds());
+    }
+
+    @Test
+    public void enqueue_whenFull_dropsNewest() throws InterruptedException {
+        AnalyticsQueue queue = createQueue(2, 10, NEVER_MS, AnalyticsQueue.DROP_NEWEST);
+
+        queue.enqueue(createEvent(1), OPTIONS, null);
+        queue.enqueue(createEvent(2), OPTIONS, null);
+        queue.enqueue(createEvent(3), OPTIONS, null);
+        queue.flush();
+        queue.awaitIdle(TIMEOUT_MS);
+
+        assertEquals(1, queue.getDroppedCount());
+        assertEquals(Arrays.asList(1, 2), mEventSender.sentIds());
+    }
+
+    @Test
+    public void enqueue_whenFullWithSpillDirectory_spillsToDiskAndSendsEverything()
+            throws Exception {
+        File spillDirectory = mTemporaryFolder.newFolder();
+        AnalyticsQueue queue = createQueue(2, 10, NEVER_MS, AnalyticsQueue.DROP_OLDEST);
+        queue.setSpillDirectory(spillDirectory);
+
+        for (int i = 1; i <= 5; i++) {
+            queue.enqueue(createEvent(i), OPTIONS, null);
+        }
+        queue.awaitIdle(TIMEOUT_MS);
+        assertEquals(2, queue.size());
+        assertTrue(new File(spillDirectory, AnalyticsQueue.SPILL_FILE_NAME).exists());
+
+        queue.flush();
+        queue.awaitIdle(TIMEOUT_MS);
+
+        assertEquals(0, queue.getDroppedCount());
+        assertEquals(new HashSet<>(Arrays.asList(1, 2, 3, 4, 5)),
+                new HashSet<>(mEventSender.sentIds()));
+        assertFalse(new File(spillDirectory, AnalyticsQueue.SPILL_FILE_NAME).exists());
+        for (RequestOptions options : mEventSender.mOptions) {
+            assertEquals("pk_test_123", options.getPublishableApiKey());
+        }
+    }
+
+    @Test
+    public void flush_whenOffline_keepsEventsForLater() throws InterruptedException {
+        mEventSender.mFailuresRemaining = 1;
+        AnalyticsQueue queue = createQueue(10, 10, NEVER_MS, AnalyticsQueue.DROP_OLDEST);
+        TestLoggingListener listener = new TestLoggingListener();
+
+        queue.enqueue(createEvent(1), OPTIONS, listener);
+        queue.enqueue(createEvent(2), OPTIONS, null);
+        queue.flush();
+        queue.awaitIdle(TIMEOUT_MS);
+
+        assertEquals(0, mEventSender.mSent.size());
+        assertEquals(2, queue.size());
+        assertEquals(0, listener.mExceptions.size());
+
+        queue.flush();
+        queue.awaitIdle(TIMEOUT_MS);
+
+        assertEquals(Arrays.asList(1, 2), mEventSender.sentIds());
+        assertEquals(1, listener.mResponses.size());
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void flush_whenOfflineTooOften_dropsEventAndTellsListener()
+            throws InterruptedException {
+        mEventSender.mFailuresRemaining = AnalyticsQueue.MAX_SEND_ATTEMPTS;
+        AnalyticsQueue queue = createQueue(10, 10, NEVER_MS, AnalyticsQueue.DROP_OLDEST);
+        TestLoggingListener listener = new TestLoggingListener();
+
+        queue.enqueue(createEvent(1), OPTIONS, listener);
+        for (int i = 0; i < AnalyticsQueue.MAX_SEND_ATTEMPTS; i++) {
+            queue.flush();
+            queue.awaitIdle(TIMEOUT_MS);
+        }
+
+        assertEquals(0, queue.size());
+        assertEquals(1, queue.getDroppedCount());
+        assertEquals(1, listener.mExceptions.size());
+        assertTrue(listener.mExceptions.get(0) instanceof APIConnectionException);
+    }
+
+    @Test
+    public void flush_whenRejected_tellsListenerAndMovesOn() throws InterruptedException {
+        mEventSender.mRejectId = 1;
+        AnalyticsQueue queue = createQueue(10, 10, NEVER_MS, AnalyticsQueue.DROP_OLDEST);
+        TestLoggingListener listener = new TestLoggingListener();
+
+        queue.enqueue(createEvent(1), OPTIONS, listener);
+        queue.enqueue(createEvent(2), OPTIONS, listener);
+        queue.flush();
+        queue.awaitIdle(TIMEOUT_MS);
+
+        assertEquals(Arrays.asList(2), mEventSender.sentIds());
+        assertEquals(1, listener.mExceptions.size());
+        assertTrue(listener.mExceptions.get(0) instanceof InvalidRequestException);
+        assertEquals(1, listener.mResponses.size());
+        assertEquals(0, queue.size());
+    }
+
+    @NonNull
+    private AnalyticsQueue createQueue(
+            int capacity,
+            int batchSize,
+            long flushDelayMs,
+            @NonNull @AnalyticsQueue.DropPolicy String dropPolicy) {
+        return new AnalyticsQueue(
+                mEventSender, mExecutor, capacity, batchSize, flushDelayMs, dropPolicy);
+    }
+
+    @NonNull
+    private static Map<String, Object> createEvent(int id) {
+        Map<String, Object> params = new HashMap<>();
+        params.put("event", "stripe_android.token_creation");
+        params.put("id", id);
+        return params;
+    }
+
+    private static final class RecordingEventSender implements AnalyticsQueue.EventSender {
+        final List<Map<String, Object>> mSent =
+                Collections.synchronizedList(new ArrayList<Map<String, Object>>());
+        final List<RequestOptions> mOptions =
+                Collections.synchronizedList(new ArrayList<RequestOptions>());
+        volatile CountDownLatch mBlockUntil;
+        volatile int mFailuresRemaining;
+        volatile int mRejectId = -1;
+
+        @NonNull
+        @Override
+        public StripeResponse send(
+                @NonNull Map<String, Object> params,
+                @NonNull RequestOptions options) throws StripeException {
+            if (mBlockUntil != null) {
+                try {
+                    mBlockUntil.await(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException interrupted) {
+                    throw new APIConnectionException("interrupted", interrupted);
+                }
+            }
+            if (mFailuresRemaining > 0) {
+                mFailuresRemaining--;
+                throw new APIConnectionException("offline");
+            }
+            if (idOf(params) == mRejectId) {
+                throw new InvalidRequestException("rejected", null, null, 400, null);
+            }
+            mSent.add(params);
+            mOptions.add(options);
+            return new StripeResponse(200, "{}", null);
+        }
+
+        @NonNull
+        List<Integer> sentIds() {
+            List<Integer> ids = new ArrayList<>();
+            synchronized (mSent) {
+                for (Map<String, Object> params : mSent) {
+                    ids.add(idOf(params));
+                }
+            }
+            return ids;
+        }
+
+        private static int idOf(@NonNull Map<String, Object> params) {
+            Object id = params.get("id");
+            assertNotNull(id);
+            // Events read back from disk come back as whatever JSON parsing produced.
+            return ((Number) id).intValue();
+        }
+    }
+
+    private static final class TestLoggingListener
+            implements StripeApiHandler.LoggingResponseListener {
+        final List<StripeResponse> mResponses =
+                Collections.synchronizedList(new ArrayList<StripeResponse>());
+        final List<StripeException> mExceptions =
+                Collections.synchronizedList(new ArrayList<StripeException>());
+
+        @Override
+        public void onLoggingResponse(StripeResponse response) {
+            mResponses.add(response);
+        }
+
+        @Override
+        public void onStripeException(StripeException exception) {
+            mExceptions.add(exception);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.stripe.android.net;
+
+import com.stripe.android.exception.APIConnectionException;
+import com.stripe.android.exception.APIException;
+import com.stripe.android.exception.RateLimitException;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test class for {@link BackoffPollingStrategy}.
+ */
+public class BackoffPollingStrategyTest {
+
+    private static final APIConnectionException CONNECTION_EXCEPTION =
+            new APIConnectionException("expected error");
+
+    @Test
+    public void getPendingDelayMs_withoutJitter_backsOffUpToMaxDelay() {
+        BackoffPollingStrategy strategy = createStrategy(0.0);
+        assertEquals(1000L, strategy.getPendingDelayMs(1));
+        assertEquals(2000L, strategy.getPendingDelayMs(2));
+        assertEquals(4000L, strategy.getPendingDelayMs(3));
+        assertEquals(8000L, strategy.getPendingDelayMs(4));
+        assertEquals(15000L, strategy.getPendingDelayMs(5));
+        assertEquals(15000L, strategy.getPendingDelayMs(100));
+    }
+
+    @Test
+    public void getPendingDelayMs_withJitter_shortensDelayByUpToHalf() {
+        assertEquals(750L, createStrategy(0.5).getPendingDelayMs(1));
+        assertEquals(5000L, createStrategy(0.75).getPendingDelayMs(4));
+    }
+
+    @Test
+    public void getErrorDelayMs_backsOffWithoutJitterAndStopsAtMaxRetryCount() {
+        BackoffPollingStrategy strategy = createStrategy(0.5);
+        assertEquals(2000L, strategy.getErrorDelayMs(CONNECTION_EXCEPTION, 1));
+        assertEquals(4000L, strategy.getErrorDelayMs(CONNECTION_EXCEPTION, 2));
+        assertEquals(8000L, strategy.getErrorDelayMs(CONNECTION_EXCEPTION, 3));
+        assertEquals(15000L, strategy.getErrorDelayMs(CONNECTION_EXCEPTION, 4));
+        assertEquals(PollingStrategy.STOP, strategy.getErrorDelayMs(CONNECTION_EXCEPTION, 5));
+    }
+
+    @Test
+    public void getErrorDelayMs_whenRateLimited_neverStops() {
+        BackoffPollingStrategy strategy = createStrategy(0.0);
+        RateLimitException exception =
+                new RateLimitException("slow down", null, "req_1", 429, null);
+        assertEquals(15000L, strategy.getErrorDelayMs(exception, 5));
+        assertEquals(15000L, strategy.getErrorDelayMs(exception, 50));
+    }
+
+    @Test
+    public void getErrorDelayMs_withRetryAfter_waitsAtLeastThatLong() {
+        BackoffPollingStrategy strategy = createStrategy(0.0);
+        RateLimitException rateLimitException =
+                new RateLimitException("slow down", null, "req_1", 429, null, 30000L);
+        assertEquals(30000L, strategy.getErrorDelayMs(rateLimitException, 1));
+
+        APIException apiException = new APIException("unavailable", "req_2", 503, null, 5000L);
+        assertEquals(5000L, strategy.getErrorDelayMs(apiException, 1));
+        // A shorter Retry-After does not cut the backoff short.
+        assertEquals(8000L, strategy.getErrorDelayMs(apiException, 3));
+    }
+
+    private static BackoffPollingStrategy createStrategy(final double randomValue) {
+        return new BackoffPollingStrategy(
+                PollingParameters.generateDefaultParameters(),
+                new Random() {
+                    @Override
+                    public double nextDouble() {
+                        return randomValue;
+                    }
+                });
+    }
+}
@@ -0,0 +1,174 @@
+package com.stripe.android.net;
+
+import android.support.annotation.NonNull;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+/**
+ * Test class for {@link CachingDnsResolver}.
+ */
+public class CachingDnsResolverTest {
+
+    private static final long TTL_MS = 1000L;
+    private static final long STALE_MS = 5000L;
+
+    private CountingDnsResolver mDelegate;
+    private QueuedExecutor mRefreshExecutor;
+    private TestCachingDnsResolver mResolver;
+
+    @Before
+    public void setup() {
+        mDelegate = new CountingDnsResolver();
+        mRefreshExecutor = new QueuedExecutor();
+        mResolver = new TestCachingDnsResolver(mDelegate, 2, mRefreshExecutor);
+    }
+
+    @Test
+    public void resolve_withinTtl_usesCache() throws UnknownHostException {
+        List<InetAddress> first = mResolver.resolve("api.stripe.com");
+        mResolver.mNowMs += TTL_MS - 1;
+        List<InetAddress> second = mResolver.resolve("api.stripe.com");
+
+        assertSame(first, second);
+        assertEquals(1, mDelegate.mLookupCount);
+        assertEquals(1, mResolver.getMissCount());
+        assertEquals(1, mResolver.getHitCount());
+    }
+
+    @Test
+    public void resolve_whenStale_returnsCachedAndRefreshesInBackground()
+            throws UnknownHostException {
+        List<InetAddress> first = mResolver.resolve("api.stripe.com");
+        mResolver.mNowMs += TTL_MS;
+
+        assertSame(first, mResolver.resolve("api.stripe.com"));
+        assertSame(first, mResolver.resolve("api.stripe.com"));
+        assertEquals(1, mDelegate.mLookupCount);
+        // Only one refresh is scheduled for the host, however many stale reads there are.
+        assertEquals(1, mRefreshExecutor.mPending.size());
+
+        mRefreshExecutor.runAll();
+        assertEquals(2, mDelegate.mLookupCount);
+        assertEquals(2, mResolver.getStaleHitCount());
+
+        mResolver.resolve("api.stripe.com");
+        assertEquals(1, mResolver.getHitCount());
+        assertEquals(2, mDelegate.mLookupCount);
+    }
+
+    @Test
+    public void resolve_whenStaleRefreshFails_keepsServingStaleEntry()
+            throws UnknownHostException {
+        List<InetAddress> first = mResolver.resolve("api.stripe.com");
+        mResolver.mNowMs += TTL_MS;
+        mDelegate.mFail = true;
+
+        assertSame(first, mResolver.resolve("api.stripe.com"));
+        mRefreshExecutor.runAll();
+        assertSame(first, mResolver.resolve("api.stripe.com"));
+    }
+
+    @Test
+    public void resolve_pastStaleWindow_resolvesSynchronously() throws UnknownHostException {
+        mResolver.resolve("api.stripe.com");
+        mResolver.mNowMs += TTL_MS + STALE_MS;
+
+        mResolver.resolve("api.stripe.com");
+        assertEquals(2, mDelegate.mLookupCount);
+        assertEquals(0, mRefreshExecutor.mPending.size());
+    }
+
+    @Test
+    public void resolve_whenLookupFails_throwsAndDoesNotCache() {
+        mDelegate.mFail = true;
+        try {
+            mResolver.resolve("api.stripe.com");
+            fail("Expected an UnknownHostException");
+        } catch (UnknownHostException expected) {
+            assertEquals(0, mResolver.size());
+        }
+    }
+
+    @Test
+    public void resolve_whenFull_evictsLeastRecentlyUsedHost() throws UnknownHostException {
+        mResolver.resolve("a.stripe.com");
+        mResolver.resolve("b.stripe.com");
+        mResolver.resolve("a.stripe.com");
+        mResolver.resolve("c.stripe.com");
+        assertEquals(2, mResolver.size());
+
+        mResolver.resolve("a.stripe.com");
+        assertEquals(3, mDelegate.mLookupCount);
+        mResolver.resolve("b.stripe.com");
+        assertEquals(4, mDelegate.mLookupCount);
+    }
+
+    @Test
+    public void clear_dropsAllEntries() throws UnknownHostException {
+        mResolver.resolve("api.stripe.com");
+        mResolver.clear();
+        mResolver.resolve("api.stripe.com");
+        assertEquals(2, mDelegate.mLookupCount);
+    }
+
+    private static class TestCachingDnsResolver extends CachingDnsResolver {
+        long mNowMs = 10000L;
+
+        TestCachingDnsResolver(
+                @NonNull DnsResolver delegate,
+                int maxEntries,
+                @NonNull Executor executor) {
+            super(delegate, maxEntries, TTL_MS, STALE_MS, executor);
+        }
+
+        @Override
+        long now() {
+            return mNowMs;
+        }
+    }
+
+    private static class CountingDnsResolver implements DnsResolver {
+        int mLookupCount;
+        boolean mFail;
+
+        @NonNull
+        @Override
+        public List<InetAddress> resolve(@NonNull String host) throws UnknownHostException {
+            mLookupCount++;
+            if (mFail) {
+                throw new UnknownHostException(host);
+            }
+            return Collections.singletonList(
+                    InetAddress.getByAddress(host, new byte[] {10, 0, 0, (byte) mLookupCount}));
+        }
+    }
+
+    private static class QueuedExecutor implements Executor {
+        final List<Runnable> mPending = new ArrayList<>();
+
+        @Override
+        public void execute(@NonNull Runnable runnable) {
+            mPending.add(runnable);
+        }
+
+        void runAll() {
+            List<Runnable> pending = new ArrayList<>(mPending);
+            mPending.clear();
+            for (Runnable runnable : pending) {
+                runnable.run();
+            }
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.stripe.android.net;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.URL;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Test class for {@link ConnectionLimiter}.
+ */
+public class ConnectionLimiterTest {
+
+    private static final String HOST = "https://api.stripe.com:443";
+
+    private ConnectionLimiter mConnectionLimiter;
+
+    @Before
+    public void setup() {
+        mConnectionLimiter = new ConnectionLimiter(2);
+    }
+
+    @Test
+    public void hostKey_usesDefaultPortWhenMissing() throws IOException {
+        assertEquals(HOST,
+                ConnectionLimiter.hostKey(new URL("https://api.stripe.com/v1/tokens")));
+        assertEquals("http://localhost:8080",
+                ConnectionLimiter.hostKey(new URL("http://localhost:8080/v1/tokens")));
+    }
+
+    @Test
+    public void release_freesConnectionForNextRequest() throws IOException {
+        mConnectionLimiter.acquire(HOST, 100L);
+        mConnectionLimiter.acquire(HOST, 100L);
+        assertEquals(2, mConnectionLimiter.getInUseConnectionCount(HOST));
+
+        mConnectionLimiter.release(HOST);
+        assertEquals(1, mConnectionLimiter.getInUseConnectionCount(HOST));
+        mConnectionLimiter.acquire(HOST, 100L);
+        assertEquals(2, mConnectionLimiter.getInUseConnectionCount(HOST));
+
+        mConnectionLimiter.release(HOST);
+        mConnectionLimiter.release(HOST);
+        assertEquals(0, mConnectionLimiter.getInUseConnectionCount(HOST));
+    }
+
+    @Test
+    public void acquire_limitsEachHostSeparately() throws IOException {
+        mConnectionLimiter.acquire(HOST, 100L);
+        mConnectionLimiter.acquire(HOST, 100L);
+        mConnectionLimiter.acquire("https://hooks.stripe.com:443", 100L);
+
+        assertEquals(2, mConnectionLimiter.getInUseConnectionCount(HOST));
+        assertEquals(1,
+                mConnectionLimiter.getInUseConnectionCount("https://hooks.stripe.com:443"));
+    }
+
+    @Test
+    public void acquire_whenHostIsBusy_timesOut() throws IOException {
+        mConnectionLimiter.acquire(HOST, 100L);
+        mConnectionLimiter.acquire(HOST, 100L);
+        try {
+            mConnectionLimiter.acquire(HOST, 50L);
+            fail("Expected the third connection to time out");
+        } catch (IOException expected) {
+            assertEquals(2, mConnectionLimiter.getInUseConnectionCount(HOST));
+        }
+    }
+
+    @Test
+    public void acquire_whenHostIsBusy_waitsForRelease() throws Exception {
+        mConnectionLimiter.acquire(HOST, 100L);
+        mConnectionLimiter.acquire(HOST, 100L);
+        Thread releaser = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(50L);
+                } catch (InterruptedException ignored) {
+                }
+                mConnectionLimiter.release(HOST);
+            }
+        });
+        releaser.start();
+
+        mConnectionLimiter.acquire(HOST, 2000L);
+        assertEquals(2, mConnectionLimiter.getInUseConnectionCount(HOST));
+        releaser.join();
+    }
+}
@@ -0,0 +1,157 @@
+package com.stripe.android.net;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Test class for {@link ContentDecoder}.
+ */
+public class ContentDecoderTest {
+
+    private static final String BODY = "{\"id\":\"src_1\",\"object\":\"source\","
+            + "\"owner\":{\"address\":null,\"email\":null,\"name\":null,\"phone\":null}}";
+
+    @Test
+    public void getContentEncoding_ignoresCaseAndStatusLine() {
+        Map<String, List<String>> headers = new HashMap<>();
+        headers.put(null, Collections.singletonList("HTTP/1.1 200 OK"));
+        headers.put("content-encoding", Collections.singletonList("gzip"));
+
+        assertEquals("gzip", ContentDecoder.getContentEncoding(headers));
+        assertNull(ContentDecoder.getContentEncoding(
+                Collections.<String, List<String>>emptyMap()));
+        assertNull(ContentDecoder.getContentEncoding(null));
+    }
+
+    @Test
+    public void isEncoded_treatsIdentityAsPlain() {
+        assertFalse(ContentDecoder.isEncoded(null));
+        assertFalse(ContentDecoder.isEncoded(""));
+        assertFalse(ContentDecoder.isEncoded("Identity"));
+        assertTrue(ContentDecoder.isEncoded("gzip"));
+    }
+
+    @Test
+    public void decode_withoutEncoding_returnsBodyAsIs() throws IOException {
+        InputStream body = new ByteArrayInputStream(bytes(BODY));
+
+        assertSame(body, ContentDecoder.decode(null, body));
+        assertSame(body, ContentDecoder.decode("identity", body));
+    }
+
+    @Test
+    public void decode_withGzip_inflatesBody() throws IOException {
+        assertEquals(BODY, readAll(ContentDecoder.decode("gzip", stream(gzip(BODY)))));
+        assertEquals(BODY, readAll(ContentDecoder.decode(" X-GZIP ", stream(gzip(BODY)))));
+    }
+
+    @Test
+    public void decode_withZlibDeflate_inflatesBody() throws IOException {
+        assertEquals(BODY, readAll(ContentDecoder.decode("deflate", deflate(BODY, false))));
+    }
+
+    @Test
+    public void decode_withRawDeflate_inflatesBody() throws IOException {
+        assertEquals(BODY, readAll(ContentDecoder.decode("deflate", deflate(BODY, true))));
+    }
+
+    @Test
+    public void decode_withEmptyBody_returnsEmptyStream() throws IOException {
+        InputStream decoded =
+                ContentDecoder.decode("gzip", new ByteArrayInputStream(new byte[0]));
+
+        assertEquals(-1, decoded.read());
+    }
+
+    @Test
+    public void decode_withUnsupportedEncoding_throws() {
+        try {
+            ContentDecoder.decode("br", new ByteArrayInputStream(bytes(BODY)));
+            fail("Expected an IOException");
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void decode_withCorruptGzip_throws() {
+        try {
+            readAll(ContentDecoder.decode("gzip", new ByteArrayInputStream(bytes(BODY))));
+            fail("Expected an IOException");
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void countingInputStream_countsWireAndDecodedBytesSeparately() throws IOException {
+        byte[] compressed = gzip(BODY + BODY + BODY);
+        CountingInputStream wire = new CountingInputStream(new ByteArrayInputStream(compressed));
+        CountingInputStream decoded =
+                new CountingInputStream(ContentDecoder.decode("gzip", wire));
+
+        assertEquals(BODY + BODY + BODY, readAll(decoded));
+        assertEquals(compressed.length, wire.getCount());
+        assertEquals(3 * BODY.length(), decoded.getCount());
+        assertTrue(wire.getCount() < decoded.getCount());
+    }
+
+    static byte[] gzip(String text) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = new GZIPOutputStream(output);
+        gzip.write(bytes(text));
+        gzip.close();
+        return output.toByteArray();
+    }
+
+    private static InputStream stream(byte[] bytes) {
+        return new ByteArrayInputStream(bytes);
+    }
+
+    private static InputStream deflate(String text, boolean raw) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        DeflaterOutputStream deflate = new DeflaterOutputStream(
+                output, new Deflater(Deflater.DEFAULT_COMPRESSION, raw));
+        deflate.write(bytes(text));
+        deflate.close();
+        return new ByteArrayInputStream(output.toByteArray());
+    }
+
+    private static String readAll(InputStream input) throws IOException {
+        try {
+            return new String(readBytes(input), "UTF-8");
+        } finally {
+            input.close();
+        }
+    }
+
+    private static byte[] readBytes(InputStream input) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[64];
+        int read;
+        while ((read = input.read(buffer)) != -1) {
+            output.write(buffer, 0, read);
+        }
+        return output.toByteArray();
+    }
+
+    private static byte[] bytes(String text) throws IOException {
+        return text.getBytes("UTF-8");
+    }
+}
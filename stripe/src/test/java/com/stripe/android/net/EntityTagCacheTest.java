@@ -0,0 +1,76 @@
+package com.stripe.android.net;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Test class for {@link EntityTagCache}.
+ */
+public class EntityTagCacheTest {
+
+    @Test
+    public void put_thenGet_returnsEntry() {
+        EntityTagCache<String> cache = new EntityTagCache<>(2);
+        cache.put("a", "\"v1\"", "first");
+
+        EntityTagCache.Entry<String> entry = cache.get("a");
+        assertNotNull(entry);
+        assertEquals("\"v1\"", entry.mEntityTag);
+        assertEquals("first", entry.mValue);
+        assertNull(cache.get("b"));
+    }
+
+    @Test
+    public void put_withoutEntityTagOrValue_forgetsKey() {
+        EntityTagCache<String> cache = new EntityTagCache<>(2);
+        cache.put("a", "\"v1\"", "first");
+        cache.put("a", null, "second");
+        assertNull(cache.get("a"));
+
+        cache.put("a", "\"v1\"", "first");
+        cache.put("a", "\"v2\"", null);
+        assertNull(cache.get("a"));
+    }
+
+    @Test
+    public void put_beyondMaxSize_evictsLeastRecentlyUsed() {
+        EntityTagCache<String> cache = new EntityTagCache<>(2);
+        cache.put("a", "\"a\"", "a");
+        cache.put("b", "\"b\"", "b");
+        cache.get("a");
+        cache.put("c", "\"c\"", "c");
+
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("c"));
+    }
+
+    @Test
+    public void addIfNoneMatch_copiesHeaders() {
+        Map<String, String> headers = Collections.singletonMap("Accept", "application/json");
+        Map<String, String> conditional = EntityTagCache.addIfNoneMatch(headers, "\"v1\"");
+
+        assertEquals("\"v1\"", conditional.get("If-None-Match"));
+        assertEquals("application/json", conditional.get("Accept"));
+        assertEquals(1, headers.size());
+    }
+
+    @Test
+    public void getEntityTag_ignoresCaseOfHeaderName() {
+        Map<String, List<String>> headers = new HashMap<>();
+        assertNull(EntityTagCache.getEntityTag(headers));
+        assertNull(EntityTagCache.getEntityTag(null));
+
+        headers.put("etag", Collections.singletonList("W/\"v1\""));
+        assertEquals("W/\"v1\"", EntityTagCache.getEntityTag(headers));
+    }
+}
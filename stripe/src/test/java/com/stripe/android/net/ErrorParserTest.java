@@ -1,10 +1,15 @@
 package com.stripe.android.net;
 
+import android.util.JsonReader;
+
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.robolectric.RobolectricTestRunner;
 import org.robolectric.annotation.Config;
 
+import java.io.IOException;
+import java.io.StringReader;
+
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 
@@ -47,4 +52,32 @@ public class ErrorParserTest {
         assertEquals(ErrorParser.MALFORMED_RESPONSE_MESSAGE, badStripeError.message);
         assertNull(badStripeError.type);
     }
+
+    @Test
+    public void parseError_fromReader_matchesStringParser() throws IOException {
+        ErrorParser.StripeError fromString = ErrorParser.parseError(RAW_INVALID_REQUEST_ERROR);
+        ErrorParser.StripeError fromReader = ErrorParser.parseError(
+                new JsonReader(new StringReader(RAW_INVALID_REQUEST_ERROR)));
+
+        assertEquals(fromString.message, fromReader.message);
+        assertEquals(fromString.type, fromReader.type);
+        assertNull(fromReader.param);
+    }
+
+    @Test
+    public void parseError_fromReaderWithNoErrorObject_addsInvalidResponseMessage()
+            throws IOException {
+        ErrorParser.StripeError badStripeError = ErrorParser.parseError(
+                new JsonReader(new StringReader(RAW_INCORRECT_FORMAT_ERROR)));
+        assertEquals(ErrorParser.MALFORMED_RESPONSE_MESSAGE, badStripeError.message);
+        assertNull(badStripeError.type);
+    }
+
+    @Test
+    public void parseError_fromReaderWithMalformedJson_addsInvalidResponseMessage()
+            throws IOException {
+        ErrorParser.StripeError badStripeError = ErrorParser.parseError(
+                new JsonReader(new StringReader("<html>Bad Gateway</html>")));
+        assertEquals(ErrorParser.MALFORMED_RESPONSE_MESSAGE, badStripeError.message);
+    }
 }
@@ -0,0 +1,156 @@
+package com.stripe.android.net;
+
+import com.stripe.android.exception.InvalidRequestException;
+import com.stripe.android.model.SourceParams;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Test class for {@link FormEncoder}.
+ */
+public class FormEncoderTest {
+
+    @Test
+    public void encode_withFlatParams_joinsPairs() throws InvalidRequestException {
+        Map<String, Object> params = new LinkedHashMap<>();
+        params.put("type", "card");
+        params.put("amount", 1000);
+        params.put("flag", null);
+
+        assertEquals("type=card&amount=1000&flag=", FormEncoder.encode(params));
+    }
+
+    @Test
+    public void encode_withNestedMapsAndLists_usesBracketKeys() throws InvalidRequestException {
+        Map<String, Object> address = new LinkedHashMap<>();
+        address.put("city", "San Francisco");
+        Map<String, Object> owner = new LinkedHashMap<>();
+        owner.put("address", address);
+        Map<String, Object> item = new LinkedHashMap<>();
+        item.put("id", "sku_1");
+
+        Map<String, Object> params = new LinkedHashMap<>();
+        params.put("owner", owner);
+        params.put("tags", Arrays.<Object>asList("a", "b"));
+        params.put("items", Arrays.<Object>asList(item));
+        params.put("empty", new ArrayList<Object>());
+
+        assertEquals("owner%5Baddress%5D%5Bcity%5D=San+Francisco"
+                        + "&tags%5B%5D=a&tags%5B%5D=b"
+                        + "&items%5B%5D%5Bid%5D=sku_1"
+                        + "&empty=",
+                FormEncoder.encode(params));
+    }
+
+    @Test
+    public void encode_matchesUrlEncoder() throws Exception {
+        List<String> samples = Arrays.asList(
+                "plain",
+                "with space",
+                "a&b=c?d/e",
+                ".-*_~!'()",
+                "caf\u00e9 \u00fc\u00df",
+                "\u20ac \u4e2d\u6587",
+                "emoji \ud83d\udcb3",
+                "lone \ud83d surrogate",
+                "trailing \udcb3",
+                "\u0000\u007f\u0080\u07ff\u0800\uffff");
+        for (String sample : samples) {
+            Map<String, Object> params = new LinkedHashMap<>();
+            params.put(sample, sample);
+            String expected = URLEncoder.encode(sample, "UTF-8")
+                    + "="
+                    + URLEncoder.encode(sample, "UTF-8");
+            assertEquals(sample, expected, FormEncoder.encode(params));
+        }
+    }
+
+    @Test
+    public void encode_withSourceParams_encodesNestedOwnerAndMetadata() throws Exception {
+        SourceParams sourceParams = SourceParams.createSepaDebitParams(
+                "Jenny Rosen",
+                "DE89370400440532013000",
+                "Stra\u00dfe 1",
+                "M\u00fcnchen",
+                "80331",
+                "DE");
+        Map<String, String> metadata = new HashMap<>();
+        metadata.put("order_line_1", "Gr\u00f6\u00dfe M & Farbe #1");
+        sourceParams.setMetaData(metadata);
+
+        List<String> pairs =
+                Arrays.asList(FormEncoder.encode(sourceParams.toParamMap()).split("&"));
+        assertTrue(pairs.contains("sepa_debit%5Biban%5D=DE89370400440532013000"));
+        assertTrue(pairs.contains("owner%5Baddress%5D%5Bline1%5D=Stra%C3%9Fe+1"));
+        assertTrue(pairs.contains("owner%5Baddress%5D%5Bcity%5D=M%C3%BCnchen"));
+        assertTrue(pairs.contains("metadata%5Border_line_1%5D=Gr%C3%B6%C3%9Fe+M+%26+Farbe+%231"));
+    }
+
+    @Test
+    public void encode_withNullParams_returnsEmptyString() throws InvalidRequestException {
+        assertEquals("", FormEncoder.encode(null));
+    }
+
+    @Test
+    public void encode_withEmptyStringValue_throwsWithFullKey() {
+        Map<String, Object> metadata = new LinkedHashMap<>();
+        metadata.put("order", "");
+        Map<String, Object> params = new LinkedHashMap<>();
+        params.put("metadata", metadata);
+
+        try {
+            FormEncoder.encode(params);
+            fail("Expected an InvalidRequestException");
+        } catch (InvalidRequestException expected) {
+            assertEquals("metadata[order]", expected.getParam());
+        }
+    }
+
+    @Test
+    public void encodeParams_reusesBufferAcrossCalls() throws Exception {
+        FormEncoder encoder = new FormEncoder();
+        Map<String, Object> large = new LinkedHashMap<>();
+        for (int i = 0; i < 200; i++) {
+            large.put("key" + i, "value " + i);
+        }
+        Map<String, Object> small = new LinkedHashMap<>();
+        small.put("a", "b");
+
+        encoder.encodeParams(large);
+        encoder.encodeParams(small);
+
+        assertEquals("a=b", encoder.toString());
+        assertEquals(3, encoder.size());
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        encoder.writeTo(output);
+        assertEquals("a=b", output.toString("US-ASCII"));
+    }
+
+    @Test
+    public void writeAscii_writesLongStringsInChunks() throws IOException {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            builder.append((char) ('a' + i % 26));
+        }
+        String query = builder.toString();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        FormEncoder.writeAscii(query, output);
+
+        assertEquals(query, output.toString("US-ASCII"));
+    }
+}
@@ -0,0 +1,167 @@
+package com.stripe.android.net;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Test class for {@link Hpack}, using the examples of RFC 7541, appendix C.
+ */
+public class HpackTest {
+
+    @Test
+    public void decode_requestsWithoutHuffman_updatesDynamicTable() throws IOException {
+        Hpack.Decoder decoder = new Hpack.Decoder(Hpack.DEFAULT_TABLE_SIZE);
+
+        assertEquals(
+                headers(":method", "GET", ":scheme", "http", ":path", "/",
+                        ":authority", "www.example.com"),
+                decode(decoder, "828684410f7777772e6578616d706c652e636f6d"));
+        assertEquals(57, decoder.getTableSize());
+
+        assertEquals(
+                headers(":method", "GET", ":scheme", "http", ":path", "/",
+                        ":authority", "www.example.com", "cache-control", "no-cache"),
+                decode(decoder, "828684be58086e6f2d6361636865"));
+        assertEquals(110, decoder.getTableSize());
+
+        assertEquals(
+                headers(":method", "GET", ":scheme", "https", ":path", "/index.html",
+                        ":authority", "www.example.com", "custom-key", "custom-value"),
+                decode(decoder,
+                        "828785bf400a637573746f6d2d6b65790c637573746f6d2d76616c7565"));
+        assertEquals(164, decoder.getTableSize());
+    }
+
+    @Test
+    public void decode_requestsWithHuffman_updatesDynamicTable() throws IOException {
+        Hpack.Decoder decoder = new Hpack.Decoder(Hpack.DEFAULT_TABLE_SIZE);
+
+        assertEquals(
+                headers(":method", "GET", ":scheme", "http", ":path", "/",
+                        ":authority", "www.example.com"),
+                decode(decoder, "828684418cf1e3c2e5f23a6ba0ab90f4ff"));
+
+        assertEquals(
+                headers(":method", "GET", ":scheme", "http", ":path", "/",
+                        ":authority", "www.example.com", "cache-control", "no-cache"),
+                decode(decoder, "828684be5886a8eb10649cbf"));
+
+        assertEquals(
+                headers(":method", "GET", ":scheme", "https", ":path", "/index.html",
+                        ":authority", "www.example.com", "custom-key", "custom-value"),
+                decode(decoder, "828785bf408825a849e95ba97d7f8925a849e95bb8e8b4bf"));
+        assertEquals(164, decoder.getTableSize());
+    }
+
+    @Test
+    public void decode_responsesWithSmallTable_evictsOldestEntries() throws IOException {
+        Hpack.Decoder decoder = new Hpack.Decoder(256);
+
+        assertEquals(
+                headers(":status", "302", "cache-control", "private",
+                        "date", "Mon, 21 Oct 2013 20:13:21 GMT",
+                        "location", "https://www.example.com"),
+                decode(decoder, "488264025885aec3771a4b6196d07abe941054d444a8200595040b8166"
+                        + "e082a62d1bff6e919d29ad171863c78f0b97c8e9ae82ae43d3"));
+        assertEquals(222, decoder.getTableSize());
+
+        assertEquals(
+                headers(":status", "307", "cache-control", "private",
+                        "date", "Mon, 21 Oct 2013 20:13:21 GMT",
+                        "location", "https://www.example.com"),
+                decode(decoder, "4883640effc1c0bf"));
+        assertEquals(222, decoder.getTableSize());
+
+        assertEquals(
+                headers(":status", "200", "cache-control", "private",
+                        "date", "Mon, 21 Oct 2013 20:13:22 GMT",
+                        "location", "https://www.example.com",
+                        "content-encoding", "gzip",
+                        "set-cookie", "foo=ASDJKHQKBZXOQWEOPIUAXQWEOIU; max-age=3600; version=1"),
+                decode(decoder, "88c16196d07abe941054d444a8200595040b8166e084a62d1bffc05a839b"
+                        + "d9ab77ad94e7821dd7f2e6c7b335dfdfcd5b3960d5af27087f3672c1ab270fb5"
+                        + "291f9587316065c003ed4ee5b1063d5007"));
+        assertEquals(215, decoder.getTableSize());
+    }
+
+    @Test
+    public void decode_withIndexOutOfRange_throws() {
+        assertDecodeFails("be");
+    }
+
+    @Test
+    public void decode_withTruncatedString_throws() {
+        assertDecodeFails("400a637573746f6d");
+    }
+
+    @Test
+    public void decode_withTableSizeUpdateAboveMaximum_throws() {
+        // A size update to 4097.
+        assertDecodeFails("3fe21f");
+    }
+
+    @Test
+    public void decode_withHuffmanPaddingOtherThanOnes_throws() {
+        // "a" is 00011, padded with zeros instead of ones.
+        assertDecodeFails("400161" + "8118");
+    }
+
+    @Test
+    public void encode_usesStaticTableAndLiterals() throws IOException {
+        List<Hpack.Header> headers = headers(
+                ":method", "POST",
+                ":scheme", "https",
+                ":path", "/v1/tokens",
+                "authorization", "Bearer pk_test",
+                "x-stripe-client-user-agent", "{}");
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        new Hpack.Encoder().encode(headers, output);
+        byte[] block = output.toByteArray();
+
+        // Fully indexed :method and :scheme, then :path by name.
+        assertEquals(0x83, block[0] & 0xFF);
+        assertEquals(0x87, block[1] & 0xFF);
+        assertEquals(0x04, block[2] & 0xFF);
+        // The credentials are never indexed: 0001 followed by the name index 23 (15 + 8).
+        int authorization = 3 + 1 + "/v1/tokens".length();
+        assertEquals(0x1F, block[authorization] & 0xFF);
+        assertEquals(0x08, block[authorization + 1] & 0xFF);
+
+        Hpack.Decoder decoder = new Hpack.Decoder(Hpack.DEFAULT_TABLE_SIZE);
+        assertEquals(headers, decoder.decode(block, 0, block.length));
+        assertEquals(0, decoder.getTableSize());
+    }
+
+    private static void assertDecodeFails(String hex) {
+        try {
+            decode(new Hpack.Decoder(Hpack.DEFAULT_TABLE_SIZE), hex);
+            fail("Expected an IOException");
+        } catch (IOException expected) {
+        }
+    }
+
+    private static List<Hpack.Header> decode(Hpack.Decoder decoder, String hex)
+            throws IOException {
+        byte[] block = new byte[hex.length() / 2];
+        for (int i = 0; i < block.length; i++) {
+            block[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+        }
+        return decoder.decode(block, 0, block.length);
+    }
+
+    private static List<Hpack.Header> headers(String... namesAndValues) {
+        Hpack.Header[] headers = new Hpack.Header[namesAndValues.length / 2];
+        for (int i = 0; i < headers.length; i++) {
+            headers[i] = new Hpack.Header(namesAndValues[2 * i], namesAndValues[2 * i + 1]);
+        }
+        return Arrays.asList(headers);
+    }
+}
@@ -0,0 +1,300 @@
+package com.stripe.android.net;
+
+import com.stripe.android.testharness.StubHttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.net.ssl.HttpsURLConnection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Test class for {@link Http2Transport}.
+ */
+public class Http2TransportTest {
+
+    private StubHttp2Server mServer;
+    private StubHttpServer mHttp11Server;
+    private UrlConnectionHttpTransport mFallback;
+    private Http2Transport mTransport;
+
+    @Before
+    public void setup() throws IOException {
+        mServer = new StubHttp2Server();
+        mHttp11Server = new StubHttpServer();
+        mFallback = new UrlConnectionHttpTransport(
+                new ConnectionLimiter(2),
+                HttpsURLConnection.getDefaultSSLSocketFactory(),
+                5000,
+                5000);
+        mTransport = createTransport(5000);
+    }
+
+    @After
+    public void tearDown() {
+        mTransport.evictAll();
+        mServer.shutdown();
+        mHttp11Server.shutdown();
+    }
+
+    @Test
+    public void execute_withGet_sendsRequestOverHttp2() throws IOException {
+        mServer.enqueue(new StubHttp2Server.Response(200, "{\"id\":\"src_1\"}")
+                .setHeader("Request-Id", "req_123"));
+
+        StripeResponse response = mTransport.execute(
+                StripeApiHandler.GET,
+                mServer.getUrl("/v1/sources/src_1"),
+                "client_secret=abc",
+                getHeaders());
+
+        assertEquals(200, response.getResponseCode());
+        assertEquals("{\"id\":\"src_1\"}", response.getResponseBody());
+        // HTTP/2 header names are lower case, but are looked up as HttpURLConnection's are.
+        assertEquals("req_123", response.getResponseHeaders().get("Request-Id").get(0));
+
+        StubHttp2Server.RecordedRequest request = mServer.getRequests().get(0);
+        assertEquals("GET", request.getMethod());
+        assertEquals("/v1/sources/src_1?client_secret=abc", request.getPath());
+        assertEquals("http", request.pseudoHeaders.get(":scheme"));
+        assertEquals(mServer.getUrl("").substring("http://".length()),
+                request.pseudoHeaders.get(":authority"));
+        assertEquals("Bearer pk_test", request.headers.get("authorization"));
+        assertFalse(request.headers.containsKey("connection"));
+    }
+
+    @Test
+    public void execute_withPost_writesFormBody() throws IOException {
+        mTransport.execute(
+                StripeApiHandler.POST,
+                mServer.getUrl("/v1/tokens"),
+                "card%5Bnumber%5D=4242424242424242",
+                getHeaders());
+
+        StubHttp2Server.RecordedRequest request = mServer.getRequests().get(0);
+        assertEquals("POST", request.getMethod());
+        assertEquals("/v1/tokens", request.getPath());
+        assertEquals("card%5Bnumber%5D=4242424242424242", request.getBodyAsString());
+        assertEquals("33", request.headers.get("content-length"));
+        assertTrue(request.headers.get("content-type")
+                .startsWith("application/x-www-form-urlencoded"));
+    }
+
+    @Test
+    public void execute_concurrentRequests_shareOneConnection() throws Exception {
+        // No response is sent until all three requests have arrived, which they can only do
+        // if they are in flight on the connection at the same time.
+        mServer.holdResponsesUntilOpen(3);
+
+        List<StripeResponse> responses = executeConcurrently(3);
+
+        for (StripeResponse response : responses) {
+            assertEquals(200, response.getResponseCode());
+        }
+        assertEquals(3, mServer.getPeakOpenRequests());
+        assertEquals(1, mServer.getConnectionCount());
+        assertEquals(1, mTransport.getConnectCount());
+    }
+
+    @Test
+    public void execute_beyondServerStreamLimit_waitsForAStream() throws Exception {
+        mServer.shutdown();
+        mServer = new StubHttp2Server();
+        mServer.setMaxConcurrentStreams(1);
+        mServer.setDefaultResponse(new StubHttp2Server.Response(200, "{}").setDelayMs(50L));
+        mTransport = createTransport(5000);
+        // Until the server's settings arrive, the client may open as many streams as it likes.
+        mTransport.execute(
+                StripeApiHandler.GET, mServer.getUrl("/v1/sources/src_1"), null, getHeaders());
+
+        List<StripeResponse> responses = executeConcurrently(3);
+
+        assertEquals(3, responses.size());
+        assertEquals(4, mServer.getRequests().size());
+        assertEquals(1, mServer.getPeakOpenRequests());
+        assertEquals(1, mServer.getConnectionCount());
+    }
+
+    @Test
+    public void execute_sequentialRequests_reuseConnectionAndHeaderTable() throws IOException {
+        // The server adds these to its dynamic table the first time and refers to them after.
+        mServer.setDefaultResponse(new StubHttp2Server.Response(200, "{}")
+                .setHeader("Request-Id", "req_same")
+                .setHeader("Stripe-Version", "2017-01-27"));
+
+        for (int i = 0; i < 5; i++) {
+            StripeResponse response = mTransport.execute(
+                    StripeApiHandler.GET, mServer.getUrl("/v1/sources/src_" + i), null,
+                    getHeaders());
+            assertEquals("req_same", response.getResponseHeaders().get("Request-Id").get(0));
+            assertEquals("2017-01-27",
+                    response.getResponseHeaders().get("Stripe-Version").get(0));
+        }
+
+        assertEquals(5, mServer.getRequests().size());
+        assertEquals(1, mServer.getConnectionCount());
+        assertEquals(0, mServer.getResetCount());
+    }
+
+    @Test
+    public void execute_withLargeResponse_readsEveryFrame() throws IOException {
+        StringBuilder body = new StringBuilder();
+        while (body.length() < 100000) {
+            body.append("{\"id\":\"src_1\"},");
+        }
+        mServer.enqueue(new StubHttp2Server.Response(200, body.toString()));
+
+        StripeResponse response = mTransport.execute(
+                StripeApiHandler.GET, mServer.getUrl("/v1/sources"), null, getHeaders());
+
+        assertEquals(body.toString(), response.getResponseBody());
+    }
+
+    @Test
+    public void execute_withGzipResponse_decodesBodyAndCountsBytes() throws IOException {
+        byte[] compressed = ContentDecoderTest.gzip("{\"id\":\"src_1\"}");
+        mServer.enqueue(new StubHttp2Server.Response(200, compressed)
+                .setHeader("Content-Encoding", "gzip"));
+
+        StripeResponse response = mTransport.execute(
+                StripeApiHandler.GET, mServer.getUrl("/v1/sources/src_1"), null, getHeaders());
+
+        assertEquals("{\"id\":\"src_1\"}", response.getResponseBody());
+        assertEquals("gzip, deflate",
+                mServer.getRequests().get(0).headers.get("accept-encoding"));
+        assertEquals(0, mServer.getResetCount());
+
+        TransferStats stats = mTransport.getTransferStats();
+        assertEquals(1, stats.getEncodedResponseCount());
+        assertEquals(compressed.length, stats.getWireByteCount());
+        assertEquals(14, stats.getDecodedByteCount());
+    }
+
+    @Test
+    public void execute_whenStreamRefused_sendsRequestAgain() throws IOException {
+        mServer.enqueue(StubHttp2Server.Response.refused());
+        mServer.enqueue(new StubHttp2Server.Response(200, "{\"id\":\"tok_1\"}"));
+
+        StripeResponse response = mTransport.execute(
+                StripeApiHandler.POST, mServer.getUrl("/v1/tokens"), "card=1", getHeaders());
+
+        assertEquals("{\"id\":\"tok_1\"}", response.getResponseBody());
+        assertEquals(2, mServer.getRequests().size());
+    }
+
+    @Test
+    public void execute_whenResponseTimesOut_usesNewConnectionNextTime() throws IOException {
+        mTransport = createTransport(200);
+        mServer.enqueue(new StubHttp2Server.Response(200, "{}").setDelayMs(1000L));
+
+        try {
+            mTransport.execute(
+                    StripeApiHandler.GET, mServer.getUrl("/v1/sources/src_1"), null,
+                    getHeaders());
+            fail("Expected a SocketTimeoutException");
+        } catch (SocketTimeoutException expected) {
+        }
+
+        StripeResponse response = mTransport.execute(
+                StripeApiHandler.GET, mServer.getUrl("/v1/sources/src_1"), null, getHeaders());
+
+        assertEquals(200, response.getResponseCode());
+        assertEquals(2, mTransport.getConnectCount());
+    }
+
+    @Test
+    public void execute_forHostWithoutHttp2_usesFallback() throws IOException {
+        mHttp11Server.enqueue(new StubHttpServer.StubResponse(200, "{\"id\":\"src_1\"}"));
+
+        StripeResponse response = mTransport.execute(
+                StripeApiHandler.GET, mHttp11Server.getUrl("/v1/sources/src_1"), null,
+                getHeaders());
+
+        assertEquals("{\"id\":\"src_1\"}", response.getResponseBody());
+        assertEquals(1, mHttp11Server.getRequests().size());
+        assertEquals(0, mTransport.getConnectCount());
+        assertEquals(0, mServer.getConnectionCount());
+    }
+
+    @Test
+    public void warmUp_opensConnectionUsedByNextRequest() throws IOException {
+        assertTrue(mTransport.warmUp(mServer.getUrl("/v1/")));
+
+        mTransport.execute(
+                StripeApiHandler.GET, mServer.getUrl("/v1/sources/src_1"), null, getHeaders());
+
+        assertEquals(1, mTransport.getConnectCount());
+        assertEquals(1, mServer.getConnectionCount());
+    }
+
+    @Test
+    public void evictAll_closesIdleConnections() throws IOException {
+        mTransport.execute(
+                StripeApiHandler.GET, mServer.getUrl("/v1/sources/src_1"), null, getHeaders());
+
+        mTransport.evictAll();
+        mTransport.execute(
+                StripeApiHandler.GET, mServer.getUrl("/v1/sources/src_1"), null, getHeaders());
+
+        assertEquals(2, mTransport.getConnectCount());
+    }
+
+    private Http2Transport createTransport(int readTimeoutMs) throws IOException {
+        return new Http2Transport(
+                mFallback,
+                DnsResolver.SYSTEM,
+                HttpsURLConnection.getDefaultSSLSocketFactory(),
+                Collections.singleton(mServer.getHostKey()),
+                5000,
+                readTimeoutMs,
+                60000L);
+    }
+
+    private List<StripeResponse> executeConcurrently(int count) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(count);
+        try {
+            List<Future<StripeResponse>> futures = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                final String url = mServer.getUrl("/v1/sources/src_" + i);
+                futures.add(executor.submit(new Callable<StripeResponse>() {
+                    @Override
+                    public StripeResponse call() throws IOException {
+                        return mTransport.execute(StripeApiHandler.GET, url, null, getHeaders());
+                    }
+                }));
+            }
+            List<StripeResponse> responses = new ArrayList<>();
+            for (Future<StripeResponse> future : futures) {
+                responses.add(future.get());
+            }
+            return responses;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static Map<String, String> getHeaders() {
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Authorization", "Bearer pk_test");
+        headers.put("Accept-Charset", "UTF-8");
+        headers.put("Connection", "keep-alive");
+        return headers;
+    }
+}
@@ -0,0 +1,150 @@
+package com.stripe.android.net;
+
+import android.support.annotation.NonNull;
+import android.util.JsonReader;
+
+import com.stripe.android.testharness.StubHttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.IOException;
+import java.util.HashMap;
+
+import javax.net.ssl.HttpsURLConnection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for {@link JsonResponseHandler}, run through a {@link UrlConnectionHttpTransport}.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 23)
+public class JsonResponseHandlerTest {
+
+    private StubHttpServer mServer;
+    private UrlConnectionHttpTransport mTransport;
+
+    @Before
+    public void setup() throws IOException {
+        mServer = new StubHttpServer();
+        mTransport = new UrlConnectionHttpTransport(
+                new ConnectionLimiter(2),
+                HttpsURLConnection.getDefaultSSLSocketFactory(),
+                5000,
+                5000);
+    }
+
+    @After
+    public void tearDown() {
+        mServer.shutdown();
+    }
+
+    @Test
+    public void handleResponse_withSuccess_parsesBody() throws IOException {
+        mServer.enqueue(new StubHttpServer.StubResponse(200,
+                "{\"object\":\"token\",\"id\":\"tok_1\",\"used\":false}")
+                .setHeader("Request-Id", "req_1"));
+
+        ParsedResponse<String> response = execute(new IdHandler());
+
+        assertTrue(response.isSuccessful());
+        assertEquals("tok_1", response.getBody());
+        assertNull(response.getError());
+        assertEquals("req_1", response.getRequestId());
+    }
+
+    @Test
+    public void handleResponse_withError_parsesStripeError() throws IOException {
+        mServer.enqueue(new StubHttpServer.StubResponse(402,
+                "{\"error\":{\"type\":\"card_error\",\"code\":\"card_declined\","
+                        + "\"decline_code\":\"insufficient_funds\","
+                        + "\"message\":\"Your card has insufficient funds.\",\"param\":\"\"}}"));
+
+        ParsedResponse<String> response = execute(new IdHandler());
+
+        assertFalse(response.isSuccessful());
+        assertNull(response.getBody());
+        ErrorParser.StripeError error = response.getError();
+        assertEquals("card_error", error.type);
+        assertEquals("card_declined", error.code);
+        assertEquals("insufficient_funds", error.decline_code);
+        assertEquals("Your card has insufficient funds.", error.message);
+        assertNull(error.param);
+    }
+
+    @Test
+    public void handleResponse_withMalformedBody_returnsNullBody() throws IOException {
+        mServer.enqueue(new StubHttpServer.StubResponse(200, "[\"not\", \"an\", \"object\"]"));
+
+        ParsedResponse<String> response = execute(new IdHandler());
+
+        assertTrue(response.isSuccessful());
+        assertNull(response.getBody());
+    }
+
+    @Test
+    public void handleResponse_withEmptyErrorBody_reportsMalformedResponse() throws IOException {
+        mServer.enqueue(new StubHttpServer.StubResponse(500, ""));
+
+        ParsedResponse<String> response = execute(new IdHandler());
+
+        assertEquals(500, response.getResponseCode());
+        assertEquals(ErrorParser.MALFORMED_RESPONSE_MESSAGE, response.getError().message);
+    }
+
+    @Test
+    public void handleResponse_whenParserStopsEarly_connectionIsStillReused() throws IOException {
+        mServer.setDefaultResponse(new StubHttpServer.StubResponse(200,
+                "{\"id\":\"src_1\",\"metadata\":{\"a\":\"b\",\"c\":\"d\"},\"status\":\"pending\"}"));
+        JsonResponseHandler<String> firstFieldOnly = new JsonResponseHandler<String>() {
+            @Override
+            String parse(@NonNull JsonReader reader) throws IOException {
+                reader.beginObject();
+                reader.nextName();
+                return reader.nextString();
+            }
+        };
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals("src_1", execute(firstFieldOnly).getBody());
+        }
+
+        assertEquals(1, mServer.getConnectionCount());
+    }
+
+    @NonNull
+    private ParsedResponse<String> execute(@NonNull JsonResponseHandler<String> handler)
+            throws IOException {
+        return mTransport.execute(
+                StripeApiHandler.GET,
+                mServer.getUrl("/v1/tokens/tok_1"),
+                null,
+                new HashMap<String, String>(),
+                handler);
+    }
+
+    private static final class IdHandler extends JsonResponseHandler<String> {
+        @Override
+        String parse(@NonNull JsonReader reader) throws IOException {
+            String id = null;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if ("id".equals(reader.nextName())) {
+                    id = reader.nextString();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+            return id;
+        }
+    }
+}
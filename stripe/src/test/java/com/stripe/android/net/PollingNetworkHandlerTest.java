@@ -15,6 +15,7 @@ import org.robolectric.RobolectricTestRunner;
 import org.robolectric.annotation.Config;
 import org.robolectric.shadows.ShadowLooper;
 
+import java.util.Random;
 import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.assertEquals;
@@ -310,6 +311,83 @@ public class PollingNetworkHandlerTest {
         assertEquals(mPendingSource, response.getSource());
     }
 
+    @Test
+    public void startPolling_whenPendingRepeatedly_backsOff() throws StripeException {
+        PollingNetworkHandler pollingNetworkHandler = new PollingNetworkHandler(
+                DUMMY_SOURCE_ID,
+                DUMMY_CLIENT_SECRET,
+                DUMMY_PUBLISHABLE_KEY,
+                mPollingResponseHandler,
+                30000,
+                mSourceRetriever,
+                PollingParameters.generateDefaultParameters(),
+                new BackoffPollingStrategy(
+                        PollingParameters.generateDefaultParameters(),
+                        new Random() {
+                            @Override
+                            public double nextDouble() {
+                                return 0.0;
+                            }
+                        }),
+                null);
+        setSourceResponse(mSourceRetriever, mPendingSource);
+
+        pollingNetworkHandler.start();
+        advanceMainLooperBy(1000);
+        advanceMainLooperBy(2000);
+        advanceMainLooperBy(4000);
+        // Polled at 0, 1000, 3000 and 7000ms, instead of every second.
+        verify(mSourceRetriever, times(4)).retrieveSource(
+                DUMMY_SOURCE_ID,
+                DUMMY_CLIENT_SECRET,
+                DUMMY_PUBLISHABLE_KEY);
+
+        advanceMainLooperBy(7999);
+        verify(mSourceRetriever, times(4)).retrieveSource(
+                DUMMY_SOURCE_ID,
+                DUMMY_CLIENT_SECRET,
+                DUMMY_PUBLISHABLE_KEY);
+        advanceMainLooperBy(1);
+        verify(mSourceRetriever, times(5)).retrieveSource(
+                DUMMY_SOURCE_ID,
+                DUMMY_CLIENT_SECRET,
+                DUMMY_PUBLISHABLE_KEY);
+    }
+
+    @Test
+    public void startPolling_whenCanceled_stopsPollingWithoutCallback() throws StripeException {
+        setSourceResponse(mSourceRetriever, mPendingSource);
+
+        PollingHandle handle = mPollingNetworkHandler.start();
+        assertEquals(PollingHandle.ACTIVE, handle.getState());
+        assertTrue(handle.cancel());
+        assertEquals(PollingHandle.CANCELED, handle.getState());
+
+        advanceMainLooperBy(3000);
+        verify(mSourceRetriever, times(1)).retrieveSource(
+                DUMMY_SOURCE_ID,
+                DUMMY_CLIENT_SECRET,
+                DUMMY_PUBLISHABLE_KEY);
+        verifyNoMoreInteractions(mPollingResponseHandler);
+    }
+
+    @Test
+    public void startPolling_whenCanceledAfterResponse_doesNothing() {
+        setSourceResponse(mSourceRetriever, mPendingSource);
+
+        PollingHandle handle = mPollingNetworkHandler.start();
+        setSourceResponse(mSourceRetriever, mChargeableSource);
+        advanceMainLooperBy(1000);
+
+        assertEquals(PollingHandle.COMPLETED, handle.getState());
+        assertFalse(handle.cancel());
+        assertEquals(PollingHandle.COMPLETED, handle.getState());
+        ArgumentCaptor<PollingResponse> pollingResponseCaptor =
+                ArgumentCaptor.forClass(PollingResponse.class);
+        verify(mPollingResponseHandler).onPollingResponse(pollingResponseCaptor.capture());
+        assertTrue(pollingResponseCaptor.getValue().isSuccess());
+    }
+
     private static PollingNetworkHandler initializeHandler(
             PollingResponseHandler pollingResponseHandler,
             Integer timeout,
@@ -321,7 +399,9 @@ public class PollingNetworkHandlerTest {
                 pollingResponseHandler,
                 timeout,
                 sourceRetriever,
-                PollingParameters.generateDefaultParameters());
+                PollingParameters.generateDefaultParameters(),
+                new BackoffPollingStrategy(PollingParameters.generateDefaultParameters()),
+                null);
     }
 
     private static void advanceMainLooperBy(int millis) {
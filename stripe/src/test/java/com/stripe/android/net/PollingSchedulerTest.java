@@ -0,0 +1,294 @@
+package com.stripe.android.net;
+
+import android.os.Looper;
+import android.support.annotation.NonNull;
+
+import com.stripe.android.exception.StripeException;
+import com.stripe.android.model.Source;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test class for {@link PollingScheduler}.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 23)
+public class PollingSchedulerTest {
+
+    private static final String SOURCE_ID = "src_1";
+    private static final String OTHER_SOURCE_ID = "src_2";
+    private static final String CLIENT_SECRET = "clientSecret";
+    private static final String PUBLISHABLE_KEY = "pubKey";
+
+    @Mock Source mChargeableSource;
+    @Mock Source mPendingSource;
+
+    @Mock SourceRetriever mSourceRetriever;
+    @Mock PollingResponseHandler mFirstHandler;
+    @Mock PollingResponseHandler mSecondHandler;
+
+    private PollingScheduler mPollingScheduler;
+
+    @Before
+    public void setup() {
+        MockitoAnnotations.initMocks(this);
+        when(mChargeableSource.getStatus()).thenReturn(Source.CHARGEABLE);
+        when(mPendingSource.getStatus()).thenReturn(Source.PENDING);
+
+        // Run everything on the main looper, so that the test controls the clock.
+        mPollingScheduler = new PollingScheduler(
+                mSourceRetriever,
+                PollingParameters.generateDefaultParameters(),
+                new BackoffPollingStrategy(PollingParameters.generateDefaultParameters()),
+                new Executor() {
+                    @Override
+                    public void execute(@NonNull Runnable command) {
+                        command.run();
+                    }
+                },
+                Looper.getMainLooper());
+    }
+
+    @Test
+    public void poll_forSameSource_sharesOneNetworkPoll() throws StripeException {
+        setSourceResponse(SOURCE_ID, mPendingSource);
+
+        mPollingScheduler.poll(SOURCE_ID, CLIENT_SECRET, PUBLISHABLE_KEY, mFirstHandler, 5000);
+        mPollingScheduler.poll(SOURCE_ID, CLIENT_SECRET, PUBLISHABLE_KEY, mSecondHandler, 5000);
+        assertEquals(1, mPollingScheduler.getActivePollCount());
+        verify(mSourceRetriever, times(1))
+                .retrieveSource(SOURCE_ID, CLIENT_SECRET, PUBLISHABLE_KEY);
+
+        setSourceResponse(SOURCE_ID, mChargeableSource);
+        advanceMainLooperBy(1000);
+        verify(mSourceRetriever, times(2))
+                .retrieveSource(SOURCE_ID, CLIENT_SECRET, PUBLISHABLE_KEY);
+
+        assertSuccess(mFirstHandler, mChargeableSource);
+        assertSuccess(mSecondHandler, mChargeableSource);
+        assertEquals(0, mPollingScheduler.getActivePollCount());
+
+        advanceMainLooperBy(5000);
+        verifyNoMoreInteractions(mFirstHandler, mSecondHandler);
+    }
+
+    @Test
+    public void poll_forDifferentSources_pollsEachSource() throws StripeException {
+        setSourceResponse(SOURCE_ID, mPendingSource);
+        setSourceResponse(OTHER_SOURCE_ID, mChargeableSource);
+
+        mPollingScheduler.poll(SOURCE_ID, CLIENT_SECRET, PUBLISHABLE_KEY, mFirstHandler, 5000);
+        mPollingScheduler.poll(
+                OTHER_SOURCE_ID, CLIENT_SECRET, PUBLISHABLE_KEY, mSecondHandler, 5000);
+
+        assertSuccess(mSecondHandler, mChargeableSource);
+        verifyNoMoreInteractions(mFirstHandler);
+        assertEquals(1, mPollingScheduler.getActivePollCount());
+    }
+
+    @Test
+    public void poll_withDifferentClientSecret_startsSeparatePoll() throws StripeException {
+        setSourceResponse(SOURCE_ID, mPendingSource);
+        when(mSourceRetriever.retrieveSource(SOURCE_ID, "otherSecret", PUBLISHABLE_KEY))
+                .thenReturn(mChargeableSource);
+
+        mPollingScheduler.poll(SOURCE_ID, CLIENT_SECRET, PUBLISHABLE_KEY, mFirstHandler, 5000);
+        mPollingScheduler.poll(SOURCE_ID, "otherSecret", PUBLISHABLE_KEY, mSecondHandler, 5000);
+
+        assertSuccess(mSecondHandler, mChargeableSource);
+        verifyNoMoreInteractions(mFirstHandler);
+
+        advanceMainLooperBy(5000);
+        assertExpired(mFirstHandler);
+    }
+
+    @Test
+    public void poll_whenJoiningWithShorterTimeout_expiresOnlyThatCallback() {
+        setSourceResponse(SOURCE_ID, mPendingSource);
+
+        mPollingScheduler.poll(SOURCE_ID, CLIENT_SECRET, PUBLISHABLE_KEY, mFirstHandler, 10000);
+        mPollingScheduler.poll(SOURCE_ID, CLIENT_SECRET, PUBLISHABLE_KEY, mSecondHandler, 2000);
+
+        advanceMainLooperBy(2000);
+        assertExpired(mSecondHandler);
+        verifyNoMoreInteractions(mFirstHandler);
+        assertEquals(1, mPollingScheduler.getActivePollCount());
+
+        advanceMainLooperBy(8000);
+        assertExpired(mFirstHandler);
+        assertEquals(0, mPollingScheduler.getActivePollCount());
+    }
+
+    @Test
+    public void poll_afterPreviousPollFinished_startsNewPoll() throws StripeException {
+        setSourceResponse(SOURCE_ID, mChargeableSource);
+
+        mPollingScheduler.poll(SOURCE_ID, CLIENT_SECRET, PUBLISHABLE_KEY, mFirstHandler, 5000);
+        assertSuccess(mFirstHandler, mChargeableSource);
+
+        mPollingScheduler.poll(SOURCE_ID, CLIENT_SECRET, PUBLISHABLE_KEY, mSecondHandler, 5000);
+        assertSuccess(mSecondHandler, mChargeableSource);
+        verify(mSourceRetriever, times(2))
+                .retrieveSource(SOURCE_ID, CLIENT_SECRET, PUBLISHABLE_KEY);
+        assertEquals(0, mPollingScheduler.getActivePollCount());
+    }
+
+    @Test
+    public void cancel_forOneOfTwoCallbacks_keepsPollingForTheOther() throws StripeException {
+        setSourceResponse(SOURCE_ID, mPendingSource);
+
+        PollingHandle firstHandle = mPollingScheduler.poll(
+                SOURCE_ID, CLIENT_SECRET, PUBLISHABLE_KEY, mFirstHandler, 5000);
+        PollingHandle secondHandle = mPollingScheduler.poll(
+                SOURCE_ID, CLIENT_SECRET, PUBLISHABLE_KEY, mSecondHandler, 5000);
+
+        assertTrue(firstHandle.cancel());
+        assertEquals(PollingHandle.CANCELED, firstHandle.getState());
+        assertTrue(secondHandle.isActive());
+        assertEquals(1, mPollingScheduler.getActivePollCount());
+
+        setSourceResponse(SOURCE_ID, mChargeableSource);
+        advanceMainLooperBy(1000);
+        assertSuccess(mSecondHandler, mChargeableSource);
+        assertEquals(PollingHandle.COMPLETED, secondHandle.getState());
+        verifyNoMoreInteractions(mFirstHandler);
+    }
+
+    @Test
+    public void cancel_forLastCallback_stopsPolling() throws StripeException {
+        setSourceResponse(SOURCE_ID, mPendingSource);
+
+        PollingHandle handle = mPollingScheduler.poll(
+                SOURCE_ID, CLIENT_SECRET, PUBLISHABLE_KEY, mFirstHandler, 5000);
+        assertTrue(handle.cancel());
+        assertEquals(0, mPollingScheduler.getActivePollCount());
+
+        advanceMainLooperBy(5000);
+        verify(mSourceRetriever, times(1))
+                .retrieveSource(SOURCE_ID, CLIENT_SECRET, PUBLISHABLE_KEY);
+        verifyNoMoreInteractions(mFirstHandler);
+        assertFalse(handle.cancel());
+    }
+
+    @Test
+    public void cancel_forLastCallback_quitsTimerThread() {
+        setSourceResponse(SOURCE_ID, mPendingSource);
+        PollingScheduler scheduler = new PollingScheduler(
+                mSourceRetriever,
+                PollingParameters.generateDefaultParameters(),
+                new BackoffPollingStrategy(PollingParameters.generateDefaultParameters()),
+                new Executor() {
+                    @Override
+                    public void execute(@NonNull Runnable command) {
+                        command.run();
+                    }
+                },
+                null);
+
+        PollingHandle handle = scheduler.poll(
+                SOURCE_ID, CLIENT_SECRET, PUBLISHABLE_KEY, mFirstHandler, 5000);
+        assertTrue(scheduler.hasTimerThread());
+
+        handle.cancel();
+        assertFalse(scheduler.hasTimerThread());
+        verifyNoMoreInteractions(mFirstHandler);
+    }
+
+    @Test
+    public void poll_withPollingStrategySetOnApiHandler_usesItsDelays() throws StripeException {
+        setSourceResponse(SOURCE_ID, mPendingSource);
+        PollingScheduler scheduler = new PollingScheduler(
+                mSourceRetriever,
+                PollingParameters.generateDefaultParameters(),
+                null,
+                new Executor() {
+                    @Override
+                    public void execute(@NonNull Runnable command) {
+                        command.run();
+                    }
+                },
+                Looper.getMainLooper());
+        StripeApiHandler.setPollingStrategy(new PollingStrategy() {
+            @Override
+            public long getPendingDelayMs(int pendingCount) {
+                return 3000L;
+            }
+
+            @Override
+            public long getErrorDelayMs(@NonNull StripeException exception, int errorCount) {
+                return STOP;
+            }
+        });
+        try {
+            scheduler.poll(SOURCE_ID, CLIENT_SECRET, PUBLISHABLE_KEY, mFirstHandler, 10000);
+        } finally {
+            StripeApiHandler.setPollingStrategy(null);
+        }
+
+        setSourceResponse(SOURCE_ID, mChargeableSource);
+        advanceMainLooperBy(2999);
+        verify(mSourceRetriever, times(1))
+                .retrieveSource(SOURCE_ID, CLIENT_SECRET, PUBLISHABLE_KEY);
+        advanceMainLooperBy(1);
+        assertSuccess(mFirstHandler, mChargeableSource);
+    }
+
+    private static void assertSuccess(
+            @NonNull PollingResponseHandler handler,
+            @NonNull Source expectedSource) {
+        ArgumentCaptor<PollingResponse> pollingResponseCaptor =
+                ArgumentCaptor.forClass(PollingResponse.class);
+        verify(handler).onPollingResponse(pollingResponseCaptor.capture());
+        PollingResponse response = pollingResponseCaptor.getValue();
+        assertTrue(response.isSuccess());
+        assertFalse(response.isExpired());
+        assertEquals(expectedSource, response.getSource());
+    }
+
+    private void assertExpired(@NonNull PollingResponseHandler handler) {
+        ArgumentCaptor<PollingResponse> pollingResponseCaptor =
+                ArgumentCaptor.forClass(PollingResponse.class);
+        verify(handler).onPollingResponse(pollingResponseCaptor.capture());
+        PollingResponse response = pollingResponseCaptor.getValue();
+        assertTrue(response.isExpired());
+        assertFalse(response.isSuccess());
+        assertEquals(mPendingSource, response.getSource());
+    }
+
+    private void setSourceResponse(@NonNull String sourceId, @NonNull Source source) {
+        try {
+            when(mSourceRetriever.retrieveSource(sourceId, CLIENT_SECRET, PUBLISHABLE_KEY))
+                    .thenReturn(source);
+        } catch (StripeException stripeEx) {
+            fail("Unexpected error: " + stripeEx);
+        }
+    }
+
+    private static void advanceMainLooperBy(int millis) {
+        ShadowLooper.pauseMainLooper();
+        Robolectric.getForegroundThreadScheduler().advanceBy(millis, TimeUnit.MILLISECONDS);
+        ShadowLooper.unPauseMainLooper();
+        ShadowLooper.pauseMainLooper();
+    }
+}
@@ -0,0 +1,108 @@
+package com.stripe.android.net;
+
+import com.stripe.android.model.Source;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs thousands of polls through {@link PollingSimulator} to check how {@link
+ * PollingNetworkHandler} holds up at scale: that every poll ends exactly once, on time, and
+ * without asking the server more often than its backoff allows.
+ */
+public class PollingSimulationTest {
+
+    @Test
+    public void run_withThousandsOfPolls_endsEveryPollOnceAndOnTime() throws Exception {
+        PollingParameters pollingParameters = PollingParameters.generateDefaultParameters();
+        PollingSimulator simulator = new PollingSimulator(pollingParameters, 0.1, 42L);
+        Random random = new Random(7L);
+        for (int i = 0; i < 5000; i++) {
+            long startMs = random.nextInt(60000);
+            long chargeableAtMs = random.nextInt(4) == 0
+                    ? PollingSimulator.NEVER
+                    : startMs + random.nextInt(8000);
+            simulator.addPoll(startMs, chargeableAtMs, null);
+        }
+
+        simulator.run();
+
+        int successCount = 0;
+        int expiredCount = 0;
+        for (PollingSimulator.SimulatedPoll poll : simulator.getPolls()) {
+            assertEquals(poll.mSourceId, 1, poll.mResponseCount);
+            PollingResponse response = poll.mResponse;
+            assertNotNull(response);
+            long deadlineMs = poll.mStartMs + poll.mTimeoutMs;
+            if (response.isSuccess()) {
+                successCount++;
+                assertEquals(Source.CHARGEABLE, response.getSource().getStatus());
+                assertTrue(poll.mResponseAtMs >= poll.mChargeableAtMs);
+                assertTrue(poll.mResponseAtMs < deadlineMs);
+            } else if (response.isExpired()) {
+                expiredCount++;
+                assertEquals(poll.mSourceId, deadlineMs, poll.mResponseAtMs);
+            } else {
+                // Only five failures in a row stop a poll early.
+                assertNotNull(response.getStripeException());
+                assertTrue(poll.mRequestCount >= pollingParameters.getMaxRetryCount());
+                assertTrue(poll.mResponseAtMs < deadlineMs);
+            }
+        }
+        assertTrue(successCount > 2500);
+        assertTrue(expiredCount > 1250);
+        // Nothing is left scheduled once the last poll has expired.
+        assertTrue(simulator.getNowMs() <= 60000L + pollingParameters.getDefaultTimeoutMs());
+    }
+
+    @Test
+    public void run_withSourcesThatStayPending_boundsRequestsPerPoll() throws Exception {
+        PollingSimulator simulator = new PollingSimulator(
+                PollingParameters.generateDefaultParameters(), 0.0, 42L);
+        for (int i = 0; i < 2000; i++) {
+            simulator.addPoll(0L, PollingSimulator.NEVER, null);
+        }
+
+        simulator.run();
+
+        // Pending delays start at up to 1000ms and double, less up to half for jitter, so a
+        // 10 second poll asks 4 or 5 times.
+        for (PollingSimulator.SimulatedPoll poll : simulator.getPolls()) {
+            assertTrue(poll.mRequestCount >= 4 && poll.mRequestCount <= 5);
+            assertTrue(poll.mResponse.isExpired());
+            assertEquals(10000L, poll.mResponseAtMs);
+        }
+        assertTrue(simulator.getRequestCount() <= 2000 * 5);
+        assertEquals(10000L, simulator.getNowMs());
+    }
+
+    @Test
+    public void run_whenServerAlwaysFails_stopsEachPollAfterMaxRetries() throws Exception {
+        PollingSimulator simulator = new PollingSimulator(
+                PollingParameters.generateDefaultParameters(), 1.0, 42L);
+        Random random = new Random(7L);
+        for (int i = 0; i < 2000; i++) {
+            simulator.addPoll(random.nextInt(10000), PollingSimulator.NEVER, 60000);
+        }
+
+        simulator.run();
+
+        // Failed requests back off without jitter: 2000 + 4000 + 8000 + 15000ms.
+        for (PollingSimulator.SimulatedPoll poll : simulator.getPolls()) {
+            assertEquals(1, poll.mResponseCount);
+            assertEquals(5, poll.mRequestCount);
+            assertNull(poll.mResponse.getSource());
+            assertNotNull(poll.mResponse.getStripeException());
+            assertFalse(poll.mResponse.isExpired());
+            assertEquals(poll.mStartMs + 29000L, poll.mResponseAtMs);
+        }
+        assertEquals(2000 * 5, simulator.getRequestCount());
+    }
+}
@@ -0,0 +1,164 @@
+package com.stripe.android.net;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.stripe.android.exception.APIConnectionException;
+import com.stripe.android.exception.StripeException;
+import com.stripe.android.model.Source;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Runs any number of source polls against a scripted server, all on one
+ * {@link VirtualPollingClock}, so that thousands of polls that would take minutes run in
+ * moments. Each simulated source turns chargeable at a set time, or never, and the server fails
+ * a set share of requests.
+ */
+class PollingSimulator {
+
+    static final long NEVER = Long.MAX_VALUE;
+
+    @NonNull private final VirtualPollingClock mClock = new VirtualPollingClock();
+    @NonNull private final List<SimulatedPoll> mPolls = new ArrayList<>();
+    @NonNull private final PollingParameters mPollingParameters;
+    @NonNull private final PollingStrategy mPollingStrategy;
+    @NonNull private final Random mRandom;
+    private final double mErrorRate;
+
+    @NonNull private final Source mPendingSource;
+    @NonNull private final Source mChargeableSource;
+
+    private int mRequestCount;
+
+    /**
+     * @param pollingParameters the {@link PollingParameters} to poll with
+     * @param errorRate the share of requests that the server fails, from 0 to 1
+     * @param seed the seed for the jitter between polls, and for which requests fail
+     */
+    PollingSimulator(
+            @NonNull PollingParameters pollingParameters,
+            double errorRate,
+            long seed) {
+        mPollingParameters = pollingParameters;
+        mRandom = new Random(seed);
+        mPollingStrategy = new BackoffPollingStrategy(pollingParameters, new Random(seed + 1));
+        mErrorRate = errorRate;
+
+        mPendingSource = mock(Source.class);
+        when(mPendingSource.getStatus()).thenReturn(Source.PENDING);
+        mChargeableSource = mock(Source.class);
+        when(mChargeableSource.getStatus()).thenReturn(Source.CHARGEABLE);
+    }
+
+    /**
+     * Add a poll to the simulation.
+     *
+     * @param startMs the virtual time at which the poll starts
+     * @param chargeableAtMs the virtual time from which the server reports the source as
+     *                       chargeable, or {@link #NEVER}
+     * @param timeOutMs the timeout of the poll, or {@code null} to use the default
+     * @return the {@link SimulatedPoll}, to check on once the simulation has run
+     */
+    @NonNull
+    SimulatedPoll addPoll(long startMs, long chargeableAtMs, @Nullable Integer timeOutMs) {
+        final SimulatedPoll poll = new SimulatedPoll(
+                "src_" + mPolls.size(),
+                startMs,
+                chargeableAtMs,
+                PollingNetworkHandler.getTimeoutMs(timeOutMs, mPollingParameters));
+        final PollingNetworkHandler handler = new PollingNetworkHandler(
+                poll.mSourceId,
+                "secret",
+                "pk_test",
+                poll,
+                timeOutMs,
+                poll,
+                mPollingParameters,
+                mPollingStrategy,
+                mClock,
+                null);
+        mClock.postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                handler.start();
+            }
+        }, poll, startMs - mClock.uptimeMillis());
+        mPolls.add(poll);
+        return poll;
+    }
+
+    /**
+     * Run every poll to completion.
+     */
+    void run() throws InterruptedException {
+        mClock.runUntilIdle();
+    }
+
+    @NonNull
+    List<SimulatedPoll> getPolls() {
+        return Collections.unmodifiableList(mPolls);
+    }
+
+    int getRequestCount() {
+        return mRequestCount;
+    }
+
+    long getNowMs() {
+        return mClock.uptimeMillis();
+    }
+
+    /**
+     * A poll in the simulation, which is both the server for its source and the callback that
+     * records how the poll ended.
+     */
+    final class SimulatedPoll implements SourceRetriever, PollingResponseHandler {
+
+        @NonNull final String mSourceId;
+        final long mStartMs;
+        final long mChargeableAtMs;
+        final long mTimeoutMs;
+
+        @Nullable PollingResponse mResponse;
+        long mResponseAtMs = -1L;
+        int mResponseCount;
+        int mRequestCount;
+
+        SimulatedPoll(
+                @NonNull String sourceId,
+                long startMs,
+                long chargeableAtMs,
+                long timeoutMs) {
+            mSourceId = sourceId;
+            mStartMs = startMs;
+            mChargeableAtMs = chargeableAtMs;
+            mTimeoutMs = timeoutMs;
+        }
+
+        @Override
+        public Source retrieveSource(
+                @NonNull String sourceId,
+                @NonNull String clientSecret,
+                @NonNull String publishableKey) throws StripeException {
+            PollingSimulator.this.mRequestCount++;
+            mRequestCount++;
+            if (mRandom.nextDouble() < mErrorRate) {
+                throw new APIConnectionException("Simulated outage");
+            }
+            return mClock.uptimeMillis() >= mChargeableAtMs ? mChargeableSource : mPendingSource;
+        }
+
+        @Override
+        public void onPollingResponse(@NonNull PollingResponse pollingResponse) {
+            mResponse = pollingResponse;
+            mResponseAtMs = mClock.uptimeMillis();
+            mResponseCount++;
+        }
+    }
+}
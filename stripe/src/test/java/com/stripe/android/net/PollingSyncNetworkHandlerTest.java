@@ -1,5 +1,7 @@
 package com.stripe.android.net;
 
+import android.support.annotation.NonNull;
+
 import com.stripe.android.exception.APIConnectionException;
 import com.stripe.android.exception.APIException;
 import com.stripe.android.exception.StripeException;
@@ -9,8 +11,15 @@ import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.mockito.stubbing.OngoingStubbing;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
@@ -39,19 +48,14 @@ public class PollingSyncNetworkHandlerTest {
     @Mock SourceRetriever mSourceRetriever;
 
     private PollingParameters mPollingParameters;
-    private PollingSyncNetworkHandler.TimeRetriever mTimeRetriever;
+    private VirtualPollingClock mClock;
     private PollingSyncNetworkHandler mPollingSyncNetworkHandler;
 
     @Before
     public void setup() {
         MockitoAnnotations.initMocks(this);
 
-        mTimeRetriever = new PollingSyncNetworkHandler.TimeRetriever() {
-            @Override
-            public long getCurrentTimeInMillis() {
-                return System.currentTimeMillis();
-            }
-        };
+        mClock = new VirtualPollingClock();
         when(mConsumedSource.getStatus()).thenReturn(Source.CONSUMED);
         when(mChargeableSource.getStatus()).thenReturn(Source.CHARGEABLE);
         when(mPendingSource.getStatus()).thenReturn(Source.PENDING);
@@ -65,14 +69,7 @@ public class PollingSyncNetworkHandlerTest {
                 5,
                 5L * 60L * 1000L,
                 2);
-        mPollingSyncNetworkHandler = new PollingSyncNetworkHandler(
-                DUMMY_SOURCE_ID,
-                DUMMY_CLIENT_SECRET,
-                DUMMY_PUBLISHABLE_KEY,
-                1000,
-                mSourceRetriever,
-                mTimeRetriever,
-                mPollingParameters);
+        mPollingSyncNetworkHandler = createHandler(1000);
     }
 
     @Test
@@ -83,7 +80,6 @@ public class PollingSyncNetworkHandlerTest {
                 DUMMY_PUBLISHABLE_KEY,
                 null,
                 mSourceRetriever,
-                mTimeRetriever,
                 PollingParameters.generateDefaultParameters());
         assertEquals(10000L, handler.getTimeOutMs());
     }
@@ -96,7 +92,6 @@ public class PollingSyncNetworkHandlerTest {
                 DUMMY_PUBLISHABLE_KEY,
                 12345,
                 mSourceRetriever,
-                mTimeRetriever,
                 PollingParameters.generateDefaultParameters());
         assertEquals(12345L, handler.getTimeOutMs());
     }
@@ -111,7 +106,6 @@ public class PollingSyncNetworkHandlerTest {
                 DUMMY_PUBLISHABLE_KEY,
                 tenMinutesInMillis,
                 mSourceRetriever,
-                mTimeRetriever,
                 PollingParameters.generateDefaultParameters());
         assertEquals(fiveMinutesInMillis, handler.getTimeOutMs());
     }
@@ -177,18 +171,25 @@ public class PollingSyncNetworkHandlerTest {
         assertFalse(response.isExpired());
     }
 
+    @Test
+    public void pollForSourceUpdate_whenNoSourceThenChargeable_keepsPolling() {
+        setSourceResponses(mSourceRetriever, null, mChargeableSource);
+
+        PollingResponse response = mPollingSyncNetworkHandler.pollForSourceUpdate();
+        verifyRetrieveCallCount(mSourceRetriever, 2);
+
+        assertEquals(100L, mClock.uptimeMillis());
+        assertTrue(response.isSuccess());
+    }
+
     @Test
     public void pollForSourceUpdate_whenAlwaysPending_expires() {
         setSourceResponses(mSourceRetriever, mPendingSource);
-        long startTime = System.currentTimeMillis();
         PollingResponse response = mPollingSyncNetworkHandler.pollForSourceUpdate();
-        long endTime = System.currentTimeMillis();
 
-        assertTrue(endTime - startTime > 1000L);
-        // Default timeout is 10 seconds (set to 1 for test),
-        // and we poll ten times per second (in test), so we should be slightly
-        // over the timeout limit after 10 tries.
-        verifyRetrieveCallCount(mSourceRetriever, 10);
+        // Polls are 100, 200 and 400ms apart, and the next would be due after the timeout.
+        assertEquals(1000L, mClock.uptimeMillis());
+        verifyRetrieveCallCount(mSourceRetriever, 4);
         assertNotNull(response.getSource());
         assertEquals(Source.PENDING, response.getSource().getStatus());
         assertFalse(response.isSuccess());
@@ -197,8 +198,6 @@ public class PollingSyncNetworkHandlerTest {
 
     @Test
     public void pollForSourceUpdate_whenSingleExceptionThenChargeable_returnsSuccess() {
-        setSourceResponses(mSourceRetriever, mPendingSource, mPendingSource, mCancelledSource);
-
         try {
             when(mSourceRetriever.retrieveSource(
                     DUMMY_SOURCE_ID,
@@ -212,13 +211,10 @@ public class PollingSyncNetworkHandlerTest {
             fail("Unexpected exception: " + stripeEx.getLocalizedMessage());
         }
 
-        long startTime = System.currentTimeMillis();
         PollingResponse response = mPollingSyncNetworkHandler.pollForSourceUpdate();
-        long endTime = System.currentTimeMillis();
 
-        // If the exception instances were just pending responses, this would only take
-        // approximately 4000ms
-        assertTrue("Exponential backing off should delay calls", endTime - startTime >= 700L);
+        // Pending responses alone would be polled again after 100ms, errors after 200 and 400.
+        assertEquals("Exponential backing off should delay calls", 700L, mClock.uptimeMillis());
         verifyRetrieveCallCount(mSourceRetriever, 4);
 
         assertNotNull(response.getSource());
@@ -229,16 +225,8 @@ public class PollingSyncNetworkHandlerTest {
 
     @Test
     public void pollForSourceUpdate_whenFiveExceptions_returnsFailureWithLastException() {
-
-        PollingSyncNetworkHandler pollingSyncNetworkHandler
-                = new PollingSyncNetworkHandler(
-                        DUMMY_SOURCE_ID,
-                        DUMMY_CLIENT_SECRET,
-                        DUMMY_PUBLISHABLE_KEY,
-                        5000, // need a longer timeout because of the exponential backoff
-                        mSourceRetriever,
-                        mTimeRetriever,
-                        mPollingParameters);
+        // need a longer timeout because of the exponential backoff
+        PollingSyncNetworkHandler pollingSyncNetworkHandler = createHandler(5000);
         APIConnectionException connectEx = new APIConnectionException("Can't reach server");
         APIException apiException = new APIException("Something different", "abc", 123, null);
         setSourceExceptions(mSourceRetriever,
@@ -248,12 +236,10 @@ public class PollingSyncNetworkHandlerTest {
                 connectEx,
                 apiException);
 
-        long startTime = System.currentTimeMillis();
         PollingResponse response = pollingSyncNetworkHandler.pollForSourceUpdate();
-        long endTime = System.currentTimeMillis();
 
-        // Delays are 100 + 200 + 400 + 800 = 1500
-        assertTrue("Exponential backing off should delay calls", endTime - startTime >= 1500L);
+        // Delays are 200 + 400 + 800 + 1500 = 2900
+        assertEquals("Exponential backing off should delay calls", 2900L, mClock.uptimeMillis());
         verifyRetrieveCallCount(mSourceRetriever, 5);
 
         assertNull(response.getSource());
@@ -263,6 +249,115 @@ public class PollingSyncNetworkHandlerTest {
         assertFalse(response.isExpired());
     }
 
+    @Test
+    public void pollForSourceUpdate_whenInterrupted_expiresAndStaysInterrupted() throws Exception {
+        when(mSourceRetriever.retrieveSource(
+                DUMMY_SOURCE_ID,
+                DUMMY_CLIENT_SECRET,
+                DUMMY_PUBLISHABLE_KEY))
+                .thenReturn(mPendingSource)
+                .thenAnswer(new Answer<Source>() {
+                    @Override
+                    public Source answer(InvocationOnMock invocation) {
+                        Thread.currentThread().interrupt();
+                        return mPendingSource;
+                    }
+                });
+
+        PollingResponse response;
+        try {
+            response = mPollingSyncNetworkHandler.pollForSourceUpdate();
+        } finally {
+            assertTrue(Thread.interrupted());
+        }
+
+        assertEquals(100L, mClock.uptimeMillis());
+        verifyRetrieveCallCount(mSourceRetriever, 2);
+        assertEquals(Source.PENDING, response.getSource().getStatus());
+        assertFalse(response.isSuccess());
+        assertTrue(response.isExpired());
+    }
+
+    @Test
+    public void pollForSourceUpdate_onRealClock_waitsBetweenPolls() {
+        setSourceResponses(mSourceRetriever, mPendingSource, mChargeableSource);
+        PollingSyncNetworkHandler handler = new PollingSyncNetworkHandler(
+                DUMMY_SOURCE_ID,
+                DUMMY_CLIENT_SECRET,
+                DUMMY_PUBLISHABLE_KEY,
+                1000,
+                mSourceRetriever,
+                mPollingParameters);
+
+        long startTime = System.currentTimeMillis();
+        PollingResponse response = handler.pollForSourceUpdate();
+        long endTime = System.currentTimeMillis();
+
+        // The 100ms delay is shortened by up to half.
+        assertTrue(endTime - startTime >= 50L);
+        verifyRetrieveCallCount(mSourceRetriever, 2);
+        assertTrue(response.isSuccess());
+    }
+
+    @Test
+    public void pollForSourceUpdate_withPollingStrategySetOnApiHandler_usesItsDelays() {
+        setSourceResponses(mSourceRetriever, mPendingSource, mPendingSource, mChargeableSource);
+        final List<Integer> pendingCounts = new ArrayList<>();
+        StripeApiHandler.setPollingStrategy(new PollingStrategy() {
+            @Override
+            public long getPendingDelayMs(int pendingCount) {
+                pendingCounts.add(pendingCount);
+                return 150L;
+            }
+
+            @Override
+            public long getErrorDelayMs(@NonNull StripeException exception, int errorCount) {
+                return STOP;
+            }
+        });
+        PollingSyncNetworkHandler handler;
+        try {
+            handler = new PollingSyncNetworkHandler(
+                    DUMMY_SOURCE_ID,
+                    DUMMY_CLIENT_SECRET,
+                    DUMMY_PUBLISHABLE_KEY,
+                    5000,
+                    mSourceRetriever,
+                    mPollingParameters);
+        } finally {
+            StripeApiHandler.setPollingStrategy(null);
+        }
+
+        long startTime = System.currentTimeMillis();
+        PollingResponse response = handler.pollForSourceUpdate();
+        long endTime = System.currentTimeMillis();
+
+        // The default strategy would have waited no more than 100ms, then 150ms shortened by up
+        // to half.
+        assertTrue(endTime - startTime >= 300L);
+        assertEquals(Arrays.asList(1, 2), pendingCounts);
+        verifyRetrieveCallCount(mSourceRetriever, 3);
+        assertTrue(response.isSuccess());
+    }
+
+    @NonNull
+    private PollingSyncNetworkHandler createHandler(int timeOutMs) {
+        return new PollingSyncNetworkHandler(
+                DUMMY_SOURCE_ID,
+                DUMMY_CLIENT_SECRET,
+                DUMMY_PUBLISHABLE_KEY,
+                timeOutMs,
+                mSourceRetriever,
+                mPollingParameters,
+                new BackoffPollingStrategy(mPollingParameters, new Random() {
+                    @Override
+                    public double nextDouble() {
+                        return 0.0;
+                    }
+                }),
+                mClock);
+    }
+
     private static void verifyRetrieveCallCount(SourceRetriever sourceRetriever, int count) {
         try {
             verify(sourceRetriever, times(count)).retrieveSource(
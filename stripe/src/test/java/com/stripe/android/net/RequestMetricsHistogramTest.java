@@ -0,0 +1,100 @@
+package com.stripe.android.net;
+
+import android.support.annotation.NonNull;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test class for {@link RequestMetricsHistogram}.
+ */
+public class RequestMetricsHistogramTest {
+
+    @Test
+    public void onRequestMetrics_countsEachPhaseInItsBucket() {
+        RequestMetricsHistogram histogram = new RequestMetricsHistogram();
+        histogram.onRequestMetrics(createMetrics(RequestMetrics.OUTCOME_SUCCESS, 1, 3L));
+        histogram.onRequestMetrics(createMetrics(RequestMetrics.OUTCOME_SUCCESS, 1, 40L));
+        histogram.onRequestMetrics(createMetrics(RequestMetrics.OUTCOME_CARD_ERROR, 3, 40L));
+
+        int[] counts = histogram.getBucketCounts(RequestMetrics.PHASE_TIME_TO_FIRST_BYTE);
+        long[] bounds = RequestMetricsHistogram.getBucketUpperBoundsMs();
+        assertEquals(bounds.length + 1, counts.length);
+        assertEquals(1, counts[Arrays.binarySearch(bounds, 5L)]);
+        assertEquals(2, counts[Arrays.binarySearch(bounds, 50L)]);
+        assertEquals(3, histogram.getCount(RequestMetrics.PHASE_TIME_TO_FIRST_BYTE));
+        // Phases that were not measured are left out.
+        assertEquals(0, histogram.getCount(RequestMetrics.PHASE_TLS));
+
+        assertEquals(3, histogram.getRequestCount());
+        assertEquals(2, histogram.getRetryCount());
+        assertEquals(2, histogram.getOutcomeCount(RequestMetrics.OUTCOME_SUCCESS));
+        assertEquals(1, histogram.getOutcomeCount(RequestMetrics.OUTCOME_CARD_ERROR));
+        assertEquals(0, histogram.getOutcomeCount(RequestMetrics.OUTCOME_RATE_LIMITED));
+        assertEquals(30L, histogram.getBytesOut());
+        assertEquals(300L, histogram.getBytesIn());
+        assertEquals(600L, histogram.getDecodedBytesIn());
+    }
+
+    @Test
+    public void getPercentileMs_returnsUpperBoundOfBucket() {
+        RequestMetricsHistogram histogram = new RequestMetricsHistogram();
+        for (int i = 0; i < 90; i++) {
+            histogram.onRequestMetrics(createMetrics(RequestMetrics.OUTCOME_SUCCESS, 1, 15L));
+        }
+        for (int i = 0; i < 10; i++) {
+            histogram.onRequestMetrics(createMetrics(RequestMetrics.OUTCOME_SUCCESS, 1, 700L));
+        }
+
+        assertEquals(20L, histogram.getPercentileMs(RequestMetrics.PHASE_TIME_TO_FIRST_BYTE, 50));
+        assertEquals(20L, histogram.getPercentileMs(RequestMetrics.PHASE_TIME_TO_FIRST_BYTE, 90));
+        // The slowest bucket holds nothing slower than 700ms, so that is the tighter bound.
+        assertEquals(700L,
+                histogram.getPercentileMs(RequestMetrics.PHASE_TIME_TO_FIRST_BYTE, 99));
+        assertEquals(-1L, histogram.getPercentileMs(RequestMetrics.PHASE_TLS, 50));
+    }
+
+    @Test
+    public void getPercentileMs_aboveLastBound_returnsSlowest() {
+        RequestMetricsHistogram histogram = new RequestMetricsHistogram();
+        histogram.onRequestMetrics(createMetrics(RequestMetrics.OUTCOME_SUCCESS, 1, 90000L));
+
+        int[] counts = histogram.getBucketCounts(RequestMetrics.PHASE_TIME_TO_FIRST_BYTE);
+        assertEquals(1, counts[counts.length - 1]);
+        assertEquals(90000L,
+                histogram.getPercentileMs(RequestMetrics.PHASE_TIME_TO_FIRST_BYTE, 50));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void getPercentileMs_withInvalidPercentile_throws() {
+        new RequestMetricsHistogram().getPercentileMs(RequestMetrics.PHASE_TOTAL, 101);
+    }
+
+    @Test
+    public void getBucketUpperBoundsMs_isSortedAndCopied() {
+        long[] bounds = RequestMetricsHistogram.getBucketUpperBoundsMs();
+        long[] sorted = bounds.clone();
+        Arrays.sort(sorted);
+        assertArrayEquals(sorted, bounds);
+
+        bounds[0] = 999L;
+        assertEquals(1L, RequestMetricsHistogram.getBucketUpperBoundsMs()[0]);
+    }
+
+    @NonNull
+    private static RequestMetrics createMetrics(
+            @NonNull @RequestMetrics.Outcome String outcome,
+            int attemptCount,
+            long timeToFirstByteMs) {
+        long[] durations = new long[RequestMetrics.PHASE_COUNT];
+        Arrays.fill(durations, -1L);
+        durations[RequestMetrics.PHASE_TIME_TO_FIRST_BYTE] = timeToFirstByteMs * 1000000L;
+        durations[RequestMetrics.PHASE_TOTAL] = (timeToFirstByteMs + 1) * 1000000L;
+        return new RequestMetrics(StripeApiHandler.GET, "https://api.stripe.com/v1/sources",
+                outcome, 200, null, attemptCount, durations, 0, 0, 10L, 100L, 200L);
+    }
+}
@@ -0,0 +1,385 @@
+package com.stripe.android.net;
+
+import android.support.annotation.NonNull;
+
+import com.stripe.android.BuildConfig;
+import com.stripe.android.exception.APIConnectionException;
+import com.stripe.android.exception.APIException;
+import com.stripe.android.exception.AuthenticationException;
+import com.stripe.android.exception.CardException;
+import com.stripe.android.exception.InvalidRequestException;
+import com.stripe.android.exception.PermissionException;
+import com.stripe.android.exception.RateLimitException;
+import com.stripe.android.testharness.StubHttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocket;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test class for {@link RequestMetrics} and the {@link RequestTrace} that collects them.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class RequestMetricsTest {
+
+    private static final String SOURCE_JSON =
+            "{\"id\":\"src_1\",\"object\":\"source\",\"amount\":1000}";
+    private static final String ERROR_JSON =
+            "{\"error\":{\"type\":\"invalid_request_error\",\"message\":\"Invalid API Key\"}}";
+    private static final RetryPolicy IMMEDIATE_RETRY = RetryPolicy.builder()
+            .setMaxAttempts(3)
+            .setInitialDelayMs(0)
+            .setMaxDelayMs(0)
+            .build();
+
+    private final List<RequestMetrics> mReported = new ArrayList<>();
+
+    @Before
+    public void setup() {
+        StripeApiHandler.setSourceCache(SourceCache.NONE);
+        StripeApiHandler.setRequestMetricsListener(new RequestMetricsListener() {
+            @Override
+            public void onRequestMetrics(@NonNull RequestMetrics metrics) {
+                mReported.add(metrics);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        StripeApiHandler.setRequestMetricsListener(null);
+        StripeApiHandler.setHttpTransport(null);
+        StripeApiHandler.setSourceCache(null);
+    }
+
+    @Test
+    public void getOutcome_classifiesEachError() {
+        assertEquals(RequestMetrics.OUTCOME_SUCCESS, RequestMetrics.getOutcome(null));
+        assertEquals(RequestMetrics.OUTCOME_CONNECTION_ERROR,
+                RequestMetrics.getOutcome(new APIConnectionException("offline")));
+        assertEquals(RequestMetrics.OUTCOME_INVALID_REQUEST, RequestMetrics.getOutcome(
+                new InvalidRequestException("bad", "param", null, 400, null)));
+        assertEquals(RequestMetrics.OUTCOME_RATE_LIMITED, RequestMetrics.getOutcome(
+                new RateLimitException("slow down", null, null, 429, null)));
+        assertEquals(RequestMetrics.OUTCOME_AUTHENTICATION_ERROR,
+                RequestMetrics.getOutcome(new AuthenticationException("bad key", null, 401)));
+        assertEquals(RequestMetrics.OUTCOME_PERMISSION_ERROR,
+                RequestMetrics.getOutcome(new PermissionException("forbidden", null, 403)));
+        assertEquals(RequestMetrics.OUTCOME_CARD_ERROR, RequestMetrics.getOutcome(
+                new CardException("declined", null, "card_declined", null, null, null, 402,
+                        null)));
+        assertEquals(RequestMetrics.OUTCOME_API_ERROR,
+                RequestMetrics.getOutcome(new APIException("oops", null, 500, null)));
+        assertEquals(RequestMetrics.OUTCOME_API_ERROR,
+                RequestMetrics.getOutcome(new IllegalStateException("unexpected")));
+    }
+
+    @Test
+    public void retrieveSource_afterRetry_reportsOneRequestWithEveryAttempt() throws Exception {
+        StripeApiHandler.setHttpTransport(new QueueTransport(
+                new StripeResponse(503, ERROR_JSON, null),
+                new StripeResponse(200, SOURCE_JSON, requestIdHeaders("req_2"))));
+
+        StripeApiHandler.retrieveSource("src_1", "secret", "pk_test", IMMEDIATE_RETRY);
+
+        assertEquals(1, mReported.size());
+        RequestMetrics metrics = mReported.get(0);
+        assertEquals(StripeApiHandler.GET, metrics.getMethod());
+        assertTrue(metrics.getUrl().endsWith("/v1/sources/src_1"));
+        assertEquals(RequestMetrics.OUTCOME_SUCCESS, metrics.getOutcome());
+        assertEquals(200, metrics.getResponseCode());
+        assertEquals("req_2", metrics.getRequestId());
+        assertEquals(2, metrics.getAttemptCount());
+        assertEquals(1, metrics.getRetryCount());
+        assertTrue(metrics.getDurationNanos(RequestMetrics.PHASE_PARSE) >= 0);
+        assertTrue(metrics.getDurationNanos(RequestMetrics.PHASE_TOTAL) >= 0);
+        // A custom transport says nothing about its connections.
+        assertEquals(-1L, metrics.getDurationNanos(RequestMetrics.PHASE_DNS));
+        assertEquals(-1L, metrics.getDurationNanos(RequestMetrics.PHASE_CALLBACK_DISPATCH));
+        assertNull(RequestTrace.current());
+    }
+
+    @Test
+    public void retrieveSource_whenRejected_reportsOutcomeOfError() throws Exception {
+        StripeApiHandler.setHttpTransport(new QueueTransport(
+                new StripeResponse(401, ERROR_JSON, requestIdHeaders("req_1"))));
+
+        try {
+            StripeApiHandler.retrieveSource("src_1", "secret", "pk_test", IMMEDIATE_RETRY);
+            fail("Expected an AuthenticationException");
+        } catch (AuthenticationException expected) {
+        }
+
+        assertEquals(1, mReported.size());
+        RequestMetrics metrics = mReported.get(0);
+        assertEquals(RequestMetrics.OUTCOME_AUTHENTICATION_ERROR, metrics.getOutcome());
+        assertEquals(401, metrics.getResponseCode());
+        assertEquals(1, metrics.getAttemptCount());
+        assertNull(RequestTrace.current());
+    }
+
+    @Test
+    public void retrieveSource_withoutListener_collectsNothing() throws Exception {
+        StripeApiHandler.setRequestMetricsListener(null);
+        final RequestTrace[] traceDuringRequest = new RequestTrace[1];
+        StripeApiHandler.setHttpTransport(new HttpTransport() {
+            @NonNull
+            @Override
+            public StripeResponse execute(
+                    @NonNull String method,
+                    @NonNull String url,
+                    String query,
+                    @NonNull Map<String, String> headers) {
+                traceDuringRequest[0] = RequestTrace.current();
+                return new StripeResponse(200, SOURCE_JSON, null);
+            }
+        });
+
+        assertNotNull(StripeApiHandler.retrieveSource("src_1", "secret", "pk_test"));
+
+        assertNull(traceDuringRequest[0]);
+        assertTrue(mReported.isEmpty());
+    }
+
+    @Test
+    public void urlConnectionTransport_measuresEachPhaseAndBody() throws IOException {
+        StubHttpServer server = new StubHttpServer();
+        server.enqueue(new StubHttpServer.StubResponse(200, SOURCE_JSON).setDelayMs(50));
+        UrlConnectionHttpTransport transport = new UrlConnectionHttpTransport(
+                new ConnectionLimiter(2),
+                HttpsURLConnection.getDefaultSSLSocketFactory(),
+                5000,
+                5000);
+        String url = server.getUrl("/v1/sources");
+        try {
+            RequestTrace trace = RequestTrace.begin(StripeApiHandler.POST, url);
+            assertNotNull(trace);
+            transport.execute(StripeApiHandler.POST, url, "type=card", getHeaders());
+            trace.finish(null);
+        } finally {
+            server.shutdown();
+        }
+
+        assertEquals(1, mReported.size());
+        RequestMetrics metrics = mReported.get(0);
+        assertMeasured(metrics, RequestMetrics.PHASE_CONNECT,
+                RequestMetrics.PHASE_REQUEST_WRITE, RequestMetrics.PHASE_TIME_TO_FIRST_BYTE,
+                RequestMetrics.PHASE_BODY_READ, RequestMetrics.PHASE_PARSE,
+                RequestMetrics.PHASE_TOTAL);
+        // HttpURLConnection looks the host up inside connect(), so no lookup is seen on its own.
+        assertEquals(-1L, metrics.getDurationNanos(RequestMetrics.PHASE_DNS));
+        // The server is plain HTTP, so there is no handshake.
+        assertEquals(-1L, metrics.getDurationNanos(RequestMetrics.PHASE_TLS));
+        assertTrue(metrics.getDurationMs(RequestMetrics.PHASE_TIME_TO_FIRST_BYTE) >= 40);
+        assertEquals("type=card".length(), metrics.getBytesOut());
+        assertEquals(SOURCE_JSON.length(), metrics.getBytesIn());
+        assertEquals(SOURCE_JSON.length(), metrics.getDecodedBytesIn());
+    }
+
+    @Test
+    public void http2Transport_measuresEachPhaseAndBody() throws IOException {
+        StubHttp2Server server = new StubHttp2Server();
+        server.enqueue(new StubHttp2Server.Response(200, ContentDecoderTest.gzip(SOURCE_JSON))
+                .setHeader("content-encoding", "gzip"));
+        Http2Transport transport = new Http2Transport(
+                new UrlConnectionHttpTransport(),
+                DnsResolver.SYSTEM,
+                HttpsURLConnection.getDefaultSSLSocketFactory(),
+                Collections.singleton(server.getHostKey()),
+                5000,
+                5000,
+                60000L);
+        String url = server.getUrl("/v1/sources/src_1");
+        try {
+            RequestTrace trace = RequestTrace.begin(StripeApiHandler.GET, url);
+            assertNotNull(trace);
+            transport.execute(StripeApiHandler.GET, url, null, getHeaders());
+            trace.finish(null);
+        } finally {
+            transport.evictAll();
+            server.shutdown();
+        }
+
+        assertEquals(1, mReported.size());
+        RequestMetrics metrics = mReported.get(0);
+        assertMeasured(metrics, RequestMetrics.PHASE_DNS, RequestMetrics.PHASE_CONNECT,
+                RequestMetrics.PHASE_REQUEST_WRITE, RequestMetrics.PHASE_TIME_TO_FIRST_BYTE,
+                RequestMetrics.PHASE_BODY_READ, RequestMetrics.PHASE_PARSE,
+                RequestMetrics.PHASE_TOTAL);
+        assertEquals(0, metrics.getBytesOut());
+        assertEquals(ContentDecoderTest.gzip(SOURCE_JSON).length, metrics.getBytesIn());
+        assertEquals(SOURCE_JSON.length(), metrics.getDecodedBytesIn());
+    }
+
+    @Test
+    public void begin_whenTraceIsActive_returnsNull() {
+        RequestTrace outer = RequestTrace.begin(StripeApiHandler.GET, "https://example.com/a");
+        assertNotNull(outer);
+        try {
+            assertNull(RequestTrace.begin(StripeApiHandler.GET, "https://example.com/b"));
+            assertEquals(outer, RequestTrace.current());
+        } finally {
+            outer.finish(null);
+        }
+        assertNull(RequestTrace.current());
+    }
+
+    @Test
+    public void add_sumsPhaseOverAttempts() {
+        RequestTrace trace = RequestTrace.begin(StripeApiHandler.GET, "https://example.com");
+        assertNotNull(trace);
+        trace.add(RequestMetrics.PHASE_TIME_TO_FIRST_BYTE, 3000000L);
+        trace.add(RequestMetrics.PHASE_TIME_TO_FIRST_BYTE, 4000000L);
+        trace.add(RequestMetrics.PHASE_DNS, -1L);
+        trace.finish(null);
+
+        RequestMetrics metrics = mReported.get(0);
+        assertEquals(7000000L, metrics.getDurationNanos(RequestMetrics.PHASE_TIME_TO_FIRST_BYTE));
+        assertEquals(7L, metrics.getDurationMs(RequestMetrics.PHASE_TIME_TO_FIRST_BYTE));
+        assertEquals(-1L, metrics.getDurationMs(RequestMetrics.PHASE_DNS));
+    }
+
+    @Test
+    public void onConnect_splitsAtTlsStart() {
+        RequestTrace trace = RequestTrace.begin(StripeApiHandler.GET, "https://example.com");
+        assertNotNull(trace);
+        long connectStart = System.nanoTime();
+        trace.onTlsStart();
+        long connectEnd = System.nanoTime() + 5000000L;
+        trace.onConnect(connectStart, connectEnd);
+        // A reused connection has no handshake to mark.
+        trace.onConnect(connectEnd, connectEnd + 1000L);
+        trace.finish(null);
+
+        RequestMetrics metrics = mReported.get(0);
+        long connect = metrics.getDurationNanos(RequestMetrics.PHASE_CONNECT);
+        long tls = metrics.getDurationNanos(RequestMetrics.PHASE_TLS);
+        assertTrue(tls >= 5000000L);
+        assertEquals(connectEnd - connectStart + 1000L, connect + tls);
+    }
+
+    @Test
+    public void onTlsHandshake_countsResumedSessions() {
+        RequestTrace trace = RequestTrace.begin(StripeApiHandler.GET, "https://example.com");
+        assertNotNull(trace);
+        trace.onTlsSocket(createTlsSocket(1000L), 5000L);
+        trace.onTlsHandshake();
+        trace.onTlsSocket(createTlsSocket(9000L), 5000L);
+        trace.onTlsHandshake();
+        // A reused connection made no socket, so it has no handshake to count.
+        trace.onTlsHandshake();
+        // Nor does an attempt whose handshake never completed.
+        trace.onTlsSocket(createTlsSocket(1000L), 5000L);
+        trace.onAttempt();
+        trace.onTlsHandshake();
+        trace.finish(null);
+
+        RequestMetrics metrics = mReported.get(0);
+        assertEquals(2, metrics.getTlsHandshakeCount());
+        assertEquals(1, metrics.getResumedTlsHandshakeCount());
+    }
+
+    @Test
+    public void holdForCallback_reportsOnDeliverWithDispatchTime() {
+        RequestMetrics.PendingDelivery pending = RequestMetrics.holdForCallback();
+        assertNotNull(pending);
+        try {
+            RequestTrace trace = RequestTrace.begin(StripeApiHandler.GET, "https://example.com");
+            assertNotNull(trace);
+            trace.finish(null);
+        } finally {
+            pending.detach();
+        }
+        assertTrue(mReported.isEmpty());
+
+        pending.deliver(1234L);
+
+        assertEquals(1, mReported.size());
+        assertEquals(1234L,
+                mReported.get(0).getDurationNanos(RequestMetrics.PHASE_CALLBACK_DISPATCH));
+
+        // Once detached, metrics go straight to the listener.
+        RequestTrace trace = RequestTrace.begin(StripeApiHandler.GET, "https://example.com");
+        assertNotNull(trace);
+        trace.finish(null);
+        assertEquals(2, mReported.size());
+    }
+
+    @Test
+    public void holdForCallback_withoutListener_returnsNull() {
+        StripeApiHandler.setRequestMetricsListener(null);
+        assertNull(RequestMetrics.holdForCallback());
+    }
+
+    private static void assertMeasured(@NonNull RequestMetrics metrics, int... phases) {
+        for (int phase : phases) {
+            assertTrue("Phase " + phase + " was not measured: " + metrics,
+                    metrics.getDurationNanos(phase) >= 0);
+        }
+    }
+
+    @NonNull
+    private static SSLSocket createTlsSocket(long sessionCreatedAtMs) {
+        SSLSession session = mock(SSLSession.class);
+        when(session.getCreationTime()).thenReturn(sessionCreatedAtMs);
+        SSLSocket socket = mock(SSLSocket.class);
+        when(socket.getSession()).thenReturn(session);
+        return socket;
+    }
+
+    @NonNull
+    private static Map<String, List<String>> requestIdHeaders(@NonNull String requestId) {
+        Map<String, List<String>> headers = new HashMap<>();
+        headers.put("Request-Id", Collections.singletonList(requestId));
+        return headers;
+    }
+
+    @NonNull
+    private static Map<String, String> getHeaders() {
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Authorization", "Bearer pk_test");
+        return headers;
+    }
+
+    private static final class QueueTransport implements HttpTransport {
+        @NonNull private final LinkedList<StripeResponse> mResponses = new LinkedList<>();
+
+        QueueTransport(@NonNull StripeResponse... responses) {
+            Collections.addAll(mResponses, responses);
+        }
+
+        @NonNull
+        @Override
+        public StripeResponse execute(
+                @NonNull String method,
+                @NonNull String url,
+                String query,
+                @NonNull Map<String, String> headers) {
+            return mResponses.removeFirst();
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.stripe.android.net;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for {@link ResponseBodyReader}.
+ */
+public class ResponseBodyReaderTest {
+
+    @Test
+    public void readString_withNullStream_returnsNull() throws IOException {
+        assertNull(ResponseBodyReader.readString(null, -1));
+    }
+
+    @Test
+    public void readString_withEmptyBody_returnsEmptyString() throws IOException {
+        assertEquals("", ResponseBodyReader.readString(stream(""), 0));
+        assertEquals("", ResponseBodyReader.readString(stream(""), -1));
+    }
+
+    @Test
+    public void readString_withContentLength_readsExactlyThatMuch() throws IOException {
+        InputStream stream = stream("{\"id\":\"tok_1\"}trailing");
+
+        assertEquals("{\"id\":\"tok_1\"}", ResponseBodyReader.readString(stream, 14));
+        assertEquals('t', stream.read());
+    }
+
+    @Test
+    public void readString_withShortBody_returnsWhatArrived() throws IOException {
+        assertEquals("{\"id\"", ResponseBodyReader.readString(stream("{\"id\""), 100));
+    }
+
+    @Test
+    public void readString_withUnknownLength_growsPastPoolBuffer() throws IOException {
+        String body = repeat("\u00e9\u20ac", ByteArrayPool.DEFAULT_BUFFER_SIZE);
+
+        assertEquals(body, ResponseBodyReader.readString(new TrickleInputStream(body), -1));
+    }
+
+    @Test
+    public void readString_withLargeContentLength_decodesMultiByteCharacters()
+            throws IOException {
+        String body = repeat("caf\u00e9 ", 5000);
+        int length = body.getBytes("UTF-8").length;
+
+        assertEquals(body, ResponseBodyReader.readString(stream(body), length));
+    }
+
+    @Test
+    public void readString_returnsBufferToPool() throws IOException {
+        ResponseBodyReader.readString(stream("{}"), 2);
+        int pooled = ResponseBodyReader.BUFFER_POOL.getPooledCount();
+
+        ResponseBodyReader.readString(stream("{}"), 2);
+
+        assertTrue(pooled > 0);
+        assertEquals(pooled, ResponseBodyReader.BUFFER_POOL.getPooledCount());
+    }
+
+    @Test
+    public void drain_readsSmallRemainderToEnd() throws IOException {
+        InputStream stream = stream("left over");
+
+        assertTrue(ResponseBodyReader.drain(stream));
+        assertEquals(-1, stream.read());
+    }
+
+    @Test
+    public void drain_withLargeRemainder_givesUp() throws IOException {
+        assertFalse(ResponseBodyReader.drain(stream(repeat("x", 128 * 1024))));
+    }
+
+    private static InputStream stream(String body) throws IOException {
+        return new ByteArrayInputStream(body.getBytes("UTF-8"));
+    }
+
+    private static String repeat(String value, int count) {
+        StringBuilder builder = new StringBuilder(value.length() * count);
+        for (int i = 0; i < count; i++) {
+            builder.append(value);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Returns a few bytes per read, like a slow network, so that multi-byte characters are split
+     * across reads.
+     */
+    private static final class TrickleInputStream extends InputStream {
+        private final InputStream mDelegate;
+
+        TrickleInputStream(String body) throws IOException {
+            mDelegate = stream(body);
+        }
+
+        @Override
+        public int read() throws IOException {
+            return mDelegate.read();
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            return mDelegate.read(buffer, offset, Math.min(length, 3));
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.stripe.android.net;
+
+import com.stripe.android.exception.APIConnectionException;
+import com.stripe.android.exception.APIException;
+import com.stripe.android.exception.CardException;
+import com.stripe.android.exception.InvalidRequestException;
+import com.stripe.android.exception.RateLimitException;
+import com.stripe.android.exception.StripeException;
+
+import org.junit.Test;
+
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import javax.net.ssl.SSLPeerUnverifiedException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Test class for {@link RetryPolicy}.
+ */
+public class RetryPolicyTest {
+
+    private static final RequestOptions OPTIONS = RequestOptions.builder("pk_test").build();
+    private static final RequestOptions IDEMPOTENT_OPTIONS =
+            RequestOptions.builder("pk_test").setIdempotencyKey("idem_1").build();
+
+    private final FakeClock mClock = new FakeClock();
+
+    @Test
+    public void execute_getWithConnectionFailures_retriesWithBackoff() throws StripeException {
+        RetryPolicy policy = createPolicy(4, 0.0);
+        ScriptedAttempt attempt = new ScriptedAttempt(
+                connectionFailure(), connectionFailure(), connectionFailure(), "ok");
+
+        assertEquals("ok", policy.execute(StripeApiHandler.GET, OPTIONS, attempt));
+        assertEquals(4, attempt.mAttemptCount);
+        assertEquals(Arrays.asList(500L, 1000L, 2000L), mClock.mSleeps);
+    }
+
+    @Test
+    public void execute_whenAttemptsRunOut_throwsLastFailure() {
+        RetryPolicy policy = createPolicy(3, 0.0);
+        APIConnectionException lastFailure = connectionFailure();
+        ScriptedAttempt attempt =
+                new ScriptedAttempt(connectionFailure(), connectionFailure(), lastFailure, "ok");
+
+        assertThrows(lastFailure, policy, StripeApiHandler.GET, OPTIONS, attempt);
+        assertEquals(3, attempt.mAttemptCount);
+    }
+
+    @Test
+    public void execute_postWithoutIdempotencyKey_doesNotRetry() {
+        RetryPolicy policy = createPolicy(3, 0.0);
+        APIException failure = serverError(503);
+        ScriptedAttempt attempt = new ScriptedAttempt(failure, "ok");
+
+        assertThrows(failure, policy, StripeApiHandler.POST, OPTIONS, attempt);
+        assertEquals(1, attempt.mAttemptCount);
+    }
+
+    @Test
+    public void execute_postWithIdempotencyKey_retriesServerErrors() throws StripeException {
+        RetryPolicy policy = createPolicy(3, 0.0);
+        ScriptedAttempt attempt = new ScriptedAttempt(serverError(503), "ok");
+
+        assertEquals("ok", policy.execute(StripeApiHandler.POST, IDEMPOTENT_OPTIONS, attempt));
+        assertEquals(2, attempt.mAttemptCount);
+    }
+
+    @Test
+    public void execute_withPermanentFailures_doesNotRetry() {
+        RetryPolicy policy = createPolicy(3, 0.0);
+        List<StripeException> failures = Arrays.<StripeException>asList(
+                new CardException("declined", "req_1", "card_declined", null, null, null, 402,
+                        null),
+                new InvalidRequestException("bad param", "param", "req_1", 400, null),
+                serverError(409),
+                new APIConnectionException(
+                        "untrusted", new SSLPeerUnverifiedException("untrusted")));
+
+        for (StripeException failure : failures) {
+            ScriptedAttempt attempt = new ScriptedAttempt(failure, "ok");
+            assertThrows(failure, policy, StripeApiHandler.POST, IDEMPOTENT_OPTIONS, attempt);
+            assertEquals(1, attempt.mAttemptCount);
+        }
+        assertTrue(mClock.mSleeps.isEmpty());
+    }
+
+    @Test
+    public void execute_whenRateLimited_honorsRetryAfter() throws StripeException {
+        RetryPolicy policy = createPolicy(3, 0.0);
+        RateLimitException rateLimited =
+                new RateLimitException("slow down", null, "req_1", 429, null, 3000L);
+        ScriptedAttempt attempt = new ScriptedAttempt(rateLimited, "ok");
+
+        assertEquals("ok", policy.execute(StripeApiHandler.GET, OPTIONS, attempt));
+        assertEquals(Collections.singletonList(3000L), mClock.mSleeps);
+    }
+
+    @Test
+    public void execute_whenDelayPassesDeadline_throwsWithoutWaiting() {
+        RetryPolicy policy = createPolicy(3, 0.0);
+        RateLimitException rateLimited =
+                new RateLimitException("slow down", null, "req_1", 429, null, 60000L);
+        ScriptedAttempt attempt = new ScriptedAttempt(rateLimited, "ok");
+
+        assertThrows(rateLimited, policy, StripeApiHandler.GET, OPTIONS, attempt);
+        assertTrue(mClock.mSleeps.isEmpty());
+    }
+
+    @Test
+    public void execute_whenInterrupted_throwsAndKeepsInterruptFlag() {
+        RetryPolicy policy = createPolicy(3, 0.0);
+        mClock.mIsInterrupted = true;
+        APIConnectionException failure = connectionFailure();
+        ScriptedAttempt attempt = new ScriptedAttempt(failure, "ok");
+
+        try {
+            assertThrows(failure, policy, StripeApiHandler.GET, OPTIONS, attempt);
+            assertTrue(Thread.currentThread().isInterrupted());
+        } finally {
+            Thread.interrupted();
+        }
+    }
+
+    @Test
+    public void getDelayMs_withJitter_shortensDelayByUpToHalf() {
+        assertEquals(375L, createPolicy(3, 0.5).getDelayMs(1, connectionFailure()));
+        assertEquals(3750L, createPolicy(3, 0.5).getDelayMs(10, connectionFailure()));
+    }
+
+    private RetryPolicy createPolicy(int maxAttempts, final double randomValue) {
+        return new RetryPolicy(maxAttempts, 500L, 5000L, 15000L, new Random() {
+            @Override
+            public double nextDouble() {
+                return randomValue;
+            }
+        }, mClock);
+    }
+
+    private static APIConnectionException connectionFailure() {
+        return new APIConnectionException("timed out", new SocketTimeoutException("timed out"));
+    }
+
+    private static APIException serverError(int statusCode) {
+        return new APIException("server error", "req_1", statusCode, null, null);
+    }
+
+    private static void assertThrows(
+            StripeException expected,
+            RetryPolicy policy,
+            String method,
+            RequestOptions options,
+            ScriptedAttempt attempt) {
+        try {
+            policy.execute(method, options, attempt);
+            fail("Expected " + expected);
+        } catch (StripeException actual) {
+            assertSame(expected, actual);
+        }
+    }
+
+    private static final class ScriptedAttempt implements RetryPolicy.Attempt<String> {
+        private final List<Object> mOutcomes;
+        int mAttemptCount;
+
+        ScriptedAttempt(Object... outcomes) {
+            mOutcomes = new ArrayList<>(Arrays.asList(outcomes));
+        }
+
+        @Override
+        public String attempt() throws InvalidRequestException, APIConnectionException,
+                CardException, APIException {
+            mAttemptCount++;
+            Object outcome = mOutcomes.remove(0);
+            if (outcome instanceof InvalidRequestException) {
+                throw (InvalidRequestException) outcome;
+            } else if (outcome instanceof APIConnectionException) {
+                throw (APIConnectionException) outcome;
+            } else if (outcome instanceof CardException) {
+                throw (CardException) outcome;
+            } else if (outcome instanceof APIException) {
+                throw (APIException) outcome;
+            }
+            return (String) outcome;
+        }
+    }
+
+    private static final class FakeClock implements RetryPolicy.Clock {
+        final List<Long> mSleeps = new ArrayList<>();
+        boolean mIsInterrupted;
+        private long mNowMs;
+
+        @Override
+        public long nowMs() {
+            return mNowMs;
+        }
+
+        @Override
+        public void sleep(long delayMs) throws InterruptedException {
+            if (mIsInterrupted) {
+                throw new InterruptedException();
+            }
+            mSleeps.add(delayMs);
+            mNowMs += delayMs;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.stripe.android.net;
+
+import android.support.annotation.NonNull;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Test class for {@link ServerSentEventReader}.
+ */
+public class ServerSentEventReaderTest {
+
+    @Test
+    public void readEvent_readsNameAndData() throws IOException {
+        ServerSentEventReader reader = createReader(
+                "event: source\ndata: {\"id\":\"src_1\"}\n\ndata:second\n\n");
+
+        ServerSentEventReader.Event event = reader.readEvent();
+        assertNotNull(event);
+        assertEquals("source", event.mName);
+        assertEquals("{\"id\":\"src_1\"}", event.mData);
+
+        event = reader.readEvent();
+        assertNotNull(event);
+        assertEquals(ServerSentEventReader.Event.DEFAULT_NAME, event.mName);
+        assertEquals("second", event.mData);
+
+        assertNull(reader.readEvent());
+    }
+
+    @Test
+    public void readEvent_joinsDataLines() throws IOException {
+        ServerSentEventReader reader = createReader("data: {\ndata:   \"a\": 1\ndata: }\n\n");
+
+        ServerSentEventReader.Event event = reader.readEvent();
+        assertNotNull(event);
+        assertEquals("{\n  \"a\": 1\n}", event.mData);
+    }
+
+    @Test
+    public void readEvent_skipsCommentsAndEventsWithoutData() throws IOException {
+        ServerSentEventReader reader = createReader(
+                ": keep-alive\n\nevent: ping\nid: 7\nretry: 100\n\r\ndata: ok\r\n\r\n");
+
+        ServerSentEventReader.Event event = reader.readEvent();
+        assertNotNull(event);
+        assertEquals(ServerSentEventReader.Event.DEFAULT_NAME, event.mName);
+        assertEquals("ok", event.mData);
+    }
+
+    @Test
+    public void readEvent_withUnfinishedEvent_returnsNull() throws IOException {
+        assertNull(createReader("data: cut off").readEvent());
+    }
+
+    @NonNull
+    private static ServerSentEventReader createReader(@NonNull String body) throws IOException {
+        return new ServerSentEventReader(new ByteArrayInputStream(body.getBytes("UTF-8")));
+    }
+}
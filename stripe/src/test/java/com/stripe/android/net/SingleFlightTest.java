@@ -0,0 +1,177 @@
+package com.stripe.android.net;
+
+import com.stripe.android.exception.CardException;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+/**
+ * Test class for {@link SingleFlight}.
+ */
+public class SingleFlightTest {
+
+    private static final String KEY = "key";
+
+    @Test
+    public void execute_whenIdenticalCallIsUnderWay_sharesItsResult() throws Exception {
+        final SingleFlight singleFlight = new SingleFlight();
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger callCount = new AtomicInteger();
+        final Object result = new Object();
+        final SingleFlight.Call<Object> call = new SingleFlight.Call<Object>() {
+            @Override
+            public Object call() {
+                callCount.incrementAndGet();
+                try {
+                    release.await(5L, TimeUnit.SECONDS);
+                } catch (InterruptedException unexpected) {
+                    Thread.currentThread().interrupt();
+                }
+                return result;
+            }
+        };
+
+        final Object[] results = new Object[2];
+        Thread leader = startThread(singleFlight, call, results, 0);
+        waitUntil(new Condition() {
+            @Override
+            public boolean isMet() {
+                return callCount.get() == 1;
+            }
+        });
+        Thread follower = startThread(singleFlight, call, results, 1);
+        waitUntil(new Condition() {
+            @Override
+            public boolean isMet() {
+                return singleFlight.getFollowerCount(KEY) == 1;
+            }
+        });
+
+        release.countDown();
+        leader.join(5000L);
+        follower.join(5000L);
+        assertEquals(1, callCount.get());
+        assertSame(result, results[0]);
+        assertSame(result, results[1]);
+    }
+
+    @Test
+    public void execute_afterCallFinished_callsAgain() throws Exception {
+        SingleFlight singleFlight = new SingleFlight();
+        final AtomicInteger callCount = new AtomicInteger();
+        SingleFlight.Call<Integer> call = new SingleFlight.Call<Integer>() {
+            @Override
+            public Integer call() {
+                return callCount.incrementAndGet();
+            }
+        };
+
+        assertEquals(Integer.valueOf(1), singleFlight.execute(KEY, call));
+        assertEquals(Integer.valueOf(2), singleFlight.execute(KEY, call));
+        assertEquals(0, singleFlight.getFollowerCount(KEY));
+    }
+
+    @Test
+    public void execute_whenCallThrows_rethrowsSameException() throws Exception {
+        SingleFlight singleFlight = new SingleFlight();
+        final CardException cardException = new CardException(
+                "declined", "req_1", "card_declined", null, null, null, 402, null);
+        try {
+            singleFlight.execute(KEY, new SingleFlight.Call<Object>() {
+                @Override
+                public Object call() throws CardException {
+                    throw cardException;
+                }
+            });
+            fail("Expected a CardException");
+        } catch (CardException expected) {
+            assertSame(cardException, expected);
+        }
+    }
+
+    @Test
+    public void createKey_ignoresMapOrder() {
+        RequestOptions options = RequestOptions.builder("pk_test").build();
+        Map<String, Object> card = new LinkedHashMap<>();
+        card.put("number", "4242424242424242");
+        card.put("exp_month", 12);
+        Map<String, Object> params = new LinkedHashMap<>();
+        params.put("card", card);
+        params.put("product_usage", Arrays.asList("a", "b"));
+
+        Map<String, Object> reorderedCard = new LinkedHashMap<>();
+        reorderedCard.put("exp_month", 12);
+        reorderedCard.put("number", "4242424242424242");
+        Map<String, Object> reorderedParams = new HashMap<>();
+        reorderedParams.put("product_usage", Arrays.asList("a", "b"));
+        reorderedParams.put("card", reorderedCard);
+
+        assertEquals(
+                SingleFlight.createKey("POST", "url", params, options),
+                SingleFlight.createKey("POST", "url", reorderedParams, options));
+    }
+
+    @Test
+    public void createKey_distinguishesParamsKeysAndIdempotencyKeys() {
+        Map<String, Object> params = new HashMap<>();
+        params.put("number", "4242424242424242");
+        Map<String, Object> otherParams = new HashMap<>();
+        otherParams.put("number", "4000056655665556");
+        RequestOptions options = RequestOptions.builder("pk_test").build();
+
+        String key = SingleFlight.createKey("POST", "url", params, options);
+        assertNotEquals(key, SingleFlight.createKey("POST", "url", otherParams, options));
+        assertNotEquals(key, SingleFlight.createKey(
+                "POST", "url", params, RequestOptions.builder("pk_other").build()));
+        assertNotEquals(key, SingleFlight.createKey(
+                "POST", "url", params,
+                RequestOptions.builder("pk_test").setIdempotencyKey("idem_1").build()));
+        assertFalse(key.contains("4242"));
+    }
+
+    private static Thread startThread(
+            final SingleFlight singleFlight,
+            final SingleFlight.Call<Object> call,
+            final Object[] results,
+            final int index) {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    results[index] = singleFlight.execute(KEY, call);
+                } catch (Exception unexpected) {
+                    results[index] = unexpected;
+                }
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    private static void waitUntil(Condition condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000L;
+        while (!condition.isMet()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("Timed out waiting for condition");
+            }
+            Thread.sleep(5L);
+        }
+    }
+
+    private interface Condition {
+        boolean isMet();
+    }
+}
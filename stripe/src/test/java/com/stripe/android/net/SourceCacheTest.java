@@ -0,0 +1,144 @@
+package com.stripe.android.net;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.stripe.android.model.Source;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test class for {@link SourceCache}.
+ */
+public class SourceCacheTest {
+
+    private static final long PENDING_TTL_MS = 1000L;
+    private static final long SETTLED_TTL_MS = 60000L;
+
+    private FakeClock mClock;
+    private SourceCache mCache;
+
+    @Before
+    public void setup() {
+        mClock = new FakeClock();
+        mCache = new SourceCache(2, PENDING_TTL_MS, SETTLED_TTL_MS, mClock);
+    }
+
+    @Test
+    public void get_withSettledSource_returnsItUntilItExpires() {
+        Source chargeable = createSource(Source.CHARGEABLE);
+        mCache.put("src_1", "secret", chargeable);
+
+        mClock.mNowMs += SETTLED_TTL_MS - 1;
+        assertSame(chargeable, mCache.get("src_1", "secret", true));
+        assertSame(chargeable, mCache.get("src_1", "secret", false));
+
+        mClock.mNowMs += 1;
+        assertNull(mCache.get("src_1", "secret", true));
+        assertEquals(0, mCache.size());
+    }
+
+    @Test
+    public void get_withPendingSource_expiresQuicklyAndIsSkippedByPolls() {
+        Source pending = createSource(Source.PENDING);
+        mCache.put("src_1", "secret", pending);
+
+        assertSame(pending, mCache.get("src_1", "secret", true));
+        assertNull(mCache.get("src_1", "secret", false));
+
+        mClock.mNowMs += PENDING_TTL_MS;
+        assertNull(mCache.get("src_1", "secret", true));
+    }
+
+    @Test
+    public void get_withUnknownStatus_treatsSourceAsPending() {
+        mCache.put("src_1", "secret", createSource(null));
+
+        assertNull(mCache.get("src_1", "secret", false));
+        mClock.mNowMs += PENDING_TTL_MS;
+        assertNull(mCache.get("src_1", "secret", true));
+    }
+
+    @Test
+    public void get_withOtherClientSecret_returnsNull() {
+        mCache.put("src_1", "secret", createSource(Source.CHARGEABLE));
+
+        assertNull(mCache.get("src_1", "other_secret", true));
+        assertNull(mCache.get("src_2", "secret", true));
+    }
+
+    @Test
+    public void put_whenStatusChanges_replacesEntry() {
+        mCache.put("src_1", "secret", createSource(Source.PENDING));
+        Source chargeable = createSource(Source.CHARGEABLE);
+        mCache.put("src_1", "secret", chargeable);
+
+        mClock.mNowMs += PENDING_TTL_MS;
+        assertSame(chargeable, mCache.get("src_1", "secret", false));
+
+        mCache.put("src_1", "secret", null);
+        assertNull(mCache.get("src_1", "secret", true));
+    }
+
+    @Test
+    public void put_beyondMaxSize_evictsLeastRecentlyUsed() {
+        Source first = createSource(Source.CHARGEABLE);
+        mCache.put("src_1", "secret", first);
+        mCache.put("src_2", "secret", createSource(Source.CHARGEABLE));
+        mCache.get("src_1", "secret", true);
+        mCache.put("src_3", "secret", createSource(Source.CHARGEABLE));
+
+        assertEquals(2, mCache.size());
+        assertSame(first, mCache.get("src_1", "secret", true));
+        assertNull(mCache.get("src_2", "secret", true));
+    }
+
+    @Test
+    public void invalidate_forgetsSource() {
+        mCache.put("src_1", "secret", createSource(Source.CHARGEABLE));
+        mCache.put("src_2", "secret", createSource(Source.CHARGEABLE));
+
+        mCache.invalidate("src_1", "secret");
+        assertNull(mCache.get("src_1", "secret", true));
+        assertEquals(1, mCache.size());
+
+        mCache.clear();
+        assertEquals(0, mCache.size());
+    }
+
+    @Test
+    public void none_keepsNothing() {
+        SourceCache.NONE.put("src_1", "secret", createSource(Source.CHARGEABLE));
+
+        assertNull(SourceCache.NONE.get("src_1", "secret", true));
+        assertEquals(0, SourceCache.NONE.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setMaxSize_whenNegative_throwsIllegalArgumentException() {
+        SourceCache.builder().setMaxSize(-1);
+    }
+
+    @NonNull
+    private static Source createSource(@Nullable String status) {
+        Source source = mock(Source.class);
+        when(source.getStatus()).thenReturn(status);
+        return source;
+    }
+
+    private static final class FakeClock implements SourceCache.Clock {
+        long mNowMs = 5000L;
+
+        @Override
+        public long nowMs() {
+            return mNowMs;
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package com.stripe.android.net;
+
+import android.os.Looper;
+import android.support.annotation.NonNull;
+
+import com.stripe.android.BuildConfig;
+import com.stripe.android.exception.StripeException;
+import com.stripe.android.model.Source;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test class for {@link SourceStatusStream}, run against a {@link StubSourceRelay}.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class SourceStatusStreamTest {
+
+    private static final String SOURCE_ID = "src_1";
+    private static final String CLIENT_SECRET = "src_client_secret_1";
+    private static final String PUBLISHABLE_KEY = "pk_test";
+    private static final long WAIT_MS = TimeUnit.SECONDS.toMillis(5);
+
+    @Mock Source mChargeableSource;
+    @Mock SourceRetriever mSourceRetriever;
+
+    private StubSourceRelay mRelay;
+    private SourceStatusStream mStream;
+    private RecordingListener mListener;
+
+    @Before
+    public void setup() throws IOException {
+        MockitoAnnotations.initMocks(this);
+        when(mChargeableSource.getStatus()).thenReturn(Source.CHARGEABLE);
+
+        mRelay = new StubSourceRelay();
+        mListener = new RecordingListener();
+
+        // Polls fall back to the main looper too, so that the test controls both.
+        PollingParameters pollingParameters = PollingParameters.generateDefaultParameters();
+        PollingScheduler scheduler = new PollingScheduler(
+                mSourceRetriever,
+                pollingParameters,
+                new BackoffPollingStrategy(pollingParameters),
+                new Executor() {
+                    @Override
+                    public void execute(@NonNull Runnable command) {
+                        command.run();
+                    }
+                },
+                Looper.getMainLooper());
+        mStream = new SourceStatusStream(
+                mRelay.getUrl(),
+                pollingParameters,
+                new HandlerPollingClock(Looper.getMainLooper()),
+                scheduler);
+    }
+
+    @After
+    public void tearDown() {
+        mRelay.shutdown();
+    }
+
+    @Test
+    public void watch_whenRelayPushesStatuses_reportsEachChange() throws StripeException {
+        mRelay.addSourceEvent(Source.PENDING);
+        mRelay.addEvent(": keep-alive\n\nevent: ping\ndata: {}\n\n");
+        mRelay.addSourceEvent(Source.PENDING);
+        mRelay.addSourceEvent(Source.CHARGEABLE);
+
+        PollingHandle handle =
+                mStream.watch(SOURCE_ID, CLIENT_SECRET, PUBLISHABLE_KEY, mListener, null);
+        PollingResponse response = awaitResponse();
+
+        assertEquals(2, mListener.mStatuses.size());
+        assertEquals(Source.PENDING, mListener.mStatuses.get(0));
+        assertEquals(Source.CHARGEABLE, mListener.mStatuses.get(1));
+        assertTrue(response.isSuccess());
+        assertFalse(response.isExpired());
+        assertEquals(Source.CHARGEABLE, response.getSource().getStatus());
+        assertEquals(PollingHandle.COMPLETED, handle.getState());
+
+        assertEquals(1, mRelay.getRequestUrls().size());
+        assertEquals("/relay?source=src_1&client_secret=src_client_secret_1",
+                mRelay.getRequestUrls().get(0));
+        assertEquals(ServerSentEventReader.CONTENT_TYPE, mRelay.getAcceptHeaders().get(0));
+        verify(mSourceRetriever, never()).retrieveSource(anyString(), anyString(), anyString());
+    }
+
+    @Test
+    public void watch_whenRelayFails_fallsBackToPolling() throws StripeException {
+        mRelay.setResponseCode(404);
+        when(mSourceRetriever.retrieveSource(SOURCE_ID, CLIENT_SECRET, PUBLISHABLE_KEY))
+                .thenReturn(mChargeableSource);
+
+        mStream.watch(SOURCE_ID, CLIENT_SECRET, PUBLISHABLE_KEY, mListener, null);
+        PollingResponse response = awaitResponse();
+
+        assertTrue(response.isSuccess());
+        assertEquals(mChargeableSource, response.getSource());
+        assertEquals(1, mListener.mStatuses.size());
+        verify(mSourceRetriever, times(1))
+                .retrieveSource(SOURCE_ID, CLIENT_SECRET, PUBLISHABLE_KEY);
+    }
+
+    @Test
+    public void watch_whenStreamEndsBeforeSettling_pollsForTheRest() throws StripeException {
+        mRelay.addSourceEvent(Source.PENDING);
+        when(mSourceRetriever.retrieveSource(SOURCE_ID, CLIENT_SECRET, PUBLISHABLE_KEY))
+                .thenReturn(mChargeableSource);
+
+        mStream.watch(SOURCE_ID, CLIENT_SECRET, PUBLISHABLE_KEY, mListener, null);
+        PollingResponse response = awaitResponse();
+
+        assertTrue(response.isSuccess());
+        assertEquals(2, mListener.mStatuses.size());
+        assertEquals(Source.PENDING, mListener.mStatuses.get(0));
+        assertEquals(Source.CHARGEABLE, mListener.mStatuses.get(1));
+        verify(mSourceRetriever, times(1))
+                .retrieveSource(SOURCE_ID, CLIENT_SECRET, PUBLISHABLE_KEY);
+    }
+
+    @Test
+    public void watch_whenTimeoutPasses_expiresWithLatestSource() throws StripeException {
+        mRelay.addSourceEvent(Source.PENDING);
+        mRelay.setHoldsOpen(true);
+
+        mStream.watch(SOURCE_ID, CLIENT_SECRET, PUBLISHABLE_KEY, mListener, 5000);
+        awaitStatusCount(1);
+        ShadowLooper.idleMainLooper(5000);
+
+        PollingResponse response = mListener.mResponse;
+        assertNotNull(response);
+        assertTrue(response.isExpired());
+        assertFalse(response.isSuccess());
+        assertEquals(Source.PENDING, response.getSource().getStatus());
+        verify(mSourceRetriever, never()).retrieveSource(anyString(), anyString(), anyString());
+    }
+
+    @Test
+    public void watch_whenCanceled_neverCallsBack() throws Exception {
+        mRelay.addSourceEvent(Source.PENDING);
+        mRelay.setHoldsOpen(true);
+
+        PollingHandle handle =
+                mStream.watch(SOURCE_ID, CLIENT_SECRET, PUBLISHABLE_KEY, mListener, 5000);
+        awaitStatusCount(1);
+        assertTrue(handle.cancel());
+        assertEquals(PollingHandle.CANCELED, handle.getState());
+
+        // The closed stream does not make the watch fall back to polling.
+        Thread.sleep(200);
+        ShadowLooper.idleMainLooper(10000);
+        assertNull(mListener.mResponse);
+        verify(mSourceRetriever, never()).retrieveSource(anyString(), anyString(), anyString());
+    }
+
+    @NonNull
+    private PollingResponse awaitResponse() {
+        long deadlineMs = System.currentTimeMillis() + WAIT_MS;
+        while (mListener.mResponse == null && System.currentTimeMillis() < deadlineMs) {
+            idle();
+        }
+        if (mListener.mResponse == null) {
+            fail("No response from the stream");
+        }
+        return mListener.mResponse;
+    }
+
+    private void awaitStatusCount(int count) {
+        long deadlineMs = System.currentTimeMillis() + WAIT_MS;
+        while (mListener.mStatuses.size() < count && System.currentTimeMillis() < deadlineMs) {
+            idle();
+        }
+        assertEquals(count, mListener.mStatuses.size());
+    }
+
+    private static void idle() {
+        ShadowLooper.runUiThreadTasks();
+        try {
+            Thread.sleep(10);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class RecordingListener implements SourceStatusStream.Listener {
+        @NonNull final List<String> mStatuses = new ArrayList<>();
+        PollingResponse mResponse;
+
+        @Override
+        public void onStatusChanged(@NonNull Source source) {
+            mStatuses.add(source.getStatus());
+        }
+
+        @Override
+        public void onPollingResponse(@NonNull PollingResponse pollingResponse) {
+            mResponse = pollingResponse;
+        }
+    }
+}
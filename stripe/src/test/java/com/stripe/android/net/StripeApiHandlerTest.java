@@ -1,8 +1,12 @@
 package com.stripe.android.net;
 
+import android.support.annotation.NonNull;
+
 import com.stripe.android.BuildConfig;
 import com.stripe.android.Stripe;
 import com.stripe.android.StripeTest;
+import com.stripe.android.exception.APIConnectionException;
+import com.stripe.android.exception.APIException;
 import com.stripe.android.exception.AuthenticationException;
 import com.stripe.android.exception.InvalidRequestException;
 import com.stripe.android.exception.StripeException;
@@ -10,6 +14,7 @@ import com.stripe.android.model.Card;
 import com.stripe.android.model.Source;
 import com.stripe.android.model.SourceParams;
 import com.stripe.android.model.Token;
+import com.stripe.android.testharness.StubHttpServer;
 import com.stripe.android.util.LoggingUtils;
 import com.stripe.android.util.StripeNetworkUtils;
 
@@ -21,13 +26,21 @@ import org.robolectric.RobolectricTestRunner;
 import org.robolectric.RuntimeEnvironment;
 import org.robolectric.annotation.Config;
 
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -40,6 +53,10 @@ public class StripeApiHandlerTest {
 
     private static final String FUNCTIONAL_SOURCE_PUBLISHABLE_KEY =
             "pk_test_vOo1umqsYxSrP5UXfOeL3ecm";
+    private static final String SOURCE_JSON =
+            "{\"id\":\"src_1\",\"object\":\"source\",\"status\":\"pending\"}";
+    private static final String CHARGEABLE_SOURCE_JSON =
+            "{\"id\":\"src_1\",\"object\":\"source\",\"status\":\"chargeable\"}";
 
     @Test
     public void testGetApiUrl() {
@@ -81,6 +98,8 @@ public class StripeApiHandlerTest {
         assertEquals("Bearer " + fakePublicKey, headerMap.get("Authorization"));
         assertEquals(idempotencyKey, headerMap.get("Idempotency-Key"));
         assertEquals(apiVersion, headerMap.get("Stripe-Version"));
+        // Accept, Accept-Charset, User-Agent and X-Stripe-Client-User-Agent, and nothing else.
+        assertEquals(7, headerMap.size());
     }
 
     @Test
@@ -94,6 +113,56 @@ public class StripeApiHandlerTest {
         assertTrue(headerMap.containsKey("Authorization"));
     }
 
+    @Test
+    public void withIdempotencyKey_generatesKeyOnlyWhenMissing() {
+        RequestOptions explicitOptions = RequestOptions.builder("some_key")
+                .setIdempotencyKey("idempotency_rules")
+                .build();
+        assertEquals(explicitOptions, explicitOptions.withIdempotencyKey());
+
+        RequestOptions generatedOptions =
+                RequestOptions.builder("some_key").build().withIdempotencyKey();
+        Map<String, String> headerMap = StripeApiHandler.getHeaders(generatedOptions);
+        assertNotNull(generatedOptions.getIdempotencyKey());
+        assertEquals(generatedOptions.getIdempotencyKey(), headerMap.get("Idempotency-Key"));
+        assertEquals("some_key", generatedOptions.getPublishableApiKey());
+    }
+
+    @Test
+    public void getHeaders_withSameOptions_reusesHeaders() {
+        RequestOptions requestOptions = RequestOptions.builder("some_key").build();
+        Map<String, String> headerMap = StripeApiHandler.getHeaders(requestOptions);
+        assertSame(headerMap, StripeApiHandler.getHeaders(requestOptions));
+
+        Map<String, String> otherHeaderMap =
+                StripeApiHandler.getHeaders(RequestOptions.builder("other_key").build());
+        assertEquals("Bearer other_key", otherHeaderMap.get("Authorization"));
+        assertEquals(headerMap.get("X-Stripe-Client-User-Agent"),
+                otherHeaderMap.get("X-Stripe-Client-User-Agent"));
+    }
+
+    @Test
+    public void warmUp_withCustomTransport_sendsNothing() throws APIConnectionException {
+        final int[] requestCount = new int[1];
+        StripeApiHandler.setHttpTransport(new HttpTransport() {
+            @Override
+            public StripeResponse execute(
+                    String method,
+                    String url,
+                    String query,
+                    Map<String, String> headers) {
+                requestCount[0]++;
+                return new StripeResponse(200, "{}", null);
+            }
+        });
+        try {
+            StripeApiHandler.warmUp();
+            assertEquals(0, requestCount[0]);
+        } finally {
+            StripeApiHandler.setHttpTransport(null);
+        }
+    }
+
     @Test
     public void getHeaders_containsPropertyMapValues() {
         RequestOptions requestOptions = RequestOptions.builder("some_key").build();
@@ -144,6 +213,30 @@ public class StripeApiHandlerTest {
         }
     }
 
+    @Test
+    public void parseRetryAfterMs_withSeconds_returnsMillis() {
+        assertEquals(Long.valueOf(120000L), StripeApiHandler.parseRetryAfterMs(
+                Collections.singletonList(" 120 "), 0L));
+    }
+
+    @Test
+    public void parseRetryAfterMs_withHttpDate_returnsTimeUntilDate() {
+        // Ten seconds before the date in the header.
+        long nowMs = 1445412470000L;
+        assertEquals(Long.valueOf(10000L), StripeApiHandler.parseRetryAfterMs(
+                Collections.singletonList("Wed, 21 Oct 2015 07:28:00 GMT"), nowMs));
+        assertEquals(Long.valueOf(0L), StripeApiHandler.parseRetryAfterMs(
+                Collections.singletonList("Wed, 21 Oct 2015 07:28:00 GMT"), nowMs + 60000L));
+    }
+
+    @Test
+    public void parseRetryAfterMs_withMissingOrInvalidValue_returnsNull() {
+        assertNull(StripeApiHandler.parseRetryAfterMs(null, 0L));
+        assertNull(StripeApiHandler.parseRetryAfterMs(Collections.<String>emptyList(), 0L));
+        assertNull(StripeApiHandler.parseRetryAfterMs(Collections.singletonList("-5"), 0L));
+        assertNull(StripeApiHandler.parseRetryAfterMs(Collections.singletonList("soon"), 0L));
+    }
+
     @Test
     public void createSource_shouldLogSourceCreation_andReturnSource() {
         try {
@@ -158,6 +251,10 @@ public class StripeApiHandlerTest {
             // Check that we get a token back; we don't care about its fields for this test.
             assertNotNull(source);
 
+            // Logging happens in the background, so wait for it to be sent.
+            StripeApiHandler.getAnalyticsQueue().flush();
+            StripeApiHandler.getAnalyticsQueue().awaitIdle(10000L);
+
             assertNull(testLoggingListener.mStripeException);
             assertNotNull(testLoggingListener.mStripeResponse);
             assertEquals(200, testLoggingListener.mStripeResponse.getResponseCode());
@@ -167,6 +264,236 @@ public class StripeApiHandlerTest {
         } catch (StripeException stripeEx) {
             fail("Unexpected error when connecting to Stripe API: "
                     + stripeEx.getLocalizedMessage());
+        } catch (InterruptedException interrupted) {
+            fail("Interrupted while waiting for the logging request");
+        }
+    }
+
+    @Test
+    public void retrieveSource_whenSettled_reusesCachedSource() throws StripeException {
+        RecordingTransport transport = new RecordingTransport(
+                new StripeResponse(200, CHARGEABLE_SOURCE_JSON, null));
+        StripeApiHandler.setHttpTransport(transport);
+        try {
+            Source first = StripeApiHandler.retrieveSource("src_1", "secret", "pk_test");
+            Source second = StripeApiHandler.retrieveSource("src_1", "secret", "pk_test");
+            // Polling waits for a change, but a settled source will not change.
+            Source polled = StripeApiHandler.retrieveSource(
+                    "src_1", "secret", "pk_test", RetryPolicy.NONE, false);
+
+            assertNotNull(first);
+            assertSame(first, second);
+            assertSame(first, polled);
+            assertEquals(1, transport.mHeaders.size());
+        } finally {
+            StripeApiHandler.setHttpTransport(null);
+            StripeApiHandler.setSourceCache(null);
+        }
+    }
+
+    @Test
+    public void retrieveSource_whenPolledWhilePending_asksAgainAndRecordsChange()
+            throws StripeException {
+        RecordingTransport transport = new RecordingTransport(
+                new StripeResponse(200, SOURCE_JSON, null),
+                new StripeResponse(200, CHARGEABLE_SOURCE_JSON, null));
+        StripeApiHandler.setHttpTransport(transport);
+        try {
+            Source pending = StripeApiHandler.retrieveSource("src_1", "secret", "pk_test");
+            Source polled = StripeApiHandler.retrieveSource(
+                    "src_1", "secret", "pk_test", RetryPolicy.NONE, false);
+            Source latest = StripeApiHandler.retrieveSource("src_1", "secret", "pk_test");
+
+            assertEquals(Source.PENDING, pending.getStatus());
+            assertEquals(Source.CHARGEABLE, polled.getStatus());
+            assertSame(polled, latest);
+            assertEquals(2, transport.mHeaders.size());
+        } finally {
+            StripeApiHandler.setHttpTransport(null);
+            StripeApiHandler.setSourceCache(null);
+        }
+    }
+
+    @Test
+    public void retrieveSource_whenNotModified_reusesParsedSource() throws StripeException {
+        RecordingTransport transport = new RecordingTransport(
+                new StripeResponse(200, SOURCE_JSON, etagHeaders("\"v1\"")),
+                new StripeResponse(304, null, etagHeaders("\"v1\"")));
+        StripeApiHandler.setHttpTransport(transport);
+        StripeApiHandler.setSourceCache(SourceCache.NONE);
+        try {
+            Source first = StripeApiHandler.retrieveSource("src_1", "secret", "pk_test");
+            Source second = StripeApiHandler.retrieveSource("src_1", "secret", "pk_test");
+
+            assertNotNull(first);
+            assertSame(first, second);
+            assertNull(transport.mHeaders.get(0).get("If-None-Match"));
+            assertEquals("\"v1\"", transport.mHeaders.get(1).get("If-None-Match"));
+        } finally {
+            StripeApiHandler.setHttpTransport(null);
+            StripeApiHandler.getSourceEntityTags().clear();
+            StripeApiHandler.setSourceCache(null);
+        }
+    }
+
+    @Test
+    public void retrieveSource_whenChanged_replacesRememberedSource() throws StripeException {
+        RecordingTransport transport = new RecordingTransport(
+                new StripeResponse(200, SOURCE_JSON, etagHeaders("\"v1\"")),
+                new StripeResponse(200, SOURCE_JSON, etagHeaders("\"v2\"")),
+                new StripeResponse(200, SOURCE_JSON, null),
+                new StripeResponse(200, SOURCE_JSON, null));
+        StripeApiHandler.setHttpTransport(transport);
+        StripeApiHandler.setSourceCache(SourceCache.NONE);
+        try {
+            Source first = StripeApiHandler.retrieveSource("src_1", "secret", "pk_test");
+            Source second = StripeApiHandler.retrieveSource("src_1", "secret", "pk_test");
+            StripeApiHandler.retrieveSource("src_1", "secret", "pk_test");
+            StripeApiHandler.retrieveSource("src_1", "secret", "pk_test");
+
+            assertNotSame(first, second);
+            assertEquals("\"v1\"", transport.mHeaders.get(1).get("If-None-Match"));
+            assertEquals("\"v2\"", transport.mHeaders.get(2).get("If-None-Match"));
+            // A response without an ETag leaves nothing to ask with.
+            assertNull(transport.mHeaders.get(3).get("If-None-Match"));
+        } finally {
+            StripeApiHandler.setHttpTransport(null);
+            StripeApiHandler.getSourceEntityTags().clear();
+            StripeApiHandler.setSourceCache(null);
+        }
+    }
+
+    @Test
+    public void retrieveSource_withOtherClientSecret_sendsNoEntityTag() throws StripeException {
+        RecordingTransport transport = new RecordingTransport(
+                new StripeResponse(200, SOURCE_JSON, etagHeaders("\"v1\"")),
+                new StripeResponse(200, SOURCE_JSON, etagHeaders("\"v1\"")));
+        StripeApiHandler.setHttpTransport(transport);
+        StripeApiHandler.setSourceCache(SourceCache.NONE);
+        try {
+            StripeApiHandler.retrieveSource("src_1", "secret", "pk_test");
+            StripeApiHandler.retrieveSource("src_1", "other_secret", "pk_test");
+
+            assertNull(transport.mHeaders.get(1).get("If-None-Match"));
+        } finally {
+            StripeApiHandler.setHttpTransport(null);
+            StripeApiHandler.getSourceEntityTags().clear();
+            StripeApiHandler.setSourceCache(null);
+        }
+    }
+
+    @Test
+    public void retrieveSource_overStreamingTransport_handlesNotModified()
+            throws IOException, StripeException {
+        StubHttpServer server = new StubHttpServer();
+        server.enqueue(new StubHttpServer.StubResponse(200, SOURCE_JSON)
+                .setHeader("ETag", "\"v1\""));
+        server.enqueue(new StubHttpServer.StubResponse(304, ""));
+        StripeApiHandler.setHttpTransport(new LocalTransport(server));
+        StripeApiHandler.setSourceCache(SourceCache.NONE);
+        try {
+            Source first = StripeApiHandler.retrieveSource("src_1", "secret", "pk_test");
+            Source second = StripeApiHandler.retrieveSource("src_1", "secret", "pk_test");
+
+            assertNotNull(first);
+            assertSame(first, second);
+            List<StubHttpServer.RecordedRequest> requests = server.getRequests();
+            assertEquals(2, requests.size());
+            assertNull(requests.get(0).getHeader("If-None-Match"));
+            assertEquals("\"v1\"", requests.get(1).getHeader("If-None-Match"));
+        } finally {
+            StripeApiHandler.setHttpTransport(null);
+            StripeApiHandler.getSourceEntityTags().clear();
+            StripeApiHandler.setSourceCache(null);
+            server.shutdown();
+        }
+    }
+
+    @Test
+    public void retrieveSource_overStreamingTransport_whenNotModifiedUnasked_throwsApiException()
+            throws IOException, StripeException {
+        StubHttpServer server = new StubHttpServer();
+        server.enqueue(new StubHttpServer.StubResponse(304, ""));
+        StripeApiHandler.setHttpTransport(new LocalTransport(server));
+        StripeApiHandler.setSourceCache(SourceCache.NONE);
+        try {
+            StripeApiHandler.retrieveSource("src_1", "secret", "pk_test", RetryPolicy.NONE);
+            fail("Expected an APIException");
+        } catch (APIException expected) {
+            assertEquals(ErrorParser.MALFORMED_RESPONSE_MESSAGE, expected.getMessage());
+            assertEquals(Integer.valueOf(304), expected.getStatusCode());
+            assertNull(server.getRequests().get(0).getHeader("If-None-Match"));
+        } finally {
+            StripeApiHandler.setHttpTransport(null);
+            StripeApiHandler.getSourceEntityTags().clear();
+            StripeApiHandler.setSourceCache(null);
+            server.shutdown();
+        }
+    }
+
+    @NonNull
+    private static Map<String, List<String>> etagHeaders(@NonNull String entityTag) {
+        return Collections.singletonMap("ETag", Collections.singletonList(entityTag));
+    }
+
+    /**
+     * Answers with the given responses in turn, and records the headers of each request.
+     */
+    private static final class RecordingTransport implements HttpTransport {
+        @NonNull final LinkedList<StripeResponse> mResponses = new LinkedList<>();
+        @NonNull final List<Map<String, String>> mHeaders = new ArrayList<>();
+
+        RecordingTransport(@NonNull StripeResponse... responses) {
+            Collections.addAll(mResponses, responses);
+        }
+
+        @NonNull
+        @Override
+        public StripeResponse execute(
+                @NonNull String method,
+                @NonNull String url,
+                String query,
+                @NonNull Map<String, String> headers) {
+            mHeaders.add(headers);
+            return mResponses.removeFirst();
+        }
+    }
+
+    /**
+     * Sends every request to a local server instead of to Stripe.
+     */
+    private static final class LocalTransport implements StreamingHttpTransport {
+        @NonNull private final StubHttpServer mServer;
+        @NonNull private final UrlConnectionHttpTransport mDelegate =
+                new UrlConnectionHttpTransport();
+
+        LocalTransport(@NonNull StubHttpServer server) {
+            mServer = server;
+        }
+
+        @NonNull
+        @Override
+        public StripeResponse execute(
+                @NonNull String method,
+                @NonNull String url,
+                String query,
+                @NonNull Map<String, String> headers) throws IOException {
+            return mDelegate.execute(method, toLocalUrl(url), query, headers);
+        }
+
+        @Override
+        public <T> T execute(
+                @NonNull String method,
+                @NonNull String url,
+                String query,
+                @NonNull Map<String, String> headers,
+                @NonNull ResponseHandler<T> handler) throws IOException {
+            return mDelegate.execute(method, toLocalUrl(url), query, headers, handler);
+        }
+
+        @NonNull
+        private String toLocalUrl(@NonNull String url) throws IOException {
+            return mServer.getUrl(new URL(url).getPath());
         }
     }
 
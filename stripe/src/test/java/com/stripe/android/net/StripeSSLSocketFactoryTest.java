@@ -0,0 +1,59 @@
+package com.stripe.android.net;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocket;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test class for {@link StripeSSLSocketFactory}.
+ */
+public class StripeSSLSocketFactoryTest {
+
+    @Test
+    public void constructor_configuresSessionCache() {
+        StripeSSLSocketFactory factory = new StripeSSLSocketFactory(5, 60);
+
+        SSLSessionContext sessionContext = factory.getSessionContext();
+        assertNotNull(sessionContext);
+        assertEquals(5, sessionContext.getSessionCacheSize());
+        assertEquals(60, sessionContext.getSessionTimeout());
+    }
+
+    @Test
+    public void createSocket_enablesSameProtocolsOnEverySocket() throws IOException {
+        StripeSSLSocketFactory factory = new StripeSSLSocketFactory();
+        SSLSocket first = (SSLSocket) factory.createSocket();
+        SSLSocket second = (SSLSocket) factory.createSocket();
+        try {
+            assertArrayEquals(first.getEnabledProtocols(), second.getEnabledProtocols());
+            assertTrue(Arrays.asList(first.getEnabledProtocols()).contains("TLSv1.2"));
+        } finally {
+            first.close();
+            second.close();
+        }
+    }
+
+    @Test
+    public void isResumed_whenSessionIsOlderThanSocket_returnsTrue() {
+        SSLSession session = mock(SSLSession.class);
+        when(session.getCreationTime()).thenReturn(5000L);
+
+        // A session created after the socket was is new; one created before was resumed.
+        assertFalse(StripeSSLSocketFactory.isResumed(session, 1000L));
+        assertFalse(StripeSSLSocketFactory.isResumed(session, 5000L));
+        assertTrue(StripeSSLSocketFactory.isResumed(session, 9000L));
+    }
+}
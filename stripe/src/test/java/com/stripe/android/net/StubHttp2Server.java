@@ -0,0 +1,548 @@
+package com.stripe.android.net;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A local HTTP/2 server for tests of {@link Http2Transport}. It speaks cleartext HTTP/2 with
+ * prior knowledge, since there is no certificate to negotiate it over TLS with, and implements
+ * just enough of the protocol to answer the requests the transport sends.
+ *
+ * It lives in this package rather than the test harness so that it can read the requests'
+ * headers with {@link Hpack.Decoder}. Responses are written with its own encoder, which adds
+ * every header to the dynamic table and refers to it from then on, so that the client's
+ * decoder is kept busy.
+ */
+class StubHttp2Server {
+
+    private static final int MAX_FRAME_SIZE = 16384;
+    private static final int PREFACE_LENGTH = 24;
+
+    private final ServerSocket mServerSocket;
+    private final ConcurrentLinkedQueue<Response> mResponses = new ConcurrentLinkedQueue<>();
+    private final List<RecordedRequest> mRequests =
+            Collections.synchronizedList(new ArrayList<RecordedRequest>());
+    private final List<Socket> mSockets = Collections.synchronizedList(new ArrayList<Socket>());
+
+    private volatile Response mDefaultResponse = new Response(200, "{}");
+    private volatile int mMaxConcurrentStreams;
+
+    // Guarded by this.
+    private int mOpenRequests;
+    private int mPeakOpenRequests;
+    private int mHoldUntilOpen;
+    private int mResetCount;
+
+    StubHttp2Server() throws IOException {
+        mServerSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        Thread acceptor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                acceptConnections();
+            }
+        }, "StubHttp2Server acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    @NonNull
+    String getUrl(@NonNull String path) {
+        return "http://" + mServerSocket.getInetAddress().getHostAddress() + ":"
+                + mServerSocket.getLocalPort() + path;
+    }
+
+    /**
+     * @return the host key to pass to {@link Http2Transport} as a cleartext HTTP/2 host
+     */
+    @NonNull
+    String getHostKey() throws IOException {
+        return ConnectionLimiter.hostKey(new URL(getUrl("/")));
+    }
+
+    void enqueue(@NonNull Response response) {
+        mResponses.add(response);
+    }
+
+    void setDefaultResponse(@NonNull Response response) {
+        mDefaultResponse = response;
+    }
+
+    /**
+     * Advertise a limit on concurrent streams to connections accepted from now on.
+     */
+    void setMaxConcurrentStreams(int maxConcurrentStreams) {
+        mMaxConcurrentStreams = maxConcurrentStreams;
+    }
+
+    /**
+     * Hold back every response until the given number of requests are waiting for one at the
+     * same time, or five seconds have passed.
+     */
+    synchronized void holdResponsesUntilOpen(int openRequests) {
+        mHoldUntilOpen = openRequests;
+        notifyAll();
+    }
+
+    /**
+     * @return the largest number of requests that were waiting for a response at one time
+     */
+    synchronized int getPeakOpenRequests() {
+        return mPeakOpenRequests;
+    }
+
+    /**
+     * @return the number of streams the client has reset
+     */
+    synchronized int getResetCount() {
+        return mResetCount;
+    }
+
+    @NonNull
+    List<RecordedRequest> getRequests() {
+        synchronized (mRequests) {
+            return new ArrayList<>(mRequests);
+        }
+    }
+
+    int getConnectionCount() {
+        return mSockets.size();
+    }
+
+    void shutdown() {
+        try {
+            mServerSocket.close();
+        } catch (IOException ignored) {
+        }
+        synchronized (mSockets) {
+            for (Socket socket : mSockets) {
+                try {
+                    socket.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    private void acceptConnections() {
+        while (!mServerSocket.isClosed()) {
+            try {
+                final Socket socket = mServerSocket.accept();
+                mSockets.add(socket);
+                Thread reader = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            new Connection(socket).serve();
+                        } catch (IOException closed) {
+                            // The client went away, or the server shut down.
+                        } finally {
+                            try {
+                                socket.close();
+                            } catch (IOException ignored) {
+                            }
+                        }
+                    }
+                }, "StubHttp2Server connection");
+                reader.setDaemon(true);
+                reader.start();
+            } catch (IOException closed) {
+                return;
+            }
+        }
+    }
+
+    @NonNull
+    private Response nextResponse() {
+        Response response = mResponses.poll();
+        return response == null ? mDefaultResponse : response;
+    }
+
+    private synchronized void openRequest() {
+        mOpenRequests++;
+        mPeakOpenRequests = Math.max(mPeakOpenRequests, mOpenRequests);
+        notifyAll();
+    }
+
+    private synchronized void awaitTurn() {
+        long deadlineMs = System.currentTimeMillis() + 5000L;
+        long remainingMs;
+        while (mPeakOpenRequests < mHoldUntilOpen
+                && (remainingMs = deadlineMs - System.currentTimeMillis()) > 0) {
+            try {
+                wait(remainingMs);
+            } catch (InterruptedException interrupted) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private synchronized void finishTurn() {
+        mOpenRequests--;
+    }
+
+    private synchronized void onReset() {
+        mResetCount++;
+    }
+
+    /**
+     * The server's side of one connection.
+     */
+    private final class Connection {
+
+        @NonNull private final DataInputStream mInput;
+        // Guarded by itself, along with the encoder's dynamic table.
+        @NonNull private final OutputStream mOutput;
+        @NonNull private final List<Hpack.Header> mEncoderTable = new ArrayList<>();
+        private int mEncoderTableSize;
+
+        @NonNull private final Hpack.Decoder mDecoder =
+                new Hpack.Decoder(Hpack.DEFAULT_TABLE_SIZE);
+        @NonNull private final Map<Integer, PendingRequest> mPending = new HashMap<>();
+
+        Connection(@NonNull Socket socket) throws IOException {
+            mInput = new DataInputStream(socket.getInputStream());
+            mOutput = socket.getOutputStream();
+        }
+
+        void serve() throws IOException {
+            byte[] preface = new byte[PREFACE_LENGTH];
+            mInput.readFully(preface);
+            if (!"PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n".equals(new String(preface, "US-ASCII"))) {
+                throw new IOException("Not an HTTP/2 client");
+            }
+            synchronized (mOutput) {
+                int maxConcurrentStreams = mMaxConcurrentStreams;
+                if (maxConcurrentStreams > 0) {
+                    writeFrameHeader(6, 0x4, 0, 0);
+                    writeShort(0x3);
+                    writeInt(maxConcurrentStreams);
+                } else {
+                    writeFrameHeader(0, 0x4, 0, 0);
+                }
+                mOutput.flush();
+            }
+
+            int continuedStreamId = 0;
+            while (true) {
+                int length = (mInput.readUnsignedShort() << 8) | mInput.readUnsignedByte();
+                int type = mInput.readUnsignedByte();
+                int flags = mInput.readUnsignedByte();
+                int streamId = mInput.readInt() & 0x7FFFFFFF;
+                byte[] payload = new byte[length];
+                mInput.readFully(payload);
+
+                switch (type) {
+                    case 0x0:
+                        // DATA
+                        PendingRequest request = mPending.get(streamId);
+                        if (request != null) {
+                            request.mBody.write(payload, 0, length);
+                            if ((flags & 0x1) != 0) {
+                                dispatch(streamId);
+                            }
+                        }
+                        break;
+                    case 0x1:
+                        // HEADERS
+                        PendingRequest started = new PendingRequest();
+                        started.mEndStream = (flags & 0x1) != 0;
+                        mPending.put(streamId, started);
+                        int start = (flags & 0x20) != 0 ? 5 : 0;
+                        started.mBlock.write(payload, start, length - start);
+                        if ((flags & 0x4) != 0) {
+                            onHeaderBlock(streamId);
+                        } else {
+                            continuedStreamId = streamId;
+                        }
+                        break;
+                    case 0x9:
+                        // CONTINUATION
+                        mPending.get(continuedStreamId).mBlock.write(payload, 0, length);
+                        if ((flags & 0x4) != 0) {
+                            onHeaderBlock(continuedStreamId);
+                        }
+                        break;
+                    case 0x3:
+                        // RST_STREAM
+                        onReset();
+                        break;
+                    case 0x4:
+                        // SETTINGS
+                        if ((flags & 0x1) == 0) {
+                            synchronized (mOutput) {
+                                writeFrameHeader(0, 0x4, 0x1, 0);
+                                mOutput.flush();
+                            }
+                        }
+                        break;
+                    case 0x6:
+                        // PING
+                        if ((flags & 0x1) == 0) {
+                            synchronized (mOutput) {
+                                writeFrameHeader(length, 0x6, 0x1, 0);
+                                mOutput.write(payload);
+                                mOutput.flush();
+                            }
+                        }
+                        break;
+                    case 0x7:
+                        // GOAWAY
+                        return;
+                    default:
+                        // PRIORITY and WINDOW_UPDATE; responses are small enough to ignore flow
+                        // control.
+                        break;
+                }
+            }
+        }
+
+        private void onHeaderBlock(int streamId) throws IOException {
+            PendingRequest request = mPending.get(streamId);
+            byte[] block = request.mBlock.toByteArray();
+            request.mHeaders = mDecoder.decode(block, 0, block.length);
+            if (request.mEndStream) {
+                dispatch(streamId);
+            }
+        }
+
+        private void dispatch(final int streamId) {
+            PendingRequest request = mPending.remove(streamId);
+            mRequests.add(new RecordedRequest(request.mHeaders, request.mBody.toByteArray()));
+            final Response response = nextResponse();
+            // Counted here, on the reader thread, so that a request is open from the moment it
+            // arrives rather than from whenever its responder thread gets to run.
+            openRequest();
+            Thread responder = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    boolean finished = false;
+                    try {
+                        awaitTurn();
+                        if (response.mDelayMs > 0) {
+                            Thread.sleep(response.mDelayMs);
+                        }
+                        // Closed before the client can see the response and open its next
+                        // stream, which would otherwise be counted alongside this one.
+                        finishTurn();
+                        finished = true;
+                        respond(streamId, response);
+                    } catch (IOException | InterruptedException closed) {
+                        // The connection is gone; the test will notice.
+                    } finally {
+                        if (!finished) {
+                            finishTurn();
+                        }
+                    }
+                }
+            }, "StubHttp2Server responder");
+            responder.setDaemon(true);
+            responder.start();
+        }
+
+        private void respond(int streamId, @NonNull Response response) throws IOException {
+            synchronized (mOutput) {
+                if (response.mIsRefused) {
+                    writeFrameHeader(4, 0x3, 0, streamId);
+                    writeInt(Http2Connection.ERROR_REFUSED_STREAM);
+                    mOutput.flush();
+                    return;
+                }
+
+                List<Hpack.Header> headers = new ArrayList<>();
+                headers.add(new Hpack.Header(":status", String.valueOf(response.mCode)));
+                headers.add(new Hpack.Header(
+                        "content-length", String.valueOf(response.mBody.length)));
+                for (Map.Entry<String, String> header : response.mHeaders.entrySet()) {
+                    headers.add(new Hpack.Header(header.getKey().toLowerCase(), header.getValue()));
+                }
+                byte[] block = encode(headers);
+                boolean hasBody = response.mBody.length > 0;
+                writeFrameHeader(block.length, 0x1, hasBody ? 0x4 : 0x5, streamId);
+                mOutput.write(block);
+
+                int position = 0;
+                while (position < response.mBody.length) {
+                    int length = Math.min(MAX_FRAME_SIZE, response.mBody.length - position);
+                    boolean isLast = position + length == response.mBody.length;
+                    writeFrameHeader(length, 0x0, isLast ? 0x1 : 0, streamId);
+                    mOutput.write(response.mBody, position, length);
+                    position += length;
+                }
+                mOutput.flush();
+            }
+        }
+
+        @NonNull
+        private byte[] encode(@NonNull List<Hpack.Header> headers) {
+            ByteArrayOutputStream block = new ByteArrayOutputStream();
+            for (Hpack.Header header : headers) {
+                int index = mEncoderTable.indexOf(header);
+                if (index != -1) {
+                    // The newest entry is index 62, right after the static table.
+                    writeHpackInt(block, 0x80, 7, 62 + index);
+                    continue;
+                }
+                // A literal with a new name, added to the table.
+                block.write(0x40);
+                writeHpackString(block, header.name);
+                writeHpackString(block, header.value);
+                mEncoderTable.add(0, header);
+                mEncoderTableSize += header.size();
+                while (mEncoderTableSize > Hpack.DEFAULT_TABLE_SIZE) {
+                    mEncoderTableSize -= mEncoderTable.remove(mEncoderTable.size() - 1).size();
+                }
+            }
+            return block.toByteArray();
+        }
+
+        private void writeFrameHeader(int length, int type, int flags, int streamId)
+                throws IOException {
+            mOutput.write(length >>> 16);
+            mOutput.write(length >>> 8);
+            mOutput.write(length);
+            mOutput.write(type);
+            mOutput.write(flags);
+            writeInt(streamId);
+        }
+
+        private void writeShort(int value) throws IOException {
+            mOutput.write(value >>> 8);
+            mOutput.write(value);
+        }
+
+        private void writeInt(int value) throws IOException {
+            writeShort(value >>> 16);
+            writeShort(value);
+        }
+    }
+
+    private static void writeHpackString(
+            @NonNull ByteArrayOutputStream output,
+            @NonNull String s) {
+        byte[] bytes;
+        try {
+            bytes = s.getBytes("UTF-8");
+        } catch (IOException unexpected) {
+            throw new IllegalStateException(unexpected);
+        }
+        writeHpackInt(output, 0x00, 7, bytes.length);
+        output.write(bytes, 0, bytes.length);
+    }
+
+    private static void writeHpackInt(
+            @NonNull ByteArrayOutputStream output,
+            int flags,
+            int prefixBits,
+            int value) {
+        int maxPrefix = (1 << prefixBits) - 1;
+        if (value < maxPrefix) {
+            output.write(flags | value);
+            return;
+        }
+        output.write(flags | maxPrefix);
+        value -= maxPrefix;
+        while (value >= 0x80) {
+            output.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        output.write(value);
+    }
+
+    private static final class PendingRequest {
+        @NonNull final ByteArrayOutputStream mBlock = new ByteArrayOutputStream();
+        @NonNull final ByteArrayOutputStream mBody = new ByteArrayOutputStream();
+        @Nullable List<Hpack.Header> mHeaders;
+        boolean mEndStream;
+    }
+
+    static class Response {
+        final int mCode;
+        @NonNull final byte[] mBody;
+        @NonNull final Map<String, String> mHeaders = new LinkedHashMap<>();
+        final boolean mIsRefused;
+        long mDelayMs;
+
+        Response(int code, @NonNull String body) {
+            this(code, body.getBytes(), false);
+        }
+
+        Response(int code, @NonNull byte[] body) {
+            this(code, body, false);
+        }
+
+        private Response(int code, @NonNull byte[] body, boolean isRefused) {
+            mCode = code;
+            mBody = body;
+            mIsRefused = isRefused;
+        }
+
+        /**
+         * @return a response that resets the stream as refused, unprocessed
+         */
+        @NonNull
+        static Response refused() {
+            return new Response(0, new byte[0], true);
+        }
+
+        @NonNull
+        Response setHeader(@NonNull String name, @NonNull String value) {
+            mHeaders.put(name, value);
+            return this;
+        }
+
+        @NonNull
+        Response setDelayMs(long delayMs) {
+            mDelayMs = delayMs;
+            return this;
+        }
+    }
+
+    static class RecordedRequest {
+        @NonNull final Map<String, String> pseudoHeaders = new HashMap<>();
+        @NonNull final Map<String, String> headers = new HashMap<>();
+        @NonNull final byte[] body;
+
+        RecordedRequest(@NonNull List<Hpack.Header> headerList, @NonNull byte[] body) {
+            for (Hpack.Header header : headerList) {
+                if (header.name.startsWith(":")) {
+                    pseudoHeaders.put(header.name, header.value);
+                } else {
+                    headers.put(header.name, header.value);
+                }
+            }
+            this.body = body;
+        }
+
+        @Nullable
+        String getMethod() {
+            return pseudoHeaders.get(":method");
+        }
+
+        @Nullable
+        String getPath() {
+            return pseudoHeaders.get(":path");
+        }
+
+        @NonNull
+        String getBodyAsString() {
+            return new String(body);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.stripe.android.net;
+
+import android.support.annotation.NonNull;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A local stand-in for a merchant's source relay, for testing {@link SourceStatusStream}. It
+ * answers every request with the scripted events, one after the other, and then either closes
+ * the stream or holds it open until the client goes away or the relay is shut down.
+ */
+class StubSourceRelay {
+
+    private final HttpServer mServer;
+    private final List<String> mEvents = Collections.synchronizedList(new ArrayList<String>());
+    private final List<String> mRequestUrls =
+            Collections.synchronizedList(new ArrayList<String>());
+    private final List<String> mAcceptHeaders =
+            Collections.synchronizedList(new ArrayList<String>());
+    private final CountDownLatch mShutdown = new CountDownLatch(1);
+
+    private volatile int mResponseCode = 200;
+    private volatile boolean mHoldsOpen;
+
+    StubSourceRelay() throws IOException {
+        mServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        mServer.setExecutor(Executors.newCachedThreadPool());
+        mServer.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                handleExchange(exchange);
+            }
+        });
+        mServer.start();
+    }
+
+    @NonNull
+    String getUrl() {
+        return "http://" + mServer.getAddress().getHostString() + ":"
+                + mServer.getAddress().getPort() + "/relay";
+    }
+
+    /**
+     * Add an event, written exactly as it should appear in the stream.
+     */
+    void addEvent(@NonNull String event) {
+        mEvents.add(event);
+    }
+
+    /**
+     * Add a {@code source} event for a source with the given status.
+     */
+    void addSourceEvent(@NonNull String status) {
+        addEvent("event: source\ndata: {\"id\":\"src_1\",\"object\":\"source\","
+                + "\"status\":\"" + status + "\"}\n\n");
+    }
+
+    /**
+     * Answer with an error instead of a stream.
+     */
+    void setResponseCode(int responseCode) {
+        mResponseCode = responseCode;
+    }
+
+    /**
+     * Keep the stream open once the events have been written.
+     */
+    void setHoldsOpen(boolean holdsOpen) {
+        mHoldsOpen = holdsOpen;
+    }
+
+    @NonNull
+    List<String> getRequestUrls() {
+        synchronized (mRequestUrls) {
+            return new ArrayList<>(mRequestUrls);
+        }
+    }
+
+    @NonNull
+    List<String> getAcceptHeaders() {
+        synchronized (mAcceptHeaders) {
+            return new ArrayList<>(mAcceptHeaders);
+        }
+    }
+
+    void shutdown() {
+        mShutdown.countDown();
+        mServer.stop(0);
+    }
+
+    private void handleExchange(@NonNull HttpExchange exchange) throws IOException {
+        mRequestUrls.add(exchange.getRequestURI().toString());
+        mAcceptHeaders.add(exchange.getRequestHeaders().getFirst("Accept"));
+
+        if (mResponseCode != 200) {
+            byte[] body = "{\"error\":{}}".getBytes("UTF-8");
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(mResponseCode, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+            return;
+        }
+
+        exchange.getResponseHeaders().add(
+                "Content-Type", ServerSentEventReader.CONTENT_TYPE + "; charset=utf-8");
+        exchange.sendResponseHeaders(200, 0);
+        OutputStream output = exchange.getResponseBody();
+        try {
+            List<String> events;
+            synchronized (mEvents) {
+                events = new ArrayList<>(mEvents);
+            }
+            for (String event : events) {
+                output.write(event.getBytes("UTF-8"));
+                output.flush();
+            }
+
+            // Comments keep the stream alive, and show when the client has gone away.
+            while (mHoldsOpen && !mShutdown.await(50, TimeUnit.MILLISECONDS)) {
+                output.write(":\n".getBytes("UTF-8"));
+                output.flush();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            exchange.close();
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package com.stripe.android.net;
 
+import android.util.JsonReader;
+
 import com.stripe.android.model.BankAccount;
 import com.stripe.android.model.Card;
 import com.stripe.android.model.Token;
@@ -10,6 +12,8 @@ import org.junit.runner.RunWith;
 import org.robolectric.RobolectricTestRunner;
 import org.robolectric.annotation.Config;
 
+import java.io.IOException;
+import java.io.StringReader;
 import java.util.Date;
 
 import static org.junit.Assert.assertEquals;
@@ -197,4 +201,55 @@ public class TokenParserTest {
         TokenParser.parseToken(RAW_BANK_TOKEN_NO_TYPE);
         fail("Expected an exception when parsing token without type");
     }
- }
+
+    @Test
+    public void parseTokenFromReader_matchesParseToken() throws IOException, JSONException {
+        for (String json : new String[] {RAW_TOKEN, RAW_BANK_TOKEN}) {
+            Token expected = TokenParser.parseToken(json);
+            Token actual = readToken(json);
+            assertEquals(expected.getId(), actual.getId());
+            assertEquals(expected.getLivemode(), actual.getLivemode());
+            assertEquals(expected.getCreated(), actual.getCreated());
+            assertEquals(expected.getUsed(), actual.getUsed());
+            assertEquals(expected.getType(), actual.getType());
+            if (expected.getCard() == null) {
+                assertNull(actual.getCard());
+            } else {
+                assertEquals(expected.getCard().getLast4(), actual.getCard().getLast4());
+                assertEquals(expected.getCard().getExpMonth(), actual.getCard().getExpMonth());
+                assertEquals(expected.getCard().getBrand(), actual.getCard().getBrand());
+            }
+            if (expected.getBankAccount() == null) {
+                assertNull(actual.getBankAccount());
+            } else {
+                assertEquals(expected.getBankAccount().getRoutingNumber(),
+                        actual.getBankAccount().getRoutingNumber());
+                assertEquals(expected.getBankAccount().getCurrency(),
+                        actual.getBankAccount().getCurrency());
+            }
+        }
+    }
+
+    @Test(expected = JSONException.class)
+    public void parseTokenFromReader_withoutId_throwsException()
+            throws IOException, JSONException {
+        readToken(RAW_TOKEN_NO_ID);
+    }
+
+    @Test(expected = JSONException.class)
+    public void parseTokenFromReader_withoutType_throwsException()
+            throws IOException, JSONException {
+        readToken(RAW_BANK_TOKEN_NO_TYPE);
+    }
+
+    @Test(expected = JSONException.class)
+    public void parseTokenFromReader_withoutCardObject_throwsException()
+            throws IOException, JSONException {
+        readToken("{\"id\": \"tok_1\", \"created\": 1462905355, \"livemode\": false,"
+                + " \"type\": \"card\", \"used\": false, \"card\": null}");
+    }
+
+    private static Token readToken(String json) throws IOException, JSONException {
+        return TokenParser.parseToken(new JsonReader(new StringReader(json)));
+    }
+}
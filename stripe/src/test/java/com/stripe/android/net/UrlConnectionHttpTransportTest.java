@@ -0,0 +1,233 @@
+package com.stripe.android.net;
+
+import com.stripe.android.testharness.StubHttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.net.ssl.HttpsURLConnection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for {@link UrlConnectionHttpTransport}.
+ */
+public class UrlConnectionHttpTransportTest {
+
+    private StubHttpServer mServer;
+    private UrlConnectionHttpTransport mTransport;
+
+    @Before
+    public void setup() throws IOException {
+        mServer = new StubHttpServer();
+        mTransport = new UrlConnectionHttpTransport(
+                new ConnectionLimiter(2),
+                HttpsURLConnection.getDefaultSSLSocketFactory(),
+                5000,
+                5000);
+    }
+
+    @After
+    public void tearDown() {
+        mServer.shutdown();
+    }
+
+    @Test
+    public void execute_withGet_appendsQueryAndReturnsResponse() throws IOException {
+        mServer.enqueue(new StubHttpServer.StubResponse(200, "{\"id\":\"src_1\"}")
+                .setHeader("Request-Id", "req_123"));
+
+        StripeResponse response = mTransport.execute(
+                StripeApiHandler.GET,
+                mServer.getUrl("/v1/sources/src_1"),
+                "client_secret=abc",
+                getHeaders());
+
+        assertEquals(200, response.getResponseCode());
+        assertEquals("{\"id\":\"src_1\"}", response.getResponseBody());
+        assertEquals("req_123", getHeader(response, "Request-Id"));
+
+        StubHttpServer.RecordedRequest request = mServer.getRequests().get(0);
+        assertEquals("GET", request.method);
+        assertEquals("/v1/sources/src_1?client_secret=abc", request.path);
+        assertEquals("Bearer pk_test", request.getHeader("Authorization"));
+    }
+
+    @Test
+    public void execute_withPost_writesFormBody() throws IOException {
+        mTransport.execute(
+                StripeApiHandler.POST,
+                mServer.getUrl("/v1/tokens"),
+                "card%5Bnumber%5D=4242424242424242",
+                getHeaders());
+
+        StubHttpServer.RecordedRequest request = mServer.getRequests().get(0);
+        assertEquals("POST", request.method);
+        assertEquals("/v1/tokens", request.path);
+        assertEquals("card%5Bnumber%5D=4242424242424242", request.getBodyAsString());
+        assertTrue(request.getHeader("Content-Type")
+                .startsWith("application/x-www-form-urlencoded"));
+    }
+
+    @Test
+    public void execute_withErrorResponse_readsErrorBody() throws IOException {
+        mServer.enqueue(new StubHttpServer.StubResponse(402, "{\"error\":{}}"));
+
+        StripeResponse response = mTransport.execute(
+                StripeApiHandler.POST,
+                mServer.getUrl("/v1/tokens"),
+                "a=b",
+                getHeaders());
+
+        assertEquals(402, response.getResponseCode());
+        assertEquals("{\"error\":{}}", response.getResponseBody());
+    }
+
+    @Test
+    public void execute_withEmptyBody_returnsEmptyString() throws IOException {
+        mServer.enqueue(new StubHttpServer.StubResponse(200, ""));
+
+        StripeResponse response = mTransport.execute(
+                StripeApiHandler.GET,
+                mServer.getUrl("/v1/sources/src_1"),
+                null,
+                getHeaders());
+
+        assertEquals(200, response.getResponseCode());
+        assertEquals("", response.getResponseBody());
+    }
+
+    @Test
+    public void execute_withGzipResponse_decodesBodyAndCountsBytes() throws IOException {
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < 50; i++) {
+            body.append("{\"id\":\"src_").append(i).append("\",\"object\":\"source\"},");
+        }
+        byte[] compressed = ContentDecoderTest.gzip(body.toString());
+        mServer.enqueue(new StubHttpServer.StubResponse(200, compressed)
+                .setHeader("Content-Encoding", "gzip"));
+
+        StripeResponse response = mTransport.execute(
+                StripeApiHandler.GET,
+                mServer.getUrl("/v1/sources/src_1"),
+                null,
+                getHeaders());
+
+        assertEquals(body.toString(), response.getResponseBody());
+        assertEquals("gzip, deflate", mServer.getRequests().get(0).getHeader("Accept-Encoding"));
+
+        TransferStats stats = mTransport.getTransferStats();
+        assertEquals(1, stats.getResponseCount());
+        assertEquals(1, stats.getEncodedResponseCount());
+        assertEquals(compressed.length, stats.getWireByteCount());
+        assertEquals(body.length(), stats.getDecodedByteCount());
+    }
+
+    @Test
+    public void execute_withGzipResponse_keepsConnectionReusable() throws IOException {
+        mServer.setDefaultResponse(new StubHttpServer.StubResponse(
+                200, ContentDecoderTest.gzip("{}")).setHeader("Content-Encoding", "gzip"));
+
+        for (int i = 0; i < 3; i++) {
+            StripeResponse response = mTransport.execute(
+                    StripeApiHandler.GET,
+                    mServer.getUrl("/v1/sources/src_1"),
+                    null,
+                    getHeaders());
+            assertEquals("{}", response.getResponseBody());
+        }
+
+        assertEquals(1, mServer.getConnectionCount());
+    }
+
+    @Test
+    public void execute_withPlainResponse_countsSameBytesTwice() throws IOException {
+        mServer.enqueue(new StubHttpServer.StubResponse(200, "{\"id\":\"src_1\"}"));
+
+        mTransport.execute(
+                StripeApiHandler.GET,
+                mServer.getUrl("/v1/sources/src_1"),
+                null,
+                getHeaders());
+
+        TransferStats stats = mTransport.getTransferStats();
+        assertEquals(0, stats.getEncodedResponseCount());
+        assertEquals(14, stats.getWireByteCount());
+        assertEquals(14, stats.getDecodedByteCount());
+    }
+
+    @Test
+    public void execute_sequentialRequests_reuseOneConnection() throws IOException {
+        for (int i = 0; i < 5; i++) {
+            mTransport.execute(
+                    StripeApiHandler.GET,
+                    mServer.getUrl("/v1/sources/src_1"),
+                    null,
+                    getHeaders());
+        }
+
+        assertEquals(5, mServer.getRequests().size());
+        assertEquals(1, mServer.getConnectionCount());
+    }
+
+    @Test
+    public void warmUp_alwaysSendsRequestOverConnectionUsedByNextRequest() throws IOException {
+        mTransport.warmUp(mServer.getUrl("/v1/"));
+        mTransport.warmUp(mServer.getUrl("/v1/"));
+
+        mTransport.execute(
+                StripeApiHandler.GET,
+                mServer.getUrl("/v1/sources/src_1"),
+                null,
+                getHeaders());
+
+        assertEquals(3, mServer.getRequests().size());
+        assertNull(mServer.getRequests().get(0).getHeader("Authorization"));
+        assertNull(mServer.getRequests().get(1).getHeader("Authorization"));
+        assertEquals(1, mServer.getConnectionCount());
+    }
+
+    @Test
+    public void setHttpTransport_replacesAndRestoresDefault() {
+        HttpTransport custom = new HttpTransport() {
+            @Override
+            public StripeResponse execute(
+                    String method,
+                    String url,
+                    String query,
+                    Map<String, String> headers) {
+                return new StripeResponse(200, "{}", null);
+            }
+        };
+
+        StripeApiHandler.setHttpTransport(custom);
+        assertEquals(custom, StripeApiHandler.getHttpTransport());
+
+        StripeApiHandler.setHttpTransport(null);
+        assertTrue(StripeApiHandler.getHttpTransport() instanceof UrlConnectionHttpTransport);
+    }
+
+    private static String getHeader(StripeResponse response, String name) {
+        // The stub server normalizes the case of header names.
+        for (Map.Entry<String, List<String>> header : response.getResponseHeaders().entrySet()) {
+            if (name.equalsIgnoreCase(header.getKey())) {
+                return header.getValue().get(0);
+            }
+        }
+        return null;
+    }
+
+    private static Map<String, String> getHeaders() {
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Authorization", "Bearer pk_test");
+        return headers;
+    }
+}
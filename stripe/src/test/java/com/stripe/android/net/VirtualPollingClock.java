@@ -0,0 +1,34 @@
+package com.stripe.android.net;
+
+/**
+ * A {@link ThreadPollingClock} that keeps virtual time: instead of sleeping until the next task
+ * is due, it jumps straight to it. Polls run on it take as long as they would in real time, in
+ * no time at all.
+ */
+class VirtualPollingClock extends ThreadPollingClock {
+
+    private long mNowMs;
+
+    @Override
+    public synchronized long uptimeMillis() {
+        return mNowMs;
+    }
+
+    @Override
+    synchronized void sleepMs(long delayMs) {
+        mNowMs += delayMs;
+    }
+
+    /**
+     * Run tasks until there are none left.
+     *
+     * @return the number of tasks run
+     */
+    int runUntilIdle() throws InterruptedException {
+        int count = 0;
+        while (runNext()) {
+            count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,214 @@
+package com.stripe.android.testharness;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+
+/**
+ * A local HTTP server for tests that exercise the network layer without reaching Stripe. Every
+ * request gets the next queued {@link StubResponse}, or the default response once the queue is
+ * empty, and is recorded for later assertions.
+ */
+public class StubHttpServer {
+
+    private final HttpServer mServer;
+    private final ConcurrentLinkedQueue<StubResponse> mResponses = new ConcurrentLinkedQueue<>();
+    private final List<RecordedRequest> mRequests =
+            Collections.synchronizedList(new ArrayList<RecordedRequest>());
+    private final Set<Integer> mClientPorts = Collections.synchronizedSet(new HashSet<Integer>());
+
+    private volatile StubResponse mDefaultResponse = new StubResponse(200, "{}");
+
+    public StubHttpServer() throws IOException {
+        mServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        mServer.setExecutor(Executors.newCachedThreadPool());
+        mServer.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                handleExchange(exchange);
+            }
+        });
+        mServer.start();
+    }
+
+    @NonNull
+    public String getUrl(@NonNull String path) {
+        return "http://" + mServer.getAddress().getHostString() + ":"
+                + mServer.getAddress().getPort() + path;
+    }
+
+    public void enqueue(@NonNull StubResponse response) {
+        mResponses.add(response);
+    }
+
+    public void setDefaultResponse(@NonNull StubResponse response) {
+        mDefaultResponse = response;
+    }
+
+    @NonNull
+    public List<RecordedRequest> getRequests() {
+        synchronized (mRequests) {
+            return new ArrayList<>(mRequests);
+        }
+    }
+
+    /**
+     * @return the number of distinct client connections the server has accepted so far
+     */
+    public int getConnectionCount() {
+        return mClientPorts.size();
+    }
+
+    public void shutdown() {
+        mServer.stop(0);
+    }
+
+    private void handleExchange(@NonNull HttpExchange exchange) throws IOException {
+        mClientPorts.add(exchange.getRemoteAddress().getPort());
+        mRequests.add(new RecordedRequest(
+                exchange.getRequestMethod(),
+                exchange.getRequestURI().toString(),
+                copyHeaders(exchange.getRequestHeaders()),
+                readFully(exchange.getRequestBody())));
+
+        StubResponse response = mResponses.poll();
+        if (response == null) {
+            response = mDefaultResponse;
+        }
+
+        if (response.delayMs > 0) {
+            try {
+                Thread.sleep(response.delayMs);
+            } catch (InterruptedException ignored) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        for (Map.Entry<String, String> header : response.headers.entrySet()) {
+            exchange.getResponseHeaders().add(header.getKey(), header.getValue());
+        }
+        byte[] body = response.body;
+        exchange.sendResponseHeaders(response.code, body.length == 0 ? -1 : body.length);
+        OutputStream output = exchange.getResponseBody();
+        output.write(body);
+        output.close();
+    }
+
+    @NonNull
+    private static Map<String, String> copyHeaders(@NonNull Headers headers) {
+        Map<String, String> copy = new HashMap<>();
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            if (!header.getValue().isEmpty()) {
+                copy.put(header.getKey().toLowerCase(), header.getValue().get(0));
+            }
+        }
+        return copy;
+    }
+
+    @NonNull
+    private static byte[] readFully(@NonNull InputStream input) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int read;
+        while ((read = input.read(buffer)) != -1) {
+            output.write(buffer, 0, read);
+        }
+        input.close();
+        return output.toByteArray();
+    }
+
+    /**
+     * A canned response.
+     */
+    public static class StubResponse {
+        final int code;
+        @NonNull final byte[] body;
+        @NonNull final Map<String, String> headers = new HashMap<>();
+        long delayMs;
+
+        public StubResponse(int code, @NonNull String body) {
+            this(code, toBytes(body));
+        }
+
+        public StubResponse(int code, @NonNull byte[] body) {
+            this.code = code;
+            this.body = body;
+        }
+
+        @NonNull
+        public StubResponse setHeader(@NonNull String name, @NonNull String value) {
+            headers.put(name, value);
+            return this;
+        }
+
+        @NonNull
+        public StubResponse setDelayMs(long delayMs) {
+            this.delayMs = delayMs;
+            return this;
+        }
+
+        @NonNull
+        private static byte[] toBytes(@NonNull String body) {
+            try {
+                return body.getBytes("UTF-8");
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    /**
+     * A request received by the server. Header names are lower-cased.
+     */
+    public static class RecordedRequest {
+        @NonNull public final String method;
+        @NonNull public final String path;
+        @NonNull public final Map<String, String> headers;
+        @NonNull public final byte[] body;
+
+        RecordedRequest(
+                @NonNull String method,
+                @NonNull String path,
+                @NonNull Map<String, String> headers,
+                @NonNull byte[] body) {
+            this.method = method;
+            this.path = path;
+            this.headers = headers;
+            this.body = body;
+        }
+
+        @Nullable
+        public String getHeader(@NonNull String name) {
+            return headers.get(name.toLowerCase());
+        }
+
+        @NonNull
+        public String getBodyAsString() {
+            try {
+                return new String(body, "UTF-8");
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package com.stripe.android.util;
 
+import android.util.JsonReader;
+
 import com.stripe.android.testharness.JsonTestUtils;
 
 import org.json.JSONArray;
@@ -10,6 +12,8 @@ import org.junit.runner.RunWith;
 import org.robolectric.RobolectricTestRunner;
 import org.robolectric.annotation.Config;
 
+import java.io.IOException;
+import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -17,7 +21,9 @@ import java.util.List;
 import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 /**
@@ -401,4 +407,57 @@ public class StripeJsonUtilsTest {
             fail("Test data failure " + jsonException.getLocalizedMessage());
         }
     }
+
+    @Test
+    public void readMap_matchesJsonObjectToMap() throws IOException, JSONException {
+        String json = "{\"string\": \"value\", \"empty\": \"\", \"null_string\": \"null\","
+                + " \"null\": null, \"int\": 12, \"long\": 12345678901,"
+                + " \"double\": 2.5, \"exponent\": 1e3, \"bool\": false,"
+                + " \"nested\": {\"list\": [1, \"null\", null, [true], {\"key\": \"v\"}]}}";
+
+        Map<String, Object> expected = StripeJsonUtils.jsonObjectToMap(new JSONObject(json));
+        Map<String, Object> actual = StripeJsonUtils.readMap(readerFor(json));
+
+        assertEquals(expected, actual);
+        assertEquals(Integer.class, actual.get("int").getClass());
+        assertEquals(Long.class, actual.get("long").getClass());
+    }
+
+    @Test
+    public void readMap_withNonObject_skipsValueAndReturnsNull() throws IOException {
+        JsonReader reader = readerFor("[[1, 2], 3]");
+        reader.beginArray();
+        assertNull(StripeJsonUtils.readMap(reader));
+        assertEquals(3, reader.nextInt());
+    }
+
+    @Test
+    public void readStringMap_matchesJsonObjectToStringMap() throws IOException, JSONException {
+        String json = "{\"order\": \"6735\", \"count\": 3, \"flag\": true,"
+                + " \"skipped\": \"null\"}";
+
+        assertEquals(StripeJsonUtils.jsonObjectToStringMap(new JSONObject(json)),
+                StripeJsonUtils.readStringMap(readerFor(json)));
+    }
+
+    @Test
+    public void optNumbersAndBooleans_fromReader_convertLikeJsonObject() throws IOException {
+        JsonReader reader = readerFor(
+                "[12, \"34\", 5.9, \"abc\", null, {\"a\": 1}, true, \"TRUE\", 1]");
+        reader.beginArray();
+        assertEquals(Long.valueOf(12L), StripeJsonUtils.optLong(reader));
+        assertEquals(Integer.valueOf(34), StripeJsonUtils.optInteger(reader));
+        assertEquals(Long.valueOf(5L), StripeJsonUtils.optLong(reader));
+        assertEquals(Long.valueOf(0L), StripeJsonUtils.optLong(reader));
+        assertEquals(Integer.valueOf(0), StripeJsonUtils.optInteger(reader));
+        assertEquals(Long.valueOf(0L), StripeJsonUtils.optLong(reader));
+        assertTrue(StripeJsonUtils.optBoolean(reader));
+        assertTrue(StripeJsonUtils.optBoolean(reader));
+        assertFalse(StripeJsonUtils.optBoolean(reader));
+        reader.endArray();
+    }
+
+    private static JsonReader readerFor(String json) {
+        return new JsonReader(new StringReader(json));
+    }
 }